@@ -55,6 +55,7 @@ public class M {
     public static final String PROP_API_FACTORY_CLASS = "mhus.api.factory";
     //  public static final String PROP_FILE_WATCH = "mhus.config.watch";
     public static final String PROP_CONFIG_FILE = PROP_PREFIX + "config.file";
+    public static final String PROP_CFG_TRACE_CALLING = PROP_PREFIX + "cfg.calling";
 
     public static final String DEFAULT_MHUS_CONFIG_FILE = "mhus-config.xml";
 
@@ -22,11 +22,13 @@ import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Formatter;
 import java.util.HashMap;
@@ -36,7 +38,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
+import de.mhus.lib.core.cast.CastPlan;
 import de.mhus.lib.core.cast.Caster;
 import de.mhus.lib.core.cast.DoubleToString;
 import de.mhus.lib.core.cast.FloatToString;
@@ -54,7 +58,6 @@ import de.mhus.lib.core.cast.ObjectToSqlDate;
 import de.mhus.lib.core.cast.ObjectToString;
 import de.mhus.lib.core.cast.ObjectToUUID;
 import de.mhus.lib.core.io.MObjectInputStream;
-import de.mhus.lib.core.util.VectorMap;
 
 /**
  * Smplifies casts between java classes. Some functions in this class only make the code readable.
@@ -75,7 +78,23 @@ public final class MCast {
         '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
     };
 
-    private static VectorMap<Class<?>, Class<?>, Caster<?, ?>> casters = new VectorMap<>();
+    // immutable snapshot, replaced on every change, readers do not lock
+    private static volatile Map<Class<?>, Map<Class<?>, Caster<?, ?>>> casters =
+            Collections.emptyMap();
+    private static volatile int castersVersion;
+
+    // max number of compiled plans per target type
+    private static final int MAX_PLANS = 64;
+
+    // compiled plans by target type and source type. The plans are stored in the target type, a
+    // source type is held by up to MAX_PLANS plans of each target type only
+    private static final ClassValue<Map<Class<?>, CompiledPlan>> PLANS =
+            new ClassValue<Map<Class<?>, CompiledPlan>>() {
+                @Override
+                protected Map<Class<?>, CompiledPlan> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
 
     private static final ObjectToBoolean OBJECT_TO_BOOLEAN = new ObjectToBoolean();
     private static final ObjectToInteger OBJECT_TO_INTEGER = new ObjectToInteger();
@@ -135,9 +154,20 @@ public final class MCast {
         return out.toString();
     }
 
-    public static void addCaster(Caster<?, ?> caster, boolean overwrite) {
-        if (!overwrite && casters.containsKey(caster.getFromClass(), caster.getToClass())) return;
-        casters.put(caster.getFromClass(), caster.getToClass(), caster);
+    public static synchronized void addCaster(Caster<?, ?> caster, boolean overwrite) {
+        if (!overwrite && getCaster(caster.getFromClass(), caster.getToClass()) != null) return;
+        Map<Class<?>, Map<Class<?>, Caster<?, ?>>> next = new HashMap<>(casters);
+        Map<Class<?>, Caster<?, ?>> to = next.get(caster.getFromClass());
+        to = to == null ? new HashMap<>() : new HashMap<>(to);
+        to.put(caster.getToClass(), caster);
+        next.put(caster.getFromClass(), to);
+        casters = next;
+        castersVersion++;
+    }
+
+    public static Caster<?, ?> getCaster(Class<?> from, Class<?> to) {
+        Map<Class<?>, Caster<?, ?>> map = casters.get(from);
+        return map == null ? null : map.get(to);
     }
 
     /**
@@ -725,99 +755,417 @@ public final class MCast {
         return OBJECT_TO_STRING.cast(in, def);
     }
 
-    @SuppressWarnings("unchecked")
     public static Object toType(Object in, Class<?> type, Object def) {
         // if null -> return null
         if (in == null) return def;
-        // if it's the same type -> return itself
-        if (type.isInstance(in)) return in;
-
-        if (type.isArray()) {
-            // create new array from in...
-            if (in.getClass().isArray()) {
-                Class<?> arrayType = type.getComponentType();
-                int length = Array.getLength(in);
-                Object out = Array.newInstance(arrayType, length);
-                // System.arraycopy(in, 0, out, 0, length);
-                for (int i = 0; i < length; i++) {
-                    Object value = Array.get(in, i);
-                    value = toType(value, arrayType, null);
-                    Array.set(out, i, value);
-                }
-                return out;
-            }
+        return compiledPlan(in.getClass(), type).cast(in, def);
+    }
 
-            if (in instanceof String) {
-                String[] parts = ((String) in).split(";");
-                Class<?> arrayType = type.getComponentType();
-                int length = parts.length;
-                Object out = Array.newInstance(arrayType, length);
-                // System.arraycopy(in, 0, out, 0, length);
-                for (int i = 0; i < length; i++) {
-                    Object value = parts[i];
-                    value = toType(value, arrayType, null);
-                    Array.set(out, i, value);
-                }
-                return out;
-            }
+    /**
+     * Return a reusable converter from one class to another. The conversion rules are the same as
+     * in toType() but they are resolved only once. If 'from' is not a final class the plan
+     * dispatches by the runtime class of the value.
+     *
+     * @param from The class of the values
+     * @param to The target class
+     * @return The conversion plan
+     */
+    public static CastPlan plan(Class<?> from, Class<?> to) {
+        if (from.isPrimitive()) from = wrapperClass(from);
+        if (to.isAssignableFrom(from)) return IDENTITY_PLAN;
+        if (isSealed(from)) return compiledPlan(from, to);
+        return (in, def) -> in == null ? def : compiledPlan(in.getClass(), to).cast(in, def);
+    }
+
+    private static final CastPlan IDENTITY_PLAN = (in, def) -> in == null ? def : in;
+
+    private static Class<?> wrapperClass(Class<?> type) {
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == double.class) return Double.class;
+        if (type == float.class) return Float.class;
+        if (type == short.class) return Short.class;
+        if (type == byte.class) return Byte.class;
+        if (type == boolean.class) return Boolean.class;
+        if (type == char.class) return Character.class;
+        return Void.class;
+    }
+
+    private static boolean isSealed(Class<?> clazz) {
+        return Modifier.isFinal(clazz.getModifiers()) || clazz.isArray();
+    }
+
+    private static CastPlan compiledPlan(Class<?> from, Class<?> to) {
+        Map<Class<?>, CompiledPlan> plans = PLANS.get(to);
+        CompiledPlan compiled = plans.get(from);
+        int version = castersVersion;
+        if (compiled == null || compiled.version != version) {
+            compiled = new CompiledPlan(version, compilePlan(from, to));
+            if (plans.size() >= MAX_PLANS) plans.clear();
+            plans.put(from, compiled);
+        }
+        return compiled.plan;
+    }
 
-            if (in instanceof Collection<?>) {
-                Collection<?> c = (Collection<?>) in;
-                Class<?> arrayType = type.getComponentType();
-                int length = c.size();
-                Object out = Array.newInstance(arrayType, length);
-                // System.arraycopy(in, 0, out, 0, length);
-                Iterator<?> iter = c.iterator();
-                for (int i = 0; i < length; i++) {
-                    Object value = iter.next();
-                    value = toType(value, arrayType, null);
-                    Array.set(out, i, value);
-                }
-                return out;
-            }
+    @SuppressWarnings("unchecked")
+    private static CastPlan compilePlan(Class<?> from, Class<?> type) {
+        // if it's the same type -> return itself
+        if (type.isAssignableFrom(from)) return IDENTITY_PLAN;
 
-            return def;
-        }
+        if (type.isArray()) return compileArrayPlan(from, type);
 
         if (type.isEnum()) {
-            String strValue = String.valueOf(in);
-            for (Object c : type.getEnumConstants()) if (c.toString().equals(strValue)) return c;
-            return def;
+            HashMap<String, Object> constants = new HashMap<>();
+            for (Object c : type.getEnumConstants()) constants.putIfAbsent(c.toString(), c);
+            return (in, def) -> {
+                if (in == null) return def;
+                Object c = constants.get(String.valueOf(in));
+                return c == null ? def : c;
+            };
         }
 
         // is there a exact caster for the from-to pair ?
-        Caster<?, ?> caster = casters.get(in.getClass(), type);
+        Caster<Object, Object> caster = (Caster<Object, Object>) getCaster(from, type);
         if (caster == null) {
 
             // not, first try to cast primitives
 
-            if (String.class.isAssignableFrom(type)) return toString(in);
+            if (String.class.isAssignableFrom(type))
+                return (in, def) -> in == null ? def : toString(in);
             if (boolean.class.isAssignableFrom(type))
-                return toboolean(in, def == null ? false : toboolean(def, false));
-            if (int.class.isAssignableFrom(type)) return toint(in, def == null ? 0 : toint(def, 0));
+                return (in, def) ->
+                        in == null
+                                ? def
+                                : toboolean(in, def == null ? false : toboolean(def, false));
+            if (int.class.isAssignableFrom(type))
+                return (in, def) -> in == null ? def : toint(in, def == null ? 0 : toint(def, 0));
             if (long.class.isAssignableFrom(type))
-                return tolong(in, def == null ? 0 : tolong(def, 0));
+                return (in, def) ->
+                        in == null ? def : tolong(in, def == null ? 0 : tolong(def, 0));
             if (double.class.isAssignableFrom(type))
-                return todouble(in, def == null ? 0 : todouble(def, 0));
+                return (in, def) ->
+                        in == null ? def : todouble(in, def == null ? 0 : todouble(def, 0));
             if (byte.class.isAssignableFrom(type))
-                return tobyte(in, def == null ? 0 : tobyte(def, (byte) 0));
+                return (in, def) ->
+                        in == null ? def : tobyte(in, def == null ? 0 : tobyte(def, (byte) 0));
             if (short.class.isAssignableFrom(type))
-                return toshort(in, def == null ? 0 : toshort(def, (short) 0));
+                return (in, def) ->
+                        in == null
+                                ? def
+                                : toshort(in, def == null ? 0 : toshort(def, (short) 0));
             if (float.class.isAssignableFrom(type))
-                return tofloat(in, def == null ? 0 : tofloat(def, (short) 0));
+                return (in, def) ->
+                        in == null ? def : tofloat(in, def == null ? 0 : tofloat(def, 0));
 
-            if (type == Map.class) return toMap(in, def);
-            if (type == List.class) return toList(in, def);
+            if (type == Map.class) return (in, def) -> toMap(in, def);
+            if (type == List.class) return (in, def) -> toList(in, def);
             // if not found find a default caster (from = Object)
 
-            caster = casters.get(Object.class, type);
+            caster = (Caster<Object, Object>) getCaster(Object.class, type);
         }
 
         // default also not found -> return default value
-        if (caster == null) return def;
+        if (caster == null) return (in, def) -> def;
 
         // if found a caster -> cast !
-        return ((Caster<Object, Object>) caster).cast(in, def);
+        Caster<Object, Object> c = caster;
+        return (in, def) -> in == null ? def : c.cast(in, def);
+    }
+
+    private static CastPlan compileArrayPlan(Class<?> from, Class<?> type) {
+        Class<?> arrayType = type.getComponentType();
+        ArrayAccess target = ArrayAccess.of(arrayType);
+
+        // create new array from in...
+        if (from.isArray()) {
+            ArrayAccess source = ArrayAccess.of(from.getComponentType());
+            CastPlan element = elementPlan(from.getComponentType(), arrayType);
+            return (in, def) -> {
+                if (in == null) return def;
+                int length = source.length(in);
+                Object out = target.create(length);
+                for (int i = 0; i < length; i++)
+                    target.set(out, i, element.cast(source.get(in, i), null));
+                return out;
+            };
+        }
+
+        if (from == String.class) {
+            CastPlan element = elementPlan(String.class, arrayType);
+            return (in, def) -> {
+                if (in == null) return def;
+                String[] parts = ((String) in).split(";");
+                int length = parts.length;
+                Object out = target.create(length);
+                for (int i = 0; i < length; i++) target.set(out, i, element.cast(parts[i], null));
+                return out;
+            };
+        }
+
+        if (Collection.class.isAssignableFrom(from)) {
+            CastPlan element = elementPlan(Object.class, arrayType);
+            return (in, def) -> {
+                if (in == null) return def;
+                Collection<?> c = (Collection<?>) in;
+                int length = c.size();
+                Object out = target.create(length);
+                Iterator<?> iter = c.iterator();
+                for (int i = 0; i < length; i++)
+                    target.set(out, i, element.cast(iter.next(), null));
+                return out;
+            };
+        }
+
+        return (in, def) -> def;
+    }
+
+    private static CastPlan elementPlan(Class<?> from, Class<?> to) {
+        if (from.isPrimitive()) from = wrapperClass(from);
+        if (to.isAssignableFrom(from)) return IDENTITY_PLAN;
+        if (isSealed(from)) {
+            // resolve lazy, arrays can be nested
+            Class<?> f = from;
+            return (in, def) -> in == null ? def : compiledPlan(f, to).cast(in, def);
+        }
+        return (in, def) -> toType(in, to, def);
+    }
+
+    private static class CompiledPlan {
+        private final int version;
+        private final CastPlan plan;
+
+        private CompiledPlan(int version, CastPlan plan) {
+            this.version = version;
+            this.plan = plan;
+        }
+    }
+
+    /** Typed array access, avoids reflection for primitive arrays. */
+    private abstract static class ArrayAccess {
+
+        abstract Object create(int length);
+
+        abstract int length(Object array);
+
+        abstract Object get(Object array, int index);
+
+        abstract void set(Object array, int index, Object value);
+
+        static ArrayAccess of(Class<?> type) {
+            if (type == int.class) return INT;
+            if (type == long.class) return LONG;
+            if (type == double.class) return DOUBLE;
+            if (type == float.class) return FLOAT;
+            if (type == short.class) return SHORT;
+            if (type == byte.class) return BYTE;
+            if (type == boolean.class) return BOOLEAN;
+            if (type == char.class) return CHAR;
+            return new ArrayAccess() {
+                @Override
+                Object create(int length) {
+                    return Array.newInstance(type, length);
+                }
+
+                @Override
+                int length(Object array) {
+                    return ((Object[]) array).length;
+                }
+
+                @Override
+                Object get(Object array, int index) {
+                    return ((Object[]) array)[index];
+                }
+
+                @Override
+                void set(Object array, int index, Object value) {
+                    ((Object[]) array)[index] = value;
+                }
+            };
+        }
+
+        static final ArrayAccess INT =
+                new ArrayAccess() {
+                    @Override
+                    Object create(int length) {
+                        return new int[length];
+                    }
+
+                    @Override
+                    int length(Object array) {
+                        return ((int[]) array).length;
+                    }
+
+                    @Override
+                    Object get(Object array, int index) {
+                        return ((int[]) array)[index];
+                    }
+
+                    @Override
+                    void set(Object array, int index, Object value) {
+                        ((int[]) array)[index] = value == null ? 0 : (Integer) value;
+                    }
+                };
+
+        static final ArrayAccess LONG =
+                new ArrayAccess() {
+                    @Override
+                    Object create(int length) {
+                        return new long[length];
+                    }
+
+                    @Override
+                    int length(Object array) {
+                        return ((long[]) array).length;
+                    }
+
+                    @Override
+                    Object get(Object array, int index) {
+                        return ((long[]) array)[index];
+                    }
+
+                    @Override
+                    void set(Object array, int index, Object value) {
+                        ((long[]) array)[index] = value == null ? 0 : (Long) value;
+                    }
+                };
+
+        static final ArrayAccess DOUBLE =
+                new ArrayAccess() {
+                    @Override
+                    Object create(int length) {
+                        return new double[length];
+                    }
+
+                    @Override
+                    int length(Object array) {
+                        return ((double[]) array).length;
+                    }
+
+                    @Override
+                    Object get(Object array, int index) {
+                        return ((double[]) array)[index];
+                    }
+
+                    @Override
+                    void set(Object array, int index, Object value) {
+                        ((double[]) array)[index] = value == null ? 0 : (Double) value;
+                    }
+                };
+
+        static final ArrayAccess FLOAT =
+                new ArrayAccess() {
+                    @Override
+                    Object create(int length) {
+                        return new float[length];
+                    }
+
+                    @Override
+                    int length(Object array) {
+                        return ((float[]) array).length;
+                    }
+
+                    @Override
+                    Object get(Object array, int index) {
+                        return ((float[]) array)[index];
+                    }
+
+                    @Override
+                    void set(Object array, int index, Object value) {
+                        ((float[]) array)[index] = value == null ? 0 : (Float) value;
+                    }
+                };
+
+        static final ArrayAccess SHORT =
+                new ArrayAccess() {
+                    @Override
+                    Object create(int length) {
+                        return new short[length];
+                    }
+
+                    @Override
+                    int length(Object array) {
+                        return ((short[]) array).length;
+                    }
+
+                    @Override
+                    Object get(Object array, int index) {
+                        return ((short[]) array)[index];
+                    }
+
+                    @Override
+                    void set(Object array, int index, Object value) {
+                        ((short[]) array)[index] = value == null ? 0 : (Short) value;
+                    }
+                };
+
+        static final ArrayAccess BYTE =
+                new ArrayAccess() {
+                    @Override
+                    Object create(int length) {
+                        return new byte[length];
+                    }
+
+                    @Override
+                    int length(Object array) {
+                        return ((byte[]) array).length;
+                    }
+
+                    @Override
+                    Object get(Object array, int index) {
+                        return ((byte[]) array)[index];
+                    }
+
+                    @Override
+                    void set(Object array, int index, Object value) {
+                        ((byte[]) array)[index] = value == null ? 0 : (Byte) value;
+                    }
+                };
+
+        static final ArrayAccess BOOLEAN =
+                new ArrayAccess() {
+                    @Override
+                    Object create(int length) {
+                        return new boolean[length];
+                    }
+
+                    @Override
+                    int length(Object array) {
+                        return ((boolean[]) array).length;
+                    }
+
+                    @Override
+                    Object get(Object array, int index) {
+                        return ((boolean[]) array)[index];
+                    }
+
+                    @Override
+                    void set(Object array, int index, Object value) {
+                        ((boolean[]) array)[index] = value != null && (Boolean) value;
+                    }
+                };
+
+        static final ArrayAccess CHAR =
+                new ArrayAccess() {
+                    @Override
+                    Object create(int length) {
+                        return new char[length];
+                    }
+
+                    @Override
+                    int length(Object array) {
+                        return ((char[]) array).length;
+                    }
+
+                    @Override
+                    Object get(Object array, int index) {
+                        return ((char[]) array)[index];
+                    }
+
+                    @Override
+                    void set(Object array, int index, Object value) {
+                        ((char[]) array)[index] = value == null ? 0 : (Character) value;
+                    }
+                };
     }
 
     public static Object toList(Object in, Object def) {
@@ -84,15 +84,28 @@ public class MJson {
     }
 
     public static JsonNode load(InputStream r) throws JsonProcessingException, IOException {
-        JsonParser parser = factory.createParser(r);
+        JsonParser parser = createParser(r);
+        JsonNode in = mapper.readTree(parser);
+        return in;
+    }
+
+    /**
+     * Create a parser with the same lenient features load() is using, e.g. comments, single quotes
+     * and unquoted field names are allowed.
+     *
+     * @param is
+     * @return The configured parser
+     * @throws IOException
+     */
+    public static JsonParser createParser(InputStream is) throws IOException {
+        JsonParser parser = factory.createParser(is);
         parser.configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
         parser.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
         parser.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
         parser.configure(JsonParser.Feature.ALLOW_YAML_COMMENTS, true);
         parser.configure(JsonParser.Feature.IGNORE_UNDEFINED, true);
         parser.configure(JsonParser.Feature.STRICT_DUPLICATE_DETECTION, false);
-        JsonNode in = mapper.readTree(parser);
-        return in;
+        return parser;
     }
 
     public static JsonNode load(String in) throws JsonProcessingException, IOException {
@@ -67,6 +67,15 @@ public class MProperties extends AbstractProperties implements Externalizable {
     //        }
     //    }
 
+    /**
+     * For subclasses with an own storage.
+     *
+     * @param createStorage false to leave properties unset
+     */
+    protected MProperties(boolean createStorage) {
+        if (createStorage) properties = new Properties();
+    }
+
     public MProperties(Dictionary<?, ?> config) {
         this.properties = new Properties();
         for (Enumeration<?> enu = config.keys(); enu.hasMoreElements(); ) {
@@ -27,9 +27,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import de.mhus.lib.core.logging.MLogUtil;
+import de.mhus.lib.core.matcher.CompiledPattern;
 import de.mhus.lib.core.parser.StringCompiler;
 import de.mhus.lib.core.util.EmptyList;
 import de.mhus.lib.errors.MException;
@@ -938,7 +940,7 @@ public class MString {
 
     public static boolean compareRegexPattern(String str, String pattern) {
         if (str == null || pattern == null) return false;
-        return str.matches(pattern);
+        return CompiledPattern.regex(pattern).test(str);
     }
 
     /**
@@ -950,21 +952,7 @@ public class MString {
      */
     public static boolean compareSQLLikePattern(String str, String pattern) {
         if (str == null || pattern == null) return false;
-        boolean policy = true;
-        if (pattern.startsWith("!")) {
-            policy = false;
-            pattern = pattern.substring(1);
-        }
-        if (pattern.endsWith("%") && pattern.startsWith("%")) {
-            if (str.indexOf(pattern.substring(1, pattern.length() - 2)) >= 0) return policy;
-        } else if (pattern.startsWith("%")) {
-            if (str.endsWith(pattern.substring(1))) return policy;
-        } else if (pattern.endsWith("%")) {
-            if (str.startsWith(pattern.substring(0, pattern.length() - 1))) return policy;
-        } else if (pattern.equals(str)) {
-            return policy;
-        }
-        return !policy;
+        return CompiledPattern.sql(pattern).test(str);
     }
 
     /**
@@ -976,24 +964,7 @@ public class MString {
      */
     public static boolean compareFsLikePattern(String str, String pattern) {
         if (str == null || pattern == null) return false;
-        boolean ret = true;
-        if (pattern.startsWith("!")) {
-            ret = false;
-            pattern = pattern.substring(1);
-        }
-
-        if (pattern.equals("*")) return ret;
-
-        if (pattern.endsWith("*") && pattern.startsWith("*")) {
-            if (str.indexOf(pattern.substring(1, pattern.length() - 2)) >= 0) return ret;
-        } else if (pattern.startsWith("*")) {
-            if (str.endsWith(pattern.substring(1))) return ret;
-        } else if (pattern.endsWith("*")) {
-            if (str.startsWith(pattern.substring(0, pattern.length() - 1))) return ret;
-        } else if (pattern.equals(str)) {
-            return ret;
-        }
-        return !ret;
+        return CompiledPattern.fs(pattern).test(str);
     }
 
     public static String replaceSQLLikePattern(String str, String pattern, String replace) {
@@ -2095,6 +2066,10 @@ public class MString {
 
     public static Throwable serialize(StringBuilder sb, Object o, Throwable error) {
         try {
+            if (o instanceof Supplier) {
+                // lazy parameter, evaluated only if the message is written
+                o = ((Supplier<?>) o).get();
+            }
             if (o == null) {
                 sb.append("[null]");
             } else if (o instanceof Throwable) {
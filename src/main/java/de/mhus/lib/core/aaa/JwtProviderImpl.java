@@ -18,7 +18,6 @@ package de.mhus.lib.core.aaa;
 import java.security.Key;
 import java.security.KeyPair;
 import java.security.PublicKey;
-import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 import java.util.UUID;
@@ -42,7 +41,7 @@ import de.mhus.lib.core.keychain.MKeychain;
 import de.mhus.lib.core.keychain.MKeychainUtil;
 import de.mhus.lib.core.keychain.MutableVaultSource;
 import de.mhus.lib.core.security.MSecurity;
-import de.mhus.lib.core.util.TimeoutMap;
+import de.mhus.lib.core.util.ConcurrentTimeoutMap;
 import de.mhus.lib.errors.MRuntimeException;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
@@ -70,7 +69,7 @@ public class JwtProviderImpl extends MLog implements JwtProvider {
     private Key jwtPrivateKey;
     private String jwtKeyId;
     private Map<String, PublicKey> publicKeyCache =
-            Collections.synchronizedMap(new TimeoutMap<>(MPeriod.MINUTE_IN_MILLISECOUNDS * 10));
+            new ConcurrentTimeoutMap<>(MPeriod.MINUTE_IN_MILLISECOUNDS * 10);
     private SigningKeyResolverAdapter jwtKeyResolver =
             new SigningKeyResolverAdapter() {
                 @Override
@@ -17,7 +17,9 @@ package de.mhus.lib.core.activator;
 
 import java.io.Closeable;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.mhus.lib.basics.ActivatorObjectLifecycle;
 import de.mhus.lib.core.MActivator;
@@ -27,8 +29,9 @@ import de.mhus.lib.errors.MException;
 
 public class DefaultActivator extends MActivator implements MutableActivator {
 
-    protected HashMap<String, Object> mapper = new HashMap<String, Object>();
-    protected HashMap<String, Object> instances = new HashMap<String, Object>();
+    protected Map<String, Object> mapper = new ConcurrentHashMap<String, Object>();
+    protected Map<String, Object> instances = new ConcurrentHashMap<String, Object>();
+    private final AtomicInteger modifications = new AtomicInteger();
 
     public DefaultActivator() {}
 
@@ -78,6 +81,7 @@ public class DefaultActivator extends MActivator implements MutableActivator {
             }
             old = instances.put(name, obj);
         }
+        modifications.incrementAndGet();
         // lifecycle
         if (old != null && old instanceof ActivatorObjectLifecycle) {
             try {
@@ -92,6 +96,7 @@ public class DefaultActivator extends MActivator implements MutableActivator {
         if (name == null || clazz == null) return;
         // base.log().t("add map",name,clazz);
         mapper.put(name, clazz);
+        modifications.incrementAndGet();
     }
 
     @Override
@@ -104,6 +109,7 @@ public class DefaultActivator extends MActivator implements MutableActivator {
         if (name == null || clazz == null) return;
         // base.log().t("add map",name,clazz);
         mapper.put(name, clazz);
+        modifications.incrementAndGet();
     }
 
     @Override
@@ -115,7 +121,7 @@ public class DefaultActivator extends MActivator implements MutableActivator {
 
     @Override
     public boolean isInstance(String ifc) {
-        return instances.containsKey(ifc);
+        return ifc != null && instances.containsKey(ifc);
     }
 
     @Override
@@ -129,11 +135,12 @@ public class DefaultActivator extends MActivator implements MutableActivator {
                 }
             }
         mapper = null;
+        modifications.incrementAndGet();
     }
 
     @Override
     protected Object getInstance(String name) {
-        return instances.get(name);
+        return name == null ? null : instances.get(name);
     }
 
     @Override
@@ -144,6 +151,7 @@ public class DefaultActivator extends MActivator implements MutableActivator {
     @Override
     public void removeMap(String name) {
         mapper.remove(name);
+        modifications.incrementAndGet();
     }
 
     @Override
@@ -153,12 +161,25 @@ public class DefaultActivator extends MActivator implements MutableActivator {
 
     @Override
     public boolean removeObject(Class<?> ifc, String name) {
+        Object old;
         if (ifc == null) {
-            return instances.remove(name) != null;
+            old = instances.remove(name);
         } else {
-            return instances.remove(ifc.getCanonicalName() + (name != null ? ":" + name : ""))
-                    != null;
+            old = instances.remove(ifc.getCanonicalName() + (name != null ? ":" + name : ""));
         }
+        // after the remove, a lookup must not cache the old instance with the new stamp
+        modifications.incrementAndGet();
+        return old != null;
+    }
+
+    /**
+     * Return a counter which is changed by every modification of the instances or mappings. Can be
+     * used to invalidate caches.
+     *
+     * @return The modification counter
+     */
+    public int getModificationCount() {
+        return modifications.get();
     }
 
     @Override
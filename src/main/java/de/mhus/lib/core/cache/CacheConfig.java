@@ -20,6 +20,8 @@ public class CacheConfig {
     private int heapSize = 0;
     private boolean serializable = false;
     private long ttl = 0;
+    private long offHeapSize = 64 * 1024 * 1024;
+    private boolean persistent = true;
 
     public int getHeapSize() {
         return heapSize;
@@ -47,4 +49,36 @@ public class CacheConfig {
         this.ttl = ttl;
         return this;
     }
+
+    public long getOffHeapSize() {
+        return offHeapSize;
+    }
+
+    /**
+     * Size in bytes of the off heap tier. The tier is only used for serializable caches. Set to 0
+     * to disable the off heap tier.
+     *
+     * @param offHeapSize
+     * @return this
+     */
+    public CacheConfig setOffHeapSize(long offHeapSize) {
+        this.offHeapSize = offHeapSize;
+        return this;
+    }
+
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * If the off heap tier is persistent the entries are stored in the data directory and survive
+     * a restart. Otherwise a temporary file is used.
+     *
+     * @param persistent
+     * @return this
+     */
+    public CacheConfig setPersistent(boolean persistent) {
+        this.persistent = persistent;
+        return this;
+    }
 }
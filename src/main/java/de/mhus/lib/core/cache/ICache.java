@@ -16,7 +16,34 @@
 package de.mhus.lib.core.cache;
 
 import java.io.Closeable;
+import java.util.function.Function;
 
 import javax.cache.Cache;
 
-public interface ICache<K, V> extends Cache<K, V>, Closeable {}
+public interface ICache<K, V> extends Cache<K, V>, Closeable {
+
+    /**
+     * Return the cached value or load it with the given loader. The loaded value will be stored
+     * in the cache if it is not null.
+     *
+     * @param key
+     * @param loader
+     * @return The cached or loaded value or null
+     */
+    default V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) return value;
+        value = loader.apply(key);
+        if (value != null) put(key, value);
+        return value;
+    }
+
+    /**
+     * Return the statistics of this cache.
+     *
+     * @return The statistics or null if not supported
+     */
+    default ICacheStatistics getStatistics() {
+        return null;
+    }
+}
@@ -18,6 +18,9 @@ package de.mhus.lib.core.cache;
 import java.io.Serializable;
 import java.util.List;
 
+import de.mhus.lib.annotations.activator.DefaultImplementation;
+
+@DefaultImplementation(LocalCacheService.class)
 public interface ICacheService {
 
     /**
@@ -21,5 +21,28 @@ public interface ICacheStatistics extends CacheStatisticsMXBean {
 
     long getCacheSize();
 
+    /**
+     * Return the occupied memory in bytes if known.
+     *
+     * @return Size in bytes or -1 if unknown
+     */
     long getOccupiedByteSize();
+
+    /**
+     * Number of values loaded via ICache.get(key, loader).
+     *
+     * @return Number of loads
+     */
+    default long getCacheLoads() {
+        return 0;
+    }
+
+    /**
+     * The mean time to load a value in microseconds.
+     *
+     * @return The average load time
+     */
+    default float getAverageLoadTime() {
+        return 0;
+    }
 }
@@ -0,0 +1,830 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.cache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.Configuration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import javax.cache.integration.CompletionListener;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.EntryProcessorException;
+import javax.cache.processor.EntryProcessorResult;
+import javax.cache.processor.MutableEntry;
+
+import de.mhus.lib.core.MApi;
+import de.mhus.lib.core.MApi.SCOPE;
+import de.mhus.lib.core.MFile;
+import de.mhus.lib.core.MSystem;
+import de.mhus.lib.errors.NotSupportedException;
+
+/**
+ * In heap cache implementation. The entries are distributed over lock striped segments. Every
+ * segment is bounded by a window-TinyLFU policy: New entries are stored in a small LRU window,
+ * entries leaving the window compete with the LRU victim of the main space and the more
+ * frequently used one survives. If heapSize is 0 the cache is unbounded. If TTL is greater then 0
+ * entries expire the given milliseconds after they are written.
+ *
+ * <p>Serializable caches get a second off heap tier (see MappedCacheStore). All entries are
+ * written through into the off heap tier, the heap tier holds the most used entries. Entries only
+ * found in the off heap tier are promoted into the heap tier. Both tiers are updated under the
+ * lock of the key's segment.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class LocalCache<K, V> implements ICache<K, V> {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 64;
+    private static final int EXPIRE_SCAN = 4;
+
+    private final LocalCacheService service;
+    private final String name;
+    private final String owner;
+    private final Class<K> keyType;
+    private final Class<V> valueType;
+    private final CacheConfig config;
+    private final long ttl;
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final LocalCacheStatistics statistics;
+    private final MappedCacheStore<K, V> store;
+    private volatile boolean closed;
+
+    public LocalCache(
+            LocalCacheService service,
+            Object owner,
+            String name,
+            Class<K> keyType,
+            Class<V> valueType,
+            CacheConfig config) {
+        this.service = service;
+        this.owner = owner == null ? null : MSystem.getClassName(owner);
+        this.name = name;
+        this.keyType = keyType;
+        this.valueType = valueType;
+        this.config = config == null ? new CacheConfig() : config;
+        this.ttl = Math.max(0, this.config.getTTL());
+        int heapSize = Math.max(0, this.config.getHeapSize());
+        int count =
+                heapSize == 0
+                        ? MAX_SEGMENTS
+                        : Integer.highestOneBit(
+                                Math.max(1, Math.min(MAX_SEGMENTS, heapSize / MIN_SEGMENT_SIZE)));
+        segments = newSegments(count);
+        int segmentSize = heapSize == 0 ? 0 : (heapSize + count - 1) / count;
+        for (int i = 0; i < count; i++) segments[i] = new Segment(segmentSize);
+        segmentMask = count - 1;
+        statistics = new LocalCacheStatistics(this);
+        store = this.config.isSerializable() ? createStore() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Segment[] newSegments(int count) {
+        return (Segment[]) new LocalCache<?, ?>.Segment[count];
+    }
+
+    protected MappedCacheStore<K, V> createStore() {
+        if (config.getOffHeapSize() <= 0) return null;
+        try {
+            String dirName = "cache/" + MFile.normalize(name);
+            File dir =
+                    config.isPersistent()
+                            ? MApi.getFile(SCOPE.DATA, dirName)
+                            : MApi.getFile(SCOPE.TMP, dirName + "_" + UUID.randomUUID());
+            ClassLoader loader =
+                    valueType != null
+                            ? valueType.getClassLoader()
+                            : Thread.currentThread().getContextClassLoader();
+            return new MappedCacheStore<>(
+                    dir, config.getOffHeapSize(), config.isPersistent(), loader, statistics);
+        } catch (Throwable t) {
+            MApi.dirtyLogError("Can't create off heap tier for cache", name, t);
+            return null;
+        }
+    }
+
+    private Segment segmentFor(Object key) {
+        return segments[FrequencySketch.spread(key.hashCode()) & segmentMask];
+    }
+
+    private long expires() {
+        return ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+    }
+
+    /** Lookup the heap tier and promote the entry from the off heap tier if not found. */
+    private V lookup(K key) {
+        Segment segment = segmentFor(key);
+        V value = segment.get(key);
+        if (value != null || store == null) return value;
+        // promote under the segment lock, a concurrent remove could be undone otherwise
+        synchronized (segment) {
+            value = segment.peek(key);
+            if (value != null) return value;
+            MappedCacheStore.Stored<V> stored = store.load(key);
+            if (stored == null) return null;
+            segment.put(key, stored.value, true, stored.expires);
+            return stored.value;
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        ensureOpen();
+        checkNotNull(key);
+        long start = System.nanoTime();
+        V value = lookup(key);
+        statistics.recordGet(value != null, System.nanoTime() - start);
+        return value;
+    }
+
+    @Override
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) return value;
+        long start = System.nanoTime();
+        value = loader.apply(key);
+        statistics.recordLoad(System.nanoTime() - start);
+        if (value != null) put(key, value);
+        return value;
+    }
+
+    @Override
+    public Map<K, V> getAll(Set<? extends K> keys) {
+        HashMap<K, V> out = new HashMap<>();
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null) out.put(key, value);
+        }
+        return out;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        ensureOpen();
+        checkNotNull(key);
+        return segmentFor(key).peek(key) != null || store != null && store.containsKey(key);
+    }
+
+    @Override
+    public void loadAll(
+            Set<? extends K> keys,
+            boolean replaceExistingValues,
+            CompletionListener completionListener) {
+        // no cache loader configured
+        if (completionListener != null) completionListener.onCompletion();
+    }
+
+    @Override
+    public void put(K key, V value) {
+        ensureOpen();
+        checkNotNull(key);
+        checkNotNull(value);
+        long start = System.nanoTime();
+        long expires = expires();
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value, false, expires);
+            if (store != null) store.put(key, value, expires);
+        }
+        statistics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public V getAndPut(K key, V value) {
+        ensureOpen();
+        checkNotNull(key);
+        checkNotNull(value);
+        long start = System.nanoTime();
+        long expires = expires();
+        V old;
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            old = store == null ? null : lookup(key);
+            V heapOld = segment.put(key, value, false, expires);
+            if (old == null) old = heapOld;
+            if (store != null) store.put(key, value, expires);
+        }
+        statistics.recordGet(old != null, 0);
+        statistics.recordPut(System.nanoTime() - start);
+        return old;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet())
+            put(entry.getKey(), entry.getValue());
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, V value) {
+        ensureOpen();
+        checkNotNull(key);
+        checkNotNull(value);
+        long start = System.nanoTime();
+        long expires = expires();
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (store != null && lookup(key) != null) return false;
+            if (segment.put(key, value, true, expires) != null) return false;
+            if (store != null) store.put(key, value, expires);
+        }
+        statistics.recordPut(System.nanoTime() - start);
+        return true;
+    }
+
+    @Override
+    public boolean remove(K key) {
+        ensureOpen();
+        checkNotNull(key);
+        long start = System.nanoTime();
+        boolean removed;
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            removed = segment.remove(key, null) != null;
+            if (store != null) removed = store.remove(key) || removed;
+        }
+        if (removed) statistics.recordRemove(System.nanoTime() - start);
+        return removed;
+    }
+
+    @Override
+    public boolean remove(K key, V oldValue) {
+        ensureOpen();
+        checkNotNull(key);
+        checkNotNull(oldValue);
+        long start = System.nanoTime();
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (store != null) lookup(key);
+            if (segment.remove(key, oldValue) == null) return false;
+            if (store != null) store.remove(key);
+        }
+        statistics.recordRemove(System.nanoTime() - start);
+        return true;
+    }
+
+    @Override
+    public V getAndRemove(K key) {
+        ensureOpen();
+        checkNotNull(key);
+        long start = System.nanoTime();
+        V old;
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (store != null) lookup(key);
+            old = segment.remove(key, null);
+            if (store != null) store.remove(key);
+        }
+        statistics.recordGet(old != null, 0);
+        if (old != null) statistics.recordRemove(System.nanoTime() - start);
+        return old;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        ensureOpen();
+        checkNotNull(key);
+        checkNotNull(oldValue);
+        checkNotNull(newValue);
+        long start = System.nanoTime();
+        long expires = expires();
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (store != null) lookup(key);
+            if (segment.replace(key, oldValue, newValue, expires) == null) return false;
+            if (store != null) store.put(key, newValue, expires);
+        }
+        statistics.recordPut(System.nanoTime() - start);
+        return true;
+    }
+
+    @Override
+    public boolean replace(K key, V value) {
+        return getAndReplace(key, value) != null;
+    }
+
+    @Override
+    public V getAndReplace(K key, V value) {
+        ensureOpen();
+        checkNotNull(key);
+        checkNotNull(value);
+        long start = System.nanoTime();
+        long expires = expires();
+        V old;
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (store != null) lookup(key);
+            old = segment.replace(key, null, value, expires);
+            if (old != null && store != null) store.put(key, value, expires);
+        }
+        statistics.recordGet(old != null, 0);
+        if (old != null) statistics.recordPut(System.nanoTime() - start);
+        return old;
+    }
+
+    @Override
+    public void removeAll(Set<? extends K> keys) {
+        for (K key : keys) remove(key);
+    }
+
+    @Override
+    public void removeAll() {
+        ensureOpen();
+        int removed = store == null ? 0 : store.size();
+        for (Segment segment : segments) {
+            int cnt = segment.clear();
+            if (store == null) removed += cnt;
+        }
+        if (store != null) store.clear();
+        for (int i = 0; i < removed; i++) statistics.recordRemove(0);
+    }
+
+    @Override
+    public void clear() {
+        ensureOpen();
+        for (Segment segment : segments) segment.clear();
+        if (store != null) store.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <C extends Configuration<K, V>> C getConfiguration(Class<C> clazz) {
+        MutableConfiguration<K, V> out = new MutableConfiguration<>();
+        if (keyType != null && valueType != null) out.setTypes(keyType, valueType);
+        out.setStatisticsEnabled(true);
+        out.setStoreByValue(store != null);
+        if (ttl > 0)
+            out.setExpiryPolicyFactory(
+                    CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.MILLISECONDS, ttl)));
+        if (clazz.isInstance(out)) return (C) out;
+        throw new IllegalArgumentException("Configuration not supported: " + clazz);
+    }
+
+    @Override
+    public <T> T invoke(K key, EntryProcessor<K, V, T> entryProcessor, Object... arguments)
+            throws EntryProcessorException {
+        ensureOpen();
+        checkNotNull(key);
+        checkNotNull(entryProcessor);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (store != null) lookup(key);
+            return segment.invoke(key, entryProcessor, arguments);
+        }
+    }
+
+    @Override
+    public <T> Map<K, EntryProcessorResult<T>> invokeAll(
+            Set<? extends K> keys, EntryProcessor<K, V, T> entryProcessor, Object... arguments) {
+        HashMap<K, EntryProcessorResult<T>> out = new HashMap<>();
+        for (K key : keys) {
+            try {
+                T result = invoke(key, entryProcessor, arguments);
+                if (result != null) out.put(key, () -> result);
+            } catch (EntryProcessorException e) {
+                out.put(
+                        key,
+                        () -> {
+                            throw e;
+                        });
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheManager getCacheManager() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (Segment segment : segments) segment.clear();
+        if (store != null) store.close();
+        if (service != null) service.remove(this);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        if (clazz.isInstance(this)) return clazz.cast(this);
+        throw new IllegalArgumentException("Can't unwrap to " + clazz);
+    }
+
+    @Override
+    public void registerCacheEntryListener(
+            CacheEntryListenerConfiguration<K, V> cacheEntryListenerConfiguration) {
+        throw new NotSupportedException("cache entry listener", name);
+    }
+
+    @Override
+    public void deregisterCacheEntryListener(
+            CacheEntryListenerConfiguration<K, V> cacheEntryListenerConfiguration) {
+        throw new NotSupportedException("cache entry listener", name);
+    }
+
+    @Override
+    public Iterator<Cache.Entry<K, V>> iterator() {
+        ensureOpen();
+        ArrayList<Cache.Entry<K, V>> out = new ArrayList<>();
+        if (store == null) {
+            for (Segment segment : segments) segment.collect(out);
+        } else {
+            for (K key : store.keys()) {
+                V value = segmentFor(key).peek(key);
+                if (value == null) value = store.get(key);
+                if (value != null) out.add(new CacheEntry(key, value));
+            }
+        }
+        return out.iterator();
+    }
+
+    @Override
+    public LocalCacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    public CacheConfig getConfig() {
+        return config;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Return the current number of entries. Expired entries could be counted if they are not
+     * accessed since expiration.
+     *
+     * @return Number of entries
+     */
+    public int size() {
+        if (store != null) return store.size();
+        int size = 0;
+        for (Segment segment : segments) size += segment.size();
+        return size;
+    }
+
+    /**
+     * Return the number of entries in the heap tier.
+     *
+     * @return Number of entries
+     */
+    public int getHeapSize() {
+        int size = 0;
+        for (Segment segment : segments) size += segment.size();
+        return size;
+    }
+
+    /**
+     * Return the bytes used by the off heap tier.
+     *
+     * @return Number of bytes or -1 if there is no off heap tier
+     */
+    public long getOccupiedByteSize() {
+        return store == null ? -1 : store.getOccupiedByteSize();
+    }
+
+    public MappedCacheStore<K, V> getStore() {
+        return store;
+    }
+
+    /** Remove all expired entries. */
+    public void cleanup() {
+        if (ttl <= 0) return;
+        for (Segment segment : segments) segment.cleanup();
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("Cache is closed: " + name);
+    }
+
+    private static void checkNotNull(Object value) {
+        if (value == null) throw new NullPointerException();
+    }
+
+    @Override
+    public String toString() {
+        return MSystem.toString(this, name, owner, statistics);
+    }
+
+    private static class Node<V> {
+        V value;
+        long expires;
+
+        Node(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return expires != 0 && now >= expires;
+        }
+    }
+
+    private class Segment {
+
+        private final LinkedHashMap<K, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, Node<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+        private final int windowMax;
+        private final int mainMax;
+        private final FrequencySketch sketch;
+
+        Segment(int maxSize) {
+            if (maxSize > 0) {
+                windowMax = Math.max(1, maxSize / 100);
+                mainMax = maxSize - windowMax;
+                sketch = new FrequencySketch(maxSize);
+            } else {
+                windowMax = 0;
+                mainMax = 0;
+                sketch = null;
+            }
+        }
+
+        private boolean isBounded() {
+            return sketch != null;
+        }
+
+        /** Return the value without counting the access frequency. */
+        synchronized V peek(Object key) {
+            Node<V> node = find(key);
+            return node == null ? null : node.value;
+        }
+
+        synchronized V get(K key) {
+            if (isBounded()) sketch.increment(key);
+            Node<V> node = find(key);
+            return node == null ? null : node.value;
+        }
+
+        private Node<V> find(Object key) {
+            Node<V> node = window.get(key);
+            if (node == null) node = main.get(key);
+            if (node == null) return null;
+            if (node.isExpired(System.currentTimeMillis())) {
+                if (window.remove(key) == null) main.remove(key);
+                statistics.recordEviction();
+                return null;
+            }
+            return node;
+        }
+
+        synchronized V put(K key, V value, boolean onlyIfAbsent, long expires) {
+            if (isBounded()) sketch.increment(key);
+            Node<V> node = find(key);
+            if (node != null) {
+                V old = node.value;
+                if (!onlyIfAbsent) {
+                    node.value = value;
+                    node.expires = expires;
+                }
+                return old;
+            }
+            node = new Node<>(value, expires);
+            if (!isBounded()) {
+                main.put(key, node);
+                return null;
+            }
+            expireEldest();
+            window.put(key, node);
+            if (window.size() > windowMax) {
+                Iterator<Map.Entry<K, Node<V>>> iter = window.entrySet().iterator();
+                Map.Entry<K, Node<V>> candidate = iter.next();
+                iter.remove();
+                admit(candidate.getKey(), candidate.getValue());
+            }
+            return null;
+        }
+
+        private void admit(K key, Node<V> node) {
+            if (main.size() < mainMax) {
+                main.put(key, node);
+                return;
+            }
+            // with off heap tier it's not evicted from the cache
+            if (store == null) statistics.recordEviction();
+            if (mainMax == 0) return;
+            Iterator<Map.Entry<K, Node<V>>> iter = main.entrySet().iterator();
+            Map.Entry<K, Node<V>> victim = iter.next();
+            if (sketch.frequency(key) > sketch.frequency(victim.getKey())) {
+                iter.remove();
+                main.put(key, node);
+            }
+        }
+
+        /** Remove expired entries from the head of the LRU queues. */
+        private void expireEldest() {
+            if (ttl <= 0) return;
+            long now = System.currentTimeMillis();
+            expireEldest(window, now);
+            expireEldest(main, now);
+        }
+
+        private void expireEldest(LinkedHashMap<K, Node<V>> map, long now) {
+            Iterator<Node<V>> iter = map.values().iterator();
+            for (int i = 0; i < EXPIRE_SCAN && iter.hasNext(); i++) {
+                if (iter.next().isExpired(now)) {
+                    iter.remove();
+                    statistics.recordEviction();
+                }
+            }
+        }
+
+        synchronized V remove(Object key, V expected) {
+            Node<V> node = find(key);
+            if (node == null) return null;
+            if (expected != null && !expected.equals(node.value)) return null;
+            if (window.remove(key) == null) main.remove(key);
+            return node.value;
+        }
+
+        synchronized V replace(K key, V expected, V value, long expires) {
+            Node<V> node = find(key);
+            if (node == null) return null;
+            if (expected != null && !expected.equals(node.value)) return null;
+            V old = node.value;
+            node.value = value;
+            node.expires = expires;
+            return old;
+        }
+
+        synchronized <T> T invoke(
+                K key, EntryProcessor<K, V, T> entryProcessor, Object... arguments) {
+            Node<V> node = find(key);
+            SegmentEntry entry = new SegmentEntry(key, node == null ? null : node.value);
+            T result;
+            try {
+                result = entryProcessor.process(entry, arguments);
+            } catch (EntryProcessorException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new EntryProcessorException(e);
+            }
+            if (entry.removed) {
+                if (node != null) {
+                    if (window.remove(key) == null) main.remove(key);
+                    if (store != null) store.remove(key);
+                    statistics.recordRemove(0);
+                }
+            } else if (entry.updated) {
+                long expires = expires();
+                if (node != null) {
+                    node.value = entry.value;
+                    node.expires = expires;
+                } else {
+                    put(key, entry.value, false, expires);
+                }
+                if (store != null) store.put(key, entry.value, expires);
+                statistics.recordPut(0);
+            }
+            return result;
+        }
+
+        synchronized int clear() {
+            int size = window.size() + main.size();
+            window.clear();
+            main.clear();
+            return size;
+        }
+
+        synchronized void cleanup() {
+            long now = System.currentTimeMillis();
+            window.values().removeIf(n -> n.isExpired(now));
+            main.values().removeIf(n -> n.isExpired(now));
+        }
+
+        synchronized int size() {
+            return window.size() + main.size();
+        }
+
+        synchronized void collect(ArrayList<Cache.Entry<K, V>> out) {
+            long now = System.currentTimeMillis();
+            collect(window, now, out);
+            collect(main, now, out);
+        }
+
+        private void collect(
+                LinkedHashMap<K, Node<V>> map, long now, ArrayList<Cache.Entry<K, V>> out) {
+            for (Map.Entry<K, Node<V>> entry : map.entrySet())
+                if (!entry.getValue().isExpired(now))
+                    out.add(new CacheEntry(entry.getKey(), entry.getValue().value));
+        }
+    }
+
+    private class CacheEntry implements Cache.Entry<K, V> {
+
+        private final K key;
+        private final V value;
+
+        CacheEntry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> clazz) {
+            if (clazz.isInstance(this)) return clazz.cast(this);
+            throw new IllegalArgumentException("Can't unwrap to " + clazz);
+        }
+    }
+
+    private class SegmentEntry implements MutableEntry<K, V> {
+
+        private final K key;
+        private V value;
+        private boolean removed;
+        private boolean updated;
+
+        SegmentEntry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> clazz) {
+            if (clazz.isInstance(this)) return clazz.cast(this);
+            throw new IllegalArgumentException("Can't unwrap to " + clazz);
+        }
+
+        @Override
+        public boolean exists() {
+            return value != null;
+        }
+
+        @Override
+        public void remove() {
+            value = null;
+            removed = true;
+            updated = false;
+        }
+
+        @Override
+        public void setValue(V value) {
+            checkNotNull(value);
+            this.value = value;
+            updated = true;
+            removed = false;
+        }
+    }
+}
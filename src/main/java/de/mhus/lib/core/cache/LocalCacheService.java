@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.mhus.lib.core.M;
+import de.mhus.lib.core.MHousekeeper;
+import de.mhus.lib.core.MHousekeeperTask;
+import de.mhus.lib.core.MLog;
+import de.mhus.lib.core.MPeriod;
+import de.mhus.lib.core.cfg.CfgLong;
+
+/**
+ * Default in process cache service. Caches are stored in heap by name. Creating a cache with an
+ * existing name will return the existing cache. Expired entries are removed by the housekeeper.
+ *
+ * @author mikehummel
+ */
+public class LocalCacheService extends MLog implements ICacheService {
+
+    private static CfgLong CFG_CLEANUP_INTERVAL =
+            new CfgLong(
+                    LocalCacheService.class, "cleanupInterval", MPeriod.MINUTE_IN_MILLISECOUNDS);
+
+    private final ConcurrentHashMap<String, LocalCache<?, ?>> caches = new ConcurrentHashMap<>();
+    private long cleanupInterval = -1;
+    // the housekeeper holds the task weak, the reference keeps it alive with the service
+    private volatile MHousekeeperTask housekeeper;
+    private volatile boolean housekeeperFailed;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, V> ICache<K, V> createCache(
+            Object owner, String name, Class<K> keyType, Class<V> valueType, CacheConfig config) {
+        ICache<K, V> cache =
+                (ICache<K, V>)
+                        caches.computeIfAbsent(
+                                name,
+                                n -> {
+                                    log().d("create cache", n, owner);
+                                    return new LocalCache<>(
+                                            this, owner, n, keyType, valueType, config);
+                                });
+        if (housekeeper == null && config != null && config.getTTL() > 0) registerHousekeeper();
+        return cache;
+    }
+
+    private synchronized void registerHousekeeper() {
+        if (housekeeper != null || housekeeperFailed) return;
+        MHousekeeperTask task =
+                new MHousekeeperTask("LocalCacheService") {
+                    @Override
+                    protected void doit() throws Exception {
+                        cleanup();
+                    }
+                };
+        try {
+            M.l(MHousekeeper.class).register(task, getCleanupInterval());
+            housekeeper = task;
+        } catch (Throwable t) {
+            // expired entries are still removed when they are touched
+            log().d("register housekeeper failed", t);
+            housekeeperFailed = true;
+        }
+    }
+
+    public long getCleanupInterval() {
+        return cleanupInterval < 0 ? CFG_CLEANUP_INTERVAL.value() : cleanupInterval;
+    }
+
+    /**
+     * Set the interval of the housekeeper removing expired entries. Must be set before the first
+     * cache with a TTL is created.
+     *
+     * @param cleanupInterval Interval in milliseconds
+     */
+    public void setCleanupInterval(long cleanupInterval) {
+        this.cleanupInterval = cleanupInterval;
+    }
+
+    @Override
+    public List<String> getCacheNames() {
+        return new ArrayList<>(caches.keySet());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, V> ICache<K, V> getCache(String name) {
+        return (ICache<K, V>) caches.get(name);
+    }
+
+    /** Remove expired entries from all caches. */
+    public void cleanup() {
+        for (LocalCache<?, ?> cache : caches.values()) cache.cleanup();
+    }
+
+    void remove(LocalCache<?, ?> cache) {
+        caches.remove(cache.getName(), cache);
+    }
+}
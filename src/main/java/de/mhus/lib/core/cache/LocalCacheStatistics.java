@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class LocalCacheStatistics implements ICacheStatistics {
+
+    private final LocalCache<?, ?> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder removals = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder getTime = new LongAdder();
+    private final LongAdder putTime = new LongAdder();
+    private final LongAdder removeTime = new LongAdder();
+    private final LongAdder loadTime = new LongAdder();
+
+    public LocalCacheStatistics(LocalCache<?, ?> cache) {
+        this.cache = cache;
+    }
+
+    void recordGet(boolean hit, long nanos) {
+        if (hit) hits.increment();
+        else misses.increment();
+        getTime.add(nanos);
+    }
+
+    void recordPut(long nanos) {
+        puts.increment();
+        putTime.add(nanos);
+    }
+
+    void recordRemove(long nanos) {
+        removals.increment();
+        removeTime.add(nanos);
+    }
+
+    void recordLoad(long nanos) {
+        loads.increment();
+        loadTime.add(nanos);
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    @Override
+    public void clear() {
+        hits.reset();
+        misses.reset();
+        puts.reset();
+        removals.reset();
+        evictions.reset();
+        loads.reset();
+        getTime.reset();
+        putTime.reset();
+        removeTime.reset();
+        loadTime.reset();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public float getCacheHitPercentage() {
+        long gets = getCacheGets();
+        if (gets == 0) return 0;
+        return getCacheHits() * 100f / gets;
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public float getCacheMissPercentage() {
+        long gets = getCacheGets();
+        if (gets == 0) return 0;
+        return getCacheMisses() * 100f / gets;
+    }
+
+    @Override
+    public long getCacheGets() {
+        return hits.sum() + misses.sum();
+    }
+
+    @Override
+    public long getCachePuts() {
+        return puts.sum();
+    }
+
+    @Override
+    public long getCacheRemovals() {
+        return removals.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public float getAverageGetTime() {
+        return average(getTime, getCacheGets());
+    }
+
+    @Override
+    public float getAveragePutTime() {
+        return average(putTime, puts.sum());
+    }
+
+    @Override
+    public float getAverageRemoveTime() {
+        return average(removeTime, removals.sum());
+    }
+
+    @Override
+    public long getCacheLoads() {
+        return loads.sum();
+    }
+
+    @Override
+    public float getAverageLoadTime() {
+        return average(loadTime, loads.sum());
+    }
+
+    @Override
+    public long getCacheSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getOccupiedByteSize() {
+        return cache.getOccupiedByteSize();
+    }
+
+    private static float average(LongAdder nanos, long count) {
+        if (count == 0) return 0;
+        return nanos.sum() / 1000f / count;
+    }
+
+    @Override
+    public String toString() {
+        return "hits="
+                + getCacheHits()
+                + ",misses="
+                + getCacheMisses()
+                + ",puts="
+                + getCachePuts()
+                + ",evictions="
+                + getCacheEvictions()
+                + ",size="
+                + getCacheSize();
+    }
+}
@@ -0,0 +1,400 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import de.mhus.lib.core.MFile;
+import de.mhus.lib.core.MLog;
+import de.mhus.lib.core.io.MObjectInputStream;
+
+/**
+ * Off heap store for serialized cache entries. The values are written into memory mapped slab
+ * files. Only the keys and the location of the entries are hold in heap. If all slabs are full the
+ * oldest slab will be recycled and all entries in it are evicted. On startup the existing slab
+ * files are scanned to restore the index, so the content survives a restart.
+ *
+ * <p>Slab layout: [long magic][long sequence] followed by records [int length][long
+ * expires][int keyLength][int valueLength][key][value]. A valueLength of -1 marks a removed key, a
+ * length of 0 terminates the slab.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class MappedCacheStore<K, V> extends MLog implements Closeable {
+
+    public static final int SLABS = 4;
+    private static final long MAGIC = 0x6d6875732d636163L;
+    private static final int SLAB_HEADER = 16;
+    private static final int RECORD_HEADER = 20;
+    private static final int MIN_SLAB_SIZE = 64 * 1024;
+
+    private final File dir;
+    private final boolean persistent;
+    private final ClassLoader loader;
+    private final LocalCacheStatistics statistics;
+    private final int slabSize;
+    private final Slab[] slabs = new Slab[SLABS];
+    private final ConcurrentHashMap<K, Long> index = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long sequence;
+    private int active;
+    private boolean closed;
+
+    public MappedCacheStore(
+            File dir,
+            long size,
+            boolean persistent,
+            ClassLoader loader,
+            LocalCacheStatistics statistics)
+            throws IOException {
+        this.dir = dir;
+        this.persistent = persistent;
+        this.loader = loader;
+        this.statistics = statistics;
+        slabSize = (int) Math.max(MIN_SLAB_SIZE, Math.min(Integer.MAX_VALUE, size / SLABS));
+        dir.mkdirs();
+        for (int i = 0; i < SLABS; i++)
+            slabs[i] = new Slab(i, new File(dir, "slab-" + i + ".bin"), slabSize);
+        if (persistent) restore();
+        else for (Slab slab : slabs) slab.reset(0);
+        // start with the newest slab
+        for (Slab slab : slabs) {
+            if (slab.sequence > sequence) {
+                sequence = slab.sequence;
+                active = slab.id;
+            }
+        }
+        if (sequence == 0) slabs[active].reset(++sequence);
+    }
+
+    private void restore() {
+        Slab[] ordered = slabs.clone();
+        Arrays.sort(ordered, Comparator.comparingLong(s -> s.sequence));
+        long now = System.currentTimeMillis();
+        for (Slab slab : ordered) {
+            if (slab.sequence == 0) continue;
+            int pos = SLAB_HEADER;
+            while (pos + RECORD_HEADER <= slabSize) {
+                int length = slab.buffer.getInt(pos);
+                if (length <= 0 || pos + length > slabSize) break;
+                long expires = slab.buffer.getLong(pos + 4);
+                int keyLength = slab.buffer.getInt(pos + 12);
+                int valueLength = slab.buffer.getInt(pos + 16);
+                if (keyLength < 0 || RECORD_HEADER + keyLength + Math.max(0, valueLength) != length)
+                    break;
+                try {
+                    K key = deserialize(slab.read(pos + RECORD_HEADER, keyLength));
+                    if (valueLength < 0 || expires != 0 && expires <= now) index.remove(key);
+                    else {
+                        index.put(key, location(slab.id, pos));
+                        slab.keys.add(key);
+                    }
+                } catch (Throwable t) {
+                    log().d("skip entry", dir, slab.id, pos, t);
+                }
+                pos += length;
+            }
+            slab.position = pos;
+        }
+        log().d("restored", dir, index.size());
+    }
+
+    /**
+     * Return the stored value or null if not found or expired.
+     *
+     * @param key
+     * @return The value or null
+     */
+    public V get(Object key) {
+        Stored<V> stored = load(key);
+        return stored == null ? null : stored.value;
+    }
+
+    Stored<V> load(Object key) {
+        Long location = index.get(key);
+        if (location == null) return null;
+        byte[] data;
+        long expires;
+        lock.readLock().lock();
+        try {
+            if (closed || !location.equals(index.get(key))) return null;
+            Slab slab = slabs[(int) (location >>> 32)];
+            int pos = (int) (long) location;
+            expires = slab.buffer.getLong(pos + 4);
+            if (expires != 0 && expires <= System.currentTimeMillis()) {
+                index.remove(key, location);
+                return null;
+            }
+            int keyLength = slab.buffer.getInt(pos + 12);
+            int valueLength = slab.buffer.getInt(pos + 16);
+            data = slab.read(pos + RECORD_HEADER + keyLength, valueLength);
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            return new Stored<>(deserialize(data), expires);
+        } catch (Throwable t) {
+            log().d("can't deserialize", dir, key, t);
+            index.remove(key, location);
+            return null;
+        }
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Store the value. If the value is not serializable it will not be stored.
+     *
+     * @param key
+     * @param value
+     * @param expires Time in milliseconds when the value expires or 0
+     * @return true if the value was stored
+     */
+    public boolean put(K key, V value, long expires) {
+        byte[] keyData;
+        byte[] valueData;
+        try {
+            keyData = serialize(key);
+            valueData = serialize(value);
+        } catch (IOException e) {
+            log().d("can't serialize", dir, key, e);
+            remove(key);
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            if (closed) return false;
+            long location = append(expires, keyData, valueData);
+            if (location < 0) {
+                index.remove(key);
+                return false;
+            }
+            index.put(key, location);
+            slabs[(int) (location >>> 32)].keys.add(key);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(Object key) {
+        if (!index.containsKey(key)) return false;
+        lock.writeLock().lock();
+        try {
+            if (index.remove(key) == null) return false;
+            // write a tombstone to remove the entry also after restart
+            if (!closed && persistent) append(0, serialize(key), null);
+            return true;
+        } catch (IOException e) {
+            log().d("can't serialize", dir, key, e);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            if (closed) return;
+            for (Slab slab : slabs) slab.reset(0);
+            active = 0;
+            slabs[active].reset(++sequence);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Return a snapshot of the stored keys.
+     *
+     * @return List of keys
+     */
+    public List<K> keys() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * Return the used bytes in all slabs.
+     *
+     * @return Number of bytes
+     */
+    public long getOccupiedByteSize() {
+        long size = 0;
+        for (Slab slab : slabs) if (slab.sequence != 0) size += slab.position;
+        return size;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    private long append(long expires, byte[] keyData, byte[] valueData) {
+        int length = RECORD_HEADER + keyData.length + (valueData == null ? 0 : valueData.length);
+        if (length + SLAB_HEADER > slabSize) {
+            log().d("entry too big", dir, length);
+            return -1;
+        }
+        Slab slab = slabs[active];
+        if (slab.position + length > slabSize) {
+            active = (active + 1) % SLABS;
+            slab = slabs[active];
+            evict(slab);
+            slab.reset(++sequence);
+        }
+        int pos = slab.position;
+        slab.buffer.putLong(pos + 4, expires);
+        slab.buffer.putInt(pos + 12, keyData.length);
+        slab.buffer.putInt(pos + 16, valueData == null ? -1 : valueData.length);
+        slab.write(pos + RECORD_HEADER, keyData);
+        if (valueData != null) slab.write(pos + RECORD_HEADER + keyData.length, valueData);
+        slab.position = pos + length;
+        if (slab.position + 4 <= slabSize) slab.buffer.putInt(slab.position, 0);
+        slab.buffer.putInt(pos, length);
+        return location(slab.id, pos);
+    }
+
+    private void evict(Slab slab) {
+        if (slab.sequence == 0) return;
+        // only the keys written into the slab, they could be moved or removed since
+        for (Object key : slab.keys) {
+            Long location = index.get(key);
+            if (location == null || location >>> 32 != slab.id) continue;
+            if (index.remove(key, location) && statistics != null) statistics.recordEviction();
+        }
+    }
+
+    private static long location(int slab, int pos) {
+        return ((long) slab << 32) | pos;
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(value);
+        }
+        return baos.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (MObjectInputStream ois =
+                new MObjectInputStream(new ByteArrayInputStream(data), loader)) {
+            return (T) ois.readObject();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            index.clear();
+            for (Slab slab : slabs) {
+                try {
+                    slab.close(persistent);
+                } catch (IOException e) {
+                    log().d("close slab", dir, slab.id, e);
+                }
+            }
+            if (!persistent) MFile.deleteDir(dir);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static class Stored<V> {
+        final V value;
+        final long expires;
+
+        Stored(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private static class Slab {
+
+        private final int id;
+        private final RandomAccessFile file;
+        private final MappedByteBuffer buffer;
+        /** keys of the entries written into the slab */
+        private final ArrayList<Object> keys = new ArrayList<>();
+        private long sequence;
+        private int position = SLAB_HEADER;
+
+        Slab(int id, File f, int slabSize) throws IOException {
+            this.id = id;
+            if (f.exists() && f.length() != slabSize) f.delete();
+            file = new RandomAccessFile(f, "rw");
+            file.setLength(slabSize);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, slabSize);
+            if (buffer.getLong(0) == MAGIC) sequence = buffer.getLong(8);
+        }
+
+        void reset(long sequence) {
+            this.sequence = sequence;
+            position = SLAB_HEADER;
+            keys.clear();
+            buffer.putInt(SLAB_HEADER, 0);
+            buffer.putLong(8, sequence);
+            buffer.putLong(0, sequence == 0 ? 0 : MAGIC);
+        }
+
+        byte[] read(int pos, int length) {
+            byte[] data = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(pos);
+            view.get(data);
+            return data;
+        }
+
+        void write(int pos, byte[] data) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(pos);
+            view.put(data);
+        }
+
+        void close(boolean force) throws IOException {
+            if (force) buffer.force();
+            file.close();
+        }
+    }
+}
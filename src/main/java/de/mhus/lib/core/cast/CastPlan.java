@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.cast;
+
+/**
+ * A converter for a fixed pair of source and target classes. The dispatch is resolved once while
+ * the plan is created, executing the plan only runs the selected conversion.
+ *
+ * @see de.mhus.lib.core.MCast#plan(Class, Class)
+ */
+@FunctionalInterface
+public interface CastPlan {
+
+    /**
+     * Convert the value.
+     *
+     * @param in The value, can be null
+     * @param def The default if the value can't be converted
+     * @return The converted value or def
+     */
+    Object cast(Object in, Object def);
+}
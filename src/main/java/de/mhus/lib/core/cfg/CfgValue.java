@@ -39,7 +39,7 @@ public abstract class CfgValue<T> {
         this.def = def;
         MApi.getCfgUpdater().register(this);
         update();
-        calling = MSystem.findCalling(4);
+        if (MCfgUpdater.isTraceCalling()) calling = MSystem.findCalling(4);
     }
 
     public T value() {
@@ -147,6 +147,12 @@ public abstract class CfgValue<T> {
         return updated;
     }
 
+    /**
+     * Return the class created this value. Only available if MCfgUpdater.isTraceCalling() was
+     * enabled while the value was created.
+     *
+     * @return The calling class or null
+     */
     public String getCalling() {
         return calling;
     }
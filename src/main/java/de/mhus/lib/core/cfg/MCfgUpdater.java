@@ -15,95 +15,258 @@
  */
 package de.mhus.lib.core.cfg;
 
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.WeakHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import de.mhus.lib.core.M;
+import de.mhus.lib.core.MApi;
+import de.mhus.lib.core.node.INode;
+
+/**
+ * Registry of all CfgValue objects. The values are indexed by owner and path in concurrent maps,
+ * registration and lookups are not synchronized. The values are weak referenced.
+ *
+ * <p>On doUpdate(owner) the configuration of the owner is compared with the snapshot of the last
+ * update and only values with a path touched by the changes are reloaded.
+ */
 public class MCfgUpdater {
 
-    @SuppressWarnings("rawtypes")
-    //	private WeakHashMap<CfgValue, String> registry = new WeakHashMap<>();
-    private HashMap<String, HashMap<String, WeakHashMap<CfgValue, String>>> registry =
-            new HashMap<>();
+    private static volatile Boolean traceCalling;
+
+    private final ConcurrentHashMap<String, OwnerEntry> registry = new ConcurrentHashMap<>();
+
+    private final AtomicInteger updatedCount = new AtomicInteger();
 
     @SuppressWarnings("rawtypes")
-    protected synchronized WeakHashMap<CfgValue, String> getCfgContainer(
-            String owner, String path) {
+    public void register(CfgValue configValue) {
+        String path = configValue.getPath();
         if (path == null) path = "";
-        HashMap<String, WeakHashMap<CfgValue, String>> ownerContainer = registry.get(owner);
-        if (ownerContainer == null) {
-            ownerContainer = new HashMap<>();
-            registry.put(owner, ownerContainer);
-        }
-        WeakHashMap<CfgValue, String> pathContainer = ownerContainer.get(path);
-        if (pathContainer == null) {
-            pathContainer = new WeakHashMap<>();
-            ownerContainer.put(path, pathContainer);
-        }
-        return pathContainer;
+        registry.computeIfAbsent(configValue.getOwner(), OwnerEntry::new)
+                .getPathEntry(path)
+                .add(configValue);
     }
 
-    @SuppressWarnings("rawtypes")
-    protected synchronized HashMap<String, WeakHashMap<CfgValue, String>> getOwnerContainers(
-            String owner) {
-        HashMap<String, WeakHashMap<CfgValue, String>> ownerContainer = registry.get(owner);
-        if (ownerContainer == null) {
-            ownerContainer = new HashMap<>();
-            registry.put(owner, ownerContainer);
+    /**
+     * Reload the values of the owner. Only values with a changed path will be reloaded. If owner
+     * is null all values will be reloaded.
+     *
+     * @param owner The owner or null
+     */
+    public void doUpdate(String owner) {
+        if (owner == null) {
+            for (OwnerEntry entry : registry.values()) entry.update(true);
+            return;
         }
-        return ownerContainer;
+        OwnerEntry entry = registry.get(owner);
+        if (entry != null) entry.update(false);
     }
 
-    @SuppressWarnings("rawtypes")
-    public void register(CfgValue configValue) {
-        synchronized (registry) {
-            getCfgContainer(configValue.getOwner(), configValue.getPath()).put(configValue, "");
+    public void doUpdate(String owner, String path) {
+        if (path == null) path = "";
+        if (owner == null) {
+            for (OwnerEntry entry : registry.values()) {
+                PathEntry pathEntry = entry.paths.get(path);
+                if (pathEntry != null) pathEntry.update();
+            }
+            return;
         }
+        OwnerEntry entry = registry.get(owner);
+        if (entry == null) return;
+        PathEntry pathEntry = entry.paths.get(path);
+        if (pathEntry != null) pathEntry.update();
     }
 
     @SuppressWarnings("rawtypes")
-    public void doUpdate(String owner) {
+    public List<CfgValue> getList() {
         LinkedList<CfgValue> list = new LinkedList<>();
-        synchronized (registry) {
-            if (owner == null) {
-                for (HashMap<String, WeakHashMap<CfgValue, String>> cfgs : registry.values())
-                    for (WeakHashMap<CfgValue, String> cfg : cfgs.values())
-                        list.addAll(cfg.keySet());
-            } else
-                for (WeakHashMap<CfgValue, String> pathContainer :
-                        getOwnerContainers(owner).values()) list.addAll(pathContainer.keySet());
+        for (OwnerEntry ownerEntry : registry.values())
+            for (PathEntry pathEntry : ownerEntry.paths.values()) pathEntry.collect(list);
+        return list;
+    }
+
+    /**
+     * Return the number of values reloaded by doUpdate since the start.
+     *
+     * @return Count of update() calls
+     */
+    public int getUpdatedCount() {
+        return updatedCount.get();
+    }
+
+    /**
+     * Return true if the CfgValue objects should remember the calling class. This is disabled by
+     * default, enable it by the system property mhus.lib.cfg.calling or with the dirty trace.
+     *
+     * @return true if the calling should be stored
+     */
+    public static boolean isTraceCalling() {
+        if (traceCalling == null)
+            traceCalling = "true".equals(System.getProperty(M.PROP_CFG_TRACE_CALLING));
+        return traceCalling || MApi.isDirtyTrace();
+    }
+
+    public static void setTraceCalling(boolean trace) {
+        traceCalling = trace;
+    }
+
+    /**
+     * Flatten the node tree into a map of path to value. Parameters of the root are stored by
+     * name, parameters of sub nodes as "path@name". Every sub node has a marker "path@/", so empty
+     * nodes are recognized too. Array entries are stored by the path of the array and the index is
+     * appended to the parameter name.
+     *
+     * @param node
+     * @return The flat map, never null
+     */
+    static Map<String, String> flatten(INode node) {
+        HashMap<String, String> out = new HashMap<>();
+        if (node != null) flatten(node, "", "", out);
+        return out;
+    }
+
+    private static void flatten(INode node, String path, String index, Map<String, String> out) {
+        String prefix = path.length() == 0 ? "" : path + "@";
+        // the node itself, an empty node has no other entry
+        if (path.length() != 0) out.put(prefix + "/" + index, "");
+        for (String key : node.getPropertyKeys())
+            out.put(prefix + key + index, String.valueOf(node.get(key)));
+        String sub = path.length() == 0 ? "" : path + "/";
+        for (String key : node.getObjectKeys()) {
+            INode child = node.getObjectOrNull(key);
+            if (child != null) flatten(child, sub + key, index, out);
+        }
+        for (String key : node.getArrayKeys()) {
+            List<INode> array = node.getArrayOrNull(key);
+            if (array == null) continue;
+            out.put(sub + key + "@#" + index, String.valueOf(array.size()));
+            for (int i = 0; i < array.size(); i++)
+                flatten(array.get(i), sub + key, index + "#" + i, out);
         }
-        for (CfgValue<?> item : list)
-            if (owner == null
-                    || item.isOwner(owner)) // is not working at all, owner could be a super class
-            item.update();
     }
 
-    @SuppressWarnings("rawtypes")
-    public void doUpdate(String owner, String path) {
-        LinkedList<CfgValue> list = null;
-        synchronized (registry) {
-            list = new LinkedList<CfgValue>(getCfgContainer(owner, path).keySet());
+    /**
+     * Return the keys of the flat maps with different values.
+     *
+     * @param from
+     * @param to
+     * @return The changed keys
+     */
+    static Set<String> diff(Map<String, String> from, Map<String, String> to) {
+        TreeSet<String> out = new TreeSet<>();
+        for (Entry<String, String> entry : to.entrySet())
+            if (!Objects.equals(entry.getValue(), from.get(entry.getKey())))
+                out.add(entry.getKey());
+        for (String key : from.keySet()) if (!to.containsKey(key)) out.add(key);
+        return out;
+    }
+
+    /**
+     * Return true if a value with the given path depends on one of the changed keys. A path
+     * without '@' could be a parameter of the root or a sub node, both are checked.
+     *
+     * @param path The path of the value
+     * @param changed The changed keys
+     * @return true if the value should be reloaded
+     */
+    static boolean isAffected(String path, Set<String> changed) {
+        if (changed.isEmpty()) return false;
+        if (path.length() == 0) return true;
+        if (changed.contains(path)) return true;
+        int p = path.indexOf('@');
+        String nodePath = p < 0 ? path : path.substring(0, p);
+        String subPath = nodePath + "/";
+        for (String key : changed) {
+            int k = key.indexOf('@');
+            if (k < 0) continue;
+            String keyPath = key.substring(0, k);
+            if (keyPath.equals(nodePath) || keyPath.startsWith(subPath)) return true;
         }
-        for (CfgValue<?> item : list)
-            if ((owner == null || item.isOwner(owner))
-                    && path.equals(
-                            item.getPath())) // is not working at all, owner could be a super class
-            item.update();
+        return false;
     }
 
-    @SuppressWarnings("rawtypes")
-    public List<CfgValue> getList() {
-        LinkedList<CfgValue> list = new LinkedList<>();
-        synchronized (registry) {
-            for (HashMap<String, WeakHashMap<CfgValue, String>> ownerContainer :
-                    registry.values()) {
-                for (WeakHashMap<CfgValue, String> pathContainer : ownerContainer.values()) {
-                    list.addAll(pathContainer.keySet());
+    private class OwnerEntry {
+
+        private final String owner;
+        private final ConcurrentHashMap<String, PathEntry> paths = new ConcurrentHashMap<>();
+        private Map<String, String> snapshot;
+
+        private OwnerEntry(String owner) {
+            this.owner = owner;
+        }
+
+        private PathEntry getPathEntry(String path) {
+            return paths.computeIfAbsent(path, PathEntry::new);
+        }
+
+        private void update(boolean all) {
+            LinkedList<PathEntry> list = new LinkedList<>();
+            synchronized (this) {
+                Map<String, String> current = flatten(MApi.getCfg(owner));
+                Set<String> changed = snapshot == null || all ? null : diff(snapshot, current);
+                snapshot = current;
+                for (PathEntry pathEntry : paths.values()) {
+                    if (changed == null || pathEntry.fresh || isAffected(pathEntry.path, changed))
+                        list.add(pathEntry);
                 }
             }
+            // update outside of the lock, update actions could trigger other updates
+            for (PathEntry pathEntry : list) pathEntry.update();
+        }
+    }
+
+    private class PathEntry {
+
+        private final String path;
+
+        @SuppressWarnings("rawtypes")
+        private final CopyOnWriteArrayList<WeakReference<CfgValue>> values =
+                new CopyOnWriteArrayList<>();
+
+        // set for new values, they could be loaded from a newer config than the snapshot
+        private volatile boolean fresh;
+
+        private PathEntry(String path) {
+            this.path = path;
+        }
+
+        @SuppressWarnings("rawtypes")
+        private void add(CfgValue value) {
+            values.removeIf(ref -> ref.get() == null);
+            values.add(new WeakReference<>(value));
+            fresh = true;
+        }
+
+        @SuppressWarnings("rawtypes")
+        private void update() {
+            fresh = false;
+            boolean cleanup = false;
+            for (WeakReference<CfgValue> ref : values) {
+                CfgValue value = ref.get();
+                if (value == null) cleanup = true;
+                else {
+                    value.update();
+                    updatedCount.incrementAndGet();
+                }
+            }
+            if (cleanup) values.removeIf(ref -> ref.get() == null);
+        }
+
+        @SuppressWarnings("rawtypes")
+        private void collect(List<CfgValue> list) {
+            for (WeakReference<CfgValue> ref : values) {
+                CfgValue value = ref.get();
+                if (value != null) list.add(value);
+            }
         }
-        return list;
     }
 }
@@ -15,24 +15,55 @@
  */
 package de.mhus.lib.core.concurrent;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
 import de.mhus.lib.core.M;
 import de.mhus.lib.core.MCast;
 import de.mhus.lib.core.MLog;
-import de.mhus.lib.core.logging.ITracer;
+import de.mhus.lib.core.cfg.CfgInt;
 import de.mhus.lib.core.service.LockManager;
-import io.opentracing.Scope;
 
+/**
+ * Lock based on a queued synchronizer. The lock is not bound to the thread, unlockHard() can
+ * release it from every thread. The stack trace of the owner is only captured if
+ * LocalLock.stacktraceSample is set, e.g. 1 for every and 10 for every tenth lock.
+ */
 public class LocalLock extends MLog implements Lock {
 
+    private static final CfgInt CFG_STACKTRACE_SAMPLE =
+            new CfgInt(LocalLock.class, "stacktraceSample", 0);
+
     protected volatile Thread lock = null;
     protected String name;
     protected volatile long lockTime = 0;
     protected volatile long cnt = 0;
-    protected volatile String stacktrace;
+    protected volatile StackTraceElement[] stacktrace;
+
+    private final Sync sync;
+    private long lockNanos;
+    private volatile long contentions;
+    private volatile long waitTime;
+    private volatile long maxWaitTime;
+    private volatile long holdTime;
+    private volatile long maxHoldTime;
 
-    public LocalLock() {}
+    public LocalLock() {
+        sync = new Sync(false);
+    }
 
     public LocalLock(String name) {
+        this(name, false);
+    }
+
+    /**
+     * Create a registered lock.
+     *
+     * @param name
+     * @param fair If true the lock is granted in the order of the requests
+     */
+    public LocalLock(String name, boolean fair) {
+        sync = new Sync(fair);
         setName(name);
         register();
     }
@@ -41,33 +72,29 @@ public class LocalLock extends MLog implements Lock {
         M.l(LockManager.class).register(this);
     }
 
-    @SuppressWarnings("resource")
     @Override
     public Lock lock() {
-        Scope scope = null;
-        try {
-            synchronized (this) {
-                while (isLocked()) {
-                    if (scope != null)
-                        scope = ITracer.get().enter("waitUntilUnlock", "name", getName());
-                    try {
-                        wait();
-                    } catch (InterruptedException e) {
-
-                    }
-                }
-                lock = Thread.currentThread();
-                stacktrace = MCast.toString("", lock.getStackTrace());
-                lockTime = System.currentTimeMillis();
-                cnt++;
-                lockEvent(true);
-            }
-        } finally {
-            if (scope != null) scope.close();
-        }
+        if (reenter()) return this;
+        if (!sync.tryAcquire(1)) {
+            long start = System.nanoTime();
+            sync.acquire(1);
+            locked(System.nanoTime() - start);
+        } else locked(0);
         return this;
     }
 
+    /**
+     * Lock if the lock is free.
+     *
+     * @return true if locked
+     */
+    public boolean tryLock() {
+        if (reenter()) return true;
+        if (!sync.tryAcquire(1)) return false;
+        locked(0);
+        return true;
+    }
+
     /**
      * Overwrite this to get the lock events.
      *
@@ -75,38 +102,76 @@ public class LocalLock extends MLog implements Lock {
      */
     protected void lockEvent(boolean locked) {}
 
-    @SuppressWarnings("resource")
     @Override
     public boolean lock(long timeout) {
         log().t("lock", name, timeout);
-        Scope scope = null;
+        if (reenter()) return true;
+        if (sync.tryAcquire(1)) {
+            locked(0);
+            log().t("gain lock", name);
+            return true;
+        }
+        long start = System.nanoTime();
+        if (!acquire(start, timeout)) {
+            log().t("timeout lock", name);
+            return false;
+        }
+        locked(System.nanoTime() - start);
+        log().t("gain lock", name);
+        return true;
+    }
+
+    private boolean acquire(long start, long timeout) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        boolean interrupted = false;
         try {
-            synchronized (this) {
-                long start = System.currentTimeMillis();
-                while (isLocked()) {
-                    if (scope != null)
-                        scope = ITracer.get().enter("waitUntilUnlock", "name", getName());
-                    try {
-                        wait(timeout);
-                    } catch (InterruptedException e) {
-                    }
-                    if (System.currentTimeMillis() - start >= timeout) {
-                        log().t("timeout lock", name);
-                        return false;
-                    }
+            while (true) {
+                long left = nanos - (System.nanoTime() - start);
+                if (left <= 0) return false;
+                try {
+                    return sync.tryAcquireNanos(1, left);
+                } catch (InterruptedException e) {
+                    interrupted = true;
                 }
-                lock = Thread.currentThread();
-                stacktrace = MCast.toString("", lock.getStackTrace());
-                lockTime = System.currentTimeMillis();
-                lockEvent(true);
-                log().t("gain lock", name);
-                return true;
             }
         } finally {
-            if (scope != null) scope.close();
+            if (interrupted) Thread.currentThread().interrupt();
         }
     }
 
+    // subclasses can allow the owner to lock again by overwriting isLocked()
+    private boolean reenter() {
+        if (lock != Thread.currentThread() || isLocked()) return false;
+        cnt++;
+        return true;
+    }
+
+    private void locked(long waitNanos) {
+        lock = Thread.currentThread();
+        lockNanos = System.nanoTime();
+        lockTime = System.currentTimeMillis();
+        cnt++;
+        if (waitNanos > 0) {
+            contentions++;
+            waitTime += waitNanos;
+            if (waitNanos > maxWaitTime) maxWaitTime = waitNanos;
+        }
+        int sample = CFG_STACKTRACE_SAMPLE.value();
+        if (sample > 0 && cnt % sample == 0) stacktrace = lock.getStackTrace();
+        lockEvent(true);
+    }
+
+    private void released() {
+        long hold = System.nanoTime() - lockNanos;
+        holdTime += hold;
+        if (hold > maxHoldTime) maxHoldTime = hold;
+        lockEvent(false);
+        lock = null;
+        stacktrace = null;
+        lockTime = 0;
+        sync.release(1);
+    }
+
     /**
      * Unlock if the current thread is also the owner.
      *
@@ -115,27 +180,32 @@ public class LocalLock extends MLog implements Lock {
     @Override
     public boolean unlock() {
         log().t("unlock", name);
-        synchronized (this) {
-            if (lock != Thread.currentThread()) return false;
-            lockEvent(false);
-            lock = null;
-            stacktrace = null;
-            lockTime = 0;
-            notify();
-            return true;
-        }
+        if (lock != Thread.currentThread()) return false;
+        released();
+        return true;
     }
 
     /** Unlock in every case !!! This can break a locked area. */
     @Override
     public void unlockHard() {
         log().d("unlockHard", name);
-        synchronized (this) {
-            lockEvent(false);
-            lock = null;
-            stacktrace = null;
-            lockTime = 0;
-            notify();
+        if (sync.isHeld()) released();
+    }
+
+    @Override
+    public void waitUntilUnlock() {
+        if (!isLocked()) return;
+        sync.acquireShared(1);
+    }
+
+    @Override
+    public boolean waitUntilUnlock(long timeout) {
+        if (!isLocked()) return true;
+        try {
+            return sync.tryAcquireSharedNanos(1, TimeUnit.MILLISECONDS.toNanos(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return !isLocked();
         }
     }
 
@@ -144,6 +214,10 @@ public class LocalLock extends MLog implements Lock {
         return lock != null;
     }
 
+    public boolean isFair() {
+        return sync.fair;
+    }
+
     @Override
     public String getName() {
         return name;
@@ -155,12 +229,14 @@ public class LocalLock extends MLog implements Lock {
 
     @Override
     public String getOwner() {
-        return lock == null ? null : lock.getId() + " " + lock.toString();
+        Thread owner = lock;
+        return owner == null ? null : owner.getId() + " " + owner.toString();
     }
 
     @Override
     public String toString() {
-        return name + (lock != null ? " " + lock.getName() : "");
+        Thread owner = lock;
+        return name + (owner != null ? " " + owner.getName() : "");
     }
 
     @Override
@@ -180,6 +256,96 @@ public class LocalLock extends MLog implements Lock {
 
     @Override
     public String getStartStackTrace() {
-        return stacktrace;
+        StackTraceElement[] trace = stacktrace;
+        return trace == null ? null : MCast.toString("", trace);
+    }
+
+    /**
+     * Estimated number of threads waiting for the lock.
+     *
+     * @return Number of threads
+     */
+    public int getQueueLength() {
+        return sync.getQueueLength();
+    }
+
+    /**
+     * Number of locks that had to wait for the lock.
+     *
+     * @return Number of locks
+     */
+    public long getContentions() {
+        return contentions;
+    }
+
+    /**
+     * Sum of the time waited to gain the lock in milliseconds.
+     *
+     * @return Time in ms
+     */
+    public long getWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(waitTime);
+    }
+
+    public long getMaxWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitTime);
+    }
+
+    /**
+     * Sum of the time the lock was held in milliseconds.
+     *
+     * @return Time in ms
+     */
+    public long getHoldTime() {
+        return TimeUnit.NANOSECONDS.toMillis(holdTime);
+    }
+
+    public long getMaxHoldTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxHoldTime);
+    }
+
+    public void resetMetrics() {
+        contentions = 0;
+        waitTime = 0;
+        maxWaitTime = 0;
+        holdTime = 0;
+        maxHoldTime = 0;
+    }
+
+    // state 0 is free, 1 is locked. Shared acquire is used to wait for the release.
+    private static class Sync extends AbstractQueuedSynchronizer {
+
+        private static final long serialVersionUID = 1L;
+        private final boolean fair;
+
+        Sync(boolean fair) {
+            this.fair = fair;
+        }
+
+        @Override
+        protected boolean tryAcquire(int arg) {
+            if (fair && hasQueuedPredecessors()) return false;
+            return compareAndSetState(0, 1);
+        }
+
+        @Override
+        protected boolean tryRelease(int arg) {
+            setState(0);
+            return true;
+        }
+
+        @Override
+        protected int tryAcquireShared(int arg) {
+            return getState() == 0 ? 1 : -1;
+        }
+
+        @Override
+        protected boolean tryReleaseShared(int arg) {
+            return true;
+        }
+
+        boolean isHeld() {
+            return getState() != 0;
+        }
     }
 }
@@ -0,0 +1,743 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Fast reader for CSV files with the same format as CSVReader. The scanner works directly on a
+ * large char buffer and returns a reusable row object. Fields are only converted to strings if
+ * requested, numbers are parsed from the buffer. Columns can be projected, the other fields are
+ * skipped without copying. Whitespace inside of fields is not normalized.
+ */
+public class CSVScanner implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+        1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private Reader reader;
+    private final char separator;
+    private final char quote;
+    private final boolean allowMultiLineFields;
+    private final boolean trim;
+    private char[] buf;
+    private int pos;
+    private int limit;
+    private int rowStart;
+    private int fieldStart;
+    private int write;
+    private boolean eof;
+    private long lineCount;
+    private boolean[] columns;
+    private HashMap<String, Integer> headerIndex;
+    private final Row row = new Row();
+
+    /**
+     * Default to comma separator, " for quote, no multiline fields, with trimming.
+     *
+     * @param reader
+     */
+    public CSVScanner(Reader reader) {
+        this(reader, ',', '\"', false, true);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param reader input Reader source of CSV Fields to read.
+     * @param separator field separator character
+     * @param quote char to use to enclose fields containing a separator, usually '\"'
+     * @param allowMultiLineFields true if quoted fields can span more than one line.
+     * @param trim true if reader should trim lead/trailing whitespace
+     */
+    public CSVScanner(
+            Reader reader, char separator, char quote, boolean allowMultiLineFields, boolean trim) {
+        if (reader == null) throw new IllegalArgumentException("invalid Reader");
+        this.reader = reader;
+        this.separator = separator;
+        this.quote = quote;
+        this.allowMultiLineFields = allowMultiLineFields;
+        this.trim = trim;
+        buf = new char[DEFAULT_BUFFER_SIZE];
+    }
+
+    /**
+     * Only the given columns are stored, all other fields are skipped. Use null for all columns.
+     *
+     * @param indexes
+     */
+    public void setColumns(int... indexes) {
+        if (indexes == null) {
+            columns = null;
+            return;
+        }
+        int max = 0;
+        for (int index : indexes) max = Math.max(max, index + 1);
+        columns = new boolean[max];
+        for (int index : indexes) columns[index] = true;
+    }
+
+    /**
+     * Project the columns by the names of the header.
+     *
+     * @param names
+     * @throws IOException if a column is not found
+     */
+    public void setColumns(String... names) throws IOException {
+        int[] indexes = new int[names.length];
+        for (int i = 0; i < names.length; i++) indexes[i] = getColumnIndex(names[i]);
+        setColumns(indexes);
+    }
+
+    /**
+     * Read the next line as header.
+     *
+     * @param lower
+     * @return The names of the columns or null at the end of the stream
+     * @throws IOException
+     */
+    public String[] readHeader(boolean lower) throws IOException {
+        boolean[] current = columns;
+        columns = null;
+        try {
+            Row header = next();
+            if (header == null) return null;
+            String[] names = header.toArray();
+            headerIndex = new HashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                if (lower) names[i] = names[i].toLowerCase();
+                headerIndex.put(names[i], i);
+            }
+            return names;
+        } finally {
+            columns = current;
+        }
+    }
+
+    public int getColumnIndex(String name) throws IOException {
+        Integer index = headerIndex == null ? null : headerIndex.get(name);
+        if (index == null) throw new IOException("row not found " + name);
+        return index;
+    }
+
+    /**
+     * Scan the next line. The returned row object is reused for the next line.
+     *
+     * @return The row or null at the end of the stream
+     * @throws IOException Some problem reading the file, possibly malformed data.
+     */
+    public Row next() throws IOException {
+        if (reader == null)
+            throw new IllegalArgumentException("attempt to use a closed CSVScanner");
+        rowStart = pos;
+        row.size = 0;
+        if (pos == limit && !fill()) return null;
+        lineCount++;
+        boolean more;
+        do {
+            more = scanField(row.size++);
+        } while (more);
+        return row;
+    }
+
+    /**
+     * Read one column of the next lines into the array.
+     *
+     * @param column
+     * @param values
+     * @return Number of read lines, less then the array size at the end of the stream
+     * @throws IOException
+     */
+    public int readLongs(int column, long[] values) throws IOException {
+        int cnt = 0;
+        while (cnt < values.length && next() != null) values[cnt++] = row.getLong(column);
+        return cnt;
+    }
+
+    /**
+     * Read one column of the next lines into the array.
+     *
+     * @param column
+     * @param values
+     * @return Number of read lines, less then the array size at the end of the stream
+     * @throws IOException
+     */
+    public int readDoubles(int column, double[] values) throws IOException {
+        int cnt = 0;
+        while (cnt < values.length && next() != null) values[cnt++] = row.getDouble(column);
+        return cnt;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    // returns true if more fields are following in the line
+    private boolean scanField(int index) throws IOException {
+        boolean store = columns == null || index < columns.length && columns[index];
+        // skip leading whitespace
+        while (true) {
+            if (pos == limit && !fill()) return setField(index, store, pos, pos, false);
+            char c = buf[pos];
+            if (c == '\n' || c == separator || c == quote || c > ' ') break;
+            pos++;
+        }
+        char c = buf[pos];
+        if (c == quote) return scanQuoted(index, store);
+        fieldStart = pos;
+        while (true) {
+            if (pos == limit && !fill()) return setField(index, store, fieldStart, pos, false);
+            c = buf[pos++];
+            if (c == separator) return setField(index, store, fieldStart, pos - 1, true);
+            if (c == '\n') return setField(index, store, fieldStart, pos - 1, false);
+            if (c == quote)
+                throw new IOException(
+                        "Malformed CSV stream. Missing quote at start of field on line "
+                                + lineCount);
+        }
+    }
+
+    private boolean scanQuoted(int index, boolean store) throws IOException {
+        pos++;
+        fieldStart = pos;
+        write = pos;
+        while (true) {
+            if (pos == limit && !fill())
+                throw new IOException(
+                        "Malformed CSV stream. Missing quote (\") after field on line "
+                                + lineCount);
+            char c = buf[pos++];
+            if (c == quote) {
+                if (pos == limit && !fill()) break;
+                if (buf[pos] != quote) break;
+                pos++; // doubled quote
+            } else if (c == '\n') {
+                if (!allowMultiLineFields)
+                    throw new IOException(
+                            "Malformed CSV stream. Missing quote (\") after field on line "
+                                    + lineCount);
+            }
+            if (store) buf[write] = c;
+            write++;
+        }
+        int end = write;
+        // skip trailing whitespace up to the separator
+        while (true) {
+            if (pos == limit && !fill()) return setQuoted(index, store, end, false);
+            char c = buf[pos++];
+            if (c == separator) return setQuoted(index, store, end, true);
+            if (c == '\n') return setQuoted(index, store, end, false);
+            if (c > ' ')
+                throw new IOException(
+                        "Malformed CSV stream, missing separator after field on line "
+                                + lineCount);
+        }
+    }
+
+    private boolean setQuoted(int index, boolean store, int end, boolean more) {
+        // the quoted content is not changed by a line end
+        if (store) {
+            int start = fieldStart;
+            if (trim) {
+                while (start < end && buf[start] <= ' ') start++;
+                while (end > start && buf[end - 1] <= ' ') end--;
+            }
+            row.set(index, start, end);
+        }
+        return more;
+    }
+
+    private boolean setField(int index, boolean store, int start, int end, boolean more) {
+        if (!store) return more;
+        if (!more && end > start && buf[end - 1] == '\r') end--;
+        if (trim) {
+            while (start < end && buf[start] <= ' ') start++;
+            while (end > start && buf[end - 1] <= ' ') end--;
+        }
+        row.set(index, start, end);
+        return more;
+    }
+
+    // move the current row to the start of the buffer and read more chars
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        if (pos == limit && rowStart == pos) {
+            // nothing to keep
+            rowStart = pos = limit = 0;
+        }
+        int shift = rowStart;
+        if (shift > 0) {
+            System.arraycopy(buf, shift, buf, 0, limit - shift);
+            limit -= shift;
+            pos -= shift;
+            fieldStart -= shift;
+            write -= shift;
+            rowStart = 0;
+            row.shift(shift);
+        } else if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int n = reader.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /** Reusable row of the scanner. Only valid until the next line is scanned. */
+    public class Row {
+
+        private int size;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+
+        private void set(int index, int start, int end) {
+            if (index >= starts.length) {
+                starts = Arrays.copyOf(starts, Math.max(index + 1, starts.length * 2));
+                ends = Arrays.copyOf(ends, starts.length);
+            }
+            starts[index] = start;
+            ends[index] = end;
+        }
+
+        private void shift(int shift) {
+            for (int i = 0; i < size && i < starts.length; i++) {
+                starts[i] -= shift;
+                ends[i] -= shift;
+            }
+        }
+
+        /**
+         * Number of fields in the line, including not projected columns.
+         *
+         * @return Number of fields
+         */
+        public int size() {
+            return size;
+        }
+
+        private boolean isStored(int index) {
+            return index < size && (columns == null || index < columns.length && columns[index]);
+        }
+
+        /**
+         * Return the value of the field.
+         *
+         * @param index
+         * @return The value or null if the column is not available or not projected
+         */
+        public String get(int index) {
+            if (!isStored(index)) return null;
+            return new String(buf, starts[index], ends[index] - starts[index]);
+        }
+
+        public String get(String name) throws IOException {
+            return get(getColumnIndex(name));
+        }
+
+        public int length(int index) {
+            if (!isStored(index)) return 0;
+            return ends[index] - starts[index];
+        }
+
+        public boolean isEmpty(int index) {
+            return length(index) == 0;
+        }
+
+        /**
+         * Return the projected fields, not projected fields are null.
+         *
+         * @return Array of values
+         */
+        public String[] toArray() {
+            String[] ret = new String[size];
+            for (int i = 0; i < size; i++) ret[i] = get(i);
+            return ret;
+        }
+
+        /**
+         * Parse an int value.
+         *
+         * @param index
+         * @return The value, an empty field returns 0.
+         * @throws NumberFormatException if the field does not contain a well-formed int
+         */
+        public int getInt(int index) throws NumberFormatException {
+            long value = getLong(index);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+                throw new NumberFormatException("For input string: \"" + get(index) + "\"");
+            return (int) value;
+        }
+
+        /**
+         * Parse a long value.
+         *
+         * @param index
+         * @return The value, an empty field returns 0.
+         * @throws NumberFormatException if the field does not contain a well-formed long
+         */
+        public long getLong(int index) throws NumberFormatException {
+            if (!isStored(index)) return 0;
+            int s = starts[index];
+            int e = ends[index];
+            while (s < e && buf[s] <= ' ') s++;
+            while (e > s && buf[e - 1] <= ' ') e--;
+            if (s == e) return 0;
+            int begin = s;
+            boolean negative = buf[s] == '-';
+            if (negative || buf[s] == '+') s++;
+            if (s == e) throw numberFormat(begin, e);
+            long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+            long multmin = limit / 10;
+            long value = 0;
+            for (int i = s; i < e; i++) {
+                int digit = buf[i] - '0';
+                if (digit < 0 || digit > 9 || value < multmin) throw numberFormat(begin, e);
+                value *= 10;
+                if (value < limit + digit) throw numberFormat(begin, e);
+                value -= digit;
+            }
+            return negative ? value : -value;
+        }
+
+        /**
+         * Parse a double value. Simple decimal numbers are parsed from the buffer, all other
+         * formats are parsed by Double.parseDouble().
+         *
+         * @param index
+         * @return The value, an empty field returns 0.
+         * @throws NumberFormatException if the field does not contain a well-formed double
+         */
+        public double getDouble(int index) throws NumberFormatException {
+            if (!isStored(index)) return 0;
+            int s = starts[index];
+            int e = ends[index];
+            while (s < e && buf[s] <= ' ') s++;
+            while (e > s && buf[e - 1] <= ' ') e--;
+            if (s == e) return 0;
+            int begin = s;
+            boolean negative = buf[s] == '-';
+            if (negative || buf[s] == '+') s++;
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean dot = false;
+            boolean any = false;
+            int i = s;
+            for (; i < e; i++) {
+                char c = buf[i];
+                if (c >= '0' && c <= '9') {
+                    any = true;
+                    if (mantissa == 0 && c == '0') {
+                        if (dot) exponent--;
+                        continue;
+                    }
+                    if (++digits > 15) return parseDouble(begin, e);
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (dot) exponent--;
+                } else if (c == '.' && !dot) {
+                    dot = true;
+                } else break;
+            }
+            if (!any) return parseDouble(begin, e);
+            if (i < e) {
+                if (buf[i] != 'e' && buf[i] != 'E') return parseDouble(begin, e);
+                i++;
+                boolean expNegative = i < e && buf[i] == '-';
+                if (i < e && (expNegative || buf[i] == '+')) i++;
+                if (i == e || e - i > 3) return parseDouble(begin, e);
+                int exp = 0;
+                for (; i < e; i++) {
+                    int digit = buf[i] - '0';
+                    if (digit < 0 || digit > 9) return parseDouble(begin, e);
+                    exp = exp * 10 + digit;
+                }
+                exponent += expNegative ? -exp : exp;
+            }
+            double value;
+            if (mantissa == 0) value = 0;
+            else if (exponent >= 0 && exponent < POW10.length) value = mantissa * POW10[exponent];
+            else if (exponent < 0 && -exponent < POW10.length) value = mantissa / POW10[-exponent];
+            else return parseDouble(begin, e);
+            return negative ? -value : value;
+        }
+
+        private double parseDouble(int start, int end) {
+            return Double.parseDouble(new String(buf, start, end - start));
+        }
+
+        private NumberFormatException numberFormat(int start, int end) {
+            return new NumberFormatException(
+                    "For input string: \"" + new String(buf, start, end - start) + "\"");
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(toArray());
+        }
+    }
+
+    /**
+     * Parse a file in chunks which can be processed in parallel, e.g. by
+     * StreamSupport.stream(spliterator, true). The file must not contain multi line fields and the
+     * charset must encode line breaks as single bytes like UTF-8 or ISO-8859-1.
+     *
+     * <p>Every chunk opens the file and closes it after the last row of the chunk. The stream must
+     * be consumed completely, use stream() if the processing could stop early, e.g. with
+     * findFirst() or limit().
+     *
+     * @param file The CSV file
+     * @param charset Charset of the file
+     * @param skipHeader true if the first line is a header
+     * @param factory Create a configured scanner for the reader of a chunk, e.g. CSVScanner::new
+     * @param mapper Map the reusable row to the element, must not return null
+     * @param <T> Type of the elements
+     * @return Spliterator of the mapped rows
+     * @throws IOException
+     */
+    public static <T> Spliterator<T> spliterator(
+            Path file,
+            Charset charset,
+            boolean skipHeader,
+            Function<Reader, CSVScanner> factory,
+            Function<Row, T> mapper)
+            throws IOException {
+        long size;
+        long start = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            if (skipHeader) start = ChunkSpliterator.nextLine(channel, 0, size);
+        }
+        return new ChunkSpliterator<>(file, null, charset, start, size, factory, mapper);
+    }
+
+    /**
+     * Parse a file in chunks like spliterator() does. All chunks read from one channel which is
+     * closed with the stream, so the stream should be used in a try-with-resources block.
+     *
+     * @param file The CSV file
+     * @param charset Charset of the file
+     * @param skipHeader true if the first line is a header
+     * @param factory Create a configured scanner for the reader of a chunk, e.g. CSVScanner::new
+     * @param mapper Map the reusable row to the element, must not return null
+     * @param parallel true to create a parallel stream
+     * @param <T> Type of the elements
+     * @return Stream of the mapped rows
+     * @throws IOException
+     */
+    public static <T> Stream<T> stream(
+            Path file,
+            Charset charset,
+            boolean skipHeader,
+            Function<Reader, CSVScanner> factory,
+            Function<Row, T> mapper,
+            boolean parallel)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            long start = skipHeader ? ChunkSpliterator.nextLine(channel, 0, size) : 0;
+            return StreamSupport.stream(
+                            new ChunkSpliterator<>(
+                                    file, channel, charset, start, size, factory, mapper),
+                            parallel)
+                    .onClose(
+                            () -> {
+                                try {
+                                    channel.close();
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            });
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static class ChunkSpliterator<T> implements Spliterator<T> {
+
+        private static final long MIN_CHUNK = 1024 * 1024;
+
+        private final Path file;
+        // shared by all chunks or null to open the file for every chunk
+        private final FileChannel channel;
+        private final Charset charset;
+        private long start;
+        private final long end;
+        private final Function<Reader, CSVScanner> factory;
+        private final Function<Row, T> mapper;
+        private CSVScanner scanner;
+
+        private ChunkSpliterator(
+                Path file,
+                FileChannel channel,
+                Charset charset,
+                long start,
+                long end,
+                Function<Reader, CSVScanner> factory,
+                Function<Row, T> mapper) {
+            this.file = file;
+            this.channel = channel;
+            this.charset = charset;
+            this.start = start;
+            this.end = end;
+            this.factory = factory;
+            this.mapper = mapper;
+        }
+
+        // position after the next line break, or end
+        private static long nextLine(FileChannel channel, long position, long end)
+                throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            while (position < end) {
+                buffer.clear();
+                int n = channel.read(buffer, position);
+                if (n < 0) break;
+                for (int i = 0; i < n; i++) {
+                    if (buffer.get(i) == '\n') return Math.min(position + i + 1, end);
+                }
+                position += n;
+            }
+            return end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                if (start >= end) return false;
+                if (scanner == null) {
+                    ChannelInputStream is =
+                            channel != null
+                                    ? new ChannelInputStream(channel, start, end, false)
+                                    : new ChannelInputStream(
+                                            FileChannel.open(file, StandardOpenOption.READ),
+                                            start,
+                                            end,
+                                            true);
+                    scanner = factory.apply(new InputStreamReader(is, charset));
+                }
+                Row row = scanner.next();
+                if (row == null) {
+                    scanner.close();
+                    start = end;
+                    return false;
+                }
+                action.accept(mapper.apply(row));
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (scanner != null || end - start < MIN_CHUNK * 2) return null;
+            try {
+                long mid;
+                if (channel != null) mid = nextLine(channel, start + (end - start) / 2, end);
+                else {
+                    try (FileChannel c = FileChannel.open(file, StandardOpenOption.READ)) {
+                        mid = nextLine(c, start + (end - start) / 2, end);
+                    }
+                }
+                if (mid >= end) return null;
+                ChunkSpliterator<T> prefix =
+                        new ChunkSpliterator<>(file, channel, charset, start, mid, factory, mapper);
+                start = mid;
+                return prefix;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - start;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    private static class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+        private final boolean closeChannel;
+
+        private ChannelInputStream(
+                FileChannel channel, long position, long end, boolean closeChannel) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+            this.closeChannel = closeChannel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) return -1;
+            len = (int) Math.min(len, end - position);
+            int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (n > 0) position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closeChannel) channel.close();
+        }
+    }
+}
@@ -15,8 +15,15 @@
  */
 package de.mhus.lib.core.io;
 
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 
 /**
  * Write CSV (Comma Separated Value) files. This format is used my Microsoft Word and Excel. Fields
@@ -40,6 +47,12 @@ public class CSVWriter {
 
     // ------------------------------ FIELDS ------------------------------
 
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final long[] POW10 = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
     /**
      * line separator to use. We use Windows style for all platforms since csv is a Windows format
      * file.
@@ -49,6 +62,17 @@ public class CSVWriter {
     /** PrintWriter where CSV fields will be written. */
     private PrintWriter pw;
 
+    /** buffer of the pending output, written to pw if full or flushed */
+    private char[] buf;
+
+    private int count;
+
+    /** true if the buffer is written to pw after every field, set for a caller supplied Writer */
+    private boolean writeThrough;
+
+    /** error state of pw after close */
+    private boolean closedWithError;
+
     /** true if write should trim lead/trail whitespace from fields before writing them. */
     private final boolean trim;
 
@@ -70,6 +94,9 @@ public class CSVWriter {
     /** how much extra quoting you want */
     private int quoteLevel;
 
+    /** ascii characters which need surrounding quotes */
+    private final boolean[] quoted = new boolean[128];
+
     private String defaultNullValue = "";
 
     private ValueWriter writer = new DefaultValueWriter();
@@ -77,7 +104,8 @@ public class CSVWriter {
     // --------------------------- CONSTRUCTORS ---------------------------
 
     /**
-     * convenience Constructor, defaults to quotelevel 1, comma separator , trim
+     * convenience Constructor, defaults to quotelevel 1, comma separator , trim. Every field is
+     * written to the writer directly.
      *
      * @param pw Writer where fields will be written.
      */
@@ -86,7 +114,7 @@ public class CSVWriter {
     }
 
     /**
-     * Constructor
+     * Constructor, every field is written to the writer directly.
      *
      * @param pw Writer where fields will be written.
      * @param quoteLevel 0 = minimal quotes <br>
@@ -99,6 +127,23 @@ public class CSVWriter {
      *     before writing the field.
      */
     public CSVWriter(Writer pw, int quoteLevel, char separator, char quote, boolean trim) {
+        this(pw, quoteLevel, separator, quote, trim, DEFAULT_BUFFER_SIZE);
+        writeThrough = true;
+    }
+
+    /**
+     * Constructor, the output is buffered until the buffer is full or flush() or close() is called.
+     *
+     * @param pw Writer where fields will be written.
+     * @param quoteLevel 0 = minimal quotes, 1 = quotes also around fields containing spaces, 2 =
+     *     quotes around all fields
+     * @param separator field separator character
+     * @param quote char to use to enclose fields containing a separator, usually '\"'
+     * @param trim true if writer should trim leading/trailing whitespace before writing the field.
+     * @param bufferSize Size of the internal char buffer
+     */
+    public CSVWriter(
+            Writer pw, int quoteLevel, char separator, char quote, boolean trim, int bufferSize) {
         // we want a PrintWriter not for its methods, but so that it won't throw
         // so many IOExceptions
         if (pw instanceof PrintWriter) {
@@ -109,22 +154,109 @@ public class CSVWriter {
         if (this.pw == null) {
             throw new IllegalArgumentException("invalid Writer");
         }
+        if (bufferSize < 64) bufferSize = 64;
+        this.buf = new char[bufferSize];
         this.quoteLevel = quoteLevel;
         this.separator = separator;
         this.quote = quote;
         this.trim = trim;
+        updateQuoted();
+    }
+
+    /**
+     * Write into a stream, defaults to quotelevel 1, comma separator , trim. The output is buffered
+     * until the buffer is full or flush() or close() is called.
+     *
+     * @param out
+     * @param charset
+     * @param bufferSize Size of the internal char buffer
+     */
+    public CSVWriter(OutputStream out, Charset charset, int bufferSize) {
+        this(new OutputStreamWriter(out, charset), 1, ',', '\"', true, bufferSize);
+    }
+
+    /**
+     * Write into a channel, e.g. a FileChannel, defaults to quotelevel 1, comma separator , trim.
+     * The output is buffered until the buffer is full or flush() or close() is called.
+     *
+     * @param channel
+     * @param charset
+     * @param bufferSize Size of the internal char buffer
+     */
+    public CSVWriter(WritableByteChannel channel, Charset charset, int bufferSize) {
+        this(
+                Channels.newWriter(channel, charset.newEncoder(), bufferSize),
+                1,
+                ',',
+                '\"',
+                true,
+                bufferSize);
     }
 
     // -------------------------- OTHER METHODS --------------------------
 
+    private void updateQuoted() {
+        for (int i = 0; i < quoted.length; i++) quoted[i] = false;
+        quoted['\n'] = true;
+        quoted['\r'] = true;
+        if (separator < quoted.length) quoted[separator] = true;
+        if (quote != CSVReader.NO_QUOTS && quote < quoted.length) quoted[quote] = true;
+    }
+
     /** Close the PrintWriter. */
     public void close() {
         if (pw != null) {
+            flushBuffer();
             pw.close();
+            closedWithError = pw.checkError();
             pw = null;
         }
     }
 
+    /** Write the buffer and flush the underlying writer. */
+    public void flush() {
+        if (pw != null) {
+            flushBuffer();
+            pw.flush();
+        }
+    }
+
+    /**
+     * Return true if the underlying writer had an error.
+     *
+     * @return true if an error occurred
+     */
+    public boolean checkError() {
+        if (pw == null) return closedWithError;
+        flushBuffer();
+        return pw.checkError();
+    }
+
+    private void flushBuffer() {
+        if (count > 0) {
+            pw.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    private void append(char c) {
+        if (count == buf.length) flushBuffer();
+        buf[count++] = c;
+    }
+
+    private void append(String s) {
+        int len = s.length();
+        if (len > buf.length - count) {
+            flushBuffer();
+            if (len > buf.length) {
+                pw.write(s);
+                return;
+            }
+        }
+        s.getChars(0, len, buf, count);
+        count += len;
+    }
+
     /**
      * Set default value if put() gets a value of null. If the defaultNullValue is also null put()
      * will write a new line. Default is a empty string.
@@ -147,18 +279,16 @@ public class CSVWriter {
         /* don't bother to write last pending comma on the line */
         writer.nl(this);
         column = 0;
+        written();
     }
 
     public void print(Object... values) {
-        String[] v = new String[values.length];
-        for (int i = 0; i < values.length; i++) v[i] = String.valueOf(values[i]);
-        put(v);
+        checkOpen();
+        for (Object value : values) putValue(String.valueOf(value));
     }
 
     public void println(Object... values) {
-        String[] v = new String[values.length];
-        for (int i = 0; i < values.length; i++) v[i] = String.valueOf(values[i]);
-        put(v);
+        print(values);
         nl();
     }
 
@@ -169,20 +299,161 @@ public class CSVWriter {
      * @param values
      */
     public void put(String... values) {
+        checkOpen();
+        if (values == null || values.length == 0) return;
+        for (String s : values) putValue(s);
+    }
+
+    private void checkOpen() {
         if (pw == null) {
             throw new IllegalArgumentException("attempt to use a closed CSVWriter");
         }
-        if (values == null || values.length == 0) return;
+    }
+
+    private void putValue(String s) {
+        if (column != 0) append(separator);
+        writer.write(this, s);
+        /* make a note to print trailing comma later */
+        column++;
+        written();
+    }
 
-        for (String s : values) {
+    private void written() {
+        if (writeThrough) flushBuffer();
+    }
+
+    // the default writer writes numbers directly, other writers get the string
+    private boolean startNumber() {
+        checkOpen();
+        if (writer.getClass() != DefaultValueWriter.class) return false;
+        if (column != 0) append(separator);
+        column++;
+        if (quoteLevel == 2 && quote != CSVReader.NO_QUOTS) append(quote);
+        return true;
+    }
 
-            if (column != 0) {
-                pw.write(separator);
+    private void endNumber() {
+        if (quoteLevel == 2 && quote != CSVReader.NO_QUOTS) append(quote);
+        written();
+    }
+
+    /**
+     * Write an int field without creating a string.
+     *
+     * @param value
+     */
+    public void putInt(int value) {
+        putLong(value);
+    }
+
+    /**
+     * Write a long field without creating a string.
+     *
+     * @param value
+     */
+    public void putLong(long value) {
+        if (!startNumber()) {
+            putValue(String.valueOf(value));
+            return;
+        }
+        appendLong(value);
+        endNumber();
+    }
+
+    /**
+     * Write a double field in the format of Double.toString(). Small integral values are written
+     * without creating a string.
+     *
+     * @param value
+     */
+    public void putDouble(double value) {
+        if (!startNumber()) {
+            putValue(String.valueOf(value));
+            return;
+        }
+        if (value == (long) value && Math.abs(value) < 1e7 && !isNegativeZero(value)) {
+            appendLong((long) value);
+            append('.');
+            append('0');
+        } else {
+            append(Double.toString(value));
+        }
+        endNumber();
+    }
+
+    /**
+     * Write a double field with a fixed number of decimals, rounded with Math.round(). The digits
+     * are written without creating a string if the scaled value fits into a long.
+     *
+     * @param value
+     * @param decimals Number of decimals, 0 - 9
+     */
+    public void putDouble(double value, int decimals) {
+        if (decimals < 0 || decimals >= POW10.length)
+            throw new IllegalArgumentException("decimals out of range: " + decimals);
+        double scaled = value * POW10[decimals];
+        if (Double.isNaN(scaled) || Math.abs(scaled) >= 1e17) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) putDouble(value);
+            else
+                putValue(
+                        new BigDecimal(value)
+                                .setScale(decimals, RoundingMode.HALF_UP)
+                                .toPlainString());
+            return;
+        }
+        long unscaled = Math.round(scaled);
+        if (!startNumber()) {
+            putValue(formatDecimal(unscaled, decimals));
+            return;
+        }
+        if (unscaled < 0) {
+            append('-');
+            unscaled = -unscaled;
+        }
+        long integral = unscaled / POW10[decimals];
+        appendLong(integral);
+        if (decimals > 0) {
+            append('.');
+            long fraction = unscaled - integral * POW10[decimals];
+            for (int i = decimals - 1; i >= 0; i--) {
+                append((char) ('0' + fraction / POW10[i] % 10));
             }
-            writer.write(this, s);
+        }
+        endNumber();
+    }
+
+    private static String formatDecimal(long unscaled, int decimals) {
+        if (decimals == 0) return String.valueOf(unscaled);
+        StringBuilder sb = new StringBuilder();
+        if (unscaled < 0) sb.append('-');
+        String digits = String.valueOf(Math.abs(unscaled));
+        for (int i = digits.length(); i <= decimals; i++) sb.append('0');
+        sb.append(digits);
+        sb.insert(sb.length() - decimals, '.');
+        return sb.toString();
+    }
+
+    private static boolean isNegativeZero(double value) {
+        return value == 0 && Double.doubleToRawLongBits(value) != 0;
+    }
 
-            /* make a note to print trailing comma later */
-            column++;
+    private void appendLong(long value) {
+        if (buf.length - count < 20) flushBuffer();
+        if (value == 0) {
+            buf[count++] = '0';
+            return;
+        }
+        // work with negative values to support Long.MIN_VALUE
+        boolean negative = value < 0;
+        if (!negative) value = -value;
+        int len = 0;
+        for (long v = value; v != 0; v /= 10) len++;
+        if (negative) buf[count++] = '-';
+        int p = count + len;
+        count = p;
+        while (value != 0) {
+            buf[--p] = (char) ('0' - value % 10);
+            value /= 10;
         }
     }
 
@@ -202,7 +473,27 @@ public class CSVWriter {
         return quote;
     }
 
+    public void setQuote(char quote) {
+        this.quote = quote;
+        updateQuoted();
+    }
+
+    public char getSeparator() {
+        return separator;
+    }
+
+    public void setSeparator(char separator) {
+        this.separator = separator;
+        updateQuoted();
+    }
+
+    /**
+     * Return the writer to write into. The internal buffer is written before.
+     *
+     * @return The underlying print writer
+     */
     public PrintWriter getPrintWriter() {
+        flushBuffer();
         return pw;
     }
 
@@ -210,6 +501,10 @@ public class CSVWriter {
         return quoteLevel;
     }
 
+    public void setQuoteLevel(int quoteLevel) {
+        this.quoteLevel = quoteLevel;
+    }
+
     public int getColumnOfLine() {
         return column;
     }
@@ -233,7 +528,6 @@ public class CSVWriter {
         @Override
         public void write(CSVWriter writer, String s) {
 
-            PrintWriter pw = writer.getPrintWriter();
             int quoteLevel = getQuoteLevel(writer);
             char quote = writer.getQuote();
 
@@ -249,29 +543,41 @@ public class CSVWriter {
             if (writer.isTrim()) {
                 s = s.trim();
             }
-            if (s.indexOf(quote) >= 0) {
+
+            // find out the needed quoting with one scan
+            boolean[] quoted = writer.quoted;
+            boolean enclose = quoteLevel == 2;
+            boolean hasQuote = false;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 128 && quoted[c]) {
+                    enclose = true;
+                    if (c == quote) {
+                        hasQuote = true;
+                        break;
+                    }
+                } else if (c == ' ' && quoteLevel == 1) {
+                    enclose = true;
+                }
+            }
+
+            if (quote == CSVReader.NO_QUOTS || !enclose) {
+                /* ordinary case, no surrounding quotes needed */
+                writer.append(s);
+            } else if (hasQuote) {
                 /* worst case, needs surrounding quotes and internal quotes doubled */
-                if (quote != CSVReader.NO_QUOTS) pw.write(quote);
+                writer.append(quote);
                 for (int i = 0; i < s.length(); i++) {
                     char c = s.charAt(i);
-                    if (c == quote) {
-                        if (quote != CSVReader.NO_QUOTS) pw.write(quote);
-                        pw.write(writer.getQuote());
-                    } else {
-                        pw.write(c);
-                    }
+                    if (c == quote) writer.append(quote);
+                    writer.append(c);
                 }
-                if (quote != CSVReader.NO_QUOTS) pw.write(writer.getQuote());
-            } else if (quoteLevel == 2
-                    || quoteLevel == 1 && s.indexOf(' ') >= 0
-                    || s.indexOf(writer.getLineSeparator()) >= 0) {
-                /* need surrounding quotes */
-                if (quote != CSVReader.NO_QUOTS) pw.write(quote);
-                pw.write(s);
-                if (quote != CSVReader.NO_QUOTS) pw.write(quote);
+                writer.append(quote);
             } else {
-                /* ordinary case, no surrounding quotes needed */
-                pw.write(s);
+                /* need surrounding quotes */
+                writer.append(quote);
+                writer.append(s);
+                writer.append(quote);
             }
         }
 
@@ -281,7 +587,7 @@ public class CSVWriter {
 
         @Override
         public void nl(CSVWriter writer) {
-            writer.getPrintWriter().write(writer.getLineSeparator());
+            writer.append(writer.getLineSeparator());
         }
     }
 
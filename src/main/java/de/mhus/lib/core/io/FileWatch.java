@@ -17,20 +17,36 @@ package de.mhus.lib.core.io;
 
 import java.io.File;
 
-import de.mhus.lib.core.M;
-import de.mhus.lib.core.MHousekeeper;
 import de.mhus.lib.core.MHousekeeperTask;
 
 public class FileWatch extends MHousekeeperTask {
 
     private File file;
     private long period = 30 * 1000;
-    private long modified = -2;
+    private volatile long modified = -2;
     private Listener listener;
-    private boolean started = false;
+    private volatile boolean started = false;
     private long lastRun;
     private boolean startHook;
-    private boolean registered = false;
+    private boolean nativeWatch;
+    private FileWatchService.Watcher watcher =
+            new FileWatchService.Watcher() {
+
+                @Override
+                public File getWatchedFile() {
+                    return file;
+                }
+
+                @Override
+                public void onFileEvent() {
+                    doCheck();
+                }
+
+                @Override
+                public void onFilePoll() {
+                    checkFile();
+                }
+            };
 
     public FileWatch(File fileToWatch, Listener listener) {
         this(fileToWatch, 30000, true, listener);
@@ -39,7 +55,8 @@ public class FileWatch extends MHousekeeperTask {
     /**
      * Watch a file or directory (one level!) against changes. Check the modify date to recognize a
      * change. It has two ways to work: 1. Manual check, every time you use the file, call the
-     * checkFile() method. 2. Use of a timer.
+     * checkFile() method. 2. Use of the shared FileWatchService, changes are signaled by the file
+     * system or, if not possible, the file is checked every period.
      *
      * @param fileToWatch
      * @param period
@@ -54,29 +71,34 @@ public class FileWatch extends MHousekeeperTask {
         setName(file.getName());
     }
 
-    public FileWatch doStart() {
+    public synchronized FileWatch doStart() {
         if (started) return this;
-        started = true; // do not need sync...
+        started = true;
 
         if (!file.exists()) log().w("file not found", file);
 
         if (startHook) checkFile(); // init
 
-        if (!registered) {
-            MHousekeeper housekeeper = M.l(MHousekeeper.class);
-            housekeeper.register(this, period);
-            registered = true;
-        }
+        nativeWatch = FileWatchService.get().register(watcher);
+        // events are only compared against a known state
+        if (nativeWatch && modified == -2) doCheck();
         return this;
     }
 
-    public FileWatch doStop() {
+    public synchronized FileWatch doStop() {
         if (!started) return this;
+        started = false;
+        FileWatchService.get().unregister(watcher);
         return this;
     }
 
+    /** Check the file if the period is over since the last check. */
     public void checkFile() {
         if (System.currentTimeMillis() - lastRun < period) return;
+        doCheck();
+    }
+
+    protected synchronized void doCheck() {
         lastRun = System.currentTimeMillis();
         try {
             long modSum = 0;
@@ -107,6 +129,15 @@ public class FileWatch extends MHousekeeperTask {
         return file;
     }
 
+    /**
+     * Returns true if changes are signaled by the file system.
+     *
+     * @return true if native watched
+     */
+    public boolean isNativeWatch() {
+        return nativeWatch;
+    }
+
     @Override
     public String toString() {
         return file != null ? file.getAbsolutePath() : "?";
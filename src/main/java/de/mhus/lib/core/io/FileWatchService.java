@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.io;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import de.mhus.lib.core.MLog;
+import de.mhus.lib.core.cfg.CfgBoolean;
+import de.mhus.lib.core.cfg.CfgLong;
+
+/**
+ * One shared thread serving all file watchers. The directories of the watched files are registered
+ * at the WatchService of the file system (inotify on linux). Watchers which can't be registered,
+ * e.g. the directory does not exist, are polled by the same thread.
+ *
+ * <p>The watchers are held weak like the tasks of the housekeeper. The owner of a watcher must
+ * hold a reference to it, a watcher is dropped after its owner was garbage collected.
+ */
+public class FileWatchService extends MLog {
+
+    private static final CfgBoolean CFG_NATIVE =
+            new CfgBoolean(FileWatchService.class, "native", true);
+    private static final CfgLong CFG_POLL_INTERVAL =
+            new CfgLong(FileWatchService.class, "pollInterval", 1000);
+
+    private static FileWatchService instance;
+
+    private final Map<Path, Directory> directories = new ConcurrentHashMap<>();
+    private final Set<WatcherRef> polled = ConcurrentHashMap.newKeySet();
+    private WatchService service;
+    private volatile Thread thread;
+
+    public static synchronized FileWatchService get() {
+        if (instance == null) instance = new FileWatchService();
+        return instance;
+    }
+
+    /**
+     * Register the watcher. The watcher should be unregistered if it is no more needed, it is held
+     * weak and dropped if the owner was garbage collected.
+     *
+     * @param watcher
+     * @return true if the file system signals changes, false if the watcher is polled
+     */
+    public synchronized boolean register(Watcher watcher) {
+        start();
+        if (registerNative(watcher)) return true;
+        polled.add(new WatcherRef(watcher, null));
+        return false;
+    }
+
+    public synchronized void unregister(Watcher watcher) {
+        remove(watcher);
+    }
+
+    // remove the watcher and all garbage collected watchers, null removes only the collected
+    private synchronized void remove(Watcher watcher) {
+        polled.removeIf(ref -> ref.matches(watcher));
+        for (Directory directory : directories.values()) {
+            if (directory.watchers.removeIf(ref -> ref.matches(watcher))
+                    && directory.watchers.isEmpty()) {
+                directory.key.cancel();
+                directories.remove(directory.path);
+            }
+        }
+    }
+
+    public boolean isNative() {
+        return service != null;
+    }
+
+    public int getDirectoryCount() {
+        return directories.size();
+    }
+
+    public int getPolledCount() {
+        return polled.size();
+    }
+
+    private boolean registerNative(Watcher watcher) {
+        if (service == null) return false;
+        Path path = watcher.getWatchedFile().getAbsoluteFile().toPath().normalize();
+        Path dir = path.toFile().isDirectory() ? path : path.getParent();
+        if (dir == null || !dir.toFile().isDirectory()) return false;
+        Directory directory = directories.get(dir);
+        if (directory == null) {
+            try {
+                WatchKey key = dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                directory = new Directory(dir, key);
+                directories.put(dir, directory);
+            } catch (IOException | UnsupportedOperationException e) {
+                log().d("can't watch directory", dir, e);
+                return false;
+            }
+        }
+        directory.watchers.add(new WatcherRef(watcher, path));
+        return true;
+    }
+
+    private void start() {
+        if (thread != null) return;
+        if (CFG_NATIVE.value()) {
+            try {
+                service = FileSystems.getDefault().newWatchService();
+            } catch (IOException | UnsupportedOperationException e) {
+                log().i("file system watch service not available, use polling", e);
+            }
+        }
+        thread = new Thread(this::doWatchLoop, "mhus-file-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    protected void doWatchLoop() {
+        long nextPoll = System.currentTimeMillis();
+        while (true) {
+            try {
+                long wait = nextPoll - System.currentTimeMillis();
+                if (wait > 0) {
+                    if (service == null) Thread.sleep(wait);
+                    else {
+                        WatchKey key = service.poll(wait, TimeUnit.MILLISECONDS);
+                        if (key != null) doEvents(key);
+                    }
+                }
+                if (System.currentTimeMillis() >= nextPoll) {
+                    remove(null);
+                    doPoll();
+                    nextPoll = System.currentTimeMillis() + CFG_POLL_INTERVAL.value();
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable t) {
+                log().e(t);
+            }
+        }
+    }
+
+    protected void doEvents(WatchKey first) {
+        // collect all pending events, every watcher is called once
+        Set<Watcher> changed = new HashSet<>();
+        WatchKey key = first;
+        while (key != null) {
+            Directory directory = directories.get((Path) key.watchable());
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (directory == null) continue;
+                Object name = event.kind() == OVERFLOW ? null : event.context();
+                for (WatcherRef ref : directory.watchers) {
+                    Path path = ref.path;
+                    Watcher watcher = ref.get();
+                    if (watcher == null) continue;
+                    if (name == null
+                            || path.equals(directory.path)
+                            || name.equals(path.getFileName())) changed.add(watcher);
+                }
+            }
+            if (!key.reset() && directory != null) {
+                // directory is gone, fall back to polling
+                synchronized (this) {
+                    directories.remove(directory.path);
+                    for (WatcherRef ref : directory.watchers) {
+                        Watcher watcher = ref.get();
+                        if (watcher == null) continue;
+                        polled.add(new WatcherRef(watcher, null));
+                        changed.add(watcher);
+                    }
+                }
+            }
+            key = service.poll();
+        }
+        for (Watcher watcher : changed) {
+            try {
+                watcher.onFileEvent();
+            } catch (Throwable t) {
+                log().e(watcher, t);
+            }
+        }
+    }
+
+    protected void doPoll() {
+        for (WatcherRef ref : polled) {
+            Watcher watcher = ref.get();
+            if (watcher == null) continue;
+            try {
+                boolean upgraded = false;
+                if (service != null) {
+                    synchronized (this) {
+                        upgraded = polled.contains(ref) && registerNative(watcher);
+                        if (upgraded) polled.remove(ref);
+                    }
+                }
+                if (upgraded) watcher.onFileEvent();
+                else watcher.onFilePoll();
+            } catch (Throwable t) {
+                log().e(watcher, t);
+            }
+        }
+    }
+
+    /** Receives the changes of a file or directory. */
+    public interface Watcher {
+
+        File getWatchedFile();
+
+        /** Called if the file system signals a change of the file or the directory content. */
+        void onFileEvent();
+
+        /** Called periodically if the watcher is not registered at the file system. */
+        void onFilePoll();
+    }
+
+    private static class Directory {
+
+        private final Path path;
+        private final WatchKey key;
+        private final Set<WatcherRef> watchers = ConcurrentHashMap.newKeySet();
+
+        private Directory(Path path, WatchKey key) {
+            this.path = path;
+            this.key = key;
+        }
+    }
+
+    private static class WatcherRef extends WeakReference<Watcher> {
+
+        private final Path path;
+
+        private WatcherRef(Watcher watcher, Path path) {
+            super(watcher);
+            this.path = path;
+        }
+
+        private boolean matches(Watcher watcher) {
+            Watcher current = get();
+            return current == null || current == watcher;
+        }
+    }
+}
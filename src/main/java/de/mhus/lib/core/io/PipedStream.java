@@ -18,20 +18,50 @@ package de.mhus.lib.core.io;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
-import de.mhus.lib.core.MPeriod;
-import de.mhus.lib.core.MThread;
-
+/**
+ * Connects a writing and a reading thread using a ring buffer. Waiting threads are signaled as soon
+ * as data or space is available. After close the reader gets the remaining data and then the end of
+ * the stream.
+ *
+ * <p>Closing the output stream closes the pipe. Writing into a closed pipe throws an IOException.
+ */
 public class PipedStream implements Closeable {
 
-    private CircularByteBuffer byteBuffer = new CircularByteBuffer(10000);
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final byte[] buffer;
+    private int head = 0;
+    private int count = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
     private Out out = new Out();
     private In in = new In();
     private long writeTimeout = -1;
     private long readTimeout = -1;
-    private boolean closed = false;
+    private volatile boolean closed = false;
 
+    public PipedStream() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PipedStream(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * Return the writing side of the pipe. Closing it closes the pipe, the reader gets the end of
+     * the stream after the remaining data.
+     *
+     * @return The output stream
+     */
     public OutputStream getOut() {
         return out;
     }
@@ -56,50 +86,135 @@ public class PipedStream implements Closeable {
         return readTimeout;
     }
 
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    // wait for the condition, returns the left nanos or throws the timeout
+    private long await(Condition condition, long timeout, long nanos, String msg)
+            throws IOException {
+        try {
+            if (timeout < 0) {
+                condition.await();
+                return nanos;
+            }
+            if (nanos <= 0) throw new IOException(msg);
+            return condition.awaitNanos(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(msg);
+        }
+    }
+
+    private int write(byte[] b, int off, int len, long timeout, long nanos) throws IOException {
+        lock.lock();
+        try {
+            while (count == buffer.length) {
+                if (closed) throw new IOException("closed");
+                nanos = await(notFull, timeout, nanos, "write timeout");
+            }
+            if (closed) throw new IOException("closed");
+            int n = Math.min(len, buffer.length - count);
+            int tail = (head + count) % buffer.length;
+            int first = Math.min(n, buffer.length - tail);
+            System.arraycopy(b, off, buffer, tail, first);
+            if (n > first) System.arraycopy(b, off + first, buffer, 0, n - first);
+            count += n;
+            notEmpty.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int read(byte[] b, int off, int len, long timeout) throws IOException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            while (count == 0) {
+                if (closed) return -1;
+                nanos = await(notEmpty, timeout, nanos, "read timeout");
+            }
+            int n = Math.min(len, count);
+            int first = Math.min(n, buffer.length - head);
+            System.arraycopy(buffer, head, b, off, first);
+            if (n > first) System.arraycopy(buffer, 0, b, off + first, n - first);
+            head = (head + n) % buffer.length;
+            count -= n;
+            notFull.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private class Out extends OutputStream {
 
         @Override
         public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
 
-            //            if (closed) throw new EOFException();
-            long start = System.currentTimeMillis();
-            while (byteBuffer.isNearlyFull()) {
-                MThread.sleep(200);
-                if (MPeriod.isTimeOut(start, writeTimeout)) throw new IOException("write timeout");
-            }
-            synchronized (PipedStream.this) {
-                //                System.out.println("Write: " + (char)b + " (" + b + ")");
-                byteBuffer.putInt(b);
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+            long timeout = writeTimeout;
+            long start = System.nanoTime();
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (len > 0) {
+                int n =
+                        PipedStream.this.write(
+                                b, off, len, timeout, nanos - (System.nanoTime() - start));
+                off += n;
+                len -= n;
             }
         }
+
+        @Override
+        public void close() {
+            PipedStream.this.close();
+        }
     }
 
     private class In extends InputStream {
 
+        private final byte[] single = new byte[1];
+
         @Override
         public int read() throws IOException {
-
-            long start = System.currentTimeMillis();
-            while (byteBuffer.isEmpty()) {
-                if (closed) return -1; // EOFException ?
-                MThread.sleep(200);
-                if (MPeriod.isTimeOut(start, readTimeout)) throw new IOException("read timeout");
-            }
-            synchronized (PipedStream.this) {
-                byte o = byteBuffer.get();
-                //               System.err.println("Read: " + (char)o + "(" + o + ")");
-                return o;
+            synchronized (single) {
+                int n = PipedStream.this.read(single, 0, 1, readTimeout);
+                return n < 0 ? -1 : single[0] & 0xFF;
             }
         }
 
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+            if (len == 0) return 0;
+            return PipedStream.this.read(b, off, len, readTimeout);
+        }
+
         @Override
         public int available() throws IOException {
-            return byteBuffer.length();
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
     @Override
     public void close() {
-        closed = true;
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 }
@@ -17,60 +17,150 @@ package de.mhus.lib.core.io;
 
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 
+/**
+ * Reads the content appended to a file. If no content is available the stream waits for a change
+ * signaled by the FileWatchService. A rotated file (new file key) or truncated file is read from
+ * the beginning. Close the stream to release the watcher.
+ */
 public class TailInputStream extends InputStream {
 
+    private static final long POLL_INTERVAL = 200;
+    private static final long WATCH_INTERVAL = 2000;
+
     private File file;
     private long pos;
-    private FileInputStream is;
-    private boolean closed = false;
+    private FileChannel channel;
+    private Object fileKey;
+    private ByteBuffer buffer = ByteBuffer.allocate(8192);
+    private volatile boolean closed = false;
+    private boolean changed = false;
+    private boolean nativeWatch;
+    private final FileWatchService.Watcher watcher =
+            new FileWatchService.Watcher() {
+
+                @Override
+                public File getWatchedFile() {
+                    return file;
+                }
+
+                @Override
+                public void onFileEvent() {
+                    signal();
+                }
+
+                @Override
+                public void onFilePoll() {}
+            };
 
     public TailInputStream(File file) throws IOException {
         this.file = file;
+        buffer.flip();
         clean();
+        nativeWatch = FileWatchService.get().register(watcher);
     }
 
     @Override
     public int read() throws IOException {
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            int n = read(buffer);
+            buffer.flip();
+            if (n < 0) return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
 
-        if (closed) throw new EOFException();
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        if (buffer.hasRemaining()) {
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+        return read(ByteBuffer.wrap(b, off, len));
+    }
 
-        long size = file.length();
-        while (size == pos) {
-            try {
-                Thread.sleep(200);
-            } catch (InterruptedException e) {
-                throw new EOFException();
-            }
-            if (Thread.currentThread().isInterrupted()) throw new EOFException();
+    private int read(ByteBuffer dst) throws IOException {
+        while (true) {
             if (closed) throw new EOFException();
-            size = file.length();
-        }
-        if (size < pos) {
-            pos = 0;
-            try {
-                is.close();
-            } catch (Throwable t) {
+            long size = channel.size();
+            if (size < pos) pos = 0; // truncated
+            if (size > pos) {
+                int n = channel.read(dst, pos);
+                if (n > 0) {
+                    pos += n;
+                    return n;
+                }
             }
-            is = new FileInputStream(file);
+            // the old file is completely read, check for a new one
+            if (isRotated()) {
+                open();
+                continue;
+            }
+            waitForChange();
+        }
+    }
+
+    private synchronized void signal() {
+        changed = true;
+        notifyAll();
+    }
+
+    private synchronized void waitForChange() throws IOException {
+        try {
+            if (!changed) wait(nativeWatch ? WATCH_INTERVAL : POLL_INTERVAL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EOFException();
+        }
+        changed = false;
+        if (Thread.currentThread().isInterrupted()) throw new EOFException();
+    }
+
+    private boolean isRotated() {
+        if (fileKey == null) return false;
+        Object key = getFileKey();
+        return key != null && !key.equals(fileKey);
+    }
+
+    private Object getFileKey() {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void open() throws IOException {
+        FileChannel old = channel;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileKey = getFileKey();
+        pos = 0;
+        try {
+            if (old != null) old.close();
+        } catch (Throwable t) {
         }
-        int ret = is.read();
-        if (ret >= 0) pos++;
-        return ret;
     }
 
     public long delta() {
         long size = file.length();
-        if (size > pos) return size - pos;
-        return size;
+        if (size >= pos) return size - pos;
+        return size; // truncated
     }
 
     @Override
     public int available() {
-        long size = delta();
+        long size = delta() + buffer.remaining();
         if (size > Integer.MAX_VALUE) return Integer.MAX_VALUE;
         return (int) size;
     }
@@ -78,17 +168,16 @@ public class TailInputStream extends InputStream {
     @Override
     public void close() throws IOException {
         closed = true;
-        if (is != null) is.close();
+        FileWatchService.get().unregister(watcher);
+        signal();
+        if (channel != null) channel.close();
         super.close();
     }
 
     public void clean() throws IOException {
-        this.pos = file.length();
-        try {
-            if (is != null) is.close();
-        } catch (Throwable t) {
-        }
-        is = new FileInputStream(file);
-        is.skip(pos);
+        open();
+        pos = channel.size();
+        buffer.clear();
+        buffer.flip();
     }
 }
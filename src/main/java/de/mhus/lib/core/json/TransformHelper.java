@@ -21,11 +21,21 @@ import java.lang.reflect.InvocationTargetException;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import de.mhus.lib.core.MJson;
+import de.mhus.lib.core.pojo.CachedPojoModelFactory;
 import de.mhus.lib.core.pojo.DefaultFilter;
 import de.mhus.lib.core.pojo.PojoModel;
+import de.mhus.lib.core.pojo.PojoModelFactory;
 import de.mhus.lib.core.pojo.PojoParser;
 
 public class TransformHelper {
+
+    private static final PojoModelFactory MODEL_FACTORY =
+            new CachedPojoModelFactory(
+                    pojoClass ->
+                            new PojoParser()
+                                    .parse(pojoClass, "_", null)
+                                    .filter(new DefaultFilter(true, false, true, true, true))
+                                    .getModel());
     int level = 0;
     protected String prefix = "";
     protected TransformStrategy strategy = MJson.DEFAULT_STRATEGY;
@@ -102,12 +112,8 @@ public class TransformHelper {
     }
 
     public PojoModel createPojoModel(Object from) {
-        PojoModel model =
-                new PojoParser()
-                        .parse(from, "_", null)
-                        .filter(new DefaultFilter(true, false, true, true, true))
-                        .getModel();
-        return model;
+        return MODEL_FACTORY.createPojoModel(
+                from instanceof Class ? (Class<?>) from : from.getClass());
     }
 
     public void log(String msg) {
@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import de.mhus.lib.core.MSystem;
+
+/**
+ * Decouples the logging threads from the output. The events are stored in a lock-free ring buffer
+ * and written by a dedicated thread in batches, the sink is flushed once per batch.
+ */
+public class AsyncLogAppender {
+
+    public enum POLICY {
+        /** Wait until the writer has free space */
+        BLOCK,
+        /** Drop the event if the buffer is full */
+        DROP,
+        /** Drop events below WARN if the buffer is full, wait for others */
+        DROP_BELOW_WARN
+    }
+
+    public interface Sink {
+
+        void write(Event event);
+
+        void flush();
+    }
+
+    public static class Event {
+        private final long time;
+        private final Log.LEVEL level;
+        private final Object message;
+        private final Throwable error;
+
+        public Event(Log.LEVEL level, Object message, Throwable error) {
+            this.time = System.currentTimeMillis();
+            this.level = level;
+            this.message = message;
+            this.error = error;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public Log.LEVEL getLevel() {
+            return level;
+        }
+
+        public Object getMessage() {
+            return message;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    private static final int MAX_BATCH = 1024;
+    private static final long IDLE_PARK = 100 * 1000 * 1000; // 100 ms
+
+    private final Sink sink;
+    private final POLICY policy;
+    private final int mask;
+    private final AtomicReferenceArray<Event> slots;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private volatile boolean running = true;
+    private volatile boolean idle;
+    private final Thread writer;
+    private final Thread shutdownHook;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private volatile long maxLatency;
+
+    /**
+     * Create and start the appender.
+     *
+     * @param name Name of the writer thread
+     * @param capacity Size of the buffer, will be rounded up to a power of two
+     * @param policy Behavior if the buffer is full
+     * @param sink The output
+     */
+    public AsyncLogAppender(String name, int capacity, POLICY policy, Sink sink) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.policy = policy == null ? POLICY.BLOCK : policy;
+        this.sink = sink;
+        writer = new Thread(this::doWrite, "log-" + name);
+        writer.setDaemon(true);
+        writer.start();
+        shutdownHook = new Thread(this::close);
+        try {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // already in shutdown
+        }
+    }
+
+    /**
+     * Append the event. If the appender is closed the event is written directly.
+     *
+     * @param event
+     * @return false if the event was dropped
+     */
+    public boolean append(Event event) {
+        if (!running) {
+            synchronized (this) {
+                sink.write(event);
+                sink.flush();
+            }
+            return true;
+        }
+        boolean mayDrop =
+                policy == POLICY.DROP
+                        || policy == POLICY.DROP_BELOW_WARN
+                                && event.getLevel().ordinal() < Log.LEVEL.WARN.ordinal();
+        while (true) {
+            long t = tail.get();
+            if (t - head >= slots.length()) {
+                if (mayDrop || !running) {
+                    dropped.increment();
+                    return false;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(10000);
+                continue;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                slots.lazySet((int) (t & mask), event);
+                if (idle) LockSupport.unpark(writer);
+                return true;
+            }
+        }
+    }
+
+    private void doWrite() {
+        while (running || head != tail.get()) {
+            int cnt = 0;
+            long now = System.currentTimeMillis();
+            while (cnt < MAX_BATCH) {
+                int index = (int) (head & mask);
+                Event event = slots.get(index);
+                if (event == null) {
+                    // empty or a producer has not finished storing
+                    if (head != tail.get()) {
+                        Thread.yield();
+                        continue;
+                    }
+                    break;
+                }
+                slots.lazySet(index, null);
+                head++;
+                cnt++;
+                long latency = now - event.getTime();
+                if (latency > maxLatency) maxLatency = latency;
+                try {
+                    synchronized (this) {
+                        sink.write(event);
+                    }
+                } catch (Throwable t) {
+                    System.err.println("*** Async log writer failed: " + t);
+                }
+            }
+            if (cnt > 0) {
+                written.add(cnt);
+                try {
+                    synchronized (this) {
+                        sink.flush();
+                    }
+                } catch (Throwable t) {
+                    System.err.println("*** Async log flush failed: " + t);
+                }
+                continue;
+            }
+            idle = true;
+            if (head == tail.get() && running) LockSupport.parkNanos(this, IDLE_PARK);
+            idle = false;
+        }
+    }
+
+    /** Write all pending events and stop the writer thread. */
+    public void close() {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(writer);
+        if (Thread.currentThread() != writer) {
+            try {
+                writer.join(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // already in shutdown
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public POLICY getPolicy() {
+        return policy;
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Return the number of events waiting in the buffer.
+     *
+     * @return Number of events
+     */
+    public int getPending() {
+        return (int) (tail.get() - head);
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Return the biggest time between appending and writing an event.
+     *
+     * @return latency in milliseconds
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    @Override
+    public String toString() {
+        return MSystem.toString(this, policy, getPending(), getDropped(), getWritten());
+    }
+}
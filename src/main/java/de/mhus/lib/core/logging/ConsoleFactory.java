@@ -131,6 +131,7 @@ public class ConsoleFactory extends LogFactory {
 
     public void setLevel(Log.LEVEL level) {
         this.level = level;
+        Log.invalidateLevels();
     }
 
     private class ConsoleLog extends LogEngine {
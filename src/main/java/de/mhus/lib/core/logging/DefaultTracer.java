@@ -72,6 +72,7 @@ public class DefaultTracer extends MLog implements ITracer {
                     String value = options.getString("level", null);
                     if (value != null) {
                         span.setBaggageItem(MLog.LOG_LEVEL_MAPPING, value);
+                        Log.setLevelMapping(true);
                     }
                 }
                 activation = activation.substring(0, p);
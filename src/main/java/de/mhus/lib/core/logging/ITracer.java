@@ -23,6 +23,7 @@ import java.util.Map.Entry;
 import de.mhus.lib.annotations.activator.DefaultImplementation;
 import de.mhus.lib.core.IProperties;
 import de.mhus.lib.core.MApi;
+import de.mhus.lib.core.MLog;
 import de.mhus.lib.core.MProperties;
 import io.opentracing.Scope;
 import io.opentracing.Span;
@@ -129,7 +130,12 @@ public interface ITracer {
 
     public static SpanContext deserialize(IProperties prop) {
         Map<String, String> copy = new HashMap<String, String>();
-        prop.forEach((k, v) -> copy.put(k, String.valueOf(v)));
+        prop.forEach(
+                (k, v) -> {
+                    copy.put(k, String.valueOf(v));
+                    // the baggage key is prefixed by the tracer
+                    if (k.endsWith(MLog.LOG_LEVEL_MAPPING)) Log.setLevelMapping(true);
+                });
         SpanContext parentSpanCtx =
                 ITracer.get()
                         .tracer()
@@ -56,6 +56,16 @@ public class Log {
     //    protected UUID id = UUID.randomUUID();
     private static int maxMsgSize = 0;
     private static boolean verbose = false;
+    private static final int INFO_MASK = 1 << LEVEL.INFO.ordinal();
+    private static final int MAX_BUFFER_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<LogBuffer> LOG_BUFFER =
+            ThreadLocal.withInitial(LogBuffer::new);
+    private static volatile int levelGeneration;
+    private volatile int enabledLevels;
+    private volatile int enabledLevelsGeneration = -1;
+    private volatile int tracerGeneration = -1;
+    // set if a span could request a level mapping, see setLevelMapping()
+    private static volatile boolean levelMapping;
 
     public Log(Object owner) {
 
@@ -89,87 +99,55 @@ public class Log {
         log(LEVEL.TRACE, msg);
     }
 
+    public void t(Object msg1) {
+        if (isLogging(LEVEL.TRACE)) log(LEVEL.TRACE, new Object[] {msg1});
+    }
+
+    public void t(Object msg1, Object msg2) {
+        if (isLogging(LEVEL.TRACE)) log(LEVEL.TRACE, new Object[] {msg1, msg2});
+    }
+
+    public void t(Object msg1, Object msg2, Object msg3) {
+        if (isLogging(LEVEL.TRACE)) log(LEVEL.TRACE, new Object[] {msg1, msg2, msg3});
+    }
+
+    public void t(Object msg1, Object msg2, Object msg3, Object msg4) {
+        if (isLogging(LEVEL.TRACE)) log(LEVEL.TRACE, new Object[] {msg1, msg2, msg3, msg4});
+    }
+
     public void log(LEVEL level, Object... msg) {
         if (engine == null) return;
 
-        // level mapping
-        Span span = null;
-        // avoid stack overload
-        if (lookingForSpan.get() == null) {
-            try {
-                lookingForSpan.set("");
-                span = getITracer().current();
-            } catch (Throwable t) {
-                System.out.println("*** Error looking for ITracer span: " + name + " " + t);
-            } finally {
-                lookingForSpan.remove();
-            }
-        }
         if (verbose) {
             if (level == LEVEL.DEBUG) level = LEVEL.INFO;
         }
-        if (span != null) {
-            String mapping = span.getBaggageItem(MLog.LOG_LEVEL_MAPPING);
-            if (mapping != null) {
-                switch (mapping) {
-                    case "trace":
-                        if (level == LEVEL.TRACE) level = LEVEL.INFO;
-                    case "debug":
-                        if (level == LEVEL.DEBUG) level = LEVEL.INFO;
-                }
-            }
-        }
-
-        switch (level) {
-            case DEBUG:
-                if (!engine.isDebugEnabled()) return;
-                break;
-            case ERROR:
-                if (!engine.isErrorEnabled()) return;
-                break;
-            case FATAL:
-                if (!engine.isFatalEnabled()) return;
-                break;
-            case INFO:
-                if (!engine.isInfoEnabled()) return;
-                break;
-            case TRACE:
-                if (!engine.isTraceEnabled()) return;
-                break;
-            case WARN:
-                if (!engine.isWarnEnabled()) return;
-                break;
-            default:
-                return;
-        }
+        int enabled = getEnabledLevels();
+        if ((enabled & (1 << level.ordinal())) == 0) {
+            // the span can only map TRACE and DEBUG to INFO
+            if (!isMappable(level, enabled)) return;
+            level = mapLevel(level);
+            if ((enabled & (1 << level.ordinal())) == 0) return;
+        } else if (levelMapping && (level == LEVEL.TRACE || level == LEVEL.DEBUG))
+            level = mapLevel(level);
 
         if (parameterMapper != null) msg = parameterMapper.map(this, msg);
 
-        StringBuilder sb = new StringBuilder();
-        prepare(sb);
-        Throwable error = MString.serialize(sb, msg, maxMsgSize, maxMsgSizeExceptions);
-
-        switch (level) {
-            case DEBUG:
-                engine.debug(sb.toString(), error);
-                break;
-            case ERROR:
-                engine.error(sb.toString(), error);
-                break;
-            case FATAL:
-                engine.fatal(sb.toString(), error);
-                break;
-            case INFO:
-                engine.info(sb.toString(), error);
-                break;
-            case TRACE:
-                engine.trace(sb.toString(), error);
-                break;
-            case WARN:
-                engine.warn(sb.toString(), error);
-                break;
-            default:
-                break;
+        LogBuffer buffer = LOG_BUFFER.get();
+        // a message parameter could log while serializing, use a new buffer in this case
+        StringBuilder sb = buffer.inUse ? new StringBuilder() : buffer.sb;
+        boolean reused = sb == buffer.sb;
+        buffer.inUse = true;
+        try {
+            sb.setLength(0);
+            prepare(sb);
+            Throwable error = MString.serialize(sb, msg, maxMsgSize, maxMsgSizeExceptions);
+            engine.log(level, sb, error);
+        } finally {
+            if (reused) {
+                buffer.inUse = false;
+                if (sb.capacity() > MAX_BUFFER_CAPACITY) buffer.sb = new StringBuilder(256);
+                else sb.setLength(0);
+            }
         }
 
         if (stacktraceTrace) {
@@ -180,11 +158,13 @@ public class Log {
     }
 
     private ITracer getITracer() {
+        if (tracerGeneration == levelGeneration) return tracer;
         if (tracer == null) {
             if (tracerStartup) return null;
             tracerStartup = true;
         }
         if (!tracerInError) {
+            tracerGeneration = levelGeneration;
             try {
                 tracer = ITracer.get();
             } catch (ClassCastException e) {
@@ -271,6 +251,22 @@ public class Log {
         log(LEVEL.DEBUG, msg);
     }
 
+    public void d(Object msg1) {
+        if (isLogging(LEVEL.DEBUG)) log(LEVEL.DEBUG, new Object[] {msg1});
+    }
+
+    public void d(Object msg1, Object msg2) {
+        if (isLogging(LEVEL.DEBUG)) log(LEVEL.DEBUG, new Object[] {msg1, msg2});
+    }
+
+    public void d(Object msg1, Object msg2, Object msg3) {
+        if (isLogging(LEVEL.DEBUG)) log(LEVEL.DEBUG, new Object[] {msg1, msg2, msg3});
+    }
+
+    public void d(Object msg1, Object msg2, Object msg3, Object msg4) {
+        if (isLogging(LEVEL.DEBUG)) log(LEVEL.DEBUG, new Object[] {msg1, msg2, msg3, msg4});
+    }
+
     /**
      * Log a message in info, it will automatically append the objects if debug is enabled. Can Also
      * add a trace.
@@ -281,6 +277,22 @@ public class Log {
         log(LEVEL.INFO, msg);
     }
 
+    public void i(Object msg1) {
+        if (isLogging(LEVEL.INFO)) log(LEVEL.INFO, new Object[] {msg1});
+    }
+
+    public void i(Object msg1, Object msg2) {
+        if (isLogging(LEVEL.INFO)) log(LEVEL.INFO, new Object[] {msg1, msg2});
+    }
+
+    public void i(Object msg1, Object msg2, Object msg3) {
+        if (isLogging(LEVEL.INFO)) log(LEVEL.INFO, new Object[] {msg1, msg2, msg3});
+    }
+
+    public void i(Object msg1, Object msg2, Object msg3, Object msg4) {
+        if (isLogging(LEVEL.INFO)) log(LEVEL.INFO, new Object[] {msg1, msg2, msg3, msg4});
+    }
+
     /**
      * Log a message in warn, it will automatically append the objects if debug is enabled. Can Also
      * add a trace.
@@ -291,6 +303,22 @@ public class Log {
         log(LEVEL.WARN, msg);
     }
 
+    public void w(Object msg1) {
+        if (isLogging(LEVEL.WARN)) log(LEVEL.WARN, new Object[] {msg1});
+    }
+
+    public void w(Object msg1, Object msg2) {
+        if (isLogging(LEVEL.WARN)) log(LEVEL.WARN, new Object[] {msg1, msg2});
+    }
+
+    public void w(Object msg1, Object msg2, Object msg3) {
+        if (isLogging(LEVEL.WARN)) log(LEVEL.WARN, new Object[] {msg1, msg2, msg3});
+    }
+
+    public void w(Object msg1, Object msg2, Object msg3, Object msg4) {
+        if (isLogging(LEVEL.WARN)) log(LEVEL.WARN, new Object[] {msg1, msg2, msg3, msg4});
+    }
+
     /**
      * Log a message in error, it will automatically append the objects if debug is enabled. Can
      * Also add a trace.
@@ -301,6 +329,22 @@ public class Log {
         log(LEVEL.ERROR, msg);
     }
 
+    public void e(Object msg1) {
+        if (isLogging(LEVEL.ERROR)) log(LEVEL.ERROR, new Object[] {msg1});
+    }
+
+    public void e(Object msg1, Object msg2) {
+        if (isLogging(LEVEL.ERROR)) log(LEVEL.ERROR, new Object[] {msg1, msg2});
+    }
+
+    public void e(Object msg1, Object msg2, Object msg3) {
+        if (isLogging(LEVEL.ERROR)) log(LEVEL.ERROR, new Object[] {msg1, msg2, msg3});
+    }
+
+    public void e(Object msg1, Object msg2, Object msg3, Object msg4) {
+        if (isLogging(LEVEL.ERROR)) log(LEVEL.ERROR, new Object[] {msg1, msg2, msg3, msg4});
+    }
+
     /**
      * Log a message in info, it will automatically append the objects if debug is enabled. Can Also
      * add a trace.
@@ -311,6 +355,45 @@ public class Log {
         log(LEVEL.FATAL, msg);
     }
 
+    public void f(Object msg1) {
+        if (isLogging(LEVEL.FATAL)) log(LEVEL.FATAL, new Object[] {msg1});
+    }
+
+    public void f(Object msg1, Object msg2) {
+        if (isLogging(LEVEL.FATAL)) log(LEVEL.FATAL, new Object[] {msg1, msg2});
+    }
+
+    public void f(Object msg1, Object msg2, Object msg3) {
+        if (isLogging(LEVEL.FATAL)) log(LEVEL.FATAL, new Object[] {msg1, msg2, msg3});
+    }
+
+    public void f(Object msg1, Object msg2, Object msg3, Object msg4) {
+        if (isLogging(LEVEL.FATAL)) log(LEVEL.FATAL, new Object[] {msg1, msg2, msg3, msg4});
+    }
+
+    /**
+     * Fast check if a message in this level could be written. Used to avoid creating the
+     * parameter array.
+     *
+     * @param level
+     * @return false if the message will not be written
+     */
+    private boolean isLogging(LEVEL level) {
+        if (engine == null) return false;
+        // verbose logs DEBUG as INFO, see log()
+        if (verbose && level == LEVEL.DEBUG) level = LEVEL.INFO;
+        int enabled = getEnabledLevels();
+        if ((enabled & (1 << level.ordinal())) != 0) return true;
+        // could be mapped to INFO
+        return isMappable(level, enabled);
+    }
+
+    private static boolean isMappable(LEVEL level, int enabled) {
+        return levelMapping
+                && (level == LEVEL.TRACE || level == LEVEL.DEBUG)
+                && (enabled & INFO_MASK) != 0;
+    }
+
     protected void prepare(StringBuilder sb) {
         sb.append('[').append(Thread.currentThread().getId()).append(']');
     }
@@ -349,6 +432,8 @@ public class Log {
 
     public void update() {
         engine = MApi.get().getLogFactory().getInstance(getName());
+        enabledLevelsGeneration = -1;
+        tracerGeneration = -1;
         localTrace = MApi.isTrace(name);
         parameterMapper = MApi.get().getLogFactory().getParameterMapper();
         maxMsgSize = MApi.get().getLogFactory().getMaxMessageSize();
@@ -371,45 +456,89 @@ public class Log {
 
         if (localTrace) level = LEVEL.INFO;
 
-        // level mapping
-        Span span = null;
+        int enabled = getEnabledLevels();
+        if ((enabled & (1 << level.ordinal())) != 0) return true;
+        if (!isMappable(level, enabled)) return false;
+        level = mapLevel(level);
+        return (enabled & (1 << level.ordinal())) != 0;
+    }
+
+    /**
+     * Map TRACE and DEBUG to INFO if the current span requests it.
+     *
+     * @param level
+     * @return The mapped level
+     */
+    protected LEVEL mapLevel(LEVEL level) {
         // avoid stack overload
-        if (lookingForSpan.get() == null) {
-            try {
-                lookingForSpan.set("");
-                span = getITracer().current();
-            } finally {
-                lookingForSpan.remove();
-            }
+        if (lookingForSpan.get() != null) return level;
+        Span span = null;
+        try {
+            lookingForSpan.set("");
+            ITracer t = getITracer();
+            if (t != null) span = t.current();
+        } catch (Throwable t) {
+            System.out.println("*** Error looking for ITracer span: " + name + " " + t);
+        } finally {
+            lookingForSpan.remove();
         }
         if (span != null) {
             String mapping = span.getBaggageItem(MLog.LOG_LEVEL_MAPPING);
             if (mapping != null) {
                 switch (mapping) {
                     case "trace":
-                        if (level == LEVEL.TRACE) return engine.isInfoEnabled();
+                        if (level == LEVEL.TRACE) return LEVEL.INFO;
                     case "debug":
-                        if (level == LEVEL.DEBUG) return engine.isInfoEnabled();
+                        if (level == LEVEL.DEBUG) return LEVEL.INFO;
                 }
             }
         }
+        return level;
+    }
 
-        switch (level) {
-            case DEBUG:
-                return engine.isDebugEnabled();
-            case ERROR:
-                return engine.isErrorEnabled();
-            case FATAL:
-                return engine.isFatalEnabled();
-            case INFO:
-                return engine.isInfoEnabled();
-            case TRACE:
-                return engine.isTraceEnabled();
-            case WARN:
-                return engine.isWarnEnabled();
-            default:
-                return false;
+    /**
+     * Return the enabled levels of the engine as bit mask (1 &lt;&lt; LEVEL.ordinal()). The value
+     * is cached until update() or invalidateLevels() is called.
+     *
+     * @return The bit mask
+     */
+    protected int getEnabledLevels() {
+        int generation = levelGeneration;
+        if (enabledLevelsGeneration != generation) {
+            LogEngine e = engine;
+            int mask = 0;
+            if (e != null) {
+                if (e.isTraceEnabled()) mask |= 1 << LEVEL.TRACE.ordinal();
+                if (e.isDebugEnabled()) mask |= 1 << LEVEL.DEBUG.ordinal();
+                if (e.isInfoEnabled()) mask |= 1 << LEVEL.INFO.ordinal();
+                if (e.isWarnEnabled()) mask |= 1 << LEVEL.WARN.ordinal();
+                if (e.isErrorEnabled()) mask |= 1 << LEVEL.ERROR.ordinal();
+                if (e.isFatalEnabled()) mask |= 1 << LEVEL.FATAL.ordinal();
+            }
+            enabledLevels = mask;
+            enabledLevelsGeneration = generation;
         }
+        return enabledLevels;
+    }
+
+    public static boolean isLevelMapping() {
+        return levelMapping;
+    }
+
+    /**
+     * Enable the lookup of the level mapping in the current span. It is enabled automatically if
+     * a span requests a mapping by activation or is deserialized with a mapping. As long as it is
+     * disabled a disabled level returns without accessing the tracer.
+     *
+     * @param levelMapping
+     */
+    public static void setLevelMapping(boolean levelMapping) {
+        Log.levelMapping = levelMapping;
+    }
+
+    /** Force all loggers to reload the enabled levels and the tracer. */
+    public static void invalidateLevels() {
+        levelGeneration++;
     }
 
     public void close() {
@@ -443,6 +572,11 @@ public class Log {
         Log.maxMsgSize = maxMsgSize;
     }
 
+    private static class LogBuffer {
+        private StringBuilder sb = new StringBuilder(256);
+        private boolean inUse;
+    }
+
     //	public UUID getId() {
     //		return id;
     //	}
@@ -177,6 +177,40 @@ public abstract class LogEngine {
      */
     public abstract void fatal(Object message, Throwable t);
 
+    /**
+     * Log the message in the given level. The message is only valid while the call, it could be a
+     * reused buffer. Overwrite to avoid creating a string of the message.
+     *
+     * @param level The level
+     * @param message log this message
+     * @param t log this cause or null
+     */
+    public void log(Log.LEVEL level, CharSequence message, Throwable t) {
+        String msg = message.toString();
+        switch (level) {
+            case TRACE:
+                trace(msg, t);
+                break;
+            case DEBUG:
+                debug(msg, t);
+                break;
+            case INFO:
+                info(msg, t);
+                break;
+            case WARN:
+                warn(msg, t);
+                break;
+            case ERROR:
+                error(msg, t);
+                break;
+            case FATAL:
+                fatal(msg, t);
+                break;
+            default:
+                break;
+        }
+    }
+
     public abstract void doInitialize(LogFactory logFactory);
 
     public abstract void close();
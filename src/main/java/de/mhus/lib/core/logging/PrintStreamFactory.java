@@ -104,6 +104,7 @@ public class PrintStreamFactory extends LogFactory {
 
     public void setLevel(Log.LEVEL level) {
         this.level = level;
+        Log.invalidateLevels();
     }
 
     private class ConsoleLog extends LogEngine {
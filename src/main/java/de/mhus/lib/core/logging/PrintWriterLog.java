@@ -181,6 +181,7 @@ public class PrintWriterLog extends Log {
 
     public void setLevel(Log.LEVEL level) {
         this.level = level;
+        Log.invalidateLevels();
     }
 
     public boolean isTraces() {
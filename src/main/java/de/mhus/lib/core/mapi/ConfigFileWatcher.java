@@ -16,53 +16,51 @@
 package de.mhus.lib.core.mapi;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
-import de.mhus.lib.core.M;
 import de.mhus.lib.core.MApi;
-import de.mhus.lib.core.MHousekeeper;
-import de.mhus.lib.core.MHousekeeperTask;
 import de.mhus.lib.core.MPeriod;
+import de.mhus.lib.core.io.FileWatch;
+import de.mhus.lib.core.logging.MLogUtil;
 
 public class ConfigFileWatcher implements ApiInitialize {
 
-    private HashMap<File, Long> configFiles = new HashMap<>();
-    private MHousekeeperTask fileWatch;
+    private List<FileWatch> configFiles = new ArrayList<>();
+    private FileWatch.Listener listener =
+            new FileWatch.Listener() {
+
+                @Override
+                public void onFileChanged(FileWatch fileWatch) {
+                    doRestart(fileWatch);
+                }
+
+                @Override
+                public void onFileWatchError(FileWatch fileWatch, Throwable t) {
+                    MLogUtil.log().d(fileWatch, t);
+                }
+            };
 
     @Override
     public void doInitialize(ClassLoader coreLoader) {
+        watch(MApi.get().getCfgManager());
+    }
+
+    private synchronized void doRestart(FileWatch fileWatch) {
+        // ignore events of watches replaced by a previous restart
+        if (!configFiles.contains(fileWatch)) return;
         MCfgManager api = MApi.get().getCfgManager();
+        api.doRestart();
+        watch(api);
+    }
+
+    private synchronized void watch(MCfgManager api) {
+        for (FileWatch watch : configFiles) watch.doStop();
+        configFiles.clear();
         for (File file : api.getMhusConfigFiles()) {
-            configFiles.put(file, file.lastModified());
+            configFiles.add(
+                    new FileWatch(file, MPeriod.MINUTE_IN_MILLISECOUNDS, true, listener)
+                            .doStart());
         }
-
-        fileWatch =
-                new MHousekeeperTask("mhus-config-watch") {
-
-                    @Override
-                    protected void doit() throws Exception {
-                        boolean ok = true;
-                        synchronized (configFiles) {
-                            for (Map.Entry<File, Long> entry : configFiles.entrySet()) {
-                                if (entry.getKey().lastModified() != entry.getValue()) {
-                                    ok = false;
-                                    break;
-                                }
-                            }
-                        }
-                        if (!ok) {
-                            MCfgManager api = MApi.get().getCfgManager();
-                            api.doRestart();
-                            configFiles.clear();
-                            for (File file : api.getMhusConfigFiles()) {
-                                configFiles.put(file, file.lastModified());
-                            }
-                        }
-                    }
-                };
-
-        MHousekeeper housekeeper = M.l(MHousekeeper.class);
-        housekeeper.register(fileWatch, MPeriod.MINUTE_IN_MILLISECOUNDS);
     }
 }
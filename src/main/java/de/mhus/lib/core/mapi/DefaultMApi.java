@@ -44,7 +44,7 @@ import de.mhus.lib.core.node.INode;
 
 public class DefaultMApi implements IApi, ApiInitialize, IApiInternal {
 
-    private static ApplicationContext appContext;
+    private static volatile ApplicationContext appContext;
 	protected LogFactory logFactory = new PrintStreamFactory();
     //    private BaseControl baseControl;
     protected MCfgManager configProvider;
@@ -200,6 +200,7 @@ public class DefaultMApi implements IApi, ApiInitialize, IApiInternal {
 
     @Override
     public void updateLog() {
+        Log.invalidateLevels();
         if (mlogFactory == null) return;
         mlogFactory.update();
     }
@@ -209,36 +210,66 @@ public class DefaultMApi implements IApi, ApiInitialize, IApiInternal {
         this.mlogFactory = mlogFactory;
     }
 
-    private HashMap<String, Object> beanCache = new HashMap<>();
-    
+    private final ClassValue<LookupEntry> lookupCache =
+            new ClassValue<LookupEntry>() {
+                @Override
+                protected LookupEntry computeValue(Class<?> type) {
+                    return new LookupEntry();
+                }
+            };
+
     @SuppressWarnings("unchecked")
-	@Override
+    @Override
     public <T, D extends T> T lookup(Class<T> ifc, Class<D> def) {
-    	
-    	String name = ifc.getCanonicalName();
-    	Object obj = beanCache.get(name);
-    	if (obj != null) return (T)obj;
-    	
-    	try {
-    		if (appContext != null) {
-	    		T bean = (T)appContext.getBean(name);
-	    		if (bean != null) {
-	    			beanCache.put(name,bean);
-	    			return bean;
-	    		}
-    		} else
-    			System.out.println("*** appContext not set for " + name);
-    	} catch (NoSuchBeanDefinitionException be) {
-    		System.out.println("*** Bean not explicit defined " + name);
-    	} catch (BeansException be) {
-    		be.printStackTrace();
-    	}
-    	
-        obj =  base.lookup(ifc, def);
-        if (obj != null && appContext != null) {
-			beanCache.put(name,obj);
+        LookupEntry entry = lookupCache.get(ifc);
+        Resolved resolved = entry.resolved;
+        ApplicationContext context = appContext;
+        int stamp = base.getModificationCount();
+        if (resolved != null && resolved.stamp == stamp && resolved.context == context) {
+            if (resolved.bean != null) return (T) resolved.bean;
+            if (resolved.missing && def == null) return null;
+        }
+        return (T) resolve(ifc, def, entry, resolved, context, stamp);
+    }
+
+    private Object resolve(
+            Class<?> ifc,
+            Class<?> def,
+            LookupEntry entry,
+            Resolved last,
+            ApplicationContext context,
+            int stamp) {
+        String name = ifc.getCanonicalName();
+        // the context will not get new bean definitions
+        boolean noBean = last != null && last.context == context && last.noBean;
+        if (context != null && !noBean) {
+            try {
+                Object bean = context.getBean(name);
+                if (bean != null) {
+                    if (context.isSingleton(name))
+                        entry.resolved = new Resolved(bean, false, false, stamp, context);
+                    return bean;
+                }
+            } catch (NoSuchBeanDefinitionException e) {
+                noBean = true;
+                // store before logging, the log could lookup again
+                entry.resolved = new Resolved(null, true, false, stamp, context);
+                MApi.dirtyLogTrace("bean not explicit defined", name);
+            } catch (BeansException e) {
+                MApi.dirtyLogError("can't create bean", name, e);
+            }
         }
-        return (T) obj;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object obj = base.lookup((Class) ifc, (Class) def);
+        if (obj != null) {
+            // prototypes are not stored by the activator and must be created every time
+            boolean singleton = base.isInstance(name);
+            entry.resolved = new Resolved(singleton ? obj : null, noBean, false, stamp, context);
+        } else {
+            entry.resolved = new Resolved(null, noBean, def == null, stamp, context);
+        }
+        return obj;
     }
 
     @Override
@@ -254,9 +285,37 @@ public class DefaultMApi implements IApi, ApiInitialize, IApiInternal {
     @Override
     public <T> void cleanupLookup(Class<T> ifc) {
         base.removeObject(ifc, null);
+        lookupCache.remove(ifc);
+    }
+
+    public static void init(ApplicationContext ctx) {
+        appContext = ctx;
     }
 
-	public static void init(ApplicationContext ctx) {
-		appContext = ctx;
-	}
+    private static class LookupEntry {
+        private volatile Resolved resolved;
+    }
+
+    /** Immutable result of a lookup, valid as long as the activator and the context not change. */
+    private static class Resolved {
+
+        private final Object bean;
+        private final boolean noBean;
+        private final boolean missing;
+        private final int stamp;
+        private final ApplicationContext context;
+
+        private Resolved(
+                Object bean,
+                boolean noBean,
+                boolean missing,
+                int stamp,
+                ApplicationContext context) {
+            this.bean = bean;
+            this.noBean = noBean;
+            this.missing = missing;
+            this.stamp = stamp;
+            this.context = context;
+        }
+    }
 }
@@ -0,0 +1,319 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.matcher;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import de.mhus.lib.core.cfg.CfgInt;
+
+/**
+ * A sql, fs or regex like pattern compiled into a specialised predicate. Patterns which only need a
+ * literal compare (equals, prefix, suffix, contains) are not executed by the regex engine. The
+ * compiled patterns are shared by a cache.
+ */
+public abstract class CompiledPattern implements Predicate<String> {
+
+    private static final CfgInt CFG_CACHE_SIZE =
+            new CfgInt(CompiledPattern.class, "cacheSize", 1000);
+    private static final String REGEX_META = "\\^$.|?*+()[]{}";
+
+    private static final ConcurrentHashMap<String, CompiledPattern> cache =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Use % at the beginning and/or the end and a ! at the beginning for 'not'.
+     *
+     * @param pattern
+     * @return The compiled pattern
+     */
+    public static CompiledPattern sql(String pattern) {
+        return get('s', pattern);
+    }
+
+    /**
+     * Use * at the beginning and/or the end and a ! at the beginning for 'not'.
+     *
+     * @param pattern
+     * @return The compiled pattern
+     */
+    public static CompiledPattern fs(String pattern) {
+        return get('f', pattern);
+    }
+
+    /**
+     * A regular expression which must match the whole string.
+     *
+     * @param pattern
+     * @return The compiled pattern
+     */
+    public static CompiledPattern regex(String pattern) {
+        return get('r', pattern);
+    }
+
+    public static int getCacheSize() {
+        return cache.size();
+    }
+
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    private static CompiledPattern get(char type, String pattern) {
+        String key = type + pattern;
+        CompiledPattern compiled = cache.get(key);
+        if (compiled != null) return compiled;
+        if (type == 'r') compiled = compileRegex(pattern);
+        else compiled = compileLike(pattern, type == 's' ? '%' : '*');
+        if (cache.size() >= CFG_CACHE_SIZE.value()) cache.clear();
+        cache.put(key, compiled);
+        return compiled;
+    }
+
+    private static CompiledPattern compileLike(String pattern, char wildcard) {
+        boolean not = false;
+        if (pattern.startsWith("!")) {
+            not = true;
+            pattern = pattern.substring(1);
+        }
+        CompiledPattern ret = compileLiteral(pattern, wildcard);
+        return not ? new Not(ret) : ret;
+    }
+
+    private static CompiledPattern compileLiteral(String pattern, char wildcard) {
+        int len = pattern.length();
+        boolean start = len > 0 && pattern.charAt(0) == wildcard;
+        boolean end = len > 1 && pattern.charAt(len - 1) == wildcard;
+        if (start && (end || len == 1)) {
+            if (len <= 2) return new Any();
+            return new Contains(pattern.substring(1, len - 1));
+        }
+        if (start) return new Suffix(pattern.substring(1));
+        if (end) return new Prefix(pattern.substring(0, len - 1));
+        return new Equals(pattern);
+    }
+
+    private static CompiledPattern compileRegex(String pattern) {
+        // find simple expressions like 'abc', 'abc.*', '.*abc' and '.*abc.*'
+        boolean start = pattern.startsWith(".*");
+        String literal = start ? pattern.substring(2) : pattern;
+        boolean end = literal.endsWith(".*") && !literal.endsWith("\\.*");
+        if (end) literal = literal.substring(0, literal.length() - 2);
+        if (!isLiteral(literal)) return new Regex(Pattern.compile(pattern));
+        if (!start && !end) return new Equals(literal);
+        CompiledPattern fast;
+        if (literal.isEmpty() && start) fast = new Any();
+        else if (start && end) fast = new Contains(literal);
+        else if (start) fast = new Suffix(literal);
+        else fast = new Prefix(literal);
+        // '.' does not match line terminators
+        return new SingleLine(fast, Pattern.compile(pattern));
+    }
+
+    private static boolean isLiteral(String str) {
+        for (int i = 0; i < str.length(); i++)
+            if (REGEX_META.indexOf(str.charAt(i)) >= 0) return false;
+        return true;
+    }
+
+    /**
+     * Return the value if the pattern only matches this value.
+     *
+     * @return The value or null
+     */
+    public String getEquals() {
+        return null;
+    }
+
+    /**
+     * Return the prefix if the pattern only matches values starting with it.
+     *
+     * @return The prefix or null
+     */
+    public String getPrefix() {
+        return null;
+    }
+
+    private static class Any extends CompiledPattern {
+
+        @Override
+        public boolean test(String str) {
+            return str != null;
+        }
+
+        @Override
+        public String toString() {
+            return "any";
+        }
+    }
+
+    private static class Not extends CompiledPattern {
+
+        private final CompiledPattern pattern;
+
+        private Not(CompiledPattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean test(String str) {
+            return str != null && !pattern.test(str);
+        }
+
+        @Override
+        public String toString() {
+            return "not " + pattern;
+        }
+    }
+
+    private static class Equals extends CompiledPattern {
+
+        private final String value;
+
+        private Equals(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(String str) {
+            return value.equals(str);
+        }
+
+        @Override
+        public String getEquals() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return "equals " + value;
+        }
+    }
+
+    private static class Prefix extends CompiledPattern {
+
+        private final String value;
+
+        private Prefix(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(String str) {
+            return str != null && str.startsWith(value);
+        }
+
+        @Override
+        public String getPrefix() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return "prefix " + value;
+        }
+    }
+
+    private static class Suffix extends CompiledPattern {
+
+        private final String value;
+
+        private Suffix(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(String str) {
+            return str != null && str.endsWith(value);
+        }
+
+        @Override
+        public String toString() {
+            return "suffix " + value;
+        }
+    }
+
+    private static class Contains extends CompiledPattern {
+
+        private final String value;
+
+        private Contains(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(String str) {
+            return str != null && str.contains(value);
+        }
+
+        @Override
+        public String toString() {
+            return "contains " + value;
+        }
+    }
+
+    private static class SingleLine extends CompiledPattern {
+
+        private final CompiledPattern fast;
+        private final Pattern pattern;
+
+        private SingleLine(CompiledPattern fast, Pattern pattern) {
+            this.fast = fast;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean test(String str) {
+            if (str == null) return false;
+            for (int i = 0; i < str.length(); i++) {
+                char c = str.charAt(i);
+                if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+                    return pattern.matcher(str).matches();
+            }
+            return fast.test(str);
+        }
+
+        @Override
+        public String getPrefix() {
+            return fast.getPrefix();
+        }
+
+        @Override
+        public String toString() {
+            return fast.toString();
+        }
+    }
+
+    private static class Regex extends CompiledPattern {
+
+        private final Pattern pattern;
+
+        private Regex(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean test(String str) {
+            return str != null && pattern.matcher(str).matches();
+        }
+
+        @Override
+        public String toString() {
+            return "regex " + pattern;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Evaluates many conditions against one map. A condition which requires an equal value or a prefix
+ * of a parameter is indexed by the parameter name and is only evaluated if the value in the map
+ * fits. All other conditions are evaluated one by one.
+ *
+ * @param <T> Type of the targets assigned to the conditions
+ */
+public class ConditionIndex<T> {
+
+    private final Map<String, Map<String, List<Entry<T>>>> equals = new ConcurrentHashMap<>();
+    private final Map<String, Prefixes<T>> prefixes = new ConcurrentHashMap<>();
+    private final List<Entry<T>> linear = new CopyOnWriteArrayList<>();
+    private long sequence;
+    private volatile int size;
+
+    /**
+     * Add a condition. The target is returned by matches() if the condition matches.
+     *
+     * @param condition
+     * @param target
+     */
+    public synchronized void add(Condition condition, T target) {
+        Entry<T> entry = new Entry<>(sequence++, condition, target);
+        ModelPattern part = findIndexPattern(condition);
+        if (part == null) {
+            linear.add(entry);
+        } else {
+            CompiledPattern compiled = part.getCompiledPattern();
+            String param = part.getParamName();
+            if (compiled.getEquals() != null) {
+                equals.computeIfAbsent(param, k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(compiled.getEquals(), k -> new CopyOnWriteArrayList<>())
+                        .add(entry);
+            } else {
+                String prefix = compiled.getPrefix();
+                Prefixes<T> index = prefixes.computeIfAbsent(param, k -> new Prefixes<>());
+                index.lengths.add(prefix.length());
+                index.entries.computeIfAbsent(prefix, k -> new CopyOnWriteArrayList<>()).add(entry);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Remove all conditions of the target.
+     *
+     * @param target
+     * @return true if a condition was removed
+     */
+    public synchronized boolean remove(T target) {
+        int removed = remove(linear, target);
+        for (Map<String, List<Entry<T>>> values : equals.values())
+            for (List<Entry<T>> list : values.values()) removed += remove(list, target);
+        for (Prefixes<T> index : prefixes.values())
+            for (List<Entry<T>> list : index.entries.values()) removed += remove(list, target);
+        size -= removed;
+        return removed > 0;
+    }
+
+    private int remove(List<Entry<T>> list, T target) {
+        int removed = 0;
+        for (Entry<T> entry : list) {
+            if (entry.target.equals(target) && list.remove(entry)) removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Return the targets of all matching conditions in the order they were added.
+     *
+     * @param map
+     * @return List of targets
+     */
+    public List<T> matches(Map<String, Object> map) {
+        if (map == null || size == 0) return Collections.emptyList();
+        ArrayList<Entry<T>> found = new ArrayList<>();
+        for (Map.Entry<String, Map<String, List<Entry<T>>>> index : equals.entrySet()) {
+            Object val = map.get(index.getKey());
+            if (val == null) continue;
+            List<Entry<T>> list = index.getValue().get(String.valueOf(val));
+            if (list != null) matches(list, map, found);
+        }
+        for (Map.Entry<String, Prefixes<T>> index : prefixes.entrySet()) {
+            Object val = map.get(index.getKey());
+            if (val == null) continue;
+            String str = String.valueOf(val);
+            Prefixes<T> prefix = index.getValue();
+            for (Integer len : prefix.lengths) {
+                if (len > str.length()) break;
+                List<Entry<T>> list = prefix.entries.get(str.substring(0, len));
+                if (list != null) matches(list, map, found);
+            }
+        }
+        matches(linear, map, found);
+
+        if (found.isEmpty()) return Collections.emptyList();
+        found.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        ArrayList<T> ret = new ArrayList<>(found.size());
+        for (Entry<T> entry : found) ret.add(entry.target);
+        return ret;
+    }
+
+    private void matches(List<Entry<T>> list, Map<String, Object> map, List<Entry<T>> found) {
+        for (Entry<T> entry : list) if (entry.condition.matches(map)) found.add(entry);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the number of conditions which are evaluated for every map.
+     *
+     * @return Count of not indexed conditions
+     */
+    public int getLinearSize() {
+        return linear.size();
+    }
+
+    /**
+     * Find a not negated equals or prefix pattern which must match for the whole condition.
+     *
+     * @param condition
+     * @return The pattern or null
+     */
+    protected ModelPattern findIndexPattern(Condition condition) {
+        ModelComposit root = condition.root;
+        if (!(root instanceof ModelAnd) || root.isNot()) return null;
+        ModelPattern prefix = null;
+        for (ModelPart part : root.components) {
+            if (!(part instanceof ModelPattern) || part.isNot()) continue;
+            String param = part.getParamName();
+            if (param == null || param.startsWith("#")) continue;
+            CompiledPattern compiled = ((ModelPattern) part).getCompiledPattern();
+            if (compiled == null) continue;
+            if (compiled.getEquals() != null) return (ModelPattern) part;
+            if (prefix == null && compiled.getPrefix() != null) prefix = (ModelPattern) part;
+        }
+        return prefix;
+    }
+
+    private static class Entry<T> {
+
+        private final long sequence;
+        private final Condition condition;
+        private final T target;
+
+        private Entry(long sequence, Condition condition, T target) {
+            this.sequence = sequence;
+            this.condition = condition;
+            this.target = target;
+        }
+    }
+
+    private static class Prefixes<T> {
+
+        private final ConcurrentSkipListSet<Integer> lengths = new ConcurrentSkipListSet<>();
+        private final Map<String, List<Entry<T>>> entries = new ConcurrentHashMap<>();
+    }
+}
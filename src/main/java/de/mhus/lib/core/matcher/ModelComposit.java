@@ -15,14 +15,15 @@
  */
 package de.mhus.lib.core.matcher;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import de.mhus.lib.core.MString;
 
 public abstract class ModelComposit extends ModelPart {
 
-    protected LinkedList<ModelPart> components = new LinkedList<>();
+    protected List<ModelPart> components = new ArrayList<>();
 
     public void add(ModelPart part) {
         components.add(part);
@@ -17,21 +17,26 @@ package de.mhus.lib.core.matcher;
 
 import java.util.Map;
 
-import de.mhus.lib.core.MString;
-
 public class ModelFs extends ModelPattern {
 
     private String pattern;
+    private CompiledPattern compiled;
 
     @Override
     public void setPattern(String pattern) {
         setCondition(CONDITION.NONE);
         this.pattern = pattern;
+        compiled = CompiledPattern.fs(pattern);
     }
 
     @Override
     protected boolean matches(ModelPart model, Map<String, ?> map, String str) {
-        return MString.compareFsLikePattern(str, pattern);
+        return compiled.test(str);
+    }
+
+    @Override
+    public CompiledPattern getCompiledPattern() {
+        return compiled;
     }
 
     @Override
@@ -36,6 +36,15 @@ public abstract class ModelPattern extends ModelPart {
 
     public abstract String getPatternTypeName();
 
+    /**
+     * Return the compiled pattern if the value is compared by a string pattern.
+     *
+     * @return The compiled pattern or null
+     */
+    public CompiledPattern getCompiledPattern() {
+        return null;
+    }
+
     @Override
     public String toString() {
         return (getParamName() != null ? "${" + getParamName() + "} " : "")
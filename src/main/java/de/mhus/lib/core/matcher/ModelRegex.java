@@ -16,31 +16,36 @@
 package de.mhus.lib.core.matcher;
 
 import java.util.Map;
-import java.util.regex.Pattern;
 
 public class ModelRegex extends ModelPattern {
 
-    private Pattern pattern;
+    private String pattern;
+    private CompiledPattern compiled;
 
     @Override
     public boolean matches(ModelPart model, Map<String, ?> map, String str) {
-        setCondition(CONDITION.NONE);
-        return pattern.matcher(str).matches();
+        return compiled.test(str);
     }
 
     @Override
     public void setPattern(String pattern) {
-        this.pattern = Pattern.compile(pattern);
+        compiled = CompiledPattern.regex(pattern);
+        this.pattern = pattern;
     }
 
     @Override
     public String getPattern() {
-        return pattern.toString();
+        return pattern;
     }
 
     @Override
     public String getPatternStr() {
-        return "'" + pattern.toString().replace("'", "\\'") + "'";
+        return "'" + pattern.replace("'", "\\'") + "'";
+    }
+
+    @Override
+    public CompiledPattern getCompiledPattern() {
+        return compiled;
     }
 
     @Override
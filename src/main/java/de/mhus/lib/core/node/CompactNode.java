@@ -0,0 +1,328 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.node;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+
+import de.mhus.lib.core.MSystem;
+
+/**
+ * Memory saving node implementation. The values are stored in arrays in insertion order, keys are
+ * interned. Nodes with more then a few entries get an open addressing hash index.
+ */
+public class CompactNode extends MNode {
+
+    private static final long serialVersionUID = 1L;
+    private static final int INDEX_THRESHOLD = 8;
+    private static final String[] EMPTY_KEYS = new String[0];
+    private static final Object[] EMPTY_VALUES = new Object[0];
+
+    private String[] keys = EMPTY_KEYS;
+    private Object[] values = EMPTY_VALUES;
+    private int size;
+    // position + 1 of the entry, 0 is a free slot
+    private int[] index;
+
+    public CompactNode() {
+        super(null, null, false);
+    }
+
+    public CompactNode(String name, NodeList array) {
+        super(name, array, false);
+    }
+
+    @Override
+    protected MNode createNode(String name, NodeList array) {
+        return new CompactNode(name, array);
+    }
+
+    @Override
+    public synchronized Object getProperty(String key) {
+        int pos = indexOf(key);
+        return pos < 0 ? null : values[pos];
+    }
+
+    @Override
+    public synchronized boolean isProperty(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public synchronized void removeProperty(String key) {
+        int pos = indexOf(key);
+        if (pos >= 0) removeAt(pos);
+    }
+
+    @Override
+    public synchronized void setProperty(String key, Object value) {
+        if (value == null) {
+            removeProperty(key);
+            return;
+        }
+        int pos = indexOf(key);
+        if (pos >= 0) {
+            values[pos] = value;
+            return;
+        }
+        if (size == keys.length) {
+            int capacity = size == 0 ? 4 : size + (size >> 1) + 1;
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        keys[size] = key.intern();
+        values[size] = value;
+        size++;
+        if (index != null) {
+            if (size * 2 > index.length) rebuildIndex();
+            else insertIndex(size - 1);
+        } else if (size > INDEX_THRESHOLD) rebuildIndex();
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        keys = EMPTY_KEYS;
+        values = EMPTY_VALUES;
+        size = 0;
+        index = null;
+    }
+
+    @Override
+    public synchronized boolean containsValue(Object value) {
+        for (int i = 0; i < size; i++) if (values[i].equals(value)) return true;
+        return false;
+    }
+
+    @Override
+    public Set<String> keys() {
+        return new AbstractSet<String>() {
+
+            @Override
+            public Iterator<String> iterator() {
+                return new EntryIterator<String>() {
+                    @Override
+                    protected String get(int pos) {
+                        return keys[pos];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CompactNode.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && isProperty((String) o);
+            }
+        };
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return new AbstractCollection<Object>() {
+
+            @Override
+            public Iterator<Object> iterator() {
+                return new EntryIterator<Object>() {
+                    @Override
+                    protected Object get(int pos) {
+                        return values[pos];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CompactNode.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new EntryIterator<Map.Entry<String, Object>>() {
+                    @Override
+                    protected Map.Entry<String, Object> get(int pos) {
+                        String key = keys[pos];
+                        return new AbstractMap.SimpleEntry<String, Object>(key, values[pos]) {
+                            private static final long serialVersionUID = 1L;
+
+                            @Override
+                            public Object setValue(Object value) {
+                                setProperty(key, value);
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CompactNode.this.size();
+            }
+        };
+    }
+
+    @Override
+    public synchronized Set<String> sortedKeys() {
+        TreeSet<String> out = new TreeSet<>();
+        for (int i = 0; i < size; i++) out.add(keys[i]);
+        return out;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (name != null && array == null) sb.append(name).append(':');
+        sb.append('{');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            String key = keys[i];
+            Object value = values[i];
+            sb.append(key).append('=');
+            sb.append(
+                    MSystem.isPasswordName(key)
+                            ? "[***]"
+                            : (value == this ? "(this Map)" : value.toString()));
+        }
+        return sb.append('}').toString();
+    }
+
+    @Override
+    public synchronized void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeObject(keys[i]);
+            out.writeObject(values[i]);
+        }
+        out.writeObject(name);
+    }
+
+    @Override
+    public synchronized void readExternal(ObjectInput in)
+            throws IOException, ClassNotFoundException {
+        clear();
+        int cnt = in.readInt();
+        for (int i = 0; i < cnt; i++) setProperty((String) in.readObject(), in.readObject());
+        name = (String) in.readObject();
+    }
+
+    private int indexOf(Object key) {
+        if (key == null) return -1;
+        if (index == null && size > INDEX_THRESHOLD) rebuildIndex();
+        if (index == null) {
+            // interned keys are found by identity in most cases
+            for (int i = 0; i < size; i++) if (keys[i] == key) return i;
+            for (int i = 0; i < size; i++) if (keys[i].equals(key)) return i;
+            return -1;
+        }
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            int pos = index[slot] - 1;
+            if (pos < 0) return -1;
+            String k = keys[pos];
+            if (k == key || k.equals(key)) return pos;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void removeAt(int pos) {
+        int move = size - pos - 1;
+        if (move > 0) {
+            System.arraycopy(keys, pos + 1, keys, pos, move);
+            System.arraycopy(values, pos + 1, values, pos, move);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        // positions are moved, the index is rebuilt with the next lookup, so removing in a loop
+        // needs only one rebuild
+        index = null;
+    }
+
+    private void rebuildIndex() {
+        index = new int[Integer.highestOneBit(Math.max(size, 2) * 2) * 2];
+        for (int i = 0; i < size; i++) insertIndex(i);
+    }
+
+    private void insertIndex(int pos) {
+        int mask = index.length - 1;
+        int slot = hash(keys[pos]) & mask;
+        while (index[slot] != 0) slot = (slot + 1) & mask;
+        index[slot] = pos + 1;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private abstract class EntryIterator<T> implements Iterator<T> {
+
+        private int next;
+        private int current = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public T next() {
+            synchronized (CompactNode.this) {
+                if (next >= size) throw new NoSuchElementException();
+                current = next++;
+                return get(current);
+            }
+        }
+
+        @Override
+        public void remove() {
+            if (current < 0) throw new IllegalStateException();
+            synchronized (CompactNode.this) {
+                removeAt(current);
+            }
+            next = current;
+            current = -1;
+        }
+
+        protected abstract T get(int pos);
+    }
+}
@@ -23,12 +23,16 @@ import java.util.HashMap;
 
 import de.mhus.lib.core.MFile;
 import de.mhus.lib.core.MSystem;
+import de.mhus.lib.core.cfg.CfgBoolean;
 import de.mhus.lib.errors.MException;
 import de.mhus.lib.errors.NotFoundException;
 
 public class DefaultNodeFactory implements INodeFactory {
 
+    private static CfgBoolean CFG_COMPACT = new CfgBoolean(INodeFactory.class, "compact", false);
+
     private HashMap<String, INodeBuilder> registry = new HashMap<>();
+    private boolean compact;
 
     public DefaultNodeFactory() {
         registry.put("xml", new XmlNodeBuilder());
@@ -36,6 +40,7 @@ public class DefaultNodeFactory implements INodeFactory {
         registry.put("yml", new YamlNodeBuilder());
         registry.put("yaml", new YamlNodeBuilder());
         registry.put("properties", new PropertiesNodeBuilder());
+        setCompact(CFG_COMPACT.value());
     }
 
     @Override
@@ -77,7 +82,22 @@ public class DefaultNodeFactory implements INodeFactory {
 
     @Override
     public INode create() {
-        return new MNode();
+        return compact ? new CompactNode() : new MNode();
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Use CompactNode instead of MNode for new and loaded nodes. CompactNode needs less memory and
+     * keeps the order of the keys.
+     *
+     * @param compact
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+        registry.values().forEach(b -> b.setCompact(compact));
     }
 
     @Override
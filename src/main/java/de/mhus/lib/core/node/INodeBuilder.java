@@ -23,6 +23,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.function.Consumer;
 
 import de.mhus.lib.core.MLog;
 import de.mhus.lib.core.MString;
@@ -30,6 +31,8 @@ import de.mhus.lib.errors.MException;
 
 public abstract class INodeBuilder extends MLog {
 
+    private boolean compact;
+
     public abstract INode read(InputStream is) throws MException;
 
     public abstract void write(INode node, OutputStream os) throws MException;
@@ -46,6 +49,53 @@ public abstract class INodeBuilder extends MLog {
         return read(new ByteArrayInputStream(MString.toBytes(content)));
     }
 
+    /**
+     * Read the document and call the consumer for each item of the array found at the path. Each
+     * item is passed as a separate node. The default implementation reads the whole document, the
+     * json and yaml builders only keep the current item in memory.
+     *
+     * @param is
+     * @param path Object names separated by '/' ending with the name of the array, empty for a
+     *     nameless root array
+     * @param consumer Called for each item
+     * @return Number of items
+     * @throws MException
+     */
+    public long stream(InputStream is, String path, Consumer<INode> consumer) throws MException {
+        String[] parts = splitPath(path);
+        INode node = read(is);
+        for (int i = 0; i < parts.length - 1 && node != null; i++)
+            node = node.getObjectOrNull(parts[i]);
+        if (node == null) return 0;
+        NodeList array =
+                node.getArrayOrNull(
+                        parts.length == 0 ? INode.NAMELESS_VALUE : parts[parts.length - 1]);
+        if (array == null) return 0;
+        long cnt = 0;
+        for (INode item : array) {
+            consumer.accept(item);
+            cnt++;
+        }
+        return cnt;
+    }
+
+    public long streamFromFile(File file, String path, Consumer<INode> consumer)
+            throws MException {
+        try (FileInputStream is = new FileInputStream(file)) {
+            return stream(is, path, consumer);
+        } catch (IOException e) {
+            throw new MException(file, e);
+        }
+    }
+
+    protected static String[] splitPath(String path) {
+        if (path == null) return new String[0];
+        while (path.startsWith("/")) path = path.substring(1);
+        while (path.endsWith("/")) path = path.substring(0, path.length() - 1);
+        if (path.length() == 0) return new String[0];
+        return path.split("/");
+    }
+
     public void writeToFile(INode node, File file) throws MException {
         try (FileOutputStream os = new FileOutputStream(file)) {
             write(node, os);
@@ -54,6 +104,28 @@ public abstract class INodeBuilder extends MLog {
         }
     }
 
+    /**
+     * Create a new root node for reading.
+     *
+     * @return The new node
+     */
+    protected MNode createNode() {
+        return compact ? new CompactNode() : new MNode();
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Read into CompactNode objects instead of MNode.
+     *
+     * @param compact
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
     public String writeToString(INode node) throws MException {
         ByteArrayOutputStream os = new ByteArrayOutputStream();
         write(node, os);
@@ -38,16 +38,16 @@ public class JsonNodeBuilder extends INodeBuilder {
 
     @Override
     public INode read(InputStream is) throws MException {
-        try {
-            JsonNode docJ = MJson.load(is);
-            return fromJson(docJ);
-        } catch (IOException e) {
-            throw new MException(e);
-        }
+        // stream into the nodes, a jackson tree is not needed to read. The values are stored
+        // as text like fromJson() does
+        JsonStreamNodeBuilder stream = new JsonStreamNodeBuilder();
+        stream.setCompact(isCompact());
+        stream.setTextValues(true);
+        return stream.read(is);
     }
 
     public INode fromJson(JsonNode docJ) throws MException {
-        MNode node = new MNode();
+        MNode node = createNode();
         if (docJ.isArray()) {
             NodeList array = node.createArray(INode.NAMELESS_VALUE);
             for (JsonNode itemJ : docJ) {
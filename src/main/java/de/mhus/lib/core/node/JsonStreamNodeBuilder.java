@@ -22,185 +22,252 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Date;
 import java.util.Map.Entry;
+import java.util.function.Consumer;
 
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonParser.NumberType;
 import com.fasterxml.jackson.core.JsonToken;
 
+import de.mhus.lib.core.MJson;
 import de.mhus.lib.core.util.NullValue;
 import de.mhus.lib.errors.MException;
+import de.mhus.lib.errors.TooDeepStructuresException;
 
+/**
+ * Reads and writes json documents token by token. No intermediate tree is created, values are
+ * stored with their json type. Arrays of values and nested arrays are represented by nodes holding
+ * the value or the array as nameless value.
+ */
 public class JsonStreamNodeBuilder extends INodeBuilder {
 
+    private static final int MAX_LEVEL = 100;
+
     private JsonFactory factory = new JsonFactory();
     private boolean pretty = false;
+    private boolean textValues = false;
 
     @Override
     public INode read(InputStream is) throws MException {
-        INode root = null;
-        INode node = null;
-        NodeList array = null;
-        try {
-            try (JsonParser jsonParser = factory.createParser(is)) {
-
-                while (true) {
-                    JsonToken token = jsonParser.nextToken();
-                    if (token == null) break;
-                    if (token == JsonToken.FIELD_NAME) continue;
-                    if (root == null) {
-                        // START ARRAY OR OBJECT
-                        if (token == JsonToken.START_ARRAY) {
-                            root = new MNode();
-                            node = root;
-                            array = node.createArray(INode.NAMELESS_VALUE);
-                        } else if (token == JsonToken.START_OBJECT) {
-                            root = new MNode();
-                            node = root;
-                            array = null;
-                        }
-                    } else if (array != null) {
-                        // IN ARRAY
-                        if (token == JsonToken.START_ARRAY) {
-                            INode obj = array.createObject();
-                            array = obj.createArray(INode.NAMELESS_VALUE);
-                            node = null;
-                        } else if (token == JsonToken.START_OBJECT) {
-                            node = array.createObject();
-                            array = null;
-                        } else if (token == JsonToken.END_OBJECT) {
-                            // should not happen
-                        } else if (token == JsonToken.END_ARRAY) {
-                            if (INode.NAMELESS_VALUE.equals(array.getName())
-                                    && array.getParent() != null
-                                    && array.getParent().getParentArray() != null) {
-                                INode obj = array.getParent();
-                                array = obj.getParentArray();
-                                node = null;
-                            } else {
-                                node = array.getParent();
-                                array = null;
-                            }
-                        } else if (token == JsonToken.VALUE_STRING)
-                            array.createObject()
-                                    .setString(
-                                            jsonParser.getCurrentName(),
-                                            jsonParser.getValueAsString());
-                        else if (token == JsonToken.VALUE_FALSE)
-                            array.createObject().setBoolean(jsonParser.getCurrentName(), false);
-                        else if (token == JsonToken.VALUE_TRUE)
-                            array.createObject().setBoolean(jsonParser.getCurrentName(), true);
-                        else if (token == JsonToken.VALUE_NUMBER_FLOAT)
-                            array.createObject()
-                                    .setDouble(
-                                            jsonParser.getCurrentName(),
-                                            jsonParser.getDoubleValue());
-                        else if (token == JsonToken.VALUE_NUMBER_INT)
-                            array.createObject()
-                                    .setLong(
-                                            jsonParser.getCurrentName(), jsonParser.getLongValue());
-                    } else if (node != null) {
-                        // IN OBJECT
-                        if (token == JsonToken.START_ARRAY) {
-                            array = node.createArray(jsonParser.getCurrentName());
-                            node = null;
-                        } else if (token == JsonToken.START_OBJECT) {
-                            node = node.createObject(jsonParser.getCurrentName());
-                            array = null;
-                        } else if (token == JsonToken.END_OBJECT) {
-                            if (node.getParentArray() != null) {
-                                array = node.getParentArray();
-                                node = null;
-                            } else {
-                                node = node.getParent();
-                                array = null;
-                            }
-                        } else if (token == JsonToken.VALUE_STRING)
-                            node.setString(
-                                    jsonParser.getCurrentName(), jsonParser.getValueAsString());
-                        else if (token == JsonToken.END_ARRAY) {
-                            // should not happen
-                        } else if (token == JsonToken.VALUE_FALSE)
-                            node.setBoolean(jsonParser.getCurrentName(), false);
-                        else if (token == JsonToken.VALUE_TRUE)
-                            node.setBoolean(jsonParser.getCurrentName(), true);
-                        else if (token == JsonToken.VALUE_NUMBER_FLOAT)
-                            node.setDouble(
-                                    jsonParser.getCurrentName(), jsonParser.getDoubleValue());
-                        else if (token == JsonToken.VALUE_NUMBER_INT)
-                            node.setLong(jsonParser.getCurrentName(), jsonParser.getLongValue());
-                    } else {
-                        // should not happen
-                    }
-                }
-            }
+        try (JsonParser parser = MJson.createParser(is)) {
+            return read(parser);
+        } catch (IOException e) {
+            throw new MException(e);
+        }
+    }
+
+    /**
+     * Read the next json value from the parser into a new node.
+     *
+     * @param parser
+     * @return The node, empty if the parser has no more content
+     * @throws IOException
+     */
+    public INode read(JsonParser parser) throws IOException {
+        MNode root = createNode();
+        JsonToken token = parser.nextToken();
+        if (token == null) return root;
+        if (token == JsonToken.START_OBJECT) readObject(parser, root, 0);
+        else if (token == JsonToken.START_ARRAY)
+            readArray(parser, root.createArray(INode.NAMELESS_VALUE), 0);
+        else readValue(parser, token, root, INode.NAMELESS_VALUE, 0);
+        return root;
+    }
 
-            if (root == null) root = new MNode();
-            return root;
+    @Override
+    public long stream(InputStream is, String path, Consumer<INode> consumer) throws MException {
+        String[] parts = splitPath(path);
+        try (JsonParser parser = MJson.createParser(is)) {
+            JsonToken token = parser.nextToken();
+            if (parts.length == 0) {
+                if (token != JsonToken.START_ARRAY) return 0;
+                return streamArray(parser, consumer);
+            }
+            if (token != JsonToken.START_OBJECT) return 0;
+            return streamObject(parser, parts, 0, consumer);
         } catch (IOException e) {
             throw new MException(e);
         }
     }
 
+    private long streamObject(JsonParser parser, String[] parts, int pos, Consumer<INode> consumer)
+            throws IOException {
+        long cnt = 0;
+        String name;
+        while ((name = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if (name.equals(parts[pos])) {
+                if (pos == parts.length - 1 && token == JsonToken.START_ARRAY) {
+                    cnt += streamArray(parser, consumer);
+                    continue;
+                }
+                if (pos < parts.length - 1 && token == JsonToken.START_OBJECT) {
+                    cnt += streamObject(parser, parts, pos + 1, consumer);
+                    continue;
+                }
+            }
+            parser.skipChildren();
+        }
+        return cnt;
+    }
+
+    private long streamArray(JsonParser parser, Consumer<INode> consumer) throws IOException {
+        long cnt = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) throw new JsonParseException(parser, "unexpected end of array");
+            MNode item = createNode();
+            if (token == JsonToken.START_OBJECT) readObject(parser, item, 0);
+            else readValue(parser, token, item, INode.NAMELESS_VALUE, 0);
+            consumer.accept(item);
+            cnt++;
+        }
+        return cnt;
+    }
+
+    private void readObject(JsonParser parser, INode node, int level) throws IOException {
+        if (level > MAX_LEVEL) throw new TooDeepStructuresException();
+        String name;
+        while ((name = parser.nextFieldName()) != null)
+            readValue(parser, parser.nextToken(), node, name, level);
+        if (parser.currentToken() != JsonToken.END_OBJECT)
+            throw new JsonParseException(parser, "field name expected");
+    }
+
+    private void readArray(JsonParser parser, NodeList array, int level) throws IOException {
+        if (level > MAX_LEVEL) throw new TooDeepStructuresException();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) throw new JsonParseException(parser, "unexpected end of array");
+            INode item = array.createObject();
+            if (token == JsonToken.START_OBJECT) readObject(parser, item, level + 1);
+            else readValue(parser, token, item, INode.NAMELESS_VALUE, level + 1);
+        }
+    }
+
+    private void readValue(JsonParser parser, JsonToken token, INode node, String name, int level)
+            throws IOException {
+        if (token == null) throw new JsonParseException(parser, "unexpected end of object");
+        if (textValues && token.isScalarValue()) {
+            node.put(name, toText(parser, token));
+            return;
+        }
+        switch (token) {
+            case START_OBJECT:
+                readObject(parser, node.createObject(name), level + 1);
+                break;
+            case START_ARRAY:
+                readArray(parser, node.createArray(name), level + 1);
+                break;
+            case VALUE_STRING:
+                node.put(name, parser.getText());
+                break;
+            case VALUE_TRUE:
+                node.put(name, Boolean.TRUE);
+                break;
+            case VALUE_FALSE:
+                node.put(name, Boolean.FALSE);
+                break;
+            case VALUE_NULL:
+                node.put(name, NullValue.VALUE);
+                break;
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == NumberType.BIG_INTEGER)
+                    node.put(name, parser.getBigIntegerValue());
+                else node.put(name, parser.getLongValue());
+                break;
+            case VALUE_NUMBER_FLOAT:
+                node.put(name, parser.getDoubleValue());
+                break;
+            case VALUE_EMBEDDED_OBJECT:
+                node.put(name, parser.getEmbeddedObject());
+                break;
+            default:
+                throw new JsonParseException(parser, "unexpected token " + token);
+        }
+    }
+
+    // same text as JsonNode.asText() of the jackson tree
+    private String toText(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == NumberType.BIG_INTEGER)
+                    return parser.getBigIntegerValue().toString();
+                return String.valueOf(parser.getLongValue());
+            case VALUE_NUMBER_FLOAT:
+                return String.valueOf(parser.getDoubleValue());
+            case VALUE_NULL:
+                return "null";
+            default:
+                return parser.getText();
+        }
+    }
+
     @Override
     public void write(INode node, OutputStream os) throws MException {
-        try {
-
-            JsonGenerator generator = factory.createGenerator(os, JsonEncoding.UTF8);
+        try (JsonGenerator generator = factory.createGenerator(os, JsonEncoding.UTF8)) {
             if (pretty) generator.useDefaultPrettyPrinter();
             write(node, generator);
-            generator.close();
         } catch (IOException e) {
             throw new MException(e);
         }
     }
 
-    private void write(INode node, JsonGenerator gen) throws IOException {
+    /**
+     * Write the node as json document. A node only holding a nameless array is written as json
+     * array.
+     *
+     * @param node
+     * @param gen
+     * @throws IOException
+     */
+    public void write(INode node, JsonGenerator gen) throws IOException {
+        if (node.size() == 1 && node.isArray(INode.NAMELESS_VALUE))
+            write(node.getArrayOrNull(INode.NAMELESS_VALUE), gen, 0);
+        else write(node, gen, 0);
+    }
+
+    private void write(INode node, JsonGenerator gen, int level) throws IOException {
+        if (level > MAX_LEVEL) throw new TooDeepStructuresException();
         gen.writeStartObject();
         for (Entry<String, Object> entry : node.entrySet()) {
-            if (entry.getValue() instanceof INode) {
-                gen.writeFieldName(entry.getKey());
-                write((INode) entry.getValue(), gen);
-            } else if (entry.getValue() instanceof NodeList) {
-                gen.writeFieldName(entry.getKey());
-                write((NodeList) entry.getValue(), gen);
-            } else if (entry.getValue() instanceof Boolean)
-                gen.writeBooleanField(entry.getKey(), (Boolean) entry.getValue());
-            else if (entry.getValue() instanceof String)
-                gen.writeStringField(entry.getKey(), (String) entry.getValue());
-            else if (entry.getValue() instanceof Date)
-                gen.writeNumberField(entry.getKey(), ((Date) entry.getValue()).getTime());
-            else if (entry.getValue() instanceof NullValue) gen.writeNullField(entry.getKey());
-            else if (entry.getValue() instanceof Integer)
-                gen.writeNumberField(entry.getKey(), (Integer) entry.getValue());
-            else if (entry.getValue() instanceof Long)
-                gen.writeNumberField(entry.getKey(), (Long) entry.getValue());
-            else if (entry.getValue() instanceof Float)
-                gen.writeNumberField(entry.getKey(), (Float) entry.getValue());
-            else if (entry.getValue() instanceof Double)
-                gen.writeNumberField(entry.getKey(), (Double) entry.getValue());
-            else if (entry.getValue() instanceof Short)
-                gen.writeNumberField(entry.getKey(), (Short) entry.getValue());
-            else if (entry.getValue() instanceof BigInteger) {
-                gen.writeFieldName(entry.getKey());
-                gen.writeNumber((BigInteger) entry.getValue());
-            } else if (entry.getValue() instanceof BigDecimal)
-                gen.writeNumberField(entry.getKey(), (BigDecimal) entry.getValue());
-            else gen.writeStringField(entry.getKey(), String.valueOf(entry.getValue()));
+            gen.writeFieldName(entry.getKey());
+            writeValue(entry.getValue(), gen, level);
         }
-
         gen.writeEndObject();
     }
 
-    private void write(NodeList list, JsonGenerator gen) throws IOException {
+    private void write(NodeList list, JsonGenerator gen, int level) throws IOException {
+        if (level > MAX_LEVEL) throw new TooDeepStructuresException();
         gen.writeStartArray();
         for (INode entry : list) {
-            write(entry, gen);
+            if (entry.size() == 1 && entry.containsKey(INode.NAMELESS_VALUE))
+                writeValue(entry.get(INode.NAMELESS_VALUE), gen, level + 1);
+            else write(entry, gen, level + 1);
         }
         gen.writeEndArray();
     }
 
+    private void writeValue(Object value, JsonGenerator gen, int level) throws IOException {
+        if (value instanceof INode) write((INode) value, gen, level + 1);
+        else if (value instanceof NodeList) write((NodeList) value, gen, level + 1);
+        else if (value instanceof String) gen.writeString((String) value);
+        else if (value instanceof Boolean) gen.writeBoolean((Boolean) value);
+        else if (value instanceof Integer) gen.writeNumber((Integer) value);
+        else if (value instanceof Long) gen.writeNumber((Long) value);
+        else if (value instanceof Double) gen.writeNumber((Double) value);
+        else if (value instanceof Float) gen.writeNumber((Float) value);
+        else if (value instanceof Short) gen.writeNumber((Short) value);
+        else if (value instanceof BigInteger) gen.writeNumber((BigInteger) value);
+        else if (value instanceof BigDecimal) gen.writeNumber((BigDecimal) value);
+        else if (value instanceof Date) gen.writeNumber(((Date) value).getTime());
+        else if (value == null || value instanceof NullValue) gen.writeNull();
+        else gen.writeString(String.valueOf(value));
+    }
+
     public boolean isPretty() {
         return pretty;
     }
@@ -208,4 +275,17 @@ public class JsonStreamNodeBuilder extends INodeBuilder {
     public void setPretty(boolean pretty) {
         this.pretty = pretty;
     }
+
+    public boolean isTextValues() {
+        return textValues;
+    }
+
+    /**
+     * Store all values as text like JsonNodeBuilder, json null is stored as "null".
+     *
+     * @param textValues
+     */
+    public void setTextValues(boolean textValues) {
+        this.textValues = textValues;
+    }
 }
@@ -20,7 +20,6 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -40,8 +39,6 @@ public class MNode extends MProperties implements INode {
 
     protected String name;
     protected INode parent;
-    protected NodeStringCompiler compiler;
-    protected HashMap<String, CompiledString> compiledCache;
     protected NodeList array;
 
     public MNode() {}
@@ -61,6 +58,31 @@ public class MNode extends MProperties implements INode {
         this.parent = parent;
     }
 
+    /**
+     * For subclasses with an own storage.
+     *
+     * @param name
+     * @param array
+     * @param createStorage false if the subclass stores the values
+     */
+    protected MNode(String name, NodeList array, boolean createStorage) {
+        super(createStorage);
+        this.name = name;
+        this.array = array;
+        if (array != null) this.parent = array.getParent();
+    }
+
+    /**
+     * Create a new child node of the same implementation.
+     *
+     * @param name Name of the node
+     * @param array The array of the node or null
+     * @return The new node
+     */
+    protected MNode createNode(String name, NodeList array) {
+        return new MNode(name, array);
+    }
+
     @Override
     public boolean isObject(String key) {
         Object val = get(key);
@@ -84,7 +106,7 @@ public class MNode extends MProperties implements INode {
         if (val instanceof INode) return (INode) val;
         if (val instanceof IProperties) return new MNodeWrapper((IProperties) val);
 
-        MNode ret = new MNode();
+        MNode ret = createNode(null, null);
         if (val instanceof Map) {
             ret.putAll((Map) val);
         } else ret.put(NAMELESS_VALUE, val);
@@ -175,7 +197,8 @@ public class MNode extends MProperties implements INode {
         }
         if (containsKey(key)) {
             NodeList ret = new NodeList(key, this);
-            MNode obj = new MNode(key, this);
+            MNode obj = createNode(key, null);
+            obj.parent = this;
             obj.put(NAMELESS_VALUE, get(key));
             ret.add(obj);
             return ret;
@@ -192,21 +215,11 @@ public class MNode extends MProperties implements INode {
         if (value == null) return def;
         if (value.indexOf('$') < 0) return value;
 
-        synchronized (this) {
-            if (compiler == null) {
-                compiler = new NodeStringCompiler(this);
-                compiledCache = new HashMap<String, CompiledString>();
-            }
-            CompiledString cached = compiledCache.get(key);
-            if (cached == null) {
-                cached = compiler.compileString(value);
-                compiledCache.put(key, cached);
-            }
-            try {
-                return cached.execute(new NodeStringCompiler.NodeMap(level, this));
-            } catch (MException e) {
-                throw new MRuntimeException(key, e);
-            }
+        CompiledString compiled = NodeStringCompiler.INSTANCE.getCompiled(value);
+        try {
+            return compiled.execute(new NodeStringCompiler.NodeMap(level, this));
+        } catch (MException e) {
+            throw new MRuntimeException(key, e);
         }
     }
 
@@ -266,7 +279,7 @@ public class MNode extends MProperties implements INode {
 
     @Override
     public INode createObject(String key) {
-        INode obj = new MNode();
+        INode obj = createNode(null, null);
         addObject(key, obj);
         return obj;
     }
@@ -358,7 +371,7 @@ public class MNode extends MProperties implements INode {
             if (e.getValue() instanceof IsNull) remove(e.getKey());
             else {
                 if (e.getValue() instanceof Map) {
-                    MNode cfg = new MNode();
+                    MNode cfg = createNode(null, null);
                     cfg.putMapToNode((Map<?, ?>) e.getValue(), level + 1);
                     put(String.valueOf(e.getKey()), cfg);
                 } else if (e.getValue() instanceof List) {
@@ -15,15 +15,22 @@
  */
 package de.mhus.lib.core.node;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
 
 import de.mhus.lib.core.IProperties;
 import de.mhus.lib.errors.MRuntimeException;
 
-public class NodeList extends LinkedList<INode> {
+/**
+ * List of array items. The list is array based for fast random access. The deque methods of the
+ * former linked list implementation are still provided, removing from the head is O(n).
+ */
+public class NodeList extends ArrayList<INode> {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     private String name;
     private INode parent;
 
@@ -32,6 +39,11 @@ public class NodeList extends LinkedList<INode> {
         this.parent = parent;
     }
 
+    @Override
+    public boolean addAll(Collection<? extends INode> c) {
+        return addAll(size(), c);
+    }
+
     @Override
     public boolean addAll(int index, Collection<? extends INode> c) {
         c.forEach(
@@ -50,7 +62,7 @@ public class NodeList extends LinkedList<INode> {
     }
 
     public boolean add(IProperties e) {
-        MNode node = new MNode();
+        MNode node = newNode();
         node.parent = parent;
         node.putAll(e);
         return super.add(node);
@@ -67,17 +79,122 @@ public class NodeList extends LinkedList<INode> {
     }
 
     @Override
-    public void addFirst(INode e) {
+    public void add(int index, INode e) {
         ((MNode) e).name = name;
         ((MNode) e).parent = parent;
-        super.addFirst(e);
+        super.add(index, e);
+    }
+
+    public void addFirst(INode e) {
+        add(0, e);
     }
 
-    @Override
     public void addLast(INode e) {
-        ((MNode) e).name = name;
-        ((MNode) e).parent = parent;
-        super.addLast(e);
+        add(e);
+    }
+
+    public boolean offer(INode e) {
+        return add(e);
+    }
+
+    public boolean offerFirst(INode e) {
+        addFirst(e);
+        return true;
+    }
+
+    public boolean offerLast(INode e) {
+        return add(e);
+    }
+
+    public void push(INode e) {
+        addFirst(e);
+    }
+
+    public INode getFirst() {
+        if (isEmpty()) throw new NoSuchElementException();
+        return get(0);
+    }
+
+    public INode getLast() {
+        if (isEmpty()) throw new NoSuchElementException();
+        return get(size() - 1);
+    }
+
+    public INode element() {
+        return getFirst();
+    }
+
+    public INode peek() {
+        return peekFirst();
+    }
+
+    public INode peekFirst() {
+        return isEmpty() ? null : get(0);
+    }
+
+    public INode peekLast() {
+        return isEmpty() ? null : get(size() - 1);
+    }
+
+    public INode removeFirst() {
+        if (isEmpty()) throw new NoSuchElementException();
+        return remove(0);
+    }
+
+    public INode removeLast() {
+        if (isEmpty()) throw new NoSuchElementException();
+        return remove(size() - 1);
+    }
+
+    public INode remove() {
+        return removeFirst();
+    }
+
+    public INode pop() {
+        return removeFirst();
+    }
+
+    public INode poll() {
+        return pollFirst();
+    }
+
+    public INode pollFirst() {
+        return isEmpty() ? null : remove(0);
+    }
+
+    public INode pollLast() {
+        return isEmpty() ? null : remove(size() - 1);
+    }
+
+    public boolean removeFirstOccurrence(Object o) {
+        return remove(o);
+    }
+
+    public boolean removeLastOccurrence(Object o) {
+        int index = lastIndexOf(o);
+        if (index < 0) return false;
+        remove(index);
+        return true;
+    }
+
+    public Iterator<INode> descendingIterator() {
+        ListIterator<INode> iter = listIterator(size());
+        return new Iterator<INode>() {
+            @Override
+            public boolean hasNext() {
+                return iter.hasPrevious();
+            }
+
+            @Override
+            public INode next() {
+                return iter.previous();
+            }
+
+            @Override
+            public void remove() {
+                iter.remove();
+            }
+        };
     }
 
     @Override
@@ -90,11 +207,17 @@ public class NodeList extends LinkedList<INode> {
     }
 
     public INode createObject() {
-        MNode ret = new MNode(name, this);
+        MNode ret = newNode();
         super.add(ret);
         return ret;
     }
 
+    private MNode newNode() {
+        // create the same implementation as the parent
+        if (parent instanceof MNode) return ((MNode) parent).createNode(name, this);
+        return new MNode(name, this);
+    }
+
     public INode getParent() {
         return parent;
     }
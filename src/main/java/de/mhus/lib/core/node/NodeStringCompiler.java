@@ -20,17 +20,28 @@ import java.util.Map;
 import java.util.Set;
 
 import de.mhus.lib.core.MString;
+import de.mhus.lib.core.cfg.CfgInt;
 import de.mhus.lib.core.parser.DefaultScriptPart;
 import de.mhus.lib.core.parser.StringCompiler;
 import de.mhus.lib.core.parser.StringPart;
 import de.mhus.lib.errors.MException;
 
+/**
+ * Compiles extracted node values. The compiled strings do not depend on a node, the node is taken
+ * from the NodeMap while executing. For this reason the compiled strings are shared by the template
+ * text in the cache of the compiler.
+ */
 public class NodeStringCompiler extends StringCompiler {
 
-    private MNode rootNode;
+    private static final CfgInt CFG_CACHE_SIZE =
+            new CfgInt(INode.class, "extractedCacheSize", 1000);
+    static final NodeStringCompiler INSTANCE = new NodeStringCompiler();
 
-    NodeStringCompiler(MNode rootNode) {
-        this.rootNode = rootNode;
+    NodeStringCompiler() {}
+
+    @Override
+    protected int getMaxCacheSize() {
+        return CFG_CACHE_SIZE.value();
     }
 
     @Override
@@ -40,15 +51,22 @@ public class NodeStringCompiler extends StringCompiler {
         return new NodeAttributePart(part);
     }
 
-    private class RootAttributePart implements StringPart {
+    private static MNode getNode(Map<String, Object> attributes) {
+        if (attributes instanceof NodeMap) return ((NodeMap) attributes).node;
+        return null;
+    }
+
+    private static int getLevel(Map<String, Object> attributes) {
+        if (attributes instanceof NodeMap) return ((NodeMap) attributes).getLevel();
+        return 0;
+    }
+
+    private static class RootAttributePart implements StringPart {
         private String name;
         private String def;
-        private INode node;
 
         public RootAttributePart(String part) {
             name = MString.afterIndex(part, ':');
-            node = rootNode;
-            while (node.getParent() != null && node.getParent() != node) node = node.getParent();
             int pos = name.indexOf(',');
             if (pos > 0) {
                 def = name.substring(pos + 1);
@@ -58,6 +76,12 @@ public class NodeStringCompiler extends StringCompiler {
 
         @Override
         public void execute(StringBuilder out, Map<String, Object> attributes) throws MException {
+            INode node = getNode(attributes);
+            if (node == null) {
+                out.append(def);
+                return;
+            }
+            while (node.getParent() != null && node.getParent() != node) node = node.getParent();
             out.append(node.getString(name, def));
         }
 
@@ -72,11 +96,12 @@ public class NodeStringCompiler extends StringCompiler {
         }
     }
 
-    private class NodeAttributePart implements StringPart {
+    private static class NodeAttributePart implements StringPart {
 
         private String name;
         private String def;
-        private MNode node;
+        private boolean absolute;
+        private int up;
 
         public NodeAttributePart(String part) {
             name = part;
@@ -85,26 +110,25 @@ public class NodeStringCompiler extends StringCompiler {
                 def = name.substring(pos + 1);
                 name = name.substring(0, pos);
             }
-            node = rootNode;
             if (name.startsWith("/")) {
-                while (node.getParent() != null) node = (MNode) node.getParent();
+                absolute = true;
                 name = name.substring(1);
             } else
                 while (name.startsWith("../")) {
-                    node = (MNode) node.getParent();
+                    up++;
                     name = name.substring(3);
-                    if (node == null) break;
                 }
         }
 
         @Override
         public void execute(StringBuilder out, Map<String, Object> attributes) throws MException {
-            int level = 0;
-            if (attributes != null && attributes instanceof NodeMap) {
-                level = ((NodeMap) attributes).getLevel();
-            }
+            MNode node = getNode(attributes);
+            if (absolute) {
+                if (node != null)
+                    while (node.getParent() != null) node = (MNode) node.getParent();
+            } else for (int i = 0; i < up && node != null; i++) node = (MNode) node.getParent();
             if (node == null) out.append(def);
-            else out.append(node.getExtracted(name, def, level));
+            else out.append(node.getExtracted(name, def, getLevel(attributes)));
         }
 
         @Override
@@ -67,7 +67,7 @@ public class PropertiesNodeBuilder extends INodeBuilder {
     }
 
     public INode readFromCollection(Collection<?> col) {
-        INode node = new MNode();
+        INode node = createNode();
         readFromCollection(node, INode.NAMELESS_VALUE, col, 0);
         return node;
     }
@@ -87,7 +87,7 @@ public class PropertiesNodeBuilder extends INodeBuilder {
         level++;
         if (level > CFG_MAX_LEVEL.value()) throw new TooDeepStructuresException();
 
-        INode node = new MNode();
+        INode node = createNode();
         for (Entry<?, ?> entry : map.entrySet()) {
             String key = MString.valueOf(entry.getKey());
             Object val = entry.getValue();
@@ -122,11 +122,11 @@ public class PropertiesNodeBuilder extends INodeBuilder {
         if (level > CFG_MAX_LEVEL.value()) throw new TooDeepStructuresException();
 
         if (item == null) {
-            MNode obj = new MNode();
+            MNode obj = createNode();
             obj.setBoolean(INode.NULL, true);
             return obj;
         } else if (item instanceof NodeSerializable) {
-            MNode obj = new MNode();
+            MNode obj = createNode();
             try {
                 ((NodeSerializable) item).writeSerializabledNode(obj);
             } catch (Exception e) {
@@ -143,27 +143,27 @@ public class PropertiesNodeBuilder extends INodeBuilder {
                 || item instanceof Number
                 || item instanceof Date
                 || item instanceof Boolean) {
-            MNode obj = new MNode();
+            MNode obj = createNode();
             obj.put(INode.NAMELESS_VALUE, item);
             return obj;
         } else if (item instanceof Date) {
-            MNode obj = new MNode();
+            MNode obj = createNode();
             obj.put(INode.NAMELESS_VALUE, ((Date) item).getTime());
             obj.put(INode.HELPER_VALUE, MDate.toIso8601((Date) item));
             return obj;
         } else if (item.getClass().isArray()) {
-            MNode obj = new MNode();
+            MNode obj = createNode();
             obj.setString(INode.CLASS, item.getClass().getCanonicalName());
             readFromCollection(
                     obj, INode.NAMELESS_VALUE, MCollection.toList(((Object[]) item)), level);
             return obj;
         } else if (item instanceof Collection) {
-            MNode obj = new MNode();
+            MNode obj = createNode();
             obj.setString(INode.CLASS, item.getClass().getCanonicalName());
             readFromCollection(obj, INode.NAMELESS_VALUE, (Collection<?>) item, level);
             return obj;
         } else {
-            MNode obj = new MNode();
+            MNode obj = createNode();
             try {
                 MPojo.pojoToNode(item, obj);
             } catch (IOException e) {
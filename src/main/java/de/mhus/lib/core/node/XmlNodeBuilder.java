@@ -89,7 +89,7 @@ public class XmlNodeBuilder extends INodeBuilder {
     public INode readFromElement(Element element) throws MException {
         // first must be an object
         if (element.hasAttribute("xmlns:node")) element.removeAttribute("xmlns:node");
-        INode node = new MNode();
+        INode node = createNode();
         read(node, element, 0);
         return node;
     }
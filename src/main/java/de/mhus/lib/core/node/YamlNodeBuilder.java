@@ -18,6 +18,25 @@ package de.mhus.lib.core.node;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+import org.yaml.snakeyaml.reader.UnicodeReader;
 
 import de.mhus.lib.core.yaml.MYaml;
 import de.mhus.lib.core.yaml.YElement;
@@ -31,7 +50,7 @@ public class YamlNodeBuilder extends INodeBuilder {
     @Override
     public INode read(InputStream is) {
         YMap itemY = MYaml.load(is);
-        MNode itemC = new MNode();
+        MNode itemC = createNode();
         if (itemY.isList()) {
             NodeList arrayC = itemC.createArray(INode.NAMELESS_VALUE);
             fill(arrayC, new YList(itemY.getObject()), 0);
@@ -39,6 +58,98 @@ public class YamlNodeBuilder extends INodeBuilder {
         return itemC;
     }
 
+    /**
+     * Streams the parser events of the first document. Each item of the array is emitted as a
+     * separate yaml document and loaded by its own. Aliases can only refer to anchors inside of the
+     * same item.
+     */
+    @Override
+    public long stream(InputStream is, String path, Consumer<INode> consumer) throws MException {
+        String[] parts = splitPath(path);
+        try {
+            Iterator<Event> events = MYaml.getYaml().parse(new UnicodeReader(is)).iterator();
+            Event event = null;
+            while (events.hasNext()) {
+                event = events.next();
+                if (!(event instanceof StreamStartEvent || event instanceof DocumentStartEvent))
+                    break;
+            }
+            if (parts.length == 0) {
+                if (!(event instanceof SequenceStartEvent)) return 0;
+                return streamSequence(events, consumer);
+            }
+            if (!(event instanceof MappingStartEvent)) return 0;
+            return streamMapping(events, parts, 0, consumer);
+        } catch (RuntimeException | IOException e) {
+            throw new MException(e);
+        }
+    }
+
+    private long streamMapping(
+            Iterator<Event> events, String[] parts, int pos, Consumer<INode> consumer)
+            throws IOException {
+        long cnt = 0;
+        while (true) {
+            Event key = events.next();
+            if (key instanceof MappingEndEvent) return cnt;
+            String name = key instanceof ScalarEvent ? ((ScalarEvent) key).getValue() : null;
+            skip(key, events);
+            Event value = events.next();
+            if (parts[pos].equals(name)) {
+                if (pos == parts.length - 1 && value instanceof SequenceStartEvent) {
+                    cnt += streamSequence(events, consumer);
+                    continue;
+                }
+                if (pos < parts.length - 1 && value instanceof MappingStartEvent) {
+                    cnt += streamMapping(events, parts, pos + 1, consumer);
+                    continue;
+                }
+            }
+            skip(value, events);
+        }
+    }
+
+    private long streamSequence(Iterator<Event> events, Consumer<INode> consumer)
+            throws IOException {
+        long cnt = 0;
+        while (true) {
+            Event event = events.next();
+            if (event instanceof SequenceEndEvent) return cnt;
+            StringWriter sw = new StringWriter();
+            Emitter emitter = new Emitter(sw, new DumperOptions());
+            emitter.emit(new StreamStartEvent(null, null));
+            emitter.emit(new DocumentStartEvent(null, null, false, null, null));
+            int depth = 0;
+            do {
+                if (event instanceof CollectionStartEvent) depth++;
+                else if (event instanceof CollectionEndEvent) depth--;
+                emitter.emit(event);
+                if (depth > 0) event = events.next();
+            } while (depth > 0);
+            emitter.emit(new DocumentEndEvent(null, null, false));
+            emitter.emit(new StreamEndEvent(null, null));
+
+            YElement itemY = MYaml.loadFromString(sw.toString());
+            MNode itemC = createNode();
+            if (itemY.isMap()) fill(itemC, itemY.asMap(), 0);
+            else if (itemY.isList())
+                fill(itemC.createArray(INode.NAMELESS_VALUE), itemY.asList(), 0);
+            else itemC.put(INode.NAMELESS_VALUE, itemY.getObject());
+            consumer.accept(itemC);
+            cnt++;
+        }
+    }
+
+    private void skip(Event event, Iterator<Event> events) {
+        if (!(event instanceof CollectionStartEvent)) return;
+        int depth = 1;
+        while (depth > 0) {
+            event = events.next();
+            if (event instanceof CollectionStartEvent) depth++;
+            else if (event instanceof CollectionEndEvent) depth--;
+        }
+    }
+
     private void fill(INode elemC, YMap elemY, int level) {
         if (level > 100) throw new TooDeepStructuresException();
 
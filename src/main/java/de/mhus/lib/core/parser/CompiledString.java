@@ -15,6 +15,7 @@
  */
 package de.mhus.lib.core.parser;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.Map;
 
@@ -29,13 +30,16 @@ import de.mhus.lib.errors.MException;
 public class CompiledString {
 
     private StringPart[] compiled;
+    private int lengthHint;
+    private volatile int lastLength;
 
     public CompiledString(StringPart[] compiled) {
         this.compiled = compiled;
+        for (StringPart part : compiled) lengthHint += part.getLengthHint();
     }
 
     public CompiledString(LinkedList<StringPart> compiled) {
-        this.compiled = compiled.toArray(new StringPart[compiled.size()]);
+        this(compiled.toArray(new StringPart[compiled.size()]));
     }
 
     /**
@@ -46,8 +50,12 @@ public class CompiledString {
      * @throws MException
      */
     public String execute(Map<String, Object> attributes) throws MException {
-        StringBuilder out = new StringBuilder();
+        if (compiled.length == 1 && compiled[0] instanceof StringCompiler.ContentPart)
+            return ((StringCompiler.ContentPart) compiled[0]).getContent();
+        StringBuilder out = new StringBuilder(Math.max(lengthHint, lastLength));
         execute(out, attributes);
+        // remember the size for the next execution
+        if (out.length() > lastLength) lastLength = out.length();
         return out.toString();
     }
 
@@ -57,6 +65,30 @@ public class CompiledString {
         }
     }
 
+    /**
+     * Write the compiled string into the appendable, e.g. a Writer.
+     *
+     * @param out
+     * @param attributes
+     * @throws MException
+     * @throws IOException
+     */
+    public void execute(Appendable out, Map<String, Object> attributes)
+            throws MException, IOException {
+        for (StringPart part : compiled) {
+            part.execute(out, attributes);
+        }
+    }
+
+    /**
+     * Return the estimated length of the output.
+     *
+     * @return Number of characters
+     */
+    public int getLengthHint() {
+        return Math.max(lengthHint, lastLength);
+    }
+
     /**
      * Return a readable information about the tree structure.
      *
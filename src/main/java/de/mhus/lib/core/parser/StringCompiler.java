@@ -15,86 +15,118 @@
  */
 package de.mhus.lib.core.parser;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.mhus.lib.core.MString;
 import de.mhus.lib.core.MSystem;
+import de.mhus.lib.core.cfg.CfgInt;
 import de.mhus.lib.errors.MException;
 
 public class StringCompiler implements Parser {
 
+    private static final CfgInt CFG_CACHE_SIZE =
+            new CfgInt(StringCompiler.class, "cacheSize", 1000);
     private static StringCompiler defaultCompiler = new StringCompiler();
 
     protected String separator = "$";
-
+    private final ConcurrentHashMap<String, CompiledString> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Compile the string with the default compiler. The compiled strings are cached.
+     *
+     * @param in
+     * @return The compiled string
+     */
     public static CompiledString compile(String in) {
-        return compile(in, defaultCompiler);
+        return defaultCompiler.getCompiled(in);
     }
 
     public static CompiledString compile(String in, StringCompiler compiler) {
         return compiler.compileString(in);
     }
 
-    @Override
-    public CompiledString compileString(String in) {
-        LinkedList<StringPart> compiled = new LinkedList<StringPart>();
-        List<String> parts = splitString(in);
-        boolean c = true;
-        for (String part : parts) {
-            if (c) {
-                compiled.add(createContentPart(part));
-                c = false;
-            } else {
-                if (part.length() == 0) {
-                    compiled.add(createContentPart(separator));
-                } else {
-                    compiled.add(createAttributePart(part));
-                }
-                c = true;
-            }
-        }
-        return new CompiledString(compiled);
+    /**
+     * Return the compiled string from the cache of this compiler or compile and cache it. The cache
+     * is cleared if it reaches the maximum size. Compiled strings are shared, the parts must not
+     * hold state of a single execution.
+     *
+     * @param in
+     * @return The compiled string
+     */
+    public CompiledString getCompiled(String in) {
+        CompiledString compiled = cache.get(in);
+        if (compiled != null) return compiled;
+        compiled = compileString(in);
+        int max = getMaxCacheSize();
+        if (max <= 0) return compiled;
+        if (cache.size() >= max) cache.clear();
+        cache.put(in, compiled);
+        return compiled;
+    }
+
+    protected int getMaxCacheSize() {
+        return CFG_CACHE_SIZE.value();
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    public void clearCache() {
+        cache.clear();
     }
 
     // supports:
     // $name$
     // ${name}
-    protected List<String> splitString(String in) {
-        LinkedList<String> parts = new LinkedList<>();
-        while (true) {
-            if (in.length() == 0) return parts;
-            int nextPos = in.indexOf(separator);
+    @Override
+    public CompiledString compileString(String in) {
+        LinkedList<StringPart> compiled = new LinkedList<StringPart>();
+        int len = in.length();
+        int sepLen = separator.length();
+        int pos = 0;
+        while (pos < len) {
+            int nextPos = in.indexOf(separator, pos);
             if (nextPos < 0) {
-                parts.add(in);
-                return parts;
+                compiled.add(createContentPart(in.substring(pos)));
+                break;
             }
+            if (nextPos > pos) compiled.add(createContentPart(in.substring(pos, nextPos)));
 
-            parts.add(in.substring(0, nextPos)); // add content part
-
-            if (nextPos == in.length() - separator.length()) { // at the end
-                parts.add(separator);
-                return parts;
+            if (nextPos == len - sepLen) { // at the end
+                compiled.add(createAttributePart(separator));
+                break;
             }
-            if (in.charAt(nextPos + separator.length()) == '{') {
-                int endPos = in.indexOf('}', nextPos);
-                if (endPos < 0) { // not found
-                    parts.add(in.substring(nextPos));
-                    return parts;
+            int endPos;
+            if (in.charAt(nextPos + sepLen) == '{') {
+                endPos = in.indexOf('}', nextPos);
+                if (endPos >= 0) {
+                    addAttributePart(compiled, in.substring(nextPos + sepLen + 1, endPos));
+                    pos = endPos + 1;
+                    continue;
                 }
-                parts.add(in.substring(nextPos + separator.length() + 1, endPos));
-                in = in.substring(endPos + 1);
             } else {
-                int endPos = in.indexOf(separator, nextPos + separator.length());
-                if (endPos < 0) { // not found
-                    parts.add(in.substring(nextPos));
-                    return parts;
+                endPos = in.indexOf(separator, nextPos + sepLen);
+                if (endPos >= 0) {
+                    addAttributePart(compiled, in.substring(nextPos + sepLen, endPos));
+                    pos = endPos + sepLen;
+                    continue;
                 }
-                parts.add(in.substring(nextPos + separator.length(), endPos));
-                in = in.substring(endPos + separator.length());
             }
+            // not closed
+            compiled.add(createAttributePart(in.substring(nextPos)));
+            break;
         }
+        return new CompiledString(compiled);
+    }
+
+    private void addAttributePart(List<StringPart> compiled, String part) {
+        if (part.length() == 0) compiled.add(createContentPart(separator));
+        else compiled.add(createAttributePart(part));
     }
 
     protected StringPart createAttributePart(String part) {
@@ -133,6 +165,20 @@ public class StringCompiler implements Parser {
             out.append(content);
         }
 
+        @Override
+        public void execute(Appendable out, Map<String, Object> attributes) throws IOException {
+            out.append(content);
+        }
+
+        @Override
+        public int getLengthHint() {
+            return content.length();
+        }
+
+        public String getContent() {
+            return content;
+        }
+
         @Override
         public void dump(int level, StringBuilder out) {
             MString.appendRepeating(level, ' ', out);
@@ -186,6 +232,16 @@ public class StringCompiler implements Parser {
             out.append(value);
         }
 
+        @Override
+        public void execute(Appendable out, Map<String, Object> attributes) throws IOException {
+            out.append(value);
+        }
+
+        @Override
+        public int getLengthHint() {
+            return value == null ? 4 : value.length();
+        }
+
         @Override
         public void dump(int level, StringBuilder out) {
             MString.appendRepeating(level, ' ', out);
@@ -243,6 +299,12 @@ public class StringCompiler implements Parser {
             if (attributes != null) out.append(attributes.getOrDefault(name, def));
         }
 
+        @Override
+        public void execute(Appendable out, Map<String, Object> attributes) throws IOException {
+            if (attributes != null)
+                out.append(String.valueOf(attributes.getOrDefault(name, def)));
+        }
+
         @Override
         public void dump(int level, StringBuilder out) {
             MString.appendRepeating(level, ' ', out);
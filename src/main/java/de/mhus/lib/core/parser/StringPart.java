@@ -15,6 +15,7 @@
  */
 package de.mhus.lib.core.parser;
 
+import java.io.IOException;
 import java.util.Map;
 
 import de.mhus.lib.errors.MException;
@@ -23,5 +24,34 @@ public interface StringPart {
 
     public void execute(StringBuilder out, Map<String, Object> attributes) throws MException;
 
+    /**
+     * Write the part into an appendable. The default implementation uses a temporary StringBuilder
+     * if the target is not a StringBuilder.
+     *
+     * @param out
+     * @param attributes
+     * @throws MException
+     * @throws IOException
+     */
+    public default void execute(Appendable out, Map<String, Object> attributes)
+            throws MException, IOException {
+        if (out instanceof StringBuilder) {
+            execute((StringBuilder) out, attributes);
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        execute(sb, attributes);
+        out.append(sb);
+    }
+
+    /**
+     * Estimated length of the output, used to size the output buffer.
+     *
+     * @return Expected number of characters
+     */
+    public default int getLengthHint() {
+        return 16;
+    }
+
     public void dump(int level, StringBuilder out);
 }
@@ -23,29 +23,25 @@ package de.mhus.lib.core.parser;
 public abstract class StringPropertyReplacer {
 
     public String process(String in) {
-        StringBuilder out = null;
-        while (true) {
-            int p = in.indexOf("${");
-            if (p < 0) break;
-            if (out == null) out = new StringBuilder();
-            out.append(in.substring(0, p));
+        int p = in.indexOf("${");
+        if (p < 0) return in;
+        StringBuilder out = new StringBuilder(in.length() + 16);
+        int pos = 0;
+        while (p >= 0) {
+            out.append(in, pos, p);
             int p2 = in.indexOf('}', p);
-            if (p2 < 0) break;
-            String key = in.substring(p + 2, p2);
-            String val = findValueFor(key);
+            if (p2 < 0) {
+                pos = p;
+                break;
+            }
+            String val = findValueFor(in.substring(p + 2, p2));
             if (val != null) out.append(val);
-            else out.append("${").append(key).append("}");
-
-            // reduce 'in'
-            in = in.substring(p2 + 1);
-        }
-
-        if (out != null) {
-            out.append(in);
-            return out.toString();
+            else out.append(in, p, p2 + 1);
+            pos = p2 + 1;
+            p = in.indexOf("${", pos);
         }
-
-        return in;
+        out.append(in, pos, in.length());
+        return out.toString();
     }
 
     public abstract String findValueFor(String key);
@@ -144,6 +144,8 @@ public class AttributesStrategy extends MObject implements PojoStrategy {
         private Attribute<Object> parent;
         private boolean readable;
         private boolean writable;
+        private PojoAccessors.Getter getter;
+        private PojoAccessors.Setter setter;
 
         public Attribute(
                 String name,
@@ -156,6 +158,8 @@ public class AttributesStrategy extends MObject implements PojoStrategy {
             this.parent = parent;
             this.readable = readable;
             this.writable = writable;
+            getter = PojoAccessors.getter(field);
+            setter = PojoAccessors.setter(field);
         }
 
         @SuppressWarnings("unchecked")
@@ -164,10 +168,9 @@ public class AttributesStrategy extends MObject implements PojoStrategy {
             if (!readable) throw new IOException("field is write only: " + name);
             try {
                 pojo = PojoParser.checkParent(parent, pojo);
-                if (!field.canAccess(pojo)) field.setAccessible(true);
-                return (T) field.get(pojo);
-            } catch (Exception e) {
-                throw new IOException(field.getName(), e);
+                return (T) getter.get(pojo);
+            } catch (Throwable t) {
+                throw new IOException(field.getName(), t);
             }
         }
 
@@ -177,7 +180,6 @@ public class AttributesStrategy extends MObject implements PojoStrategy {
             if (!force && !writable) throw new IOException("field is read only: " + name);
             try {
                 pojo = PojoParser.checkParent(parent, pojo);
-                if (!field.canAccess(pojo)) field.setAccessible(true);
 
                 value = (T) MCast.toType(value, getType(), null);
                 if (getType().isPrimitive() && value == null) {
@@ -185,9 +187,9 @@ public class AttributesStrategy extends MObject implements PojoStrategy {
                     value = (T) MCast.getDefaultPrimitive(getType());
                 }
 
-                field.set(pojo, value);
-            } catch (Exception e) {
-                throw new IOException(field.getName(), e);
+                setter.set(pojo, value);
+            } catch (Throwable t) {
+                throw new IOException(field.getName(), t);
             }
         }
 
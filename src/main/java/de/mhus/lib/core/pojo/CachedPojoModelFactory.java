@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.pojo;
+
+/**
+ * Factory wrapper to cache the created models per class. The models are stored with a ClassValue,
+ * the cache will not prevent the classes from unloading. The returned models are shared and must
+ * not be changed.
+ *
+ * @author mikehummel
+ */
+public class CachedPojoModelFactory implements PojoModelFactory {
+
+    private final PojoModelFactory factory;
+
+    private final ClassValue<PojoModel> models =
+            new ClassValue<PojoModel>() {
+                @Override
+                protected PojoModel computeValue(Class<?> type) {
+                    return factory.createPojoModel(type);
+                }
+            };
+
+    public CachedPojoModelFactory(PojoModelFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public PojoModel createPojoModel(Class<?> pojoClass) {
+        return models.get(pojoClass);
+    }
+
+    /**
+     * Remove the cached model of the class. The next request will create a new model.
+     *
+     * @param pojoClass
+     */
+    public void invalidate(Class<?> pojoClass) {
+        models.remove(pojoClass);
+    }
+}
@@ -28,6 +28,8 @@ public class FunctionAttribute<T> implements PojoAttribute<T> {
     private Method setter;
     private String name;
     private FunctionAttribute<Object> parent;
+    private PojoAccessors.Getter getterAccessor;
+    private PojoAccessors.Setter setterAccessor;
 
     public FunctionAttribute(
             Class<T> clazz,
@@ -40,6 +42,8 @@ public class FunctionAttribute<T> implements PojoAttribute<T> {
         this.setter = setter;
         this.name = name;
         this.parent = parent;
+        getterAccessor = PojoAccessors.getter(getter);
+        setterAccessor = PojoAccessors.setter(setter);
     }
 
     @Override
@@ -79,9 +83,9 @@ public class FunctionAttribute<T> implements PojoAttribute<T> {
                 // that's not possible
                 value = (T) MCast.getDefaultPrimitive(getType());
             }
-            setter.invoke(pojo, value);
-        } catch (Exception e) {
-            throw new IOException("Error set: " + name + "(" + getType() + ")=" + value, e);
+            setterAccessor.set(pojo, value);
+        } catch (Throwable t) {
+            throw new IOException("Error set: " + name + "(" + getType() + ")=" + value, t);
         }
     }
 
@@ -94,9 +98,9 @@ public class FunctionAttribute<T> implements PojoAttribute<T> {
         //		if (!getType().isInstance(pojo))
         //			throw new IOException("Object is not instance of " + getType().getCanonicalName());
         try {
-            return (T) getter.invoke(pojo);
-        } catch (Exception e) {
-            throw new IOException("Error get: " + name + "(" + clazz + ")", e);
+            return (T) getterAccessor.get(pojo);
+        } catch (Throwable t) {
+            throw new IOException("Error get: " + name + "(" + clazz + ")", t);
         }
     }
 
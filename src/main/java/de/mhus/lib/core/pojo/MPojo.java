@@ -75,42 +75,53 @@ public class MPojo {
     public static synchronized PojoModelFactory getDefaultModelFactory() {
         if (defaultModelFactory == null)
             defaultModelFactory =
-                    new PojoModelFactory() {
-
-                        @Override
-                        public PojoModel createPojoModel(Class<?> pojoClass) {
-                            PojoModel model =
-                                    new PojoParser()
-                                            .parse(pojoClass, "_", null)
-                                            .filter(
-                                                    new DefaultFilter(
-                                                            true, false, false, false, true))
-                                            .getModel();
-                            return model;
-                        }
-                    };
+                    new CachedPojoModelFactory(
+                            new PojoModelFactory() {
+
+                                @Override
+                                public PojoModel createPojoModel(Class<?> pojoClass) {
+                                    PojoModel model =
+                                            new PojoParser()
+                                                    .parse(pojoClass, "_", null)
+                                                    .filter(
+                                                            new DefaultFilter(
+                                                                    true,
+                                                                    false,
+                                                                    false,
+                                                                    false,
+                                                                    true))
+                                                    .getModel();
+                                    return model;
+                                }
+                            });
         return defaultModelFactory;
     }
 
     public static synchronized PojoModelFactory getAttributesModelFactory() {
         if (attributesModelFactory == null)
             attributesModelFactory =
-                    new PojoModelFactory() {
-
-                        @Override
-                        public PojoModel createPojoModel(Class<?> pojoClass) {
-                            PojoModel model =
-                                    new PojoParser()
-                                            .parse(
-                                                    pojoClass,
-                                                    new AttributesStrategy(true, true, "_", null))
-                                            .filter(
-                                                    new DefaultFilter(
-                                                            true, false, false, false, true))
-                                            .getModel();
-                            return model;
-                        }
-                    };
+                    new CachedPojoModelFactory(
+                            new PojoModelFactory() {
+
+                                @Override
+                                public PojoModel createPojoModel(Class<?> pojoClass) {
+                                    PojoModel model =
+                                            new PojoParser()
+                                                    .parse(
+                                                            pojoClass,
+                                                            new AttributesStrategy(
+                                                                    true, true, "_", null))
+                                                    .filter(
+                                                            new DefaultFilter(
+                                                                    true,
+                                                                    false,
+                                                                    false,
+                                                                    false,
+                                                                    true))
+                                                    .getModel();
+                                    return model;
+                                }
+                            });
         return attributesModelFactory;
     }
 
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.pojo;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.mhus.lib.core.MApi;
+
+/**
+ * Create fast accessors for getter/setter methods and fields. Methods will be bound with the
+ * LambdaMetafactory to generated classes. If this is not possible (e.g. not accessible) a method
+ * handle is used. Reflection is only the last fallback. The accessors are cached with the declaring
+ * class, so they will be unloaded together with the class.
+ *
+ * @author mikehummel
+ */
+public class PojoAccessors {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE =
+            MethodType.methodType(void.class, Object.class, Object.class);
+
+    public interface Getter {
+        Object get(Object pojo) throws Throwable;
+    }
+
+    public interface Setter {
+        void set(Object pojo, Object value) throws Throwable;
+    }
+
+    private static final ClassValue<ConcurrentHashMap<Member, Getter>> GETTERS =
+            new ClassValue<ConcurrentHashMap<Member, Getter>>() {
+                @Override
+                protected ConcurrentHashMap<Member, Getter> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private static final ClassValue<ConcurrentHashMap<Member, Setter>> SETTERS =
+            new ClassValue<ConcurrentHashMap<Member, Setter>>() {
+                @Override
+                protected ConcurrentHashMap<Member, Setter> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private PojoAccessors() {}
+
+    public static Getter getter(Method method) {
+        if (method == null) return null;
+        return GETTERS.get(method.getDeclaringClass())
+                .computeIfAbsent(method, m -> createGetter(method));
+    }
+
+    public static Setter setter(Method method) {
+        if (method == null) return null;
+        return SETTERS.get(method.getDeclaringClass())
+                .computeIfAbsent(method, m -> createSetter(method));
+    }
+
+    public static Getter getter(Field field) {
+        if (field == null) return null;
+        return GETTERS.get(field.getDeclaringClass())
+                .computeIfAbsent(field, m -> createGetter(field));
+    }
+
+    public static Setter setter(Field field) {
+        if (field == null) return null;
+        return SETTERS.get(field.getDeclaringClass())
+                .computeIfAbsent(field, m -> createSetter(field));
+    }
+
+    private static Getter createGetter(Method method) {
+        try {
+            MethodHandles.Lookup lookup = lookup(method.getDeclaringClass());
+            MethodHandle handle = lookup.unreflect(method);
+            try {
+                CallSite site =
+                        LambdaMetafactory.metafactory(
+                                lookup,
+                                "get",
+                                MethodType.methodType(Getter.class),
+                                GETTER_TYPE,
+                                handle,
+                                handle.type().wrap());
+                return (Getter) site.getTarget().invoke();
+            } catch (Throwable t) {
+                MApi.dirtyLogTrace("PojoAccessors: fallback to method handle", method, t);
+                return getter(handle);
+            }
+        } catch (Throwable t) {
+            MApi.dirtyLogTrace("PojoAccessors: fallback to reflection", method, t);
+            return pojo -> method.invoke(pojo);
+        }
+    }
+
+    private static Setter createSetter(Method method) {
+        try {
+            MethodHandles.Lookup lookup = lookup(method.getDeclaringClass());
+            MethodHandle handle = lookup.unreflect(method);
+            try {
+                MethodType type = handle.type();
+                CallSite site =
+                        LambdaMetafactory.metafactory(
+                                lookup,
+                                "set",
+                                MethodType.methodType(Setter.class),
+                                SETTER_TYPE,
+                                handle,
+                                MethodType.methodType(
+                                        void.class,
+                                        type.parameterType(0),
+                                        type.wrap().parameterType(1)));
+                return (Setter) site.getTarget().invoke();
+            } catch (Throwable t) {
+                MApi.dirtyLogTrace("PojoAccessors: fallback to method handle", method, t);
+                return setter(handle);
+            }
+        } catch (Throwable t) {
+            MApi.dirtyLogTrace("PojoAccessors: fallback to reflection", method, t);
+            return (pojo, value) -> method.invoke(pojo, value);
+        }
+    }
+
+    private static Getter createGetter(Field field) {
+        try {
+            return getter(lookup(field.getDeclaringClass()).unreflectGetter(field));
+        } catch (Throwable t) {
+            MApi.dirtyLogTrace("PojoAccessors: fallback to reflection", field, t);
+            return pojo -> field.get(pojo);
+        }
+    }
+
+    private static Setter createSetter(Field field) {
+        // final fields could only be written by reflection
+        if (Modifier.isFinal(field.getModifiers())) return (pojo, value) -> field.set(pojo, value);
+        try {
+            return setter(lookup(field.getDeclaringClass()).unreflectSetter(field));
+        } catch (Throwable t) {
+            MApi.dirtyLogTrace("PojoAccessors: fallback to reflection", field, t);
+            return (pojo, value) -> field.set(pojo, value);
+        }
+    }
+
+    private static Getter getter(MethodHandle handle) {
+        MethodHandle generic = handle.asType(GETTER_TYPE);
+        return pojo -> generic.invokeExact(pojo);
+    }
+
+    private static Setter setter(MethodHandle handle) {
+        MethodHandle generic = handle.asType(SETTER_TYPE);
+        return (pojo, value) -> {
+            generic.invokeExact(pojo, value);
+        };
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> clazz) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+    }
+}
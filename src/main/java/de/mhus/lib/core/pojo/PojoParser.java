@@ -48,7 +48,8 @@ public class PojoParser {
     }
 
     public PojoParser parse(Object pojo, PojoStrategy strategy) {
-        if (model == null) model = new PojoModelImpl(pojo.getClass());
+        if (model == null)
+            model = new PojoModelImpl(pojo instanceof Class ? (Class<?>) pojo : pojo.getClass());
         if (strategy == null) strategy = new DefaultStrategy();
         if (pojo instanceof Class) {
             strategy.parse(this, (Class<?>) pojo, model);
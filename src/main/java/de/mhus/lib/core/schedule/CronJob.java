@@ -15,7 +15,17 @@
  */
 package de.mhus.lib.core.schedule;
 
-import java.util.Calendar;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.mhus.lib.core.ITimerTask;
 import de.mhus.lib.core.M;
@@ -110,11 +120,17 @@ public class CronJob extends SchedulerJob implements MutableSchedulerJob {
 
     public static class Definition {
 
-        private int[] allowedMinutes;
-        private int[] allowedHours;
-        private int[] allowedDaysMonth;
-        private int[] allowedMonthes;
-        private int[] allowedDaysWeek;
+        private static final long ALL = -1L;
+        // years to search before a definition is handled as never matching, Feb 29 needs 8
+        private static final int MAX_SEARCH_YEARS = 9;
+        private static final long WORKING_DAYS_TIMEOUT = MPeriod.HOUR_IN_MILLISECOUNDS;
+        private static final Map<Integer, WorkingDays> workingDays = new ConcurrentHashMap<>();
+
+        private long allowedMinutes = ALL;
+        private long allowedHours = ALL;
+        private long allowedDaysMonth = ALL;
+        private long allowedMonthes = ALL;
+        private long allowedDaysWeek = ALL;
         private String definition;
         private boolean disabled = false;
         private boolean onlyWorkingDays = false;
@@ -143,13 +159,13 @@ public class CronJob extends SchedulerJob implements MutableSchedulerJob {
                 }
             }
 
-            if (parts.length > 0) allowedMinutes = MCast.toIntIntervalValues(parts[0], 0, 59);
+            if (parts.length > 0) allowedMinutes = toMask(parts[0], 0, 59);
 
-            if (parts.length > 1) allowedHours = MCast.toIntIntervalValues(parts[1], 0, 23);
+            if (parts.length > 1) allowedHours = toMask(parts[1], 0, 23);
 
-            if (parts.length > 2) allowedDaysMonth = MCast.toIntIntervalValues(parts[2], 1, 31);
+            if (parts.length > 2) allowedDaysMonth = toMask(parts[2], 1, 31);
 
-            if (parts.length > 3) allowedMonthes = MCast.toIntIntervalValues(parts[3], 0, 11);
+            if (parts.length > 3) allowedMonthes = toMask(parts[3], 0, 11);
 
             if (parts.length > 4) {
                 parts[4] = parts[4].toLowerCase();
@@ -160,7 +176,7 @@ public class CronJob extends SchedulerJob implements MutableSchedulerJob {
                 parts[4] = parts[4].replace("th", "5");
                 parts[4] = parts[4].replace("fr", "6");
                 parts[4] = parts[4].replace("sa", "7");
-                allowedDaysWeek = MCast.toIntIntervalValues(parts[4], 1, 7);
+                allowedDaysWeek = toMask(parts[4], 1, 7);
             }
 
             if (parts.length > 5) {
@@ -169,78 +185,123 @@ public class CronJob extends SchedulerJob implements MutableSchedulerJob {
             }
         }
 
+        private static long toMask(String def, int min, int max) {
+            int[] values = MCast.toIntIntervalValues(def, min, max);
+            if (values == null || values.length == 0) return ALL;
+            long mask = 0;
+            for (int v : values) if (v >= min && v <= max) mask |= 1L << v;
+            return mask == 0 ? ALL : mask;
+        }
+
         public long calculateNext(long start) {
 
             if (disabled) return DISABLED_TIME;
+            if (start <= 0) start = System.currentTimeMillis();
+            return calculateNext(start, ZoneId.systemDefault(), getHolidayProvider());
+        }
 
-            Calendar next = Calendar.getInstance();
-            if (start > 0) next.setTimeInMillis(start);
+        /**
+         * Calculate the next execution times, e.g. for capacity planning.
+         *
+         * @param start Start time, the first execution is after this time
+         * @param count Maximum number of times
+         * @return The execution times, less then count if the definition has no more matches
+         */
+        public long[] calculateNext(long start, int count) {
+            if (disabled || count <= 0) return new long[0];
+            if (start <= 0) start = System.currentTimeMillis();
+            ZoneId zone = ZoneId.systemDefault();
+            HolidayProviderIfc holidayProvider = getHolidayProvider();
+            long[] out = new long[count];
+            for (int i = 0; i < count; i++) {
+                start = calculateNext(start, zone, holidayProvider);
+                if (start == DISABLED_TIME) return Arrays.copyOf(out, i);
+                out[i] = start;
+            }
+            return out;
+        }
+
+        private HolidayProviderIfc getHolidayProvider() {
+            return onlyWorkingDays ? M.l(HolidayProviderIfc.class) : null;
+        }
 
+        private long calculateNext(long start, ZoneId zone, HolidayProviderIfc holidayProvider) {
             // obligatory next minute
-            next.set(Calendar.MILLISECOND, 0);
-            next.set(Calendar.SECOND, 0);
-            next.add(Calendar.MINUTE, 1);
-
-            boolean retry = true;
-            int retryCnt = 0;
-            while (retry && retryCnt < 10) {
-                retry = false;
-                retryCnt++;
-
-                if (allowedMinutes != null) {
-                    int[] d = findNextAllowed(allowedMinutes, next.get(Calendar.MINUTE));
-                    next.set(Calendar.MINUTE, d[1]);
-                    if (d[2] == 1) next.add(Calendar.HOUR_OF_DAY, 1);
-                }
-                if (allowedHours != null) {
-                    int[] d = findNextAllowed(allowedHours, next.get(Calendar.HOUR_OF_DAY));
-                    next.set(Calendar.HOUR_OF_DAY, d[1]);
-                    if (d[2] == 1) next.add(Calendar.DATE, 1);
-                }
-                if (allowedDaysMonth != null) {
-                    int[] d = findNextAllowed(allowedDaysMonth, next.get(Calendar.DAY_OF_MONTH));
-                    next.set(Calendar.DAY_OF_MONTH, d[1]);
-                    if (d[2] == 1) next.add(Calendar.MONTH, 1);
-                }
-                if (allowedMonthes != null) {
-                    int[] d = findNextAllowed(allowedMonthes, next.get(Calendar.MONTH));
-                    next.set(Calendar.MONTH, d[1]);
-                    if (d[2] == 1) next.add(Calendar.YEAR, 1);
+            LocalDateTime next =
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(start), zone)
+                            .truncatedTo(ChronoUnit.MINUTES)
+                            .plusMinutes(1);
+            LocalDate end = next.toLocalDate().plusYears(MAX_SEARCH_YEARS);
+            while (true) {
+                LocalDateTime local = nextMatch(next, end, holidayProvider);
+                if (local == null) return DISABLED_TIME;
+                // local times in a gap are moved forward by the length of the gap, in an overlap
+                // the earlier offset could be before start, e.g. if start is in the second pass
+                ZonedDateTime zoned = local.atZone(zone);
+                long time = zoned.toInstant().toEpochMilli();
+                if (time <= start)
+                    time = zoned.withLaterOffsetAtOverlap().toInstant().toEpochMilli();
+                if (time > start) return time;
+                next = local.plusMinutes(1);
+            }
+        }
+
+        private LocalDateTime nextMatch(
+                LocalDateTime next, LocalDate end, HolidayProviderIfc holidayProvider) {
+            LocalDate day = next.toLocalDate();
+            int hour = next.getHour();
+            int minute = next.getMinute();
+
+            while (day.isBefore(end)) {
+                if (!isSet(allowedMonthes, day.getMonthValue() - 1)) {
+                    day = day.withDayOfMonth(1).plusMonths(1);
+                    hour = 0;
+                    minute = 0;
+                    continue;
                 }
-                if (allowedDaysWeek != null) {
-                    int[] d = findNextAllowed(allowedDaysWeek, next.get(Calendar.DAY_OF_WEEK));
-                    if (next.get(Calendar.DAY_OF_WEEK) != d[1]) {
-                        next.set(Calendar.DAY_OF_WEEK, d[1]);
-                        next.set(Calendar.HOUR, 0);
-                        next.set(Calendar.MINUTE, 0);
-                        retry = true;
-                    }
-                    if (d[2] == 1) next.add(Calendar.WEEK_OF_YEAR, 1);
+                if (!isSet(allowedDaysMonth, day.getDayOfMonth())
+                        || !isSet(allowedDaysWeek, day.getDayOfWeek().getValue() % 7 + 1)
+                        || holidayProvider != null && !isWorkingDay(holidayProvider, day)) {
+                    day = day.plusDays(1);
+                    hour = 0;
+                    minute = 0;
+                    continue;
                 }
-
-                if (onlyWorkingDays) {
-                    HolidayProviderIfc holidayProvider = M.l(HolidayProviderIfc.class);
-                    if (holidayProvider != null) {
-                        while (!holidayProvider.isWorkingDay(null, next.getTime())) {
-                            next.add(Calendar.DAY_OF_MONTH, 1);
-                            next.set(Calendar.HOUR, 0);
-                            next.set(Calendar.MINUTE, 0);
-                            retry = true;
-                        }
-                    }
+                int h = nextSet(allowedHours, hour, 23);
+                if (h == hour) {
+                    int m = nextSet(allowedMinutes, minute, 59);
+                    if (m >= 0) return day.atTime(h, m);
+                    h = nextSet(allowedHours, hour + 1, 23);
                 }
+                if (h >= 0) return day.atTime(h, nextSet(allowedMinutes, 0, 59));
+                day = day.plusDays(1);
+                hour = 0;
+                minute = 0;
             }
-            return next.getTimeInMillis();
+            return null;
+        }
+
+        private static boolean isSet(long mask, int value) {
+            return (mask & (1L << value)) != 0;
+        }
+
+        private static int nextSet(long mask, int from, int max) {
+            if (from > max) return -1;
+            long rest = mask & (ALL << from);
+            if (rest == 0) return -1;
+            int next = Long.numberOfTrailingZeros(rest);
+            return next > max ? -1 : next;
         }
 
-        private int[] findNextAllowed(int[] allowed, int current) {
-            int i = 0;
-            if (allowed == null || allowed.length == 0) return new int[] {i, current, 0};
-            for (int a : allowed) {
-                if (a >= current) return new int[] {i, a, 0};
-                i++;
+        private static boolean isWorkingDay(HolidayProviderIfc holidayProvider, LocalDate day) {
+            WorkingDays cached = workingDays.get(day.getYear());
+            if (cached == null
+                    || cached.provider != holidayProvider
+                    || MPeriod.isTimeOut(cached.created, WORKING_DAYS_TIMEOUT)) {
+                cached = new WorkingDays(holidayProvider, day.getYear());
+                workingDays.put(day.getYear(), cached);
             }
-            return new int[] {0, allowed[0], 1};
+            return !cached.nonWorkingDays.get(day.getDayOfYear());
         }
 
         @Override
@@ -253,6 +314,24 @@ public class CronJob extends SchedulerJob implements MutableSchedulerJob {
         }
     }
 
+    private static class WorkingDays {
+
+        private final HolidayProviderIfc provider;
+        private final long created = System.currentTimeMillis();
+        private final BitSet nonWorkingDays = new BitSet(367);
+
+        private WorkingDays(HolidayProviderIfc provider, int year) {
+            this.provider = provider;
+            ZoneId zone = ZoneId.systemDefault();
+            for (LocalDate day = LocalDate.of(year, 1, 1);
+                    day.getYear() == year;
+                    day = day.plusDays(1)) {
+                Date date = Date.from(day.atStartOfDay(zone).toInstant());
+                if (!provider.isWorkingDay(null, date)) nonWorkingDays.set(day.getDayOfYear());
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return CronJob.class.getSimpleName() + "," + definition;
@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.schedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Scheduler queue based on a binary heap. Scheduling and removing of jobs is O(log n), the jobs are
+ * indexed to find them without scanning the queue. The scheduled time is captured while adding the
+ * job, changes of the job time are recognized with the next doSchedule().
+ */
+public class QueueHeap implements SchedulerQueue {
+
+    private static final Comparator<Node> ORDER =
+            (a, b) -> a.time != b.time ? Long.compare(a.time, b.time) : Long.compare(a.seq, b.seq);
+
+    private Node[] heap = new Node[64];
+    private int size;
+    private long seq;
+    private HashMap<SchedulerJob, Node> index = new HashMap<>();
+
+    private long lastLag;
+    private long maxLag;
+
+    @Override
+    public List<SchedulerJob> removeJobs(long toTime) {
+        LinkedList<SchedulerJob> out = null;
+        synchronized (this) {
+            while (size > 0 && heap[0].time <= toTime) {
+                Node first = removeAt(0);
+                index.remove(first.job);
+                if (out == null) out = new LinkedList<>();
+                out.add(first.job);
+                lastLag = toTime - first.time;
+                if (lastLag > maxLag) maxLag = lastLag;
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public void doSchedule(SchedulerJob job) {
+        long time = job.getScheduledTime();
+        if (time <= 0) return;
+        synchronized (this) {
+            Node node = index.get(job);
+            if (node != null) {
+                // already queued, move to the new position
+                removeAt(node.pos);
+                node.time = time;
+                node.seq = seq++;
+                insert(node);
+                if (heap[0] == node) notifyAll();
+                return;
+            }
+            node = new Node(job, time, seq++);
+            index.put(job, node);
+            insert(node);
+            if (heap[0] == node) notifyAll();
+        }
+    }
+
+    @Override
+    public void removeJob(SchedulerJob job) {
+        synchronized (this) {
+            Node node = index.remove(job);
+            if (node != null) removeAt(node.pos);
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (this) {
+            return size;
+        }
+    }
+
+    @Override
+    public List<SchedulerJob> getJobs() {
+        Node[] copy;
+        synchronized (this) {
+            copy = Arrays.copyOf(heap, size);
+        }
+        Arrays.sort(copy, ORDER);
+        ArrayList<SchedulerJob> out = new ArrayList<>(copy.length);
+        for (Node node : copy) out.add(node.job);
+        return out;
+    }
+
+    @Override
+    public boolean contains(SchedulerJob job) {
+        synchronized (this) {
+            return index.containsKey(job);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this) {
+            Arrays.fill(heap, 0, size, null);
+            size = 0;
+            index.clear();
+        }
+    }
+
+    /**
+     * Wait until the next job is due or the given time is reached. Jobs scheduled before the
+     * current deadline will wake up the waiting thread.
+     *
+     * @param maxTime Latest time to return
+     * @return The current time
+     * @throws InterruptedException
+     */
+    public synchronized long waitForNext(long maxTime) throws InterruptedException {
+        while (true) {
+            long now = System.currentTimeMillis();
+            long next = size == 0 ? maxTime : Math.min(maxTime, heap[0].time);
+            if (next <= now) return now;
+            wait(next - now);
+        }
+    }
+
+    /**
+     * Return the time of the next job in the queue.
+     *
+     * @return The time or 0 if the queue is empty
+     */
+    public synchronized long getNextScheduledTime() {
+        return size == 0 ? 0 : heap[0].time;
+    }
+
+    /**
+     * Return the delay between the scheduled time and the time the last job was taken from the
+     * queue.
+     *
+     * @return lag in milliseconds
+     */
+    public long getLastLag() {
+        return lastLag;
+    }
+
+    /**
+     * Return the biggest lag since creation or last resetLag().
+     *
+     * @return lag in milliseconds
+     */
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    public synchronized void resetLag() {
+        lastLag = 0;
+        maxLag = 0;
+    }
+
+    private void insert(Node node) {
+        if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+        node.pos = size;
+        heap[size] = node;
+        size++;
+        siftUp(node.pos);
+    }
+
+    private Node removeAt(int pos) {
+        Node node = heap[pos];
+        size--;
+        if (pos != size) {
+            Node last = heap[size];
+            heap[pos] = last;
+            last.pos = pos;
+            heap[size] = null;
+            siftDown(pos);
+            if (heap[pos] == last) siftUp(pos);
+        } else {
+            heap[size] = null;
+        }
+        return node;
+    }
+
+    private void siftUp(int pos) {
+        Node node = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            Node p = heap[parent];
+            if (ORDER.compare(node, p) >= 0) break;
+            heap[pos] = p;
+            p.pos = pos;
+            pos = parent;
+        }
+        heap[pos] = node;
+        node.pos = pos;
+    }
+
+    private void siftDown(int pos) {
+        Node node = heap[pos];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && ORDER.compare(heap[right], heap[child]) < 0) child = right;
+            Node c = heap[child];
+            if (ORDER.compare(node, c) <= 0) break;
+            heap[pos] = c;
+            c.pos = pos;
+            pos = child;
+        }
+        heap[pos] = node;
+        node.pos = pos;
+    }
+
+    private static class Node {
+        private final SchedulerJob job;
+        private long time;
+        private long seq;
+        private int pos;
+
+        private Node(SchedulerJob job, long time, long seq) {
+            this.job = job;
+            this.time = time;
+            this.seq = seq;
+        }
+    }
+}
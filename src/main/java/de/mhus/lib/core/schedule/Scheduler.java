@@ -22,6 +22,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import de.mhus.lib.basics.Named;
 import de.mhus.lib.core.ITimerTask;
@@ -30,15 +36,30 @@ import de.mhus.lib.core.MLog;
 import de.mhus.lib.core.MPeriod;
 import de.mhus.lib.core.MString;
 import de.mhus.lib.core.MThread;
+import de.mhus.lib.core.cfg.CfgBoolean;
+import de.mhus.lib.core.cfg.CfgInt;
 import de.mhus.lib.core.util.ValueProvider;
 import de.mhus.lib.errors.TimeoutRuntimeException;
 
 public class Scheduler extends MLog implements Named {
 
+    private static CfgInt CFG_MAX_THREADS = new CfgInt(Scheduler.class, "maxThreads", 100);
+    private static CfgBoolean CFG_PRECISE = new CfgBoolean(Scheduler.class, "precise", false);
+
     private Timer timer;
-    SchedulerQueue queue = new QueueList();
+    SchedulerQueue queue = new QueueHeap();
+    private int maxThreads = -1;
+    private Executor executor;
+    private ThreadPoolExecutor pool;
+    private Boolean precise;
+    private volatile Thread dispatcher;
+    private LongAdder executedJobs = new LongAdder();
+    private volatile long lastStartLag;
+    private volatile long maxStartLag;
     private String name = Scheduler.class.getCanonicalName();
     protected LinkedList<SchedulerJob> running = new LinkedList<>();
+    // jobs handed to the executor but not started yet, guarded by running
+    protected HashSet<SchedulerJob> dispatched = new HashSet<>();
     protected HashSet<SchedulerJob> jobs = new HashSet<>();
     private long nextTimeoutCheck;
     private long lastQueueCheck = System.currentTimeMillis();
@@ -58,13 +79,25 @@ public class Scheduler extends MLog implements Named {
     public void start() {
         if (timer != null) return;
         timer = new Timer(name, true);
+        boolean precise = isPrecise();
+        if (precise && !(queue instanceof QueueHeap)) {
+            log().w("precise mode needs a QueueHeap, fall back to tick", name);
+            precise = false;
+        }
+        if (precise) {
+            dispatcher = new Thread(this::doDispatchLoop, name + "-dispatcher");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+        boolean housekeepingOnly = precise;
         timer.scheduleAtFixedRate(
                 new TimerTask() {
 
                     @Override
                     public void run() {
                         try {
-                            doTick();
+                            if (housekeepingOnly) doHousekeeping();
+                            else doTick();
                         } catch (Throwable t) {
                             log().e(t);
                         }
@@ -74,25 +107,61 @@ public class Scheduler extends MLog implements Named {
                 1000);
     }
 
+    /**
+     * Dispatcher of the precise mode. Sleeps until the next job is due and dispatches without
+     * holding the jobs lock.
+     */
+    protected void doDispatchLoop() {
+        QueueHeap heap = (QueueHeap) queue;
+        Thread current = Thread.currentThread();
+        while (dispatcher == current) {
+            try {
+                // wake up from time to time to recognize stop()
+                long now = heap.waitForNext(System.currentTimeMillis() + 1000);
+                doDispatch(now);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable t) {
+                log().e(t);
+            }
+        }
+    }
+
+    protected void doHousekeeping() {
+        if (MPeriod.isTimeOut(lastQueueCheck, queueCheckTimeout)) doQueueCheck();
+        doTimeoutCheck();
+    }
+
+    protected void doDispatch(long time) {
+        // the running lock is held until the jobs are dispatched, a parallel queue check would
+        // find them in neither the queue nor the running list otherwise
+        synchronized (running) {
+            // execute overdue jobs
+            List<SchedulerJob> pack = queue.removeJobs(time);
+            if (pack == null) return;
+            for (SchedulerJob job : pack) {
+                try {
+                    doExecuteJobInternal(job, false);
+                } catch (Throwable t) {
+                    log().t("Job error", job.getName(), job, t);
+                    job.doError(t);
+                }
+            }
+        }
+    }
+
     protected void doTick() {
         synchronized (jobs) {
             // check queue
             if (MPeriod.isTimeOut(lastQueueCheck, queueCheckTimeout)) doQueueCheck();
 
-            // execute overdue jobs
-            List<SchedulerJob> pack = queue.removeJobs(System.currentTimeMillis());
-            if (pack != null) {
-                for (SchedulerJob job : pack) {
-                    try {
-                        doExecuteJobInternal(job, false);
-                    } catch (Throwable t) {
-                        log().t("Job error", job.getName(), job, t);
-                        job.doError(t);
-                    }
-                }
-            }
+            doDispatch(System.currentTimeMillis());
         } // END LOCK
 
+        doTimeoutCheck();
+    }
+
+    protected void doTimeoutCheck() {
         // notify timeout of jobs
         long time = System.currentTimeMillis();
         if (nextTimeoutCheck < time) {
@@ -121,8 +190,10 @@ public class Scheduler extends MLog implements Named {
     }
 
     public void doExecuteJob(SchedulerJob job, boolean forced) {
-        queue.removeJob(job);
-        doExecuteJobInternal(job, forced);
+        synchronized (running) {
+            queue.removeJob(job);
+            doExecuteJobInternal(job, forced);
+        }
     }
 
     protected void doExecuteJobInternal(SchedulerJob job, boolean forced) {
@@ -130,7 +201,7 @@ public class Scheduler extends MLog implements Named {
             log().w("job is busy, reschedule", job.getName());
             boolean isRunning = false;
             synchronized (running) {
-                isRunning = running.contains(job);
+                isRunning = running.contains(job) || dispatched.contains(job);
             }
             try {
                 if (!isRunning) {
@@ -146,15 +217,147 @@ public class Scheduler extends MLog implements Named {
             }
             return;
         }
-        new MThread(new MyExecutor(job, forced))
-                .start(); // TODO unsafe, monitor runtime use timeout or long runtime warnings, use
-        // maximal number of threads. be sure a job is running once
+        // mark as dispatched, the queue check must not reschedule the job while it is waiting
+        // for a free worker
+        synchronized (running) {
+            dispatched.add(job);
+        }
+        try {
+            Executor exec = getExecutor();
+            if (exec == null) new MThread(new MyExecutor(job, forced)).start();
+            else exec.execute(new MyExecutor(job, forced));
+        } catch (Throwable t) {
+            synchronized (running) {
+                dispatched.remove(job);
+            }
+            job.releaseBusy(this);
+            throw t;
+        }
     }
 
     public void stop() {
-        if (timer == null) return;
-        timer.cancel();
-        timer = null;
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        Thread d = dispatcher;
+        if (d != null) {
+            dispatcher = null;
+            d.interrupt();
+        }
+        synchronized (this) {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+    }
+
+    /**
+     * Return the executor used to run the jobs. By default a bounded thread pool with maxThreads
+     * workers is created. If maxThreads is 0 or less every execution creates a new thread.
+     *
+     * @return The executor or null
+     */
+    protected synchronized Executor getExecutor() {
+        if (executor != null) return executor;
+        if (pool == null) {
+            int max = getMaxThreads();
+            if (max <= 0) return null;
+            AtomicInteger cnt = new AtomicInteger();
+            pool =
+                    new ThreadPoolExecutor(
+                            max,
+                            max,
+                            60,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(),
+                            r -> {
+                                Thread t = new Thread(r, name + "-" + cnt.incrementAndGet());
+                                t.setDaemon(true);
+                                return t;
+                            });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    /**
+     * Set an own executor to run the jobs, e.g. a virtual thread executor. The executor will not be
+     * shut down by the scheduler.
+     *
+     * @param executor The executor or null to use the default pool
+     */
+    public synchronized void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public boolean isPrecise() {
+        return precise == null ? CFG_PRECISE.value() : precise;
+    }
+
+    /**
+     * In precise mode a dispatcher thread waits until the next job is due and starts it with
+     * millisecond resolution. Otherwise the jobs are started by a tick every second. Must be set
+     * before start().
+     *
+     * @param precise
+     */
+    public void setPrecise(boolean precise) {
+        this.precise = precise;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads < 0 ? CFG_MAX_THREADS.value() : maxThreads;
+    }
+
+    /**
+     * Set the maximum number of parallel running jobs, must be set before the first job is
+     * executed. 0 will start a new thread for every execution.
+     *
+     * @param maxThreads
+     */
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * Return the number of executions waiting for a free worker.
+     *
+     * @return Number of waiting executions
+     */
+    public int getWaitingExecutions() {
+        Executor exec = executor == null ? pool : executor;
+        if (!(exec instanceof ThreadPoolExecutor)) return 0;
+        return ((ThreadPoolExecutor) exec).getQueue().size();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getExecutedJobs() {
+        return executedJobs.sum();
+    }
+
+    /**
+     * Return the time between the scheduled time and the real start of the last executed job.
+     *
+     * @return lag in milliseconds
+     */
+    public long getLastStartLag() {
+        return lastStartLag;
+    }
+
+    public long getMaxStartLag() {
+        return maxStartLag;
+    }
+
+    public void resetMetrics() {
+        executedJobs.reset();
+        lastStartLag = 0;
+        maxStartLag = 0;
+        if (queue instanceof QueueHeap) ((QueueHeap) queue).resetLag();
     }
 
     public void schedule(SchedulerJob job) {
@@ -167,15 +370,18 @@ public class Scheduler extends MLog implements Named {
     public void doQueueCheck() {
         log().d("doQueueCheck");
         lastQueueCheck = System.currentTimeMillis();
-        synchronized (running) {
-            synchronized (jobs) {
+        // same lock order as doTick: jobs, running
+        synchronized (jobs) {
+            synchronized (running) {
                 jobs.removeIf(
                         j -> {
                             return j.isCanceled();
                         });
                 jobs.forEach(
                         j -> {
-                            if (!queue.contains(j) && !running.contains(j)) {
+                            if (!queue.contains(j)
+                                    && !running.contains(j)
+                                    && !dispatched.contains(j)) {
                                 try {
                                     log().w("reschedule lost job", j.getName());
                                     j.setNextExecutionTime(SchedulerJob.CALCULATE_NEXT);
@@ -202,7 +408,14 @@ public class Scheduler extends MLog implements Named {
         @Override
         public void run() {
             log().d("Job started", job.getName());
+            executedJobs.increment();
+            if (!forced && job.getScheduledTime() > 0) {
+                long lag = System.currentTimeMillis() - job.getScheduledTime();
+                lastStartLag = lag;
+                if (lag > maxStartLag) maxStartLag = lag;
+            }
             synchronized (running) {
+                dispatched.remove(job);
                 running.add(job);
             }
             try {
@@ -281,7 +494,7 @@ public class Scheduler extends MLog implements Named {
                         @Override
                         public String getValue() throws Exception {
                             synchronized (running) {
-                                if (running.isEmpty()) return "";
+                                if (running.isEmpty() && dispatched.isEmpty()) return "";
                                 return null;
                             }
                         }
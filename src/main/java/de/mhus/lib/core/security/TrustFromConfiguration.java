@@ -15,7 +15,6 @@
  */
 package de.mhus.lib.core.security;
 
-import java.util.Collections;
 import java.util.Map;
 
 import org.apache.shiro.authc.AuthenticationToken;
@@ -52,10 +51,9 @@ public class TrustFromConfiguration extends MLog implements TrustApi {
                     .updateAction(v -> BEARER_CONFIG.setTimeout(v))
                     .doUpdateAction();
 
-    private Map<String, SecureString> passwordCache =
-            Collections.synchronizedMap(new SoftHashMap<>());
-    private Map<String, TYPE> typeCache = Collections.synchronizedMap(new SoftHashMap<>());
-    private Map<String, String> targetCache = Collections.synchronizedMap(new SoftHashMap<>());
+    private Map<String, SecureString> passwordCache = new SoftHashMap<>();
+    private Map<String, TYPE> typeCache = new SoftHashMap<>();
+    private Map<String, String> targetCache = new SoftHashMap<>();
 
     private CfgNode config =
             new CfgNode(TrustApi.class, "", null)
@@ -15,8 +15,8 @@
  */
 package de.mhus.lib.core.service;
 
-import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import de.mhus.lib.core.MLog;
@@ -29,11 +29,13 @@ import de.mhus.lib.core.util.WeakList;
  * The manager have got two mechanisms. First will create locks like a factory. Second will register
  * created new Lock() locks.
  *
+ * <p>Created locks are held by soft references in a concurrent SoftHashMap.
+ *
  * @author mikehummel
  */
 public class LockManagerImpl extends MLog implements LockManager {
 
-    private HashMap<String, Lock> locks = new HashMap<>();
+    private ConcurrentHashMap<String, Lock> locks = new ConcurrentHashMap<>();
     private SoftHashMap<String, Lock> cache = new SoftHashMap<>();
     private WeakList<Lock> register = new WeakList<>();
 
@@ -43,28 +45,12 @@ public class LockManagerImpl extends MLog implements LockManager {
 
     @Override
     public Lock getLock(String name) {
-        Lock lock = null;
-        synchronized (cache) {
-            lock = cache.get(name);
-            if (lock == null) {
-                lock = new ManagedLock(name);
-                cache.put(name, lock);
-            }
-        }
-        return lock;
+        return getLock(name, ManagedLock::new);
     }
 
     @Override
     public Lock getLock(String name, Function<String, Lock> creator) {
-        Lock lock = null;
-        synchronized (cache) {
-            lock = cache.get(name);
-            if (lock == null) {
-                lock = creator.apply(name);
-                if (lock != null) cache.put(name, lock);
-            }
-        }
-        return lock;
+        return cache.getOrCreate(name, creator);
     }
 
     class ManagedLock extends LocalLock {
@@ -79,25 +65,21 @@ public class LockManagerImpl extends MLog implements LockManager {
     class ManagerLock extends LocalLock {
         @Override
         protected void lockEvent(boolean locked) {
-            synchronized (cache) {
-                if (locked) {
-                    locks.put(name, this);
-                    if (!cache.containsKey(name)) // could be removed in the meantime ?
-                    cache.put(name, this);
-                } else {
-                    locks.remove(name);
-                }
+            if (name == null) return;
+            if (locked) {
+                locks.put(name, this);
+                cache.putIfAbsent(name, this); // could be removed in the meantime ?
+            } else {
+                locks.remove(name);
             }
         }
     }
 
     @Override
     public Lock[] managedLocks() {
-        synchronized (cache) {
-            LinkedList<Lock> list = new LinkedList<>();
-            for (Lock item : cache.values()) if (item != null) list.add(item);
-            return list.toArray(new Lock[list.size()]);
-        }
+        LinkedList<Lock> list = new LinkedList<>();
+        for (Lock item : cache.values()) if (item != null) list.add(item);
+        return list.toArray(new Lock[list.size()]);
     }
 
     @Override
@@ -0,0 +1,403 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.core.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import de.mhus.lib.core.M;
+import de.mhus.lib.core.MHousekeeper;
+import de.mhus.lib.core.MHousekeeperTask;
+import de.mhus.lib.core.MPeriod;
+import de.mhus.lib.core.logging.MLogUtil;
+import de.mhus.lib.errors.NotSupportedException;
+
+/**
+ * Thread safe variant of TimeoutMap. Reading is lock free and respects the timeout of the entry.
+ * Expired entries are removed by a housekeeper task. The entries are indexed by the time they
+ * expire, so the task only touches due entries. If an invalidator is set all entries are checked.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentTimeoutMap<K, V> implements Map<K, V> {
+
+    private static final long RESOLUTION = 1000;
+
+    private ConcurrentHashMap<K, Container<K, V>> map = new ConcurrentHashMap<>();
+    private ConcurrentSkipListMap<Long, ConcurrentLinkedQueue<Container<K, V>>> expires =
+            new ConcurrentSkipListMap<>();
+    private AtomicBoolean checking = new AtomicBoolean();
+    private volatile long timeout = MPeriod.MINUTE_IN_MILLISECOUNDS * 10;
+    private volatile long checkTimeout = MPeriod.MINUTE_IN_MILLISECOUNDS;
+    private volatile long lastCheck = System.currentTimeMillis();
+    private volatile TimeoutMap.Invalidator<K, V> invalidator;
+    private volatile boolean refreshOnAccess;
+    private volatile MHousekeeperTask housekeeper;
+    private volatile boolean housekeeperFailed;
+
+    public ConcurrentTimeoutMap() {}
+
+    public ConcurrentTimeoutMap(long timeout) {
+        this.timeout = timeout;
+        checkTimeout = Math.max(RESOLUTION, timeout);
+    }
+
+    public ConcurrentTimeoutMap(long timeout, boolean refreshOnAccess) {
+        this(timeout);
+        this.refreshOnAccess = refreshOnAccess;
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getContainer(key, false) != null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (Container<K, V> container : map.values())
+            if (!container.isTimeout() && container.value.equals(value)) return true;
+        return false;
+    }
+
+    @Override
+    public V get(Object key) {
+        Container<K, V> ret = getContainer(key, true);
+        return ret == null ? null : ret.value;
+    }
+
+    private Container<K, V> getContainer(Object key, boolean access) {
+        Container<K, V> ret = map.get(key);
+        if (ret == null) return null;
+        if (invalidator == null && ret.isTimeout()) {
+            map.remove(key, ret);
+            return null;
+        }
+        if (access) ret.access(refreshOnAccess);
+        return ret;
+    }
+
+    public long getAccessCount(Object key) {
+        Container<K, V> ret = getContainer(key, false);
+        return ret == null ? -1 : ret.accessed;
+    }
+
+    /**
+     * Remove all expired entries. Called by the housekeeper, it is not needed to call this method
+     * manually.
+     */
+    public void doValidationCheck() {
+        if (!checking.compareAndSet(false, true)) return;
+        try {
+            long now = System.currentTimeMillis();
+            lastCheck = now;
+            TimeoutMap.Invalidator<K, V> inv = invalidator;
+            if (inv != null) {
+                expires.clear();
+                Iterator<Container<K, V>> iter = map.values().iterator();
+                while (iter.hasNext()) {
+                    Container<K, V> next = iter.next();
+                    if (inv.isInvalid(next.key, next.value, next.time, next.accessed))
+                        map.remove(next.key, next);
+                }
+                return;
+            }
+            long slot = now / RESOLUTION;
+            while (true) {
+                Map.Entry<Long, ConcurrentLinkedQueue<Container<K, V>>> first =
+                        expires.firstEntry();
+                if (first == null || first.getKey() > slot) break;
+                expires.remove(first.getKey(), first.getValue());
+                for (Container<K, V> container : first.getValue()) {
+                    // ignore replaced and removed entries
+                    if (map.get(container.key) != container) continue;
+                    if (container.isTimeout()) map.remove(container.key, container);
+                    else schedule(container);
+                }
+            }
+        } finally {
+            checking.set(false);
+        }
+    }
+
+    private void schedule(Container<K, V> container) {
+        if (invalidator != null) return;
+        long slot = (container.time + container.ttl) / RESOLUTION + 1;
+        expires.computeIfAbsent(slot, k -> new ConcurrentLinkedQueue<>()).add(container);
+    }
+
+    private void added(Container<K, V> container) {
+        schedule(container);
+        if (housekeeper == null && !housekeeperFailed) registerHousekeeper();
+        if (housekeeperFailed && System.currentTimeMillis() - lastCheck > checkTimeout)
+            doValidationCheck();
+    }
+
+    private synchronized void registerHousekeeper() {
+        if (housekeeper != null || housekeeperFailed) return;
+        MHousekeeperTask task =
+                new MHousekeeperTask("ConcurrentTimeoutMap") {
+                    @Override
+                    protected void doit() throws Exception {
+                        doValidationCheck();
+                    }
+                };
+        try {
+            M.l(MHousekeeper.class).register(task, checkTimeout);
+            housekeeper = task;
+        } catch (Throwable t) {
+            // check while modifying the map
+            MLogUtil.log().d("register housekeeper failed", t);
+            housekeeperFailed = true;
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, timeout);
+    }
+
+    /**
+     * Put a value with an individual timeout.
+     *
+     * @param key
+     * @param value
+     * @param ttl Timeout in milliseconds
+     * @return The previous value
+     */
+    public V put(K key, V value, long ttl) {
+        Container<K, V> container = new Container<>(key, value, ttl);
+        Container<K, V> ret = map.put(key, container);
+        added(container);
+        return ret == null || ret.isTimeout() ? null : ret.value;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Container<K, V> container = new Container<>(key, value, timeout);
+        while (true) {
+            Container<K, V> ret = map.putIfAbsent(key, container);
+            if (ret == null) {
+                added(container);
+                return null;
+            }
+            if (invalidator != null || !ret.isTimeout()) return ret.value;
+            map.remove(key, ret);
+        }
+    }
+
+    /**
+     * Return the value or load it using the mapping function. The function is called only once for
+     * a key, concurrent callers wait for the result.
+     */
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Container<K, V> current = getContainer(key, true);
+        if (current != null) return current.value;
+        AtomicReference<Container<K, V>> created = new AtomicReference<>();
+        Container<K, V> ret =
+                map.compute(
+                        key,
+                        (k, c) -> {
+                            if (c != null && (invalidator != null || !c.isTimeout())) return c;
+                            V value = mappingFunction.apply(k);
+                            if (value == null) return null;
+                            Container<K, V> container = new Container<>(k, value, timeout);
+                            created.set(container);
+                            return container;
+                        });
+        if (created.get() != null) added(created.get());
+        return ret == null ? null : ret.value;
+    }
+
+    @Override
+    public V remove(Object key) {
+        Container<K, V> ret = map.remove(key);
+        return ret == null || ret.isTimeout() ? null : ret.value;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Container<K, V> ret = map.get(key);
+        if (ret == null || !ret.value.equals(value)) return false;
+        return map.remove(key, ret);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet())
+            put(entry.getKey(), entry.getValue());
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+        expires.clear();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return map.keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        ArrayList<V> out = new ArrayList<>(map.size());
+        for (Container<K, V> container : map.values()) out.add(container.value);
+        return out;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        HashSet<Map.Entry<K, V>> out = new HashSet<>();
+        for (Map.Entry<K, Container<K, V>> entry : map.entrySet())
+            out.add(new MapEntry<K, V>(entry.getKey(), entry.getValue().value));
+        return out;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        map.forEach((k, c) -> action.accept(k, c.value));
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        V ret = get(key);
+        if (ret == null) return defaultValue;
+        return ret;
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        throw new NotSupportedException();
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        throw new NotSupportedException();
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        throw new NotSupportedException();
+    }
+
+    @Override
+    public V computeIfPresent(
+            K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        throw new NotSupportedException();
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        throw new NotSupportedException();
+    }
+
+    @Override
+    public V merge(
+            K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        throw new NotSupportedException();
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the default timeout for new entries.
+     *
+     * @param timeout
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public long getCheckTimeout() {
+        return checkTimeout;
+    }
+
+    /**
+     * Set the interval of the housekeeper. Must be set before the first entry is added.
+     *
+     * @param checkTimeout
+     */
+    public void setCheckTimeout(long checkTimeout) {
+        this.checkTimeout = checkTimeout;
+    }
+
+    public TimeoutMap.Invalidator<K, V> getInvalidator() {
+        return invalidator;
+    }
+
+    public void setInvalidator(TimeoutMap.Invalidator<K, V> invalidator) {
+        this.invalidator = invalidator;
+        if (invalidator == null)
+            for (Container<K, V> container : map.values()) schedule(container);
+    }
+
+    public boolean isRefreshOnAccess() {
+        return refreshOnAccess;
+    }
+
+    public void setRefreshOnAccess(boolean refreshOnAccess) {
+        this.refreshOnAccess = refreshOnAccess;
+    }
+
+    private static class Container<K, V> {
+        final K key;
+        final V value;
+        final long ttl;
+        volatile long time = System.currentTimeMillis();
+        volatile long accessed = 0;
+
+        Container(K key, V value, long ttl) {
+            this.key = key;
+            this.value = value;
+            this.ttl = ttl;
+        }
+
+        void access(boolean refresh) {
+            if (refresh) time = System.currentTimeMillis();
+            accessed++;
+        }
+
+        boolean isTimeout() {
+            return System.currentTimeMillis() - time > ttl;
+        }
+    }
+}
@@ -15,113 +15,126 @@
  */
 package de.mhus.lib.core.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
+/**
+ * Concurrent map holding the values by soft or weak references. Reading is lock free. References
+ * cleared by the garbage collector are removed using a reference queue, the number of removed
+ * entries is available by getCollectedCount().
+ *
+ * @param <K>
+ * @param <V>
+ */
 public class SoftHashMap<K, V> implements Map<K, V>, Cloneable, Serializable {
 
     /** */
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private HashMap<K, SoftReference<V>> map = new HashMap<>();
-    private long lastCleanup;
+    private transient ConcurrentHashMap<K, ValueRef<K, V>> map = new ConcurrentHashMap<>();
+    private transient ReferenceQueue<V> queue = new ReferenceQueue<>();
+    private transient AtomicLong collected = new AtomicLong();
+    private boolean weak;
 
     public SoftHashMap() {}
 
-    private SoftHashMap(HashMap<K, SoftReference<V>> map) {
-        this.map = map;
+    /**
+     * Create a map.
+     *
+     * @param weak Hold values by weak instead of soft references
+     */
+    public SoftHashMap(boolean weak) {
+        this.weak = weak;
     }
 
-    private void periodicCleanup() {
-        if (System.currentTimeMillis() - lastCleanup < 1000 * 60) return;
-        cleanup();
+    private ValueRef<K, V> createRef(K key, V value) {
+        return weak ? new WeakValue<>(key, value, queue) : new SoftValue<>(key, value, queue);
     }
 
+    /** Remove the entries cleared by the garbage collector. */
     public void cleanup() {
-        synchronized (map) {
-            Iterator<Entry<K, SoftReference<V>>> iter = map.entrySet().iterator();
-            while (iter.hasNext()) {
-                java.util.Map.Entry<K, SoftReference<V>> entry = iter.next();
-                if (entry.getValue() == null || entry.getValue().get() == null) iter.remove();
-            }
-            lastCleanup = System.currentTimeMillis();
+        Reference<? extends V> ref;
+        while ((ref = queue.poll()) != null) {
+            @SuppressWarnings("unchecked")
+            ValueRef<K, V> valueRef = (ValueRef<K, V>) ref;
+            if (map.remove(valueRef.getKey(), valueRef)) collected.incrementAndGet();
         }
     }
 
+    /**
+     * Return the number of entries removed because the garbage collector cleared the value.
+     *
+     * @return Number of entries
+     */
+    public long getCollectedCount() {
+        return collected.get();
+    }
+
+    public boolean isWeak() {
+        return weak;
+    }
+
     @Override
     public boolean equals(Object o) {
-        synchronized (map) {
-            return map.equals(o);
-        }
+        return map.equals(o);
     }
 
     @Override
     public int size() {
-        periodicCleanup();
-        synchronized (map) {
-            return map.size();
-        }
+        cleanup();
+        return map.size();
     }
 
     @Override
     public boolean isEmpty() {
-        periodicCleanup();
-        synchronized (map) {
-            return map.isEmpty();
-        }
+        cleanup();
+        return map.isEmpty();
     }
 
     @Override
     public V get(Object key) {
-        periodicCleanup();
-        synchronized (map) {
-            SoftReference<V> s = map.get(key);
-            if (s == null) return null;
-            V v = s.get();
-            if (v == null) {
-                map.remove(key);
-                return null;
-            }
-            return v;
-        }
+        ValueRef<K, V> s = map.get(key);
+        if (s == null) return null;
+        V v = s.get();
+        if (v == null) cleanup();
+        return v;
     }
 
     @Override
     public int hashCode() {
-        synchronized (map) {
-            return map.hashCode();
-        }
+        return map.hashCode();
     }
 
     @Override
     public boolean containsKey(Object key) {
-        periodicCleanup();
-        synchronized (map) {
-            return map.containsKey(key);
-        }
+        return get(key) != null;
     }
 
     @Override
     public String toString() {
-        synchronized (map) {
-            return map.toString();
-        }
+        return map.toString();
     }
 
     @Override
     public V put(K key, V value) {
-        periodicCleanup();
-        synchronized (map) {
-            SoftReference<V> s = map.put(key, new SoftReference<V>(value));
-            if (s == null) return null;
-            return s.get();
-        }
+        cleanup();
+        ValueRef<K, V> s = map.put(key, createRef(key, value));
+        if (s == null) return null;
+        return s.get();
     }
 
     @Override
@@ -132,65 +145,167 @@ public class SoftHashMap<K, V> implements Map<K, V>, Cloneable, Serializable {
 
     @Override
     public V remove(Object key) {
-        periodicCleanup();
-        synchronized (map) {
-            SoftReference<V> s = map.remove(key);
-            if (s == null) return null;
-            return s.get();
-        }
+        cleanup();
+        ValueRef<K, V> s = map.remove(key);
+        if (s == null) return null;
+        return s.get();
     }
 
     @Override
     public void clear() {
-        synchronized (map) {
-            map.clear();
-        }
+        map.clear();
+        cleanup();
     }
 
     @Override
     public boolean containsValue(Object value) {
-        periodicCleanup();
-        synchronized (map) {
-            return map.containsValue(value);
-        }
+        if (value == null) return false;
+        for (ValueRef<K, V> ref : map.values()) if (value.equals(ref.get())) return true;
+        return false;
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public Object clone() {
         cleanup();
-        synchronized (map) {
-            return new SoftHashMap((HashMap) map.clone());
+        SoftHashMap<K, V> out = new SoftHashMap<>(weak);
+        for (ValueRef<K, V> ref : map.values()) {
+            V value = ref.get();
+            if (value != null) out.put(ref.getKey(), value);
         }
+        return out;
     }
 
     @Override
     public Set<K> keySet() {
-        periodicCleanup();
-        synchronized (map) {
-            return map.keySet();
-        }
+        cleanup();
+        return map.keySet();
     }
 
     @Override
     public Collection<V> values() {
-        periodicCleanup();
-        synchronized (map) {
-            return new CollectionWrap(map.values());
-        }
+        cleanup();
+        return new CollectionWrap(map.values());
     }
 
     @Override
     public Set<java.util.Map.Entry<K, V>> entrySet() {
-        periodicCleanup();
-        synchronized (map) {
-            return new EntrySetWrap(map.entrySet());
+        cleanup();
+        return new EntrySetWrap(map.entrySet());
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V ret = get(key);
+        if (ret != null) return ret;
+        cleanup();
+        @SuppressWarnings("unchecked")
+        V[] out = (V[]) new Object[1];
+        map.compute(
+                key,
+                (k, current) -> {
+                    V value = current == null ? null : current.get();
+                    if (value == null) {
+                        value = mappingFunction.apply(k);
+                        if (value == null) return null;
+                        current = createRef(k, value);
+                    }
+                    out[0] = value;
+                    return current;
+                });
+        return out[0];
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        // the argument could be the existing value, track if it is stored by this call
+        boolean[] created = new boolean[1];
+        V ret =
+                computeIfAbsent(
+                        key,
+                        k -> {
+                            created[0] = true;
+                            return value;
+                        });
+        return created[0] ? null : ret;
+    }
+
+    /**
+     * Return the value or create it. The creator is called only once for concurrent requests. If
+     * the creator returns null nothing is stored.
+     *
+     * @param key
+     * @param creator
+     * @return The value
+     */
+    public V getOrCreate(K key, Function<K, V> creator) {
+        return computeIfAbsent(key, creator);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        cleanup();
+        // hold the values while writing
+        ArrayList<Object> entries = new ArrayList<>();
+        for (ValueRef<K, V> ref : map.values()) {
+            V value = ref.get();
+            if (value == null) continue;
+            entries.add(ref.getKey());
+            entries.add(value);
+        }
+        out.writeInt(entries.size() / 2);
+        for (Object entry : entries) out.writeObject(entry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        map = new ConcurrentHashMap<>();
+        queue = new ReferenceQueue<>();
+        collected = new AtomicLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) put((K) in.readObject(), (V) in.readObject());
+    }
+
+    private interface ValueRef<K, V> {
+
+        K getKey();
+
+        V get();
+    }
+
+    private static class SoftValue<K, V> extends SoftReference<V> implements ValueRef<K, V> {
+
+        private final K key;
+
+        SoftValue(K key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+    }
+
+    private static class WeakValue<K, V> extends WeakReference<V> implements ValueRef<K, V> {
+
+        private final K key;
+
+        WeakValue(K key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
         }
     }
 
     private class EntrySetWrap implements Set<java.util.Map.Entry<K, V>> {
 
-        private Set<java.util.Map.Entry<K, SoftReference<V>>> set;
+        private Set<java.util.Map.Entry<K, ValueRef<K, V>>> set;
 
         @Override
         public int size() {
@@ -267,14 +382,14 @@ public class SoftHashMap<K, V> implements Map<K, V>, Cloneable, Serializable {
             return set.hashCode();
         }
 
-        public EntrySetWrap(Set<java.util.Map.Entry<K, SoftReference<V>>> entrySet) {
+        public EntrySetWrap(Set<java.util.Map.Entry<K, ValueRef<K, V>>> entrySet) {
             this.set = entrySet;
         }
     }
 
     private class MapIteratorWrap implements Iterator<java.util.Map.Entry<K, V>> {
 
-        private Iterator<java.util.Map.Entry<K, SoftReference<V>>> itertor;
+        private Iterator<java.util.Map.Entry<K, ValueRef<K, V>>> itertor;
 
         @Override
         public boolean hasNext() {
@@ -291,14 +406,14 @@ public class SoftHashMap<K, V> implements Map<K, V>, Cloneable, Serializable {
             itertor.remove();
         }
 
-        public MapIteratorWrap(Iterator<java.util.Map.Entry<K, SoftReference<V>>> iterator) {
+        public MapIteratorWrap(Iterator<java.util.Map.Entry<K, ValueRef<K, V>>> iterator) {
             this.itertor = iterator;
         }
     }
 
     private class MapEntryWrap implements java.util.Map.Entry<K, V> {
 
-        private java.util.Map.Entry<K, SoftReference<V>> next;
+        private java.util.Map.Entry<K, ValueRef<K, V>> next;
 
         @Override
         public K getKey() {
@@ -325,14 +440,14 @@ public class SoftHashMap<K, V> implements Map<K, V>, Cloneable, Serializable {
             return next.hashCode();
         }
 
-        public MapEntryWrap(java.util.Map.Entry<K, SoftReference<V>> next) {
+        public MapEntryWrap(java.util.Map.Entry<K, ValueRef<K, V>> next) {
             this.next = next;
         }
     }
 
     private class CollectionWrap implements Collection<V> {
 
-        private Collection<SoftReference<V>> col;
+        private Collection<ValueRef<K, V>> col;
 
         @Override
         public int size() {
@@ -409,14 +524,14 @@ public class SoftHashMap<K, V> implements Map<K, V>, Cloneable, Serializable {
             return col.hashCode();
         }
 
-        public CollectionWrap(Collection<SoftReference<V>> col) {
+        public CollectionWrap(Collection<ValueRef<K, V>> col) {
             this.col = col;
         }
     }
 
     private class IteratorWrap implements Iterator<V> {
 
-        private Iterator<SoftReference<V>> iterator;
+        private Iterator<ValueRef<K, V>> iterator;
 
         @Override
         public boolean hasNext() {
@@ -433,17 +548,8 @@ public class SoftHashMap<K, V> implements Map<K, V>, Cloneable, Serializable {
             iterator.remove();
         }
 
-        public IteratorWrap(Iterator<SoftReference<V>> iterator) {
+        public IteratorWrap(Iterator<ValueRef<K, V>> iterator) {
             this.iterator = iterator;
         }
     }
-
-    public V getOrCreate(K key, Function<K, V> creator) {
-        V ret = get(key);
-        if (ret == null) {
-            ret = creator.apply(key);
-            put(key, ret);
-        }
-        return ret;
-    }
 }
@@ -15,13 +15,16 @@
  */
 package de.mhus.lib.core.util;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -29,14 +32,24 @@ import java.util.function.Function;
 import de.mhus.lib.core.MPeriod;
 import de.mhus.lib.errors.NotSupportedException;
 
+/**
+ * Concurrent map holding the values by soft references for a limited time. Reading is lock free,
+ * values cleared by the garbage collector are removed using a reference queue.
+ *
+ * @param <K>
+ * @param <V>
+ */
 public class SoftTimeoutMap<K, V> implements Map<K, V> {
 
-    private Map<K, Container<V>> map = Collections.synchronizedMap(new HashMap<>());
-    private long timeout = MPeriod.MINUTE_IN_MILLISECOUNDS * 10;
-    private long lastCheck = System.currentTimeMillis();
-    private long checkTimeout = MPeriod.MINUTE_IN_MILLISECOUNDS * 10;
-    private Invalidator<K, V> invalidator;
-    private boolean refreshOnAccess = true;
+    private ConcurrentHashMap<K, Container> map = new ConcurrentHashMap<>();
+    private ReferenceQueue<V> queue = new ReferenceQueue<>();
+    private AtomicLong collected = new AtomicLong();
+    private AtomicBoolean checking = new AtomicBoolean();
+    private volatile long timeout = MPeriod.MINUTE_IN_MILLISECOUNDS * 10;
+    private volatile long lastCheck = System.currentTimeMillis();
+    private volatile long checkTimeout = MPeriod.MINUTE_IN_MILLISECOUNDS * 10;
+    private volatile Invalidator<K, V> invalidator;
+    private volatile boolean refreshOnAccess = true;
 
     public SoftTimeoutMap() {}
 
@@ -85,16 +98,19 @@ public class SoftTimeoutMap<K, V> implements Map<K, V> {
 
     @Override
     public boolean containsValue(Object value) {
-        return map.containsValue(value);
+        if (value == null) return false;
+        for (Container container : map.values()) if (value.equals(container.get())) return true;
+        return false;
     }
 
     @Override
     public V get(Object key) {
         doValidationCheck();
-        SoftTimeoutMap<K, V>.Container<V> ret = map.get(key);
+        Container ret = map.get(key);
         if (ret == null) return null;
         if (ret.isTimeout()) {
-            remove(ret);
+            map.remove(key, ret);
+            cleanup();
             return null;
         }
         return ret.getValue();
@@ -102,17 +118,21 @@ public class SoftTimeoutMap<K, V> implements Map<K, V> {
 
     public long getAccessCount(Object key) {
         doValidationCheck();
-        SoftTimeoutMap<K, V>.Container<V> ret = map.get(key);
+        Container ret = map.get(key);
         return ret == null ? -1 : ret.accessed;
     }
 
-    public synchronized void doValidationCheck() {
-        if (MPeriod.isTimeOut(lastCheck, checkTimeout)) {
+    public void doValidationCheck() {
+        if (!MPeriod.isTimeOut(lastCheck, checkTimeout)) return;
+        if (!checking.compareAndSet(false, true)) return;
+        try {
+            cleanup();
+            Invalidator<K, V> inv = invalidator;
             map.entrySet()
                     .removeIf(
                             e -> {
-                                return (invalidator != null
-                                                && invalidator.isInvalid(
+                                return (inv != null
+                                                && inv.isInvalid(
                                                         e.getKey(),
                                                         e.getValue().get(),
                                                         e.getValue().time,
@@ -120,20 +140,42 @@ public class SoftTimeoutMap<K, V> implements Map<K, V> {
                                         || e.getValue().isTimeout());
                             });
             lastCheck = System.currentTimeMillis();
+        } finally {
+            checking.set(false);
+        }
+    }
+
+    /** Remove the entries cleared by the garbage collector. */
+    public void cleanup() {
+        Reference<? extends V> ref;
+        while ((ref = queue.poll()) != null) {
+            @SuppressWarnings("unchecked")
+            Container container = (Container) ref;
+            if (map.remove(container.key, container)) collected.incrementAndGet();
         }
     }
 
+    /**
+     * Return the number of entries removed because the garbage collector cleared the value.
+     *
+     * @return Number of entries
+     */
+    public long getCollectedCount() {
+        return collected.get();
+    }
+
     @Override
     public V put(K key, V value) {
         doValidationCheck();
-        SoftTimeoutMap<K, V>.Container<V> ret = map.put(key, new Container<V>(value));
+        cleanup();
+        Container ret = map.put(key, new Container(key, value));
         return ret == null ? null : ret.get();
     }
 
     @Override
     public V remove(Object key) {
         doValidationCheck();
-        SoftTimeoutMap<K, V>.Container<V> ret = map.remove(key);
+        Container ret = map.remove(key);
         return ret == null ? null : ret.get();
     }
 
@@ -163,7 +205,7 @@ public class SoftTimeoutMap<K, V> implements Map<K, V> {
     public Set<java.util.Map.Entry<K, V>> entrySet() {
         doValidationCheck();
         HashSet<java.util.Map.Entry<K, V>> out = new HashSet<>();
-        for (Map.Entry<K, Container<V>> entry : map.entrySet())
+        for (Map.Entry<K, Container> entry : map.entrySet())
             out.add(new MapEntry<K, V>(entry.getKey(), entry.getValue().get()));
         return out;
     }
@@ -291,15 +333,17 @@ public class SoftTimeoutMap<K, V> implements Map<K, V> {
         this.refreshOnAccess = refreshOnAccess;
     }
 
-    private class Container<Z> extends SoftReference<Z> {
-        long time = System.currentTimeMillis();
-        long accessed = 0;
+    private class Container extends SoftReference<V> {
+        final K key;
+        volatile long time = System.currentTimeMillis();
+        volatile long accessed = 0;
 
-        public Container(Z value) {
-            super(value);
+        public Container(K key, V value) {
+            super(value, queue);
+            this.key = key;
         }
 
-        public Z getValue() {
+        public V getValue() {
             if (isRefreshOnAccess()) time = System.currentTimeMillis();
             accessed++;
             return super.get();
@@ -25,6 +25,7 @@ import java.util.Date;
 import de.mhus.lib.core.MApi;
 import de.mhus.lib.core.MCast;
 import de.mhus.lib.core.MDate;
+import de.mhus.lib.core.logging.AsyncLogAppender;
 import de.mhus.lib.core.logging.Log;
 import de.mhus.lib.core.logging.LogEngine;
 import de.mhus.lib.core.logging.LogFactory;
@@ -39,6 +40,7 @@ public class FileLogger extends Log {
     private long maxFileSize = 1024 * 1024 * 500; // 500 MB
     private boolean autoFlush = false;
     private boolean rotate = true;
+    private volatile AsyncLogAppender appender;
 
     public FileLogger(String name, File file) {
         this(name, file, Log.LEVEL.INFO);
@@ -61,6 +63,7 @@ public class FileLogger extends Log {
 
     public FileLogger setLevel(Log.LEVEL level) {
         this.level = level;
+        Log.invalidateLevels();
         return this;
     }
 
@@ -173,6 +176,13 @@ public class FileLogger extends Log {
             print("WARN", message, t);
         }
 
+        @Override
+        public void log(Log.LEVEL level, CharSequence message, Throwable t) {
+            if (getLevel().ordinal() > level.ordinal()) return;
+            // the message is a reused buffer, copy only if it's stored
+            print(level.name(), appender == null ? message : message.toString(), t);
+        }
+
         @Override
         public void doInitialize(LogFactory logFactory) {}
 
@@ -180,15 +190,31 @@ public class FileLogger extends Log {
         public void close() {}
     }
 
-    protected synchronized void print(String level, Object message, Throwable t) {
+    protected void print(String level, Object message, Throwable t) {
+        AsyncLogAppender a = appender;
+        if (a != null) {
+            a.append(new AsyncLogAppender.Event(Log.LEVEL.valueOf(level), message, t));
+            return;
+        }
+        doPrint(System.currentTimeMillis(), level, message, t, autoFlush);
+    }
+
+    protected synchronized void doPrint(
+            long time, String level, Object message, Throwable t, boolean flush) {
         if (!check()) return;
-        out.println(printTime() + "," + level + "," + getInfo() + "," + message);
+        out.print(printTime(time));
+        out.print(',');
+        out.print(level);
+        out.print(',');
+        out.print(getInfo());
+        out.print(',');
+        out.println(message);
 
         if (message != null && message instanceof Throwable && traces)
             ((Throwable) message).printStackTrace(out);
         if (t != null && traces) t.printStackTrace(out);
 
-        if (autoFlush) out.flush();
+        if (flush) out.flush();
     }
 
     protected String getInfo() {
@@ -244,8 +270,12 @@ public class FileLogger extends Log {
     }
 
     public String printTime() {
+        return printTime(System.currentTimeMillis());
+    }
+
+    protected String printTime(long time) {
         if (printTime) {
-            return MCast.toString(new Date()); // TODO maybe more efficient
+            return MCast.toString(new Date(time)); // TODO maybe more efficient
         }
         return "";
     }
@@ -289,8 +319,71 @@ public class FileLogger extends Log {
     //	public void unregister() {
     //	}
 
+    /**
+     * Write the log entries by a separate thread. The calling threads only append the entries to
+     * a buffer. Call with capacity 0 to switch back to synchronous writing.
+     *
+     * @param capacity Size of the buffer
+     * @param policy Behavior if the buffer is full
+     * @return this
+     */
+    public FileLogger setAsync(int capacity, AsyncLogAppender.POLICY policy) {
+        AsyncLogAppender old = appender;
+        appender =
+                capacity <= 0
+                        ? null
+                        : new AsyncLogAppender(
+                                getName(),
+                                capacity,
+                                policy,
+                                new AsyncLogAppender.Sink() {
+                                    @Override
+                                    public void write(AsyncLogAppender.Event event) {
+                                        doPrint(
+                                                event.getTime(),
+                                                event.getLevel().name(),
+                                                event.getMessage(),
+                                                event.getError(),
+                                                false);
+                                    }
+
+                                    @Override
+                                    public void flush() {
+                                        doFlush();
+                                    }
+                                });
+        if (old != null) old.close();
+        return this;
+    }
+
+    public boolean isAsync() {
+        return appender != null;
+    }
+
+    /**
+     * Return the asynchronous appender to access the metrics.
+     *
+     * @return The appender or null
+     */
+    public AsyncLogAppender getAsyncAppender() {
+        return appender;
+    }
+
+    protected synchronized void doFlush() {
+        if (out != null) out.flush();
+    }
+
     @Override
     public void close() {
+        AsyncLogAppender a = appender;
+        if (a != null) {
+            appender = null;
+            a.close();
+        }
+        closeFile();
+    }
+
+    protected synchronized void closeFile() {
         if (out != null) {
             out.flush();
             out.close();
@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+
+import de.mhus.lib.core.MFile;
+import de.mhus.lib.core.io.CSVReader;
+import de.mhus.lib.core.io.CSVScanner;
+import de.mhus.lib.core.io.CSVWriter;
+import de.mhus.lib.tests.TestCase;
+
+public class CSVTest extends TestCase {
+
+    private static final String SAMPLE =
+            "name,count,price\r\n"
+                    + "\"Smith, John\",1, 2.5 \r\n"
+                    + "  plain  ,,\"say \"\"hi\"\"\"\n"
+                    + "\n"
+                    + "last,-42,1e3";
+
+    @Test
+    public void testCompareWithReader() throws IOException {
+        CSVReader reader = new CSVReader(new StringReader(SAMPLE));
+        CSVScanner scanner = new CSVScanner(new StringReader(SAMPLE));
+        while (reader.next()) {
+            CSVScanner.Row row = scanner.next();
+            assertArrayEquals(reader.getCurrentLine(), row.toArray());
+        }
+        assertNull(scanner.next());
+        assertEquals(5, scanner.getLineCount());
+        scanner.close();
+    }
+
+    @Test
+    public void testTypedValues() throws IOException {
+        CSVScanner scanner = new CSVScanner(new StringReader(SAMPLE));
+        assertArrayEquals(new String[] {"name", "count", "price"}, scanner.readHeader(true));
+        scanner.setColumns("count", "price");
+        CSVScanner.Row row = scanner.next();
+        assertNull(row.get(0));
+        assertEquals(1, row.getInt(1));
+        assertEquals(2.5, row.getDouble(2));
+        assertEquals(3, row.size());
+        CSVScanner.Row plain = scanner.next();
+        assertEquals(0, plain.getLong(1));
+        assertThrows(NumberFormatException.class, () -> plain.getDouble(2));
+        assertEquals(1, scanner.next().size());
+        row = scanner.next();
+        assertEquals(-42, row.getInt(1));
+        assertEquals(1000.0, row.getDouble(2));
+
+        String[] numbers = {
+            "0", "-0.0", "1.25", "123456789012345", "1234567890123456789", "0.1", "-3.14159",
+            "1e-5", "2.5E10", "1e400", "NaN", ".5", "5.", "0000.000123", "9007199254740993"
+        };
+        StringBuilder csv = new StringBuilder();
+        for (String number : numbers) csv.append(number).append(',').append(number).append('\n');
+        CSVScanner numberScanner = new CSVScanner(new StringReader(csv.toString()));
+        for (String number : numbers) {
+            row = numberScanner.next();
+            assertEquals(Double.parseDouble(number), row.getDouble(0), number);
+        }
+        CSVScanner longScanner =
+                new CSVScanner(new StringReader("9223372036854775807\n9223372036854775808\n"));
+        assertEquals(Long.MAX_VALUE, longScanner.next().getLong(0));
+        assertThrows(NumberFormatException.class, () -> longScanner.next().getLong(0));
+    }
+
+    @Test
+    public void testLargeFields() throws IOException {
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 100000; i++) big.append((char) ('a' + i % 26));
+        String csv = "1,\"" + big + "\",x\n2,\"multi\nline\",y\n";
+        CSVScanner scanner = new CSVScanner(new StringReader(csv), ',', '"', true, true);
+        CSVScanner.Row row = scanner.next();
+        assertEquals(big.toString(), row.get(1));
+        assertEquals("x", row.get(2));
+        row = scanner.next();
+        assertEquals("multi\nline", row.get(1));
+        assertNull(scanner.next());
+
+        long[] values = new long[10];
+        scanner = new CSVScanner(new StringReader("1\n2\n3\n"));
+        assertEquals(3, scanner.readLongs(0, values));
+        assertEquals(6, values[0] + values[1] + values[2]);
+    }
+
+    @Test
+    public void testSpliterator() throws IOException {
+        File file = new File("target/csvtest.csv");
+        StringBuilder csv = new StringBuilder("id,name,value\n");
+        long expected = 0;
+        for (int i = 0; i < 300000; i++) {
+            csv.append(i).append(",\"name ").append(i).append("\",").append(i % 1000).append('\n');
+            expected += i % 1000;
+        }
+        MFile.writeFile(file, csv.toString());
+
+        long start = System.currentTimeMillis();
+        long sum = 0;
+        CSVReader reader = new CSVReader(new FileReader(file));
+        reader.readHeader(false);
+        while (reader.next()) sum += Long.parseLong(reader.get(2));
+        reader.close();
+        assertEquals(expected, sum);
+        System.out.println("CSVReader: " + (System.currentTimeMillis() - start) + "ms");
+
+        start = System.currentTimeMillis();
+        sum = 0;
+        try (CSVScanner scanner = new CSVScanner(new FileReader(file))) {
+            scanner.readHeader(false);
+            scanner.setColumns(2);
+            CSVScanner.Row row;
+            while ((row = scanner.next()) != null) sum += row.getLong(2);
+        }
+        assertEquals(expected, sum);
+        System.out.println("CSVScanner: " + (System.currentTimeMillis() - start) + "ms");
+
+        start = System.currentTimeMillis();
+        Spliterator<Long> spliterator =
+                CSVScanner.spliterator(
+                        file.toPath(),
+                        StandardCharsets.UTF_8,
+                        true,
+                        CSVScanner::new,
+                        row -> row.getLong(2));
+        sum = StreamSupport.stream(spliterator, true).mapToLong(Long::longValue).sum();
+        assertEquals(expected, sum);
+        System.out.println("CSVScanner parallel: " + (System.currentTimeMillis() - start) + "ms");
+
+        List<Long> ids = new ArrayList<>();
+        StreamSupport.stream(
+                        CSVScanner.spliterator(
+                                file.toPath(),
+                                StandardCharsets.UTF_8,
+                                true,
+                                CSVScanner::new,
+                                row -> row.getLong(0)),
+                        true)
+                .forEachOrdered(ids::add);
+        assertEquals(300000, ids.size());
+        for (int i = 0; i < ids.size(); i++) assertEquals(i, ids.get(i).longValue());
+
+        // stops early, the file is closed with the stream
+        try (Stream<Long> stream =
+                CSVScanner.stream(
+                        file.toPath(),
+                        StandardCharsets.UTF_8,
+                        true,
+                        CSVScanner::new,
+                        row -> row.getLong(0),
+                        true)) {
+            assertEquals(1000, stream.filter(id -> id % 2 == 0).limit(1000).count());
+        }
+        try (Stream<Long> stream =
+                CSVScanner.stream(
+                        file.toPath(),
+                        StandardCharsets.UTF_8,
+                        true,
+                        CSVScanner::new,
+                        row -> row.getLong(2),
+                        true)) {
+            assertEquals(expected, stream.mapToLong(Long::longValue).sum());
+        }
+    }
+
+    @Test
+    public void testWriter() throws IOException {
+        StringWriter out = new StringWriter();
+        CSVWriter writer = new CSVWriter(out);
+        writer.put("plain", "with space", "a,b", "say \"hi\"", "multi\nline", null);
+        writer.nl();
+        writer.putInt(-42);
+        writer.putLong(Long.MIN_VALUE);
+        writer.putDouble(3);
+        writer.putDouble(0.1);
+        writer.putDouble(1e7);
+        writer.putDouble(-0.0);
+        writer.putDouble(2.345, 2);
+        writer.putDouble(-0.05, 3);
+        writer.putDouble(12, 0);
+        writer.nl();
+        writer.print(1, "x");
+        writer.println(2.5);
+        writer.close();
+        assertEquals(
+                "plain,\"with space\",\"a,b\",\"say \"\"hi\"\"\",\"multi\nline\",\r\n"
+                        + "-42,-9223372036854775808,3.0,0.1,1.0E7,-0.0,2.35,-0.050,12\r\n"
+                        + "1,x,2.5\r\n",
+                out.toString());
+
+        CSVScanner scanner =
+                new CSVScanner(new StringReader(out.toString()), ',', '"', true, true);
+        assertArrayEquals(
+                new String[] {"plain", "with space", "a,b", "say \"hi\"", "multi\nline", ""},
+                scanner.next().toArray());
+        CSVScanner.Row row = scanner.next();
+        assertEquals(Long.MIN_VALUE, row.getLong(1));
+        assertEquals(2.35, row.getDouble(6));
+        scanner.close();
+
+        // quote all fields, custom value writers get strings
+        out = new StringWriter();
+        writer = new CSVWriter(out, 2, ';', '\'', true);
+        writer.putInt(1);
+        writer.setValueWriter(
+                new CSVWriter.DefaultValueWriter() {
+                    @Override
+                    public void write(CSVWriter writer, String value) {
+                        super.write(writer, "v" + value);
+                    }
+                });
+        writer.putInt(2);
+        writer.nl();
+        writer.close();
+        assertEquals("'1';'v2'\r\n", out.toString());
+    }
+
+    @Test
+    public void testWriterWriteThrough() throws IOException {
+        StringWriter out = new StringWriter();
+        CSVWriter writer = new CSVWriter(out);
+        writer.put("a", "b c", "x,y");
+        writer.nl();
+        assertEquals("a,\"b c\",\"x,y\"\r\n", out.toString());
+        writer.putLong(5);
+        assertEquals("a,\"b c\",\"x,y\"\r\n5", out.toString());
+        writer.close();
+        assertFalse(writer.checkError());
+    }
+
+    @Test
+    public void testWriterThroughput() throws IOException {
+        int rows = 200000;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long start = System.currentTimeMillis();
+        CSVWriter writer = new CSVWriter(bytes, StandardCharsets.UTF_8, 64 * 1024);
+        for (int i = 0; i < rows; i++) writer.println(i, "name " + i, i * 0.5);
+        writer.close();
+        System.out.println("CSVWriter println: " + (System.currentTimeMillis() - start) + "ms");
+        byte[] expected = bytes.toByteArray();
+
+        File file = new File("target/csvwriter.csv");
+        start = System.currentTimeMillis();
+        try (FileChannel channel =
+                FileChannel.open(
+                        file.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            writer = new CSVWriter(channel, StandardCharsets.UTF_8, 64 * 1024);
+            for (int i = 0; i < rows; i++) {
+                writer.putInt(i);
+                writer.put("name " + i);
+                writer.putDouble(i * 0.5);
+                writer.nl();
+            }
+            writer.close();
+        }
+        System.out.println("CSVWriter typed: " + (System.currentTimeMillis() - start) + "ms");
+        assertArrayEquals(expected, MFile.readBinaryFile(file));
+    }
+}
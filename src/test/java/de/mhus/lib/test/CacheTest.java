@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import de.mhus.lib.core.M;
+import de.mhus.lib.core.MCast;
+import de.mhus.lib.core.MFile;
+import de.mhus.lib.core.MThread;
+import de.mhus.lib.core.cache.CacheConfig;
+import de.mhus.lib.core.cache.ICache;
+import de.mhus.lib.core.cache.ICacheService;
+import de.mhus.lib.core.cache.ICacheStatistics;
+import de.mhus.lib.core.cache.LocalCacheService;
+import de.mhus.lib.core.cache.MappedCacheStore;
+import de.mhus.lib.core.util.ConcurrentTimeoutMap;
+import de.mhus.lib.core.util.SoftHashMap;
+import de.mhus.lib.core.util.SoftTimeoutMap;
+import de.mhus.lib.tests.TestCase;
+
+public class CacheTest extends TestCase {
+
+    @Test
+    public void testDefaultService() {
+        ICacheService service = M.l(ICacheService.class);
+        assertNotNull(service);
+        ICache<String, Boolean> cache =
+                service.createCache(this, "test", String.class, Boolean.class, null);
+        assertSame(cache, service.createCache(this, "test", String.class, Boolean.class, null));
+        assertSame(cache, service.getCache("test"));
+        assertTrue(service.getCacheNames().contains("test"));
+        cache.close();
+        assertNull(service.getCache("test"));
+    }
+
+    @Test
+    public void testConcurrentTimeoutMap() throws Exception {
+        ConcurrentTimeoutMap<String, String> map = new ConcurrentTimeoutMap<>(200);
+        map.put("a", "1");
+        map.put("b", "2", 10000);
+        assertEquals("1", map.get("a"));
+        assertEquals(1, map.getAccessCount("a"));
+        assertEquals(2, map.size());
+        MThread.sleep(300);
+        assertNull(map.get("a"));
+        assertFalse(map.containsKey("a"));
+        assertEquals("2", map.get("b"));
+
+        // expired entries are removed by the check
+        map.put("c", "3", 1);
+        MThread.sleep(1100);
+        map.doValidationCheck();
+        assertEquals(1, map.size());
+
+        // refresh on access
+        map.setRefreshOnAccess(true);
+        map.put("d", "4");
+        for (int i = 0; i < 4; i++) {
+            MThread.sleep(100);
+            assertEquals("4", map.get("d"));
+        }
+
+        // invalidator
+        map.setInvalidator((k, v, t, a) -> k.equals("b"));
+        map.doValidationCheck();
+        assertNull(map.get("b"));
+        assertEquals("4", map.get("d"));
+        map.setInvalidator(null);
+
+        // load only once
+        map.setTimeout(10000);
+        AtomicInteger loads = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] =
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < 1000; i++)
+                                    map.computeIfAbsent(
+                                            "key" + (i % 10),
+                                            k -> {
+                                                loads.incrementAndGet();
+                                                return k;
+                                            });
+                            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(10, loads.get());
+        assertEquals("key5", map.get("key5"));
+    }
+
+    @Test
+    public void testSoftHashMap() throws Exception {
+        SoftHashMap<String, String> map = new SoftHashMap<>();
+        map.put("a", "1");
+        assertEquals("1", map.get("a"));
+        assertTrue(map.containsKey("a"));
+        assertTrue(map.containsValue("1"));
+        assertEquals("1", map.putIfAbsent("a", "2"));
+        assertNull(map.putIfAbsent("b", "2"));
+        // the same instance is already stored
+        assertEquals("2", map.putIfAbsent("b", "2"));
+        assertEquals(2, map.size());
+
+        @SuppressWarnings("unchecked")
+        SoftHashMap<String, String> copy =
+                (SoftHashMap<String, String>)
+                        MCast.unserializeFromString(MCast.serializeToString(map), null);
+        assertEquals("2", copy.get("b"));
+        assertEquals(2, copy.size());
+
+        AtomicInteger loads = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] =
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < 1000; i++)
+                                    map.getOrCreate(
+                                            "key" + (i % 10),
+                                            k -> {
+                                                loads.incrementAndGet();
+                                                return new String(k);
+                                            });
+                            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(10, loads.get());
+
+        // weak values are removed after garbage collection
+        SoftHashMap<String, Object> weak = new SoftHashMap<>(true);
+        for (int i = 0; i < 100; i++) weak.put("key" + i, new Object());
+        Object hold = new Object();
+        weak.put("hold", hold);
+        for (int i = 0; i < 50 && weak.getCollectedCount() < 100; i++) {
+            System.gc();
+            MThread.sleep(20);
+            weak.cleanup();
+        }
+        assertEquals(100, weak.getCollectedCount());
+        assertEquals(1, weak.size());
+        assertSame(hold, weak.get("hold"));
+    }
+
+    @Test
+    public void testSoftTimeoutMap() throws Exception {
+        SoftTimeoutMap<String, String> map = new SoftTimeoutMap<>(200, 100, false);
+        map.put("a", "1");
+        assertEquals("1", map.get("a"));
+        assertEquals(1, map.getAccessCount("a"));
+        MThread.sleep(300);
+        assertNull(map.get("a"));
+        map.put("b", "2");
+        assertEquals(1, map.size());
+        assertEquals(0, map.getCollectedCount());
+    }
+
+    @Test
+    public void testPutGet() {
+        ICache<String, String> cache =
+                new LocalCacheService()
+                        .createCache(this, "putget", String.class, String.class, null);
+        assertNull(cache.get("a"));
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        assertFalse(cache.putIfAbsent("a", "2"));
+        assertEquals("1", cache.getAndPut("a", "3"));
+        assertTrue(cache.replace("a", "3", "4"));
+        assertEquals("4", cache.get("a"));
+        assertTrue(cache.remove("a"));
+        assertNull(cache.get("a"));
+
+        ICacheStatistics stat = cache.getStatistics();
+        assertEquals(3, stat.getCacheHits());
+        assertEquals(2, stat.getCacheMisses());
+        assertEquals(1, stat.getCacheRemovals());
+    }
+
+    @Test
+    public void testBounded() {
+        ICache<Integer, Integer> cache =
+                new LocalCacheService()
+                        .createCache(
+                                this,
+                                "bounded",
+                                Integer.class,
+                                Integer.class,
+                                new CacheConfig().setHeapSize(100));
+        // make key 0 frequent
+        cache.put(0, 0);
+        for (int i = 0; i < 10; i++) cache.get(0);
+        // scan a lot of one hit keys, a LRU cache would drop key 0
+        for (int i = 1; i < 10000; i++) {
+            cache.put(i, i);
+            if (i % 200 == 0) assertEquals(0, cache.get(0));
+        }
+
+        ICacheStatistics stat = cache.getStatistics();
+        assertTrue(stat.getCacheSize() <= 100);
+        assertTrue(stat.getCacheEvictions() > 0);
+        assertEquals(0, cache.get(0));
+    }
+
+    @Test
+    public void testTTL() {
+        ICache<String, String> cache =
+                new LocalCacheService()
+                        .createCache(
+                                this,
+                                "ttl",
+                                String.class,
+                                String.class,
+                                new CacheConfig().setTTL(100));
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        MThread.sleep(200);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getStatistics().getCacheEvictions());
+    }
+
+    @Test
+    public void testTTLCleanup() {
+        LocalCacheService service = new LocalCacheService();
+        service.setCleanupInterval(50);
+        ICache<String, String> cache =
+                service.createCache(
+                        this,
+                        "ttlcleanup",
+                        String.class,
+                        String.class,
+                        new CacheConfig().setTTL(50));
+        for (int i = 0; i < 10; i++) cache.put("k" + i, "v" + i);
+        assertEquals(10, cache.getStatistics().getCacheSize());
+        // removed by the housekeeper without touching the entries
+        MThread.sleep(500);
+        assertEquals(0, cache.getStatistics().getCacheSize());
+    }
+
+    @Test
+    public void testLoader() {
+        ICache<String, String> cache =
+                new LocalCacheService()
+                        .createCache(this, "loader", String.class, String.class, null);
+        assertEquals("A", cache.get("a", k -> k.toUpperCase()));
+        assertEquals("A", cache.get("a", k -> "wrong"));
+        assertEquals(1, cache.getStatistics().getCacheLoads());
+    }
+
+    @Test
+    public void testOffHeapTier() {
+        ICache<Integer, String> cache =
+                new LocalCacheService()
+                        .createSerilizableCache(
+                                this,
+                                "offheap",
+                                Integer.class,
+                                String.class,
+                                new CacheConfig().setHeapSize(100).setPersistent(false));
+        for (int i = 0; i < 1000; i++) cache.put(i, "value" + i);
+        ICacheStatistics stat = cache.getStatistics();
+        assertEquals(1000, stat.getCacheSize());
+        assertEquals(0, stat.getCacheEvictions());
+        assertTrue(stat.getOccupiedByteSize() > 0);
+        // promoted from off heap tier
+        for (int i = 0; i < 1000; i++) assertEquals("value" + i, cache.get(i));
+        assertTrue(cache.remove(5));
+        assertNull(cache.get(5));
+        cache.close();
+    }
+
+    @Test
+    public void testOffHeapRemoveRace() throws Exception {
+        ICache<Integer, String> cache =
+                new LocalCacheService()
+                        .createSerilizableCache(
+                                this,
+                                "offheaprace",
+                                Integer.class,
+                                String.class,
+                                new CacheConfig().setHeapSize(64).setPersistent(false));
+        for (int i = 0; i < 1000; i++) cache.put(i, "value" + i);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] readers = new Thread[2];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] =
+                    new Thread(
+                            () -> {
+                                // promotes entries from the off heap tier
+                                while (running.get()) for (int i = 0; i < 1000; i++) cache.get(i);
+                            });
+            readers[t].start();
+        }
+        try {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 1000; i++) {
+                    cache.remove(i);
+                    // a removed entry must not be promoted again
+                    assertNull(cache.get(i));
+                    cache.put(i, "value" + i);
+                }
+            }
+        } finally {
+            running.set(false);
+            for (Thread reader : readers) reader.join();
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testMappedStoreRestore() throws Exception {
+        File dir = new File("target/cache-test");
+        MFile.deleteDir(dir);
+        MappedCacheStore<String, String> store =
+                new MappedCacheStore<>(dir, 256 * 1024, true, getClass().getClassLoader(), null);
+        store.put("a", "1", 0);
+        store.put("b", "2", 0);
+        store.put("c", "3", System.currentTimeMillis() - 1);
+        store.put("a", "4", 0);
+        store.remove("b");
+        store.close();
+
+        store = new MappedCacheStore<>(dir, 256 * 1024, true, getClass().getClassLoader(), null);
+        assertEquals("4", store.get("a"));
+        assertNull(store.get("b"));
+        assertNull(store.get("c"));
+        assertEquals(1, store.size());
+
+        // fill all slabs, the oldest entries will be evicted
+        for (int i = 0; i < 10000; i++) store.put("k" + i, "value" + i, 0);
+        assertNull(store.get("a"));
+        assertEquals("value9999", store.get("k9999"));
+        store.close();
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2002 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import de.mhus.lib.core.concurrent.LocalLock;
+import de.mhus.lib.core.concurrent.ThreadLock;
+import de.mhus.lib.core.service.LockManagerImpl;
+import de.mhus.lib.tests.TestCase;
+
+public class LockTest extends TestCase {
+
+    @Test
+    public void testLocalLock() throws Exception {
+        LocalLock lock = new LocalLock();
+        lock.setName("test");
+        assertFalse(lock.isLocked());
+        assertTrue(lock.tryLock());
+        assertTrue(lock.isLocked());
+        assertNull(lock.getStartStackTrace());
+
+        boolean[] result = new boolean[3];
+        Thread other =
+                new Thread(
+                        () -> {
+                            result[0] = lock.tryLock();
+                            result[1] = lock.lock(50);
+                            result[2] = lock.unlock();
+                        });
+        other.start();
+        other.join();
+        assertFalse(result[0]);
+        assertFalse(result[1]);
+        assertFalse(result[2]);
+        assertTrue(lock.isLocked());
+
+        assertTrue(lock.unlock());
+        assertFalse(lock.isLocked());
+        assertFalse(lock.unlock());
+
+        // unlock hard from another thread and wait for it
+        lock.lock();
+        Thread breaker =
+                new Thread(
+                        () -> {
+                            try {
+                                Thread.sleep(100);
+                            } catch (InterruptedException e) {
+                            }
+                            lock.unlockHard();
+                        });
+        breaker.start();
+        assertTrue(lock.waitUntilUnlock(5000));
+        assertFalse(lock.isLocked());
+        breaker.join();
+        assertTrue(lock.lock(1000));
+        assertFalse(lock.waitUntilUnlock(50));
+        lock.unlock();
+        assertEquals(3, lock.getCnt());
+    }
+
+    @Test
+    public void testThreadLock() throws Exception {
+        ThreadLock lock = new ThreadLock();
+        lock.lock();
+        assertTrue(lock.lock(10));
+        assertTrue(lock.tryLock());
+        boolean[] result = new boolean[1];
+        Thread other = new Thread(() -> result[0] = lock.tryLock());
+        other.start();
+        other.join();
+        assertFalse(result[0]);
+        assertTrue(lock.unlock());
+        other = new Thread(() -> result[0] = lock.tryLock());
+        other.start();
+        other.join();
+        assertTrue(result[0]);
+    }
+
+    @Test
+    public void testContention() throws Exception {
+        for (boolean fair : new boolean[] {false, true}) {
+            LockManagerImpl manager = new LockManagerImpl();
+            LocalLock lock =
+                    (LocalLock)
+                            manager.getLock(
+                                    "counter",
+                                    n ->
+                                            new LocalLock(n, fair) {
+                                                @Override
+                                                protected void register() {}
+                                            });
+            assertSame(lock, manager.getLock("counter"));
+            assertEquals(fair, lock.isFair());
+            assertEquals(1, manager.managedLocks().length);
+
+            int[] counter = new int[1];
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] =
+                        new Thread(
+                                () -> {
+                                    for (int i = 0; i < 10000; i++)
+                                        lock.lock(() -> counter[0]++);
+                                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) thread.join();
+            assertEquals(40000, counter[0]);
+            assertEquals(40000, lock.getCnt());
+            assertEquals(0, lock.getQueueLength());
+            assertFalse(lock.isLocked());
+            System.out.println(
+                    "Fair "
+                            + fair
+                            + ": contentions "
+                            + lock.getContentions()
+                            + " wait "
+                            + lock.getWaitTime()
+                            + " ms, max "
+                            + lock.getMaxWaitTime()
+                            + " ms, hold "
+                            + lock.getHoldTime()
+                            + " ms");
+            lock.resetMetrics();
+            assertEquals(0, lock.getContentions());
+        }
+    }
+}
@@ -17,8 +17,23 @@ package de.mhus.lib.test;
 
 // import static org.junit.jupiter.api.Assertions.*;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
 import org.junit.jupiter.api.Test;
 
+import de.mhus.lib.core.MFile;
+import de.mhus.lib.core.logging.AsyncLogAppender;
+import de.mhus.lib.core.logging.FileLogger;
+import de.mhus.lib.core.logging.Log;
+import de.mhus.lib.core.logging.LogEngine;
+import de.mhus.lib.core.logging.LogFactory;
 import de.mhus.lib.tests.TestCase;
 
 public class LogTest extends TestCase {
@@ -28,4 +43,343 @@ public class LogTest extends TestCase {
         //		log.e("test");
         //		assertEquals(log.getName(), getClass().getCanonicalName());
     }
+
+    @Test
+    public void testAsyncAppenderBlock() throws Exception {
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger flushed = new AtomicInteger();
+        AsyncLogAppender appender =
+                new AsyncLogAppender(
+                        "test",
+                        16,
+                        AsyncLogAppender.POLICY.BLOCK,
+                        new AsyncLogAppender.Sink() {
+                            @Override
+                            public void write(AsyncLogAppender.Event event) {
+                                written.incrementAndGet();
+                            }
+
+                            @Override
+                            public void flush() {
+                                flushed.incrementAndGet();
+                            }
+                        });
+        int threads = 4;
+        int cnt = 5000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++)
+            new Thread(
+                            () -> {
+                                for (int j = 0; j < cnt; j++)
+                                    appender.append(
+                                            new AsyncLogAppender.Event(Log.LEVEL.INFO, j, null));
+                                done.countDown();
+                            })
+                    .start();
+        done.await();
+        appender.close();
+        assertEquals(threads * cnt, written.get());
+        assertEquals(threads * cnt, appender.getWritten());
+        assertEquals(0, appender.getDropped());
+        assertTrue(flushed.get() > 0 && flushed.get() <= written.get());
+    }
+
+    @Test
+    public void testAsyncAppenderDrop() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicInteger written = new AtomicInteger();
+        AsyncLogAppender appender =
+                new AsyncLogAppender(
+                        "test",
+                        4,
+                        AsyncLogAppender.POLICY.DROP_BELOW_WARN,
+                        new AsyncLogAppender.Sink() {
+                            @Override
+                            public void write(AsyncLogAppender.Event event) {
+                                try {
+                                    blocked.await();
+                                } catch (InterruptedException e) {
+                                }
+                                written.incrementAndGet();
+                            }
+
+                            @Override
+                            public void flush() {}
+                        });
+        for (int i = 0; i < 20; i++)
+            appender.append(new AsyncLogAppender.Event(Log.LEVEL.DEBUG, i, null));
+        assertTrue(appender.getDropped() > 0);
+        long dropped = appender.getDropped();
+        blocked.countDown();
+        // warn is not dropped
+        assertTrue(appender.append(new AsyncLogAppender.Event(Log.LEVEL.WARN, "warn", null)));
+        appender.close();
+        assertEquals(dropped, appender.getDropped());
+        assertEquals(20 - dropped + 1, written.get());
+    }
+
+    @Test
+    public void testAsyncFileLogger() throws Exception {
+        File file = new File("target/asynclog/async.log");
+        MFile.deleteDir(file.getParentFile());
+        file.getParentFile().mkdirs();
+        FileLogger log = new FileLogger("async", file);
+        log.setAsync(64, AsyncLogAppender.POLICY.BLOCK);
+        assertTrue(log.isAsync());
+        for (int i = 0; i < 100; i++) log.i("line", i);
+        log.close();
+        assertFalse(log.isAsync());
+        String content = MFile.readFile(file);
+        assertTrue(content.contains("[line][0]"));
+        assertTrue(content.contains("[line][99]"));
+    }
+
+    @Test
+    public void testCachedLevels() {
+        CountingEngine counting = new CountingEngine();
+        Log log =
+                new Log("cached") {
+                    @Override
+                    public void update() {
+                        engine = counting;
+                    }
+                };
+        for (int i = 0; i < 1000; i++) {
+            log.t("trace", i);
+            log.d("debug", i);
+        }
+        log.i("info");
+        assertEquals(1, counting.written.get());
+        // levels are read once
+        assertEquals(1, counting.checks.get());
+        assertFalse(log.isLevelEnabled(Log.LEVEL.DEBUG));
+
+        counting.level = Log.LEVEL.DEBUG;
+        log.d("debug");
+        assertEquals(1, counting.written.get());
+        Log.invalidateLevels();
+        log.d("debug");
+        assertEquals(2, counting.written.get());
+        assertTrue(log.isLevelEnabled(Log.LEVEL.DEBUG));
+    }
+
+    @Test
+    public void testVerbose() {
+        CountingEngine counting = new CountingEngine();
+        Log log =
+                new Log("verbose") {
+                    @Override
+                    public void update() {
+                        engine = counting;
+                    }
+                };
+        boolean old = Log.isVerbose();
+        try {
+            Log.setVerbose(true);
+            log.d("debug");
+            log.d("debug", 1);
+            log.d("debug", 1, 2, 3, 4, 5);
+            log.t("trace");
+            assertEquals(3, counting.written.get());
+        } finally {
+            Log.setVerbose(old);
+        }
+        log.d("debug");
+        assertEquals(3, counting.written.get());
+    }
+
+    @Test
+    public void testLevelMappingLookup() {
+        CountingEngine counting = new CountingEngine();
+        AtomicInteger lookups = new AtomicInteger();
+        Log log =
+                new Log("mapping") {
+                    @Override
+                    public void update() {
+                        engine = counting;
+                    }
+
+                    @Override
+                    protected LEVEL mapLevel(LEVEL level) {
+                        lookups.incrementAndGet();
+                        return super.mapLevel(level);
+                    }
+                };
+        boolean old = Log.isLevelMapping();
+        try {
+            // INFO is enabled, disabled levels must return without a span lookup
+            Log.setLevelMapping(false);
+            for (int i = 0; i < 100; i++) {
+                log.t("trace", i);
+                log.d("debug", i);
+            }
+            assertFalse(log.isLevelEnabled(Log.LEVEL.DEBUG));
+            assertEquals(0, lookups.get());
+            assertEquals(0, counting.written.get());
+
+            // a span could map the level now
+            Log.setLevelMapping(true);
+            log.d("debug");
+            assertEquals(1, lookups.get());
+            assertEquals(0, counting.written.get());
+        } finally {
+            Log.setLevelMapping(old);
+        }
+    }
+
+    @Test
+    public void testParameters() {
+        CountingEngine counting = new CountingEngine();
+        Log log =
+                new Log("parameters") {
+                    @Override
+                    public void update() {
+                        engine = counting;
+                    }
+
+                    @Override
+                    protected void prepare(StringBuilder sb) {}
+                };
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<String> lazy = () -> "lazy" + calls.incrementAndGet();
+
+        log.d("debug", lazy);
+        log.t(lazy);
+        assertEquals(0, calls.get());
+
+        log.i("a", lazy);
+        assertEquals(1, calls.get());
+        assertEquals("[a][lazy1]", counting.last);
+
+        log.i("a", "b", "c", "d");
+        assertEquals("[a][b][c][d]", counting.last);
+        log.i("a", "b", "c", "d", "e");
+        assertEquals("[a][b][c][d][e]", counting.last);
+
+        // logging while serializing must not destroy the outer message
+        Object nested =
+                new Object() {
+                    @Override
+                    public String toString() {
+                        log.i("inner");
+                        return "nested";
+                    }
+                };
+        log.i("outer", nested);
+        assertEquals("[outer][nested]", counting.last);
+    }
+
+    private static class CountingEngine extends LogEngine {
+
+        private volatile Log.LEVEL level = Log.LEVEL.INFO;
+        private AtomicInteger checks = new AtomicInteger();
+        private AtomicInteger written = new AtomicInteger();
+        private volatile Object last;
+
+        public CountingEngine() {
+            super("counting");
+        }
+
+        private boolean is(Log.LEVEL l) {
+            if (l == Log.LEVEL.TRACE) checks.incrementAndGet();
+            return level.ordinal() <= l.ordinal();
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            return is(Log.LEVEL.DEBUG);
+        }
+
+        @Override
+        public boolean isErrorEnabled() {
+            return is(Log.LEVEL.ERROR);
+        }
+
+        @Override
+        public boolean isFatalEnabled() {
+            return is(Log.LEVEL.FATAL);
+        }
+
+        @Override
+        public boolean isInfoEnabled() {
+            return is(Log.LEVEL.INFO);
+        }
+
+        @Override
+        public boolean isTraceEnabled() {
+            return is(Log.LEVEL.TRACE);
+        }
+
+        @Override
+        public boolean isWarnEnabled() {
+            return is(Log.LEVEL.WARN);
+        }
+
+        @Override
+        public void trace(Object message) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void trace(Object message, Throwable t) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void debug(Object message) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void debug(Object message, Throwable t) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void info(Object message) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void info(Object message, Throwable t) {
+            written.incrementAndGet();
+            last = message;
+        }
+
+        @Override
+        public void warn(Object message) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void warn(Object message, Throwable t) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void error(Object message) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void error(Object message, Throwable t) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void fatal(Object message) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void fatal(Object message, Throwable t) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void doInitialize(LogFactory logFactory) {}
+
+        @Override
+        public void close() {}
+    }
 }
@@ -15,12 +15,14 @@
  */
 package de.mhus.lib.test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
@@ -32,6 +34,8 @@ import org.junit.jupiter.api.Test;
 
 import de.mhus.lib.core.MCast;
 import de.mhus.lib.core.MDate;
+import de.mhus.lib.core.cast.CastPlan;
+import de.mhus.lib.core.cast.Caster;
 import de.mhus.lib.tests.TestCase;
 
 public class MCastTest extends TestCase {
@@ -352,4 +356,70 @@ public class MCastTest extends TestCase {
             System.out.println(res);
         }
     }
+
+    @Test
+    public void testPlan() {
+        CastPlan toInt = MCast.plan(String.class, int.class);
+        assertEquals(12, toInt.cast("12", null));
+        assertEquals(5, toInt.cast("x", 5));
+        assertNull(toInt.cast(null, null));
+
+        // non final source dispatches by the runtime class
+        CastPlan toString = MCast.plan(Object.class, String.class);
+        assertEquals(MCast.toType(1.5d, String.class, null), toString.cast(1.5d, null));
+        assertEquals("abc", toString.cast("abc", null));
+
+        CastPlan toArray = MCast.plan(String.class, int[].class);
+        assertArrayEquals(new int[] {1, 2, 3}, (int[]) toArray.cast("1;2;3", null));
+        assertArrayEquals(
+                new long[] {1, 2}, (long[]) MCast.toType(new int[] {1, 2}, long[].class, null));
+        assertArrayEquals(
+                new Integer[] {4, 5},
+                (Integer[]) MCast.toType(new String[] {"4", "5"}, Integer[].class, null));
+        assertArrayEquals(
+                new double[] {1.5, 2},
+                (double[]) MCast.toType(Arrays.asList("1.5", 2), double[].class, null),
+                0);
+        assertArrayEquals(
+                new String[] {"1", "2"},
+                (String[]) MCast.toType(new Object[] {1, "2"}, String[].class, null));
+
+        CastPlan toEnum = MCast.plan(String.class, PlanEnum.class);
+        assertEquals(PlanEnum.B, toEnum.cast("B", null));
+        assertEquals(PlanEnum.A, toEnum.cast("X", PlanEnum.A));
+    }
+
+    @Test
+    public void testPlanCasterChange() {
+        assertNull(MCast.toType(new PlanSource(), PlanTarget.class, null));
+        MCast.addCaster(
+                new Caster<PlanSource, PlanTarget>() {
+                    @Override
+                    public Class<? extends PlanTarget> getToClass() {
+                        return PlanTarget.class;
+                    }
+
+                    @Override
+                    public Class<? extends PlanSource> getFromClass() {
+                        return PlanSource.class;
+                    }
+
+                    @Override
+                    public PlanTarget cast(PlanSource in, PlanTarget def) {
+                        return new PlanTarget();
+                    }
+                },
+                true);
+        assertNotNull(MCast.toType(new PlanSource(), PlanTarget.class, null));
+        assertNotNull(MCast.plan(PlanSource.class, PlanTarget.class).cast(new PlanSource(), null));
+    }
+
+    public enum PlanEnum {
+        A,
+        B
+    }
+
+    public static final class PlanSource {}
+
+    public static class PlanTarget {}
 }
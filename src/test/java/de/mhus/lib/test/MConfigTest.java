@@ -16,12 +16,20 @@
 package de.mhus.lib.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import org.junit.jupiter.api.Test;
 
 import de.mhus.lib.core.M;
 import de.mhus.lib.core.MApi;
+import de.mhus.lib.core.cfg.CfgInt;
+import de.mhus.lib.core.cfg.CfgNode;
+import de.mhus.lib.core.cfg.CfgString;
+import de.mhus.lib.core.cfg.MCfgUpdater;
+import de.mhus.lib.core.cfg.NodeCfgProvider;
 import de.mhus.lib.core.node.INode;
+import de.mhus.lib.core.node.MNode;
 import de.mhus.lib.core.util.MDirtyTricks;
 import de.mhus.lib.errors.MException;
 import de.mhus.lib.tests.TestCase;
@@ -48,6 +56,98 @@ public class MConfigTest extends TestCase {
         assertEquals("abcdefghi", initiatorValue);
     }
 
+    @Test
+    public void testUpdater() {
+        String owner = MConfigTest.class.getCanonicalName() + ".updater";
+        MNode root = new MNode();
+        root.setString("a", "1");
+        INode sub = root.createObject("sub");
+        sub.setString("b", "2");
+        NodeCfgProvider provider =
+                new NodeCfgProvider(owner) {
+                    @Override
+                    public void doStart() {
+                        config = root;
+                    }
+
+                    @Override
+                    public void doStop() {}
+
+                    @Override
+                    public void doRestart() {}
+                };
+
+        MCfgUpdater updater = MApi.getCfgUpdater();
+        MCfgUpdater.setTraceCalling(false);
+        CfgString a = new CfgString(owner, "a", "x");
+        CfgString b = new CfgString(owner, "sub@b", "x");
+        CfgInt c = new CfgInt(owner, "sub@c", 5);
+        CfgNode node = new CfgNode(owner, "sub", null);
+        if (!MApi.isDirtyTrace()) assertNull(a.getCalling());
+
+        try {
+            // first update loads all values of the owner
+            int cnt = updater.getUpdatedCount();
+            MApi.get().getCfgManager().registerCfgProvider(provider);
+            assertEquals(4, updater.getUpdatedCount() - cnt);
+            assertEquals("1", a.value());
+            assertEquals("2", b.value());
+            assertEquals(5, c.value());
+            assertSame(sub, node.value());
+
+            // change in sub node, the parameter 'a' is not touched
+            sub.setString("b", "3");
+            cnt = updater.getUpdatedCount();
+            updater.doUpdate(owner);
+            assertEquals(3, updater.getUpdatedCount() - cnt);
+            assertEquals("3", b.value());
+
+            // change in root
+            root.setString("a", "4");
+            cnt = updater.getUpdatedCount();
+            updater.doUpdate(owner);
+            assertEquals(1, updater.getUpdatedCount() - cnt);
+            assertEquals("4", a.value());
+
+            // nothing changed
+            cnt = updater.getUpdatedCount();
+            updater.doUpdate(owner);
+            assertEquals(0, updater.getUpdatedCount() - cnt);
+
+            // a new value is always reloaded once
+            CfgString d = new CfgString(owner, "sub@d", "x");
+            cnt = updater.getUpdatedCount();
+            updater.doUpdate(owner);
+            assertEquals(1, updater.getUpdatedCount() - cnt);
+            assertEquals("x", d.value());
+
+            // a new empty node
+            CfgNode empty = new CfgNode(owner, "empty", null);
+            updater.doUpdate(owner);
+            assertNull(empty.value());
+            INode created = root.createObject("empty");
+            cnt = updater.getUpdatedCount();
+            updater.doUpdate(owner);
+            assertEquals(1, updater.getUpdatedCount() - cnt);
+            assertSame(created, empty.value());
+
+            // with trace the calling is stored
+            MCfgUpdater.setTraceCalling(true);
+            CfgString e = new CfgString(owner, "e", "x");
+            assertEquals(MConfigTest.class.getName(), e.getCalling());
+            MCfgUpdater.setTraceCalling(false);
+
+            int count = 10000;
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) new CfgString(owner, "sub@v" + (i % 100), "x");
+            long time = System.nanoTime() - start;
+            System.out.println("Register: " + (time / count) + " ns/value");
+        } finally {
+            MCfgUpdater.setTraceCalling(false);
+            MApi.get().getCfgManager().unregisterCfgProvider(owner);
+        }
+    }
+
     public static void initiate(INode config) {
         System.out.println("Initiate: " + config);
         initiatorValue = initiatorValue + config.getString("value", null);
@@ -15,16 +15,31 @@
  */
 package de.mhus.lib.test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 
 import de.mhus.lib.core.MFile;
+import de.mhus.lib.core.MString;
+import de.mhus.lib.core.io.FileWatch;
+import de.mhus.lib.core.io.FileWatchService;
+import de.mhus.lib.core.io.PipedStream;
+import de.mhus.lib.core.io.TailInputStream;
 import de.mhus.lib.errors.MException;
 import de.mhus.lib.tests.TestCase;
 
@@ -71,4 +86,161 @@ public class MFileTest extends TestCase {
             assertEquals("text/html", res);
         }
     }
+
+    @Test
+    public void testPipedStream() throws Exception {
+        byte[] data = new byte[4 * 1024 * 1024];
+        new Random(1).nextBytes(data);
+        PipedStream pipe = new PipedStream(4096);
+        Thread writer =
+                new Thread(
+                        () -> {
+                            try (OutputStream out = pipe.getOut()) {
+                                for (int i = 0; i < data.length; i += 1000)
+                                    out.write(data, i, Math.min(1000, data.length - i));
+                            } catch (IOException e) {
+                                e.printStackTrace();
+                            }
+                        });
+        long start = System.currentTimeMillis();
+        writer.start();
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        InputStream in = pipe.getIn();
+        byte[] buffer = new byte[1500];
+        int n;
+        while ((n = in.read(buffer)) >= 0) copy.write(buffer, 0, n);
+        writer.join();
+        long time = System.currentTimeMillis() - start;
+        System.out.println("Piped " + data.length + " bytes in " + time + "ms");
+        assertArrayEquals(data, copy.toByteArray());
+    }
+
+    @Test
+    public void testPipedStreamSingleBytes() throws Exception {
+        PipedStream pipe = new PipedStream(2);
+        pipe.setReadTimeout(100);
+        pipe.setWriteTimeout(100);
+        pipe.getOut().write(0xFF);
+        pipe.getOut().write('a');
+        assertThrows(IOException.class, () -> pipe.getOut().write('b'));
+        assertEquals(2, pipe.getIn().available());
+        assertEquals(0xFF, pipe.getIn().read());
+        assertEquals('a', pipe.getIn().read());
+        assertThrows(IOException.class, () -> pipe.getIn().read());
+        pipe.getOut().write('c');
+        // closing the output closes the pipe
+        pipe.getOut().close();
+        assertThrows(IOException.class, () -> pipe.getOut().write('d'));
+        assertEquals('c', pipe.getIn().read());
+        assertEquals(-1, pipe.getIn().read());
+    }
+
+    @Test
+    public void testFileWatch() throws Exception {
+        File dir = new File("target/filewatch");
+        MFile.deleteDir(dir);
+        dir.mkdirs();
+        File file = new File(dir, "watched.txt");
+        MFile.writeFile(file, "first");
+        CountDownLatch latch = new CountDownLatch(1);
+        FileWatch watch =
+                new FileWatch(
+                        file,
+                        500,
+                        true,
+                        new FileWatch.Listener() {
+
+                            @Override
+                            public void onFileChanged(FileWatch fileWatch) {
+                                latch.countDown();
+                            }
+
+                            @Override
+                            public void onFileWatchError(FileWatch fileWatch, Throwable t) {
+                                t.printStackTrace();
+                            }
+                        });
+        watch.doStart();
+        System.out.println("Native: " + watch.isNativeWatch());
+        try {
+            // a changed size and modify date
+            file.setLastModified(file.lastModified() - 10000);
+            MFile.writeFile(file, "second version");
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            watch.doStop();
+        }
+        assertEquals(0, FileWatchService.get().getPolledCount());
+    }
+
+    @Test
+    public void testFileWatchCollected() throws Exception {
+        File dir = new File("target/filewatchgc");
+        MFile.deleteDir(dir);
+        dir.mkdirs();
+        File file = new File(dir, "watched.txt");
+        MFile.writeFile(file, "first");
+        FileWatchService service = FileWatchService.get();
+        int before = service.getDirectoryCount() + service.getPolledCount();
+        startUnreferencedWatch(file);
+        assertEquals(before + 1, service.getDirectoryCount() + service.getPolledCount());
+        // the watch is not stopped, it's dropped after garbage collection
+        long end = System.currentTimeMillis() + 10000;
+        while (service.getDirectoryCount() + service.getPolledCount() > before
+                && System.currentTimeMillis() < end) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        assertEquals(before, service.getDirectoryCount() + service.getPolledCount());
+    }
+
+    private void startUnreferencedWatch(File file) {
+        new FileWatch(
+                        file,
+                        500,
+                        true,
+                        new FileWatch.Listener() {
+
+                            @Override
+                            public void onFileChanged(FileWatch fileWatch) {}
+
+                            @Override
+                            public void onFileWatchError(FileWatch fileWatch, Throwable t) {}
+                        })
+                .doStart();
+    }
+
+    @Test
+    public void testTailInputStream() throws Exception {
+        File dir = new File("target/tail");
+        MFile.deleteDir(dir);
+        dir.mkdirs();
+        File file = new File(dir, "tail.log");
+        MFile.writeFile(file, "old content\n");
+        try (TailInputStream tail = new TailInputStream(file)) {
+            assertEquals(0, tail.available());
+            Thread writer =
+                    new Thread(
+                            () -> {
+                                try {
+                                    Thread.sleep(100);
+                                    try (OutputStream out = new FileOutputStream(file, true)) {
+                                        out.write("appended\n".getBytes(MString.CHARSET_UTF_8));
+                                    }
+                                    Thread.sleep(100);
+                                    // rotate
+                                    file.renameTo(new File(dir, "tail.log.1"));
+                                    MFile.writeFile(file, "rotated\n");
+                                } catch (Exception e) {
+                                    e.printStackTrace();
+                                }
+                            });
+            writer.start();
+            byte[] expected = "appended\nrotated\n".getBytes(MString.CHARSET_UTF_8);
+            byte[] data = new byte[expected.length];
+            for (int i = 0; i < data.length; i++) data[i] = (byte) tail.read();
+            writer.join();
+            assertArrayEquals(expected, data);
+        }
+    }
 }
@@ -20,26 +20,36 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import de.mhus.lib.core.MCast;
 import de.mhus.lib.core.MFile;
+import de.mhus.lib.core.MJson;
 import de.mhus.lib.core.MProperties;
 import de.mhus.lib.core.MString;
 import de.mhus.lib.core.MSystem;
 import de.mhus.lib.core.MXml;
 import de.mhus.lib.core.definition.DefRoot;
+import de.mhus.lib.core.node.CompactNode;
 import de.mhus.lib.core.node.DefaultNodeFactory;
 import de.mhus.lib.core.node.INode;
+import de.mhus.lib.core.node.JsonNodeBuilder;
+import de.mhus.lib.core.node.JsonStreamNodeBuilder;
 import de.mhus.lib.core.node.MNode;
 import de.mhus.lib.core.node.NodeList;
+import de.mhus.lib.core.node.PropertiesNodeBuilder;
+import de.mhus.lib.core.node.YamlNodeBuilder;
 import de.mhus.lib.errors.MException;
 import de.mhus.lib.errors.NotFoundException;
 import de.mhus.lib.form.definition.FaShowInformationPanel;
@@ -245,6 +255,345 @@ public class MNodeTest extends TestCase {
         }
     }
 
+    @Test
+    public void testCompactNode() throws Exception {
+        CompactNode c = new CompactNode();
+        for (int i = 0; i < 20; i++) c.setString("key" + i, "value" + i);
+        assertEquals(20, c.size());
+        for (int i = 0; i < 20; i++) assertEquals("value" + i, c.getString("key" + i, null));
+        Iterator<String> keys = c.keys().iterator();
+        assertEquals("key0", keys.next());
+        assertEquals("key1", keys.next());
+        c.remove("key5");
+        assertEquals(19, c.size());
+        assertFalse(c.containsKey("key5"));
+        assertEquals("value6", c.getString("key6", null));
+        c.setString("key6", "new");
+        assertEquals("new", c.getString("key6", null));
+        assertEquals(19, c.size());
+
+        c.setString("test1", "wow");
+        c.setString("test2", "alf");
+        derTeschd(c, false);
+
+        INode sub = c.createObject("sub");
+        assertTrue(sub instanceof CompactNode);
+        NodeList array = c.createArray("array");
+        assertTrue(array.createObject() instanceof CompactNode);
+
+        INode c2 = (INode) MCast.unserializeFromString(MCast.serializeToString(c), null);
+        assertTrue(c2 instanceof CompactNode);
+        assertEquals(c.size(), c2.size());
+        derTeschd(c2, false);
+        assertEquals("new", c2.getString("key6", null));
+
+        // remove in a loop, the index is rebuilt once with the next lookup
+        c.keys().removeIf(k -> k.startsWith("key") && !k.equals("key19"));
+        assertEquals("wow", c.getString("test1", null));
+        assertEquals("value19", c.getString("key19", null));
+        assertFalse(c.containsKey("key7"));
+        for (int i = 0; i < 20; i++) c.setString("more" + i, "value" + i);
+        assertEquals("value13", c.getString("more13", null));
+
+        // deque methods of the list
+        array = c.createArray("deque");
+        assertNull(array.peek());
+        array.push(new MNode());
+        array.getFirst().setString("id", "b");
+        array.offerFirst(new MNode());
+        array.getFirst().setString("id", "a");
+        array.addLast(new MNode());
+        array.getLast().setString("id", "c");
+        assertEquals("c", array.descendingIterator().next().getString("id", null));
+        assertEquals("a", array.poll().getString("id", null));
+        assertEquals("c", array.pollLast().getString("id", null));
+        assertEquals("b", array.pop().getString("id", null));
+        assertNull(array.pollFirst());
+    }
+
+    @Test
+    public void testCompactFactory() throws Exception {
+        String json =
+                MString.replaceAll(
+                        "{'test1':'wow','test2':'alf',"
+                                + "'sub': [  "
+                                + "{'test1':'wow1','test2':'alf1'} , "
+                                + "{'test1':'wow2','test2':'alf2'} , "
+                                + "{'test1':'wow3','test2':'alf3'}  "
+                                + "] }",
+                        "'",
+                        "\"");
+        File file = new File("target/compact.json");
+        MFile.writeFile(file, json);
+        DefaultNodeFactory dcf = new DefaultNodeFactory();
+        dcf.setCompact(true);
+        INode c = dcf.read(file);
+        assertTrue(c instanceof CompactNode);
+        derTeschd(c, true);
+        NodeList sub = c.getArray("sub");
+        assertTrue(sub.get(1) instanceof CompactNode);
+        assertEquals("wow2", sub.get(1).getString("test1", null));
+
+        // compare footprint and access time, not a benchmark
+        int cnt = 20000;
+        Runtime rt = Runtime.getRuntime();
+        for (int mode = 0; mode < 2; mode++) {
+            System.gc();
+            long mem = rt.totalMemory() - rt.freeMemory();
+            long start = System.nanoTime();
+            INode[] nodes = new INode[cnt];
+            for (int i = 0; i < cnt; i++) {
+                INode n = mode == 0 ? new MNode() : new CompactNode();
+                n.setString("name", "n" + i);
+                n.setInt("id", i);
+                n.setBoolean("enabled", true);
+                nodes[i] = n;
+            }
+            long sum = 0;
+            for (INode n : nodes) sum += n.getInt("id", 0);
+            long time = System.nanoTime() - start;
+            System.gc();
+            mem = rt.totalMemory() - rt.freeMemory() - mem;
+            assertEquals((long) cnt * (cnt - 1) / 2, sum);
+            System.out.println(
+                    (mode == 0 ? "MNode" : "CompactNode")
+                            + ": "
+                            + (mem / cnt)
+                            + " bytes/node, "
+                            + (time / 1000000)
+                            + " ms");
+        }
+    }
+
+    @Test
+    public void testJsonStreamRoundTrip() throws Exception {
+        String json =
+                MString.replaceAll(
+                        "{'a':'x','b':1,'c':1.5,'d':true,'e':null,"
+                                + "'f':123456789012345678901234567890,"
+                                + "'g':[1,'two',[3,4],{'h':'i'}],'j':{'k':[]}}",
+                        "'",
+                        "\"");
+        INode c = INode.readFromJsonString(json);
+        assertEquals("x", c.getString("a"));
+        assertEquals(1, c.getInt("b", 0));
+        assertEquals(1.5, c.getDouble("c", 0), 0);
+        assertTrue(c.getBoolean("d"));
+        assertEquals("123456789012345678901234567890", c.getString("f"));
+        NodeList g = c.getArray("g");
+        assertEquals(4, g.size());
+        assertEquals("two", g.get(1).getString(INode.NAMELESS_VALUE));
+        assertEquals(2, g.get(2).getArray(INode.NAMELESS_VALUE).size());
+        assertEquals("i", g.get(3).getString("h"));
+        assertEquals(0, c.getObject("j").getArray("k").size());
+        assertEquals(json, INode.toCompactJsonString(c));
+
+        String array = "[1,2,{\"a\":3}]";
+        INode a = INode.readFromJsonString(array);
+        assertEquals(3, a.getArray(INode.NAMELESS_VALUE).size());
+        assertEquals(array, INode.toCompactJsonString(a));
+    }
+
+    @Test
+    public void testJsonNodeBuilderTextValues() throws Exception {
+        String json =
+                MString.replaceAll(
+                        "{'n':5,'c':1.50,'b':true,'z':null,'s':'x',"
+                                + "'f':123456789012345678901234567890,'a':[1,'y',{'h':2}]}",
+                        "'",
+                        "\"");
+        JsonNodeBuilder builder = new JsonNodeBuilder();
+        INode c = builder.readFromString(json);
+        assertEquals("5", c.get("n"));
+        assertEquals("1.5", c.get("c"));
+        assertEquals("true", c.get("b"));
+        assertEquals("null", c.get("z"));
+        assertEquals("x", c.get("s"));
+        assertEquals("123456789012345678901234567890", c.get("f"));
+        NodeList a = c.getArray("a");
+        assertEquals("1", a.get(0).get(INode.NAMELESS_VALUE));
+        assertEquals("y", a.get(1).get(INode.NAMELESS_VALUE));
+        assertEquals("2", a.get(2).get("h"));
+
+        // same values as the jackson tree
+        INode t = builder.fromJson(MJson.load(json));
+        for (String key : t.getPropertyKeys()) assertEquals(t.get(key), c.get(key), key);
+
+        // written as strings again
+        JsonNode out = builder.writeToJsonNode(c);
+        for (String key : new String[] {"n", "c", "b", "z", "f"}) {
+            assertTrue(out.get(key).isTextual(), key);
+            assertEquals(c.get(key), out.get(key).asText(), key);
+        }
+        assertTrue(out.get("a").get(0).get(INode.NAMELESS_VALUE).isTextual());
+
+        // the stream builder keeps the json types
+        INode s = new JsonStreamNodeBuilder().readFromString(json);
+        assertEquals(5L, s.get("n"));
+        assertEquals(Boolean.TRUE, s.get("b"));
+    }
+
+    @Test
+    public void testJsonLenient() throws Exception {
+        // comments, single quotes and unquoted names like MJson.load()
+        String json =
+                "{\n// comment\n'a':'x', /* block */ b:2,\n"
+                        + "# yaml comment\n'items':[{'id':1},{'id':2}]}";
+        INode c = new JsonNodeBuilder().readFromString(json);
+        assertEquals("x", c.get("a"));
+        assertEquals("2", c.get("b"));
+        assertEquals(2, c.getArray("items").size());
+
+        c = new JsonStreamNodeBuilder().readFromString(json);
+        assertEquals("x", c.get("a"));
+        assertEquals(2L, c.get("b"));
+
+        ArrayList<INode> items = new ArrayList<>();
+        long cnt =
+                new JsonStreamNodeBuilder()
+                        .stream(
+                                new ByteArrayInputStream(MString.toBytes(json)),
+                                "items",
+                                items::add);
+        assertEquals(2, cnt);
+        assertEquals(2, items.get(1).getInt("id", 0));
+    }
+
+    @Test
+    public void testJsonStreamLarge() throws Exception {
+        StringBuilder sb = new StringBuilder("{\"items\":[");
+        int cnt = 50000;
+        for (int i = 0; i < cnt; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item").append(i);
+            sb.append("\",\"tags\":[\"a\",\"b\"]}");
+        }
+        sb.append("]}");
+        String json = sb.toString();
+        long start = System.currentTimeMillis();
+        INode c = INode.readFromJsonString(json);
+        long read = System.currentTimeMillis() - start;
+        start = System.currentTimeMillis();
+        String out = INode.toCompactJsonString(c);
+        long write = System.currentTimeMillis() - start;
+        System.out.println(
+                "Json " + json.length() + " chars: read " + read + " ms, write " + write + " ms");
+        assertEquals(cnt, c.getArray("items").size());
+        assertEquals(json.length(), out.length());
+        INode c2 = INode.readFromJsonString(out);
+        INode item = c2.getArray("items").get(cnt - 1);
+        assertEquals(cnt - 1, item.getInt("id", 0));
+        assertEquals("item" + (cnt - 1), item.getString("name"));
+        assertEquals("b", item.getArray("tags").get(1).getString(INode.NAMELESS_VALUE));
+    }
+
+    @Test
+    public void testStreamItems() throws Exception {
+        String json =
+                MString.replaceAll(
+                        "{'skip':{'items':[{'id':-1}]},'data':{'name':'x','items':["
+                                + "{'id':0,'sub':{'a':[1,2]}},{'id':1},'two',[3]]}}",
+                        "'",
+                        "\"");
+        ArrayList<INode> items = new ArrayList<>();
+        long cnt =
+                new JsonStreamNodeBuilder()
+                        .stream(
+                                new ByteArrayInputStream(MString.toBytes(json)),
+                                "data/items",
+                                items::add);
+        assertEquals(4, cnt);
+        assertEquals(4, items.size());
+        assertEquals(0, items.get(0).getInt("id", -2));
+        assertNull(items.get(0).getParent());
+        assertEquals(2, items.get(0).getObject("sub").getArray("a").size());
+        assertEquals(1, items.get(1).getInt("id", -2));
+        assertEquals("two", items.get(2).getString(INode.NAMELESS_VALUE));
+        assertEquals(1, items.get(3).getArray(INode.NAMELESS_VALUE).size());
+
+        items.clear();
+        byte[] array = MString.toBytes("[{\"a\":1},{\"a\":2}]");
+        cnt = new JsonStreamNodeBuilder().stream(new ByteArrayInputStream(array), "", items::add);
+        assertEquals(2, cnt);
+        assertEquals(2, items.get(1).getInt("a", 0));
+
+        String yaml =
+                "skip:\n"
+                        + "  items:\n"
+                        + "  - id: -1\n"
+                        + "data:\n"
+                        + "  name: x\n"
+                        + "  items:\n"
+                        + "  - id: 0\n"
+                        + "    sub:\n"
+                        + "      a: [1, 2]\n"
+                        + "  - id: 1\n"
+                        + "  - two\n";
+        items.clear();
+        YamlNodeBuilder yb = new YamlNodeBuilder();
+        yb.setCompact(true);
+        cnt = yb.stream(new ByteArrayInputStream(MString.toBytes(yaml)), "/data/items", items::add);
+        assertEquals(3, cnt);
+        assertTrue(items.get(0) instanceof CompactNode);
+        assertEquals(0, items.get(0).getInt("id", -2));
+        assertEquals(2, items.get(0).getObject("sub").getArray("a").size());
+        assertEquals(1, items.get(1).getInt("id", -2));
+        assertEquals("two", items.get(2).getString(INode.NAMELESS_VALUE));
+
+        // default implementation reads the whole document
+        items.clear();
+        cnt =
+                new PropertiesNodeBuilder()
+                        .stream(
+                                new ByteArrayInputStream(MString.toBytes("a=b\n")),
+                                "missing",
+                                items::add);
+        assertEquals(0, cnt);
+    }
+
+    @Test
+    public void testExtracted() throws Exception {
+        INode root = new MNode();
+        root.setString("host", "localhost");
+        INode sub = root.createObject("sub");
+        sub.setString("port", "8080");
+        sub.setString("url", "http://${/host}:${port}/");
+        sub.setString("parent", "${../host}");
+        sub.setString("missing", "${none,def}");
+        assertEquals("http://localhost:8080/", sub.getExtracted("url"));
+        assertEquals("localhost", sub.getExtracted("parent"));
+        assertEquals("def", sub.getExtracted("missing"));
+
+        // changed values are not cached by key
+        sub.setString("url", "https://${/host}/");
+        assertEquals("https://localhost/", sub.getExtracted("url"));
+        sub.setString("port", "9090");
+        sub.setString("url", "http://${/host}:${port}/");
+        assertEquals("http://localhost:9090/", sub.getExtracted("url"));
+
+        // the same template in another node uses the values of that node
+        INode other = root.createObject("other");
+        other.setString("port", "7070");
+        other.setString("url", "http://${/host}:${port}/");
+        assertEquals("http://localhost:7070/", other.getExtracted("url"));
+
+        Thread[] threads = new Thread[4];
+        String[] errors = new String[1];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] =
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < 10000; i++) {
+                                    if (!"http://localhost:9090/".equals(sub.getExtracted("url")))
+                                        errors[0] = sub.getExtracted("url");
+                                }
+                            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertNull(errors[0]);
+    }
+
     @Test
     public void testJsonStream() throws Exception {
 
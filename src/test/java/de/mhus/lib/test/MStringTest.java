@@ -16,14 +16,19 @@
 package de.mhus.lib.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.StringWriter;
 import java.util.Map.Entry;
 
 import org.junit.jupiter.api.Test;
 
 import de.mhus.lib.core.MProperties;
 import de.mhus.lib.core.MString;
+import de.mhus.lib.core.parser.CompiledString;
 import de.mhus.lib.core.parser.StringCompiler;
+import de.mhus.lib.core.parser.StringPropertyReplacer;
 import de.mhus.lib.errors.MException;
 import de.mhus.lib.tests.TestCase;
 
@@ -192,6 +197,36 @@ public class MStringTest extends TestCase {
         }
     }
 
+    @Test
+    public void testStringCompilerCache() throws Exception {
+        MProperties attr = new MProperties();
+        attr.setString("name", "Mickey");
+        String pattern = "Hello ${name}, $$ ${none:you}";
+        CompiledString compiled = StringCompiler.compile(pattern);
+        assertSame(compiled, StringCompiler.compile(pattern));
+        assertEquals("Hello Mickey, $ you", compiled.execute(attr));
+        assertTrue(compiled.getLengthHint() >= "Hello Mickey, $ you".length());
+
+        StringWriter writer = new StringWriter();
+        compiled.execute(writer, attr);
+        assertEquals("Hello Mickey, $ you", writer.toString());
+
+        assertEquals("plain", StringCompiler.compile("plain").execute(attr));
+        assertEquals("Mickey", StringCompiler.compile("$name$").execute(attr));
+
+        StringPropertyReplacer replacer =
+                new StringPropertyReplacer() {
+                    @Override
+                    public String findValueFor(String key) {
+                        return attr.getString(key, null);
+                    }
+                };
+        assertEquals("a Mickey b", replacer.process("a ${name} b"));
+        assertEquals("a ${none} b", replacer.process("a ${none} b"));
+        assertEquals("MickeyMickey ${open", replacer.process("${name}${name} ${open"));
+        assertEquals("no vars", replacer.process("no vars"));
+    }
+
     @Test
     public void testAscii127() {
         for (Entry<String, String> map : MString.ASCII127_MAPPING.entrySet()) {
@@ -17,14 +17,21 @@ package de.mhus.lib.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.jar.Manifest;
 
 import org.junit.jupiter.api.Test;
 
+import de.mhus.lib.annotations.lang.Prototype;
+import de.mhus.lib.core.M;
+import de.mhus.lib.core.MApi;
 import de.mhus.lib.core.MSystem;
+import de.mhus.lib.core.activator.DefaultActivator;
 import de.mhus.lib.errors.NotFoundException;
 import de.mhus.lib.test.util.StringValue;
 import de.mhus.lib.test.util.Template;
@@ -75,4 +82,81 @@ public class MSystemTest extends TestCase {
             assertEquals("de.mhus.lib.test.MSystemTest$2", name);
         }
     }
+
+    @Test
+    public void testLookupCache() throws Exception {
+        DefaultActivator activator = MApi.get().getLookupActivator();
+        activator.addMap(LookupSingleton.class, LookupSingleton.class);
+        activator.addMap(LookupPrototype.class, LookupPrototype.class);
+
+        LookupSingleton first = M.l(LookupSingleton.class);
+        assertNotNull(first);
+        assertSame(first, M.l(LookupSingleton.class));
+        assertNotSame(M.l(LookupPrototype.class), M.l(LookupPrototype.class));
+
+        // negative result, but a default is still created
+        assertNull(M.l(LookupMissing.class));
+        assertNull(M.l(LookupMissing.class));
+        assertNotNull(M.l(LookupMissing.class, LookupMissingImpl.class));
+
+        // invalidation by the activator and by cleanup
+        activator.removeObject(LookupSingleton.class, null);
+        LookupSingleton second = M.l(LookupSingleton.class);
+        assertNotSame(first, second);
+        MApi.get().cleanupLookup(LookupSingleton.class);
+        assertNotSame(second, M.l(LookupSingleton.class));
+
+        // hit path
+        int cnt = 5000000;
+        Thread[] threads = new Thread[4];
+        long start = System.currentTimeMillis();
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] =
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < cnt; i++) M.l(LookupSingleton.class);
+                            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        long time = System.currentTimeMillis() - start;
+        long nanos = time * 1000000 / cnt / threads.length;
+        System.out.println("Lookup: " + nanos + "ns per hit, " + time + "ms");
+    }
+
+    @Test
+    public void testLookupRemoveObject() throws Exception {
+        DefaultActivator activator = MApi.get().getLookupActivator();
+        String name = LookupRemovable.class.getCanonicalName();
+        for (int i = 0; i < 100; i++) {
+            LookupRemovable obj = new LookupRemovable();
+            activator.setInstance(name, obj);
+            assertSame(obj, M.l(LookupRemovable.class));
+
+            // lookups in parallel to the remove
+            AtomicBoolean stop = new AtomicBoolean();
+            Thread reader =
+                    new Thread(
+                            () -> {
+                                while (!stop.get()) M.l(LookupRemovable.class);
+                            });
+            reader.start();
+            activator.removeObject(LookupRemovable.class, null);
+            stop.set(true);
+            reader.join();
+
+            assertNotSame(obj, M.l(LookupRemovable.class));
+        }
+    }
+
+    public static class LookupSingleton {}
+
+    public static class LookupRemovable {}
+
+    @Prototype
+    public static class LookupPrototype {}
+
+    public static interface LookupMissing {}
+
+    public static class LookupMissingImpl implements LookupMissing {}
 }
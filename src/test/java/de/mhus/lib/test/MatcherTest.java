@@ -18,11 +18,17 @@ package de.mhus.lib.test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
+import de.mhus.lib.core.MString;
+import de.mhus.lib.core.matcher.CompiledPattern;
 import de.mhus.lib.core.matcher.Condition;
+import de.mhus.lib.core.matcher.ConditionIndex;
 import de.mhus.lib.core.matcher.Matcher;
 import de.mhus.lib.errors.MException;
 import de.mhus.lib.errors.SyntaxError;
@@ -294,4 +300,106 @@ public class MatcherTest extends TestCase {
             System.out.println(e.getMessage());
         }
     }
+
+    @Test
+    public void testCompiledPattern() {
+        assertEquals(true, MString.compareSQLLikePattern("xaaay", "%aaa%"));
+        assertEquals(false, MString.compareSQLLikePattern("xaay", "%aaa%"));
+        assertEquals(true, MString.compareSQLLikePattern("xaay", "!%aaa%"));
+        assertEquals(true, MString.compareSQLLikePattern("anything", "%"));
+        assertEquals(true, MString.compareSQLLikePattern("aaax", "aaa%"));
+        assertEquals(true, MString.compareSQLLikePattern("xaaa", "%aaa"));
+        assertEquals(false, MString.compareSQLLikePattern("xaaa", "aaa"));
+        assertEquals(true, MString.compareFsLikePattern("x", "*"));
+        assertEquals(false, MString.compareFsLikePattern("x", "!*"));
+        assertEquals(true, MString.compareFsLikePattern("file.txt", "*.txt"));
+        assertEquals(false, MString.compareFsLikePattern(null, "*"));
+
+        assertEquals("aloa", CompiledPattern.regex("aloa").getEquals());
+        assertEquals("al", CompiledPattern.regex("al.*").getPrefix());
+        assertEquals(null, CompiledPattern.regex("a.b").getEquals());
+        assertEquals(true, MString.compareRegexPattern("axb", "a.b"));
+        assertEquals(true, MString.compareRegexPattern("xaaay", ".*aaa.*"));
+        // '.' does not match line breaks
+        assertEquals(false, MString.compareRegexPattern("x\naaay", ".*aaa.*"));
+        assertEquals(true, MString.compareRegexPattern("a.*", "a\\.\\*"));
+        assertEquals(false, MString.compareRegexPattern("ab", "a\\.*"));
+
+        CompiledPattern.clearCache();
+        CompiledPattern first = CompiledPattern.sql("%aaa%");
+        assertEquals(true, first == CompiledPattern.sql("%aaa%"));
+        assertEquals(false, first == CompiledPattern.fs("%aaa%"));
+        assertEquals(2, CompiledPattern.getCacheSize());
+    }
+
+    @Test
+    public void testConditionIndex() throws MException {
+        ConditionIndex<String> index = new ConditionIndex<>();
+        List<Condition> conditions = new ArrayList<>();
+        List<String> targets = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String def;
+            switch (i % 5) {
+                case 0:
+                    def = "$type event" + i;
+                    break;
+                case 1:
+                    def = "$type event" + (i - 1) + " and $level > 2";
+                    break;
+                case 2:
+                    def = "$path sql /app/" + i + "/%";
+                    break;
+                case 3:
+                    def = "$type event" + (i - 3) + " or $level == " + i;
+                    break;
+                default:
+                    def = "$path fs */" + (i - 4) + "/x";
+            }
+            Condition cond = new Condition(def);
+            conditions.add(cond);
+            targets.add(def);
+            index.add(cond, def);
+        }
+        assertEquals(1000, index.size());
+        assertEquals(400, index.getLinearSize());
+
+        List<HashMap<String, Object>> maps = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 5) {
+            HashMap<String, Object> map = new HashMap<>();
+            map.put("type", "event" + i);
+            map.put("level", i % 2 == 0 ? 1 : 3);
+            map.put("path", "/app/" + (i + 2) + "/" + i + "/x");
+            maps.add(map);
+        }
+        maps.add(new HashMap<>());
+
+        long linearTime = System.currentTimeMillis();
+        List<List<String>> expected = new ArrayList<>();
+        for (HashMap<String, Object> map : maps) {
+            List<String> list = new ArrayList<>();
+            for (int i = 0; i < conditions.size(); i++)
+                if (conditions.get(i).matches(map)) list.add(targets.get(i));
+            expected.add(list);
+        }
+        linearTime = System.currentTimeMillis() - linearTime;
+        long indexTime = System.currentTimeMillis();
+        for (int i = 0; i < maps.size(); i++)
+            assertEquals(expected.get(i), index.matches(maps.get(i)));
+        indexTime = System.currentTimeMillis() - indexTime;
+        System.out.println("Linear: " + linearTime + "ms, Index: " + indexTime + "ms");
+
+        assertEquals(
+                Arrays.asList(
+                        "$type event0",
+                        "$path sql /app/2/%",
+                        "$type event0 or $level == 3",
+                        "$path fs */0/x"),
+                index.matches(maps.get(0)));
+        assertEquals(true, index.remove("$path sql /app/2/%"));
+        assertEquals(false, index.remove("$path sql /app/2/%"));
+        assertEquals(999, index.size());
+        assertEquals(
+                Arrays.asList("$type event0", "$type event0 or $level == 3", "$path fs */0/x"),
+                index.matches(maps.get(0)));
+    }
 }
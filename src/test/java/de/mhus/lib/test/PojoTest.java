@@ -19,6 +19,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
@@ -28,6 +29,7 @@ import de.mhus.lib.core.pojo.AttributesStrategy;
 import de.mhus.lib.core.pojo.DefaultFilter;
 import de.mhus.lib.core.pojo.DefaultStrategy;
 import de.mhus.lib.core.pojo.FunctionsStrategy;
+import de.mhus.lib.core.pojo.MPojo;
 import de.mhus.lib.core.pojo.PojoAction;
 import de.mhus.lib.core.pojo.PojoAttribute;
 import de.mhus.lib.core.pojo.PojoModel;
@@ -218,4 +220,32 @@ public class PojoTest extends TestCase {
         assertTrue(myReadOnly.canRead());
         assertFalse(myReadOnly.canWrite());
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCachedModelFactory() throws Exception {
+        PojoModel model = MPojo.getDefaultModelFactory().createPojoModel(PojoExample.class);
+        assertSame(model, MPojo.getDefaultModelFactory().createPojoModel(PojoExample.class));
+        assertSame(
+                MPojo.getAttributesModelFactory().createPojoModel(PojoExample.class),
+                MPojo.getAttributesModelFactory().createPojoModel(PojoExample.class));
+
+        PojoExample example = new PojoExample();
+        // primitive via generated setter/getter
+        PojoAttribute<Object> myInt = model.getAttribute("myint");
+        myInt.set(example, "42", false);
+        assertEquals(42, example.getMyInt());
+        assertEquals(42, myInt.get(example));
+
+        // primitive via field accessors
+        PojoModel attributes =
+                MPojo.getAttributesModelFactory().createPojoModel(PojoExample.class);
+        PojoAttribute<Object> myDouble = attributes.getAttribute("mydouble");
+        myDouble.set(example, 1.5, false);
+        assertEquals(1.5, example.getMyDouble());
+        assertEquals(1.5, myDouble.get(example));
+        PojoAttribute<Object> line1 = attributes.getAttribute("myembedded_line1");
+        line1.set(example, "nefertiti", false);
+        assertEquals("nefertiti", example.getMyEmbedded().getLine1());
+    }
 }
@@ -16,14 +16,29 @@
 package de.mhus.lib.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.OffsetDateTime;
 import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
 import de.mhus.lib.core.MDate;
+import de.mhus.lib.core.MTimerTask;
 import de.mhus.lib.core.schedule.CronJob;
 import de.mhus.lib.core.schedule.CronJob.Definition;
+import de.mhus.lib.core.schedule.IntervalJob;
+import de.mhus.lib.core.schedule.OnceJob;
+import de.mhus.lib.core.schedule.QueueHeap;
+import de.mhus.lib.core.schedule.Scheduler;
+import de.mhus.lib.core.schedule.SchedulerJob;
 import de.mhus.lib.tests.TestCase;
 
 public class SchedulerTest extends TestCase {
@@ -73,4 +88,284 @@ public class SchedulerTest extends TestCase {
             assertEquals(MDate.toDate("2018-01-02 0:00:00", null), next);
         }
     }
+
+    @Test
+    public void testCronNextTimes() {
+        {
+            Definition def = new CronJob.Definition("0,30 12 * * *");
+            long start = MDate.toDate("2019-07-07 12:10:10", null).getTime();
+            long[] next = def.calculateNext(start, 3);
+            assertEquals(3, next.length);
+            assertEquals(MDate.toDate("2019-07-07 12:30:00", null).getTime(), next[0]);
+            assertEquals(MDate.toDate("2019-07-08 12:00:00", null).getTime(), next[1]);
+            assertEquals(MDate.toDate("2019-07-08 12:30:00", null).getTime(), next[2]);
+        }
+        {
+            // 31th only in months with 31 days
+            Definition def = new CronJob.Definition("0 0 31 * *");
+            long start = MDate.toDate("2019-04-01 00:00:00", null).getTime();
+            long[] next = def.calculateNext(start, 2);
+            assertEquals(MDate.toDate("2019-05-31 00:00:00", null).getTime(), next[0]);
+            assertEquals(MDate.toDate("2019-07-31 00:00:00", null).getTime(), next[1]);
+        }
+        {
+            // months are zero based
+            Definition def = new CronJob.Definition("0 0 29 1 *");
+            long start = MDate.toDate("2019-01-01 00:00:00", null).getTime();
+            assertEquals(
+                    MDate.toDate("2020-02-29 00:00:00", null).getTime(), def.calculateNext(start));
+        }
+        {
+            Definition def = new CronJob.Definition("disabled");
+            assertEquals(0, def.calculateNext(System.currentTimeMillis(), 5).length);
+        }
+    }
+
+    @Test
+    public void testCronDaylightSaving() {
+        TimeZone orgZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+        try {
+            Definition everyMinute = new CronJob.Definition("* * * * *");
+            Definition daily = new CronJob.Definition("30 2 * * *");
+            {
+                // overlap, 03:00 summer time goes back to 02:00 winter time
+                long start = toMillis("2020-10-25T02:10+01:00");
+                assertEquals(start + 60000, everyMinute.calculateNext(start));
+                long[] next = everyMinute.calculateNext(start, 3);
+                assertEquals(toMillis("2020-10-25T02:11+01:00"), next[0]);
+                assertEquals(toMillis("2020-10-25T02:12+01:00"), next[1]);
+                assertEquals(toMillis("2020-10-25T02:13+01:00"), next[2]);
+                start = toMillis("2020-10-25T02:10+02:00");
+                assertEquals(toMillis("2020-10-25T02:30+02:00"), daily.calculateNext(start));
+                start = toMillis("2020-10-25T02:30+02:00");
+                assertEquals(toMillis("2020-10-26T02:30+01:00"), daily.calculateNext(start));
+            }
+            {
+                // gap, 02:00 winter time goes forward to 03:00 summer time
+                long start = toMillis("2020-03-29T01:59+01:00");
+                assertEquals(start + 60000, everyMinute.calculateNext(start));
+                start = toMillis("2020-03-29T01:00+01:00");
+                assertEquals(toMillis("2020-03-29T03:30+02:00"), daily.calculateNext(start));
+                start = toMillis("2020-03-29T03:30+02:00");
+                assertEquals(toMillis("2020-03-30T02:30+02:00"), daily.calculateNext(start));
+            }
+        } finally {
+            TimeZone.setDefault(orgZone);
+        }
+    }
+
+    private static long toMillis(String time) {
+        return OffsetDateTime.parse(time).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void testQueueHeap() {
+        QueueHeap queue = new QueueHeap();
+        SchedulerJob[] jobs = new SchedulerJob[100];
+        for (int i = 0; i < jobs.length; i++) {
+            jobs[i] = new QueuedJob(1000 + (i * 37) % 100);
+            queue.doSchedule(jobs[i]);
+        }
+        assertEquals(100, queue.size());
+        queue.removeJob(jobs[5]);
+        queue.removeJob(jobs[5]);
+        assertFalse(queue.contains(jobs[5]));
+        assertEquals(99, queue.size());
+
+        List<SchedulerJob> list = queue.getJobs();
+        for (int i = 1; i < list.size(); i++)
+            assertTrue(list.get(i - 1).getScheduledTime() <= list.get(i).getScheduledTime());
+
+        assertNull(queue.removeJobs(999));
+        List<SchedulerJob> due = queue.removeJobs(1049);
+        // job 5 was scheduled at 1085
+        assertEquals(50, due.size());
+        for (SchedulerJob job : due) assertTrue(job.getScheduledTime() <= 1049);
+        assertEquals(49, queue.size());
+        assertEquals(1050, queue.getNextScheduledTime());
+        assertEquals(0, queue.getLastLag());
+
+        // schedule twice only moves the job
+        queue.doSchedule(jobs[99]);
+        assertEquals(49, queue.size());
+
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertFalse(queue.contains(jobs[99]));
+    }
+
+    @Test
+    public void testBoundedExecutor() throws InterruptedException {
+        Scheduler scheduler = new Scheduler("test");
+        scheduler.setMaxThreads(2);
+        AtomicInteger parallel = new AtomicInteger();
+        AtomicInteger maxParallel = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(6);
+        try {
+            for (int i = 0; i < 6; i++) {
+                MTimerTask task =
+                        new MTimerTask() {
+                            @Override
+                            protected void doit() throws Exception {
+                                int cnt = parallel.incrementAndGet();
+                                maxParallel.accumulateAndGet(cnt, Math::max);
+                                Thread.sleep(50);
+                                parallel.decrementAndGet();
+                                done.countDown();
+                            }
+                        };
+                scheduler.doExecuteJob(new OnceJob(System.currentTimeMillis(), task), true);
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(maxParallel.get() <= 2);
+            assertEquals(6, scheduler.getExecutedJobs());
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testQueueCheckIgnoresDispatchedJob() throws InterruptedException {
+        Scheduler scheduler = new Scheduler("dispatched");
+        scheduler.setMaxThreads(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            // occupy the only worker
+            scheduler.doExecuteJob(
+                    new OnceJob(
+                            System.currentTimeMillis(),
+                            new MTimerTask() {
+                                @Override
+                                protected void doit() throws Exception {
+                                    blocked.countDown();
+                                    release.await();
+                                }
+                            }),
+                    true);
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+            OnceJob job =
+                    new OnceJob(
+                            System.currentTimeMillis() + 3600000,
+                            new MTimerTask() {
+                                @Override
+                                protected void doit() throws Exception {
+                                    executed.incrementAndGet();
+                                    done.countDown();
+                                }
+                            });
+            scheduler.schedule(job);
+            // job is waiting for the worker now
+            scheduler.doExecuteJob(job, true);
+            assertEquals(1, scheduler.getWaitingExecutions());
+
+            scheduler.doQueueCheck();
+            assertFalse(scheduler.getScheduledJobs().contains(job));
+
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(1, executed.get());
+        } finally {
+            release.countDown();
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testPreciseDispatch() throws InterruptedException {
+        Scheduler scheduler = new Scheduler("precise");
+        scheduler.setPrecise(true);
+        scheduler.start();
+        int cnt = 10;
+        long[] lag = new long[cnt];
+        CountDownLatch done = new CountDownLatch(cnt);
+        try {
+            long start = System.currentTimeMillis() + 100;
+            for (int i = 0; i < cnt; i++) {
+                int nr = i;
+                long time = start + i * 23;
+                scheduler.schedule(
+                        new OnceJob(
+                                time,
+                                new MTimerTask() {
+                                    @Override
+                                    protected void doit() throws Exception {
+                                        lag[nr] = System.currentTimeMillis() - time;
+                                        done.countDown();
+                                    }
+                                }));
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            long max = 0;
+            long sum = 0;
+            for (long l : lag) {
+                max = Math.max(max, l);
+                sum += l;
+            }
+            System.out.println("Dispatch lag avg " + (sum / cnt) + " ms, max " + max + " ms");
+            // the tick mode has a lag up to one second
+            assertTrue(max < 500);
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testPreciseQueueCheck() throws InterruptedException {
+        Scheduler scheduler = new Scheduler("precise-check");
+        scheduler.setPrecise(true);
+        scheduler.setMaxThreads(4);
+        scheduler.start();
+        int cnt = 20;
+        AtomicInteger executed = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger lost = new AtomicInteger();
+        try {
+            for (int i = 0; i < cnt; i++) {
+                AtomicInteger active = new AtomicInteger();
+                scheduler.schedule(
+                        new IntervalJob(
+                                2,
+                                new MTimerTask() {
+                                    @Override
+                                    protected void doit() throws Exception {
+                                        if (active.incrementAndGet() > 1)
+                                            overlaps.incrementAndGet();
+                                        executed.incrementAndGet();
+                                        Thread.sleep(1);
+                                        active.decrementAndGet();
+                                    }
+                                }) {
+                            @Override
+                            public void setNextExecutionTime(long nextExecutionTime) {
+                                // set by the scheduler for new, lost or busy jobs
+                                if (nextExecutionTime == CALCULATE_NEXT) lost.incrementAndGet();
+                                super.setNextExecutionTime(nextExecutionTime);
+                            }
+                        });
+            }
+            // the first schedule calculates the next execution, count only later calls
+            lost.set(0);
+            // run the queue check in parallel to the dispatcher
+            long end = System.currentTimeMillis() + 1000;
+            while (System.currentTimeMillis() < end) scheduler.doQueueCheck();
+            System.out.println("Executed " + executed.get() + " with parallel queue checks");
+            assertTrue(executed.get() > cnt);
+            assertEquals(0, overlaps.get());
+            assertEquals(0, lost.get());
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    private static class QueuedJob extends OnceJob {
+        QueuedJob(long time) {
+            super(time, null);
+            setScheduledTime(time);
+        }
+    }
 }